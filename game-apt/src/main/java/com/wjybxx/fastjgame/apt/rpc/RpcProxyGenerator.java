@@ -16,12 +16,8 @@
 
 package com.wjybxx.fastjgame.apt.rpc;
 
-import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.MethodSpec;
-import com.squareup.javapoet.ParameterSpec;
-import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.*;
 import com.wjybxx.fastjgame.apt.core.AbstractGenerator;
-import com.wjybxx.fastjgame.apt.serializer.SerializableClassProcessor;
 import com.wjybxx.fastjgame.apt.utils.AutoUtils;
 
 import javax.lang.model.element.*;
@@ -31,11 +27,13 @@ import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * 为客户端生成代理文件 XXXRpcProxy
+ * <p>
+ * 每一个rpc方法都会生成一个方法描述信息内部类，方法参数直接存储为类型明确的字段，并生成专用的codec，
+ * 服务器端生成的代理直接读取字段，不需要装箱拆箱，也不需要序列化参数列表。
  *
  * @author wjybxx
  * @version 1.0
@@ -43,6 +41,11 @@ import java.util.List;
  */
 class RpcProxyGenerator extends AbstractGenerator<RpcServiceProcessor> {
 
+    private static final String INSTANCE_FIELD_NAME = "INSTANCE";
+    private static final String CODEC_CLASS_NAME = "Codec";
+
+    private static final TypeVariableName RETURN_TYPE_VARIABLE = TypeVariableName.get("V");
+
     private final short serviceId;
     private final List<ExecutableElement> rpcMethods;
 
@@ -55,91 +58,219 @@ class RpcProxyGenerator extends AbstractGenerator<RpcServiceProcessor> {
     @Override
     public void execute() {
         // 代理类不可以继承
-        final TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(getClientProxyClassName(typeElement))
+        final TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(RpcServiceProcessor.getClientProxyClassName(typeElement))
                 .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addAnnotation(AutoUtils.SUPPRESS_UNCHECKED_ANNOTATION)
                 .addAnnotation(processorInfoAnnotation);
 
-        // 生成代理方法
+        // 生成代理方法及方法描述信息
         for (final ExecutableElement method : rpcMethods) {
-            typeBuilder.addMethod(genClientMethodProxy(method));
+            final List<SpecField> specFields = parseParameters(method);
+            final ClassName specTypeName = processor.getMethodSpecTypeName(typeElement, method);
+
+            typeBuilder.addMethod(genClientMethodProxy(method, specTypeName, specFields));
+            typeBuilder.addType(genMethodSpecClass(method, specTypeName, specFields));
         }
 
         // 写入文件
         AutoUtils.writeToFile(typeElement, typeBuilder, elementUtils, messager, filer);
     }
 
-    private static String getClientProxyClassName(TypeElement typeElement) {
-        return typeElement.getSimpleName().toString() + "RpcProxy";
-    }
-
     /**
      * 为客户端生成代理方法
      * <pre>{@code
-     * 		public static RpcBuilder<String> method1(int id, String param) {
-     * 			List<Object> methodParams = new ArrayList<>(2);
-     * 			methodParams.add(id);
-     * 			methodParams.add(param);
-     * 			return new DefaultRpcMethodSpec<>(1, 2, methodParams, 0, 0);
+     * 		public static RpcMethodSpec<String> method1(int id, String param) {
+     * 			return new Method1Spec_2<>(id, param);
      *        }
      * }
      * </pre>
+     * 无参方法的描述信息是不可变的，因此直接返回共享的实例。
      */
-    private MethodSpec genClientMethodProxy(ExecutableElement method) {
-        // 工具方法 public static RpcBuilder<V>
+    private MethodSpec genClientMethodProxy(ExecutableElement method, ClassName specTypeName, List<SpecField> specFields) {
+        // 工具方法 public static RpcMethodSpec<V>
         final MethodSpec.Builder builder = MethodSpec.methodBuilder(method.getSimpleName().toString())
                 .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
 
         // 拷贝泛型参数
         AutoUtils.copyTypeVariables(builder, method);
 
-        // 解析方法参数 -- 提炼方法是为了减少当前方法的长度
-        final ParseResult parseResult = parseParameters(method);
-        final List<ParameterSpec> realParameters = parseResult.realParameters;
-
         // 添加返回类型 - 带泛型
         final TypeMirror returnType = getNonPrimitiveReturnType(method);
         final DeclaredType realReturnType = typeUtils.getDeclaredType(processor.methodSpecElement, returnType);
         builder.returns(ClassName.get(realReturnType));
 
         // 拷贝参数列表
-        builder.addParameters(realParameters);
+        for (SpecField specField : specFields) {
+            builder.addParameter(specField.parameterSpec);
+        }
         // 是否是变长参数类型
         builder.varargs(method.isVarArgs());
 
-        if (realParameters.size() == 0) {
-            // 无参时，使用 Collections.emptyList();
-            builder.addStatement("return new $T<>((short)$L, (short)$L, $T.emptyList(), $L, $L)",
-                    processor.defaultMethodSpecRawTypeName,
-                    serviceId, processor.getMethodId(method),
-                    Collections.class,
-                    parseResult.lazyIndexes, parseResult.preIndexes);
+        if (specFields.isEmpty()) {
+            builder.addStatement("return $T.$L", specTypeName, INSTANCE_FIELD_NAME);
         } else {
-            builder.addStatement("$T<Object> methodParams = new $T<>($L)", ArrayList.class,
-                    ArrayList.class, realParameters.size());
+            builder.addStatement("return new $T<>($L)", specTypeName, joinFieldNames(specFields));
+        }
+        return builder.build();
+    }
 
-            for (ParameterSpec parameterSpec : realParameters) {
-                builder.addStatement("methodParams.add($L)", parameterSpec.name);
-            }
-            builder.addStatement("return new $T<>((short)$L, (short)$L, methodParams, $L, $L)",
-                    processor.defaultMethodSpecRawTypeName,
-                    serviceId, processor.getMethodId(method),
-                    parseResult.lazyIndexes, parseResult.preIndexes);
+    /**
+     * 生成方法描述信息类
+     * <pre>{@code
+     *      static final class Method1Spec_2<V> extends AbstractRpcMethodSpec<V> {
+     *          final int id;
+     *          final String param;
+     *
+     *          Method1Spec_2(int id, String param) {
+     *              this.id = id;
+     *              this.param = param;
+     *          }
+     *
+     *          public short getServiceId() {
+     *              return 1;
+     *          }
+     *
+     *          public short getMethodId() {
+     *              return 2;
+     *          }
+     *
+     *          private static final class Codec implements PojoCodecImpl<Method1Spec_2> {
+     *              ...
+     *          }
+     *      }
+     * }
+     * </pre>
+     */
+    private TypeSpec genMethodSpecClass(ExecutableElement method, ClassName specTypeName, List<SpecField> specFields) {
+        final TypeSpec.Builder builder = TypeSpec.classBuilder(specTypeName.simpleName())
+                .addModifiers(Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(RETURN_TYPE_VARIABLE)
+                .superclass(ParameterizedTypeName.get(processor.abstractMethodSpecTypeName, RETURN_TYPE_VARIABLE));
+
+        if (specFields.isEmpty()) {
+            builder.addField(FieldSpec.builder(specTypeName, INSTANCE_FIELD_NAME, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T()", specTypeName)
+                    .build());
         }
 
+        // 字段和构造方法
+        final MethodSpec.Builder constructorBuilder = MethodSpec.constructorBuilder();
+        for (SpecField specField : specFields) {
+            builder.addField(specField.fieldTypeName, specField.name, Modifier.FINAL);
+            constructorBuilder.addParameter(specField.fieldTypeName, specField.name);
+            constructorBuilder.addStatement("this.$L = $L", specField.name, specField.name);
+        }
+        builder.addMethod(constructorBuilder.build());
+
+        builder.addMethod(MethodSpec.methodBuilder("getServiceId")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.SHORT)
+                .addStatement("return $L", serviceId)
+                .build());
+
+        builder.addMethod(MethodSpec.methodBuilder("getMethodId")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.SHORT)
+                .addStatement("return $L", processor.getMethodId(method))
+                .build());
+
+        if (processor.isOneWay(method)) {
+            builder.addMethod(MethodSpec.methodBuilder("isOneWay")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(TypeName.BOOLEAN)
+                    .addStatement("return true")
+                    .build());
+        }
+
+        builder.addMethod(genToStringMethod(specTypeName, specFields));
+        builder.addType(genCodecClass(specTypeName, specFields));
         return builder.build();
     }
 
+    private MethodSpec genToStringMethod(ClassName specTypeName, List<SpecField> specFields) {
+        final CodeBlock.Builder codeBuilder = CodeBlock.builder()
+                .add("return $S", specTypeName.simpleName() + "{");
+        boolean needDelimiter = false;
+        for (SpecField specField : specFields) {
+            final String prefix = needDelimiter ? ", " : "";
+            needDelimiter = true;
+            codeBuilder.add(" + $S + $L", prefix + specField.name + "=", specField.name);
+        }
+        codeBuilder.add(" + '}'");
+
+        return MethodSpec.methodBuilder("toString")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(String.class)
+                .addStatement("$L", codeBuilder.build())
+                .build();
+    }
+
+    /**
+     * 生成codec，参数按照声明顺序读写，不写入参数个数和列表信息。
+     * 1. 基本类型、字符串、字节数组使用对应的读写方法，不需要装箱。
+     * 2. 延迟序列化的参数使用{@code writeLazySerializeObject}写入，对方接收为byte[]。
+     * 3. 提前反序列化的参数使用{@code readPreDeserializeObject}读取。
+     */
+    private TypeSpec genCodecClass(ClassName specTypeName, List<SpecField> specFields) {
+        final MethodSpec getEncoderClassMethod = MethodSpec.methodBuilder("getEncoderClass")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(Class.class), specTypeName))
+                .addStatement("return $T.class", specTypeName)
+                .build();
+
+        final MethodSpec.Builder readObjectMethodBuilder = MethodSpec.methodBuilder("readObject")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(specTypeName)
+                .addParameter(processor.readerTypeName, "reader")
+                .addException(Exception.class);
+
+        final MethodSpec.Builder writeObjectMethodBuilder = MethodSpec.methodBuilder("writeObject")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(specTypeName, "instance")
+                .addParameter(processor.writerTypeName, "writer")
+                .addException(Exception.class);
+
+        if (specFields.isEmpty()) {
+            readObjectMethodBuilder.addStatement("return $T.$L", specTypeName, INSTANCE_FIELD_NAME);
+        } else {
+            final List<String> readStatements = new ArrayList<>(specFields.size());
+            for (SpecField specField : specFields) {
+                readStatements.add("reader." + specField.readMethodName + "()");
+                writeObjectMethodBuilder.addStatement("writer.$L(instance.$L)", specField.writeMethodName, specField.name);
+            }
+            readObjectMethodBuilder.addStatement("return new $T($L)", specTypeName, String.join(", ", readStatements));
+        }
+
+        return TypeSpec.classBuilder(CODEC_CLASS_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(ParameterizedTypeName.get(processor.codecTypeName, specTypeName))
+                .addMethod(getEncoderClassMethod)
+                .addMethod(readObjectMethodBuilder.build())
+                .addMethod(writeObjectMethodBuilder.build())
+                .build();
+    }
+
+    private static String joinFieldNames(List<SpecField> specFields) {
+        final List<String> names = new ArrayList<>(specFields.size());
+        for (SpecField specField : specFields) {
+            names.add(specField.name);
+        }
+        return String.join(", ", names);
+    }
+
     @SuppressWarnings("unchecked")
-    private ParseResult parseParameters(ExecutableElement method) {
+    private List<SpecField> parseParameters(ExecutableElement method) {
         // 原始参数列表
         final List<VariableElement> originParameters = (List<VariableElement>) method.getParameters();
         // 真实参数列表
-        final List<ParameterSpec> realParameters = new ArrayList<>(originParameters.size());
-
-        // 需要延迟初始化的参数所在的位置
-        int lazyIndexes = 0;
-        // 需要提前反序列化的参数所在的位置
-        int preIndexes = 0;
+        final List<SpecField> specFields = new ArrayList<>(originParameters.size());
 
         // 筛选参数
         for (VariableElement variableElement : originParameters) {
@@ -147,86 +278,70 @@ class RpcProxyGenerator extends AbstractGenerator<RpcServiceProcessor> {
             if (processor.isContext(variableElement)) {
                 continue;
             }
-
-            if (isLazySerializeParameter(variableElement)) {
-                // 延迟序列化的参数(对方可以发送任意数据) - 要替换为Object
-                lazyIndexes |= 1 << realParameters.size();
-                realParameters.add(lazySerializableParameterProxy(variableElement));
-            } else if (isPreDeserializeParameter(variableElement)) {
-                // 查看是否需要提前反序列化(要求对方发来的是byte[]) - 要替换为byte[]
-                preIndexes |= 1 << realParameters.size();
-                realParameters.add(preDeserializeParameterProxy(variableElement));
-            } else {
-                // 普通参数
-                realParameters.add(ParameterSpec.get(variableElement));
-            }
+            specFields.add(newSpecField(variableElement));
         }
-        return new ParseResult(realParameters, lazyIndexes, preIndexes);
-    }
-
-    private static ParameterSpec lazySerializableParameterProxy(VariableElement variableElement) {
-        return ParameterSpec.builder(Object.class, variableElement.getSimpleName().toString()).build();
+        return specFields;
     }
 
-    private static ParameterSpec preDeserializeParameterProxy(VariableElement variableElement) {
-        return ParameterSpec.builder(byte[].class, variableElement.getSimpleName().toString()).build();
-    }
+    private SpecField newSpecField(VariableElement variableElement) {
+        final String name = variableElement.getSimpleName().toString();
+        final TypeMirror typeMirror = variableElement.asType();
 
-    /**
-     * 是否可延迟序列化的参数？（无论对方发送什么，我接收为一个byte[]）
-     * 1. 必须带有{@link SerializableClassProcessor#LAZY_SERIALIZABLE_CANONICAL_NAME}注解
-     * 2. 必须是字节数组
-     */
-    private boolean isLazySerializeParameter(VariableElement variableElement) {
-        if (!isAnnotationPresent(variableElement, processor.lazySerializableDeclaredType)) {
-            return false;
+        if (processor.isLazySerializeParameter(variableElement)) {
+            // 延迟序列化的参数(对方可以发送任意数据) - 要替换为Object
+            return new SpecField(name, ParameterSpec.builder(Object.class, name).build(), TypeName.OBJECT,
+                    "readObject", "writeLazySerializeObject");
         }
-        if (isByteArrayVariable(variableElement.asType())) {
-            return true;
-        } else {
-            messager.printMessage(Diagnostic.Kind.ERROR, "Annotation LazySerializable only support byte[]", variableElement);
-            return false;
+
+        if (processor.isPreDeserializeParameter(variableElement)) {
+            // 查看是否需要提前反序列化(要求对方发来的是byte[]) - 要替换为byte[]，字段为Object
+            return new SpecField(name, ParameterSpec.builder(byte[].class, name).build(), TypeName.OBJECT,
+                    "readPreDeserializeObject", "writeObject");
         }
-    }
 
-    private boolean isAnnotationPresent(Element element, DeclaredType annationMirror) {
-        return AutoUtils.isAnnotationPresent(typeUtils, element, annationMirror);
+        // 普通参数 - 字段使用擦除后的类型，避免泛型变量问题
+        final ParameterSpec parameterSpec = ParameterSpec.get(variableElement);
+        final TypeName fieldTypeName = TypeName.get(typeUtils.erasure(typeMirror));
+
+        if (typeMirror.getKind().isPrimitive()) {
+            final String primitiveTypeName = primitiveTypeName(typeMirror);
+            return new SpecField(name, parameterSpec, fieldTypeName, "read" + primitiveTypeName, "write" + primitiveTypeName);
+        }
+        if (processor.isString(typeMirror)) {
+            return new SpecField(name, parameterSpec, fieldTypeName, "readString", "writeString");
+        }
+        if (processor.isByteArray(typeMirror)) {
+            return new SpecField(name, parameterSpec, fieldTypeName, "readBytes", "writeBytes");
+        }
+        return new SpecField(name, parameterSpec, fieldTypeName, "readObject", "writeObject");
     }
 
-    private boolean isByteArrayVariable(TypeMirror typeMirror) {
-        return AutoUtils.isTargetPrimitiveArrayType(typeMirror, TypeKind.BYTE);
+    private static String primitiveTypeName(TypeMirror typeMirror) {
+        final String name = typeMirror.getKind().name().toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
     }
 
     /**
-     * 是否是需要提前反序列化的参数？（无论对方发送什么，我接收为一个非byte[]对象）
-     * 1. 必须带有{@link SerializableClassProcessor#PRE_DESERIALIZE_CANONICAL_NAME}注解
-     * 2. 不能是字节数组
+     * 方法描述信息中的一个字段，对应代理方法的一个参数
      */
-    private boolean isPreDeserializeParameter(VariableElement variableElement) {
-        if (!isAnnotationPresent(variableElement, processor.preDeserializeDeclaredType)) {
-            return false;
-        }
-        if (isByteArrayVariable(variableElement.asType())) {
-            messager.printMessage(Diagnostic.Kind.ERROR, "Annotation PreDeserializable doesn't support byte[]", variableElement);
-            return false;
-        }
-        return true;
-    }
-
-    private static class ParseResult {
-        // 除去特殊参数余下的参数
-        private final List<ParameterSpec> realParameters;
-        // 需要延迟初始化的位置
-        private final int lazyIndexes;
-        // 需要提前反序列化的位置
-        private final int preIndexes;
-
-        ParseResult(List<ParameterSpec> realParameters, int lazyIndexes, int preIndexes) {
-            this.realParameters = realParameters;
-            this.lazyIndexes = lazyIndexes;
-            this.preIndexes = preIndexes;
+    private static class SpecField {
+        // 字段名，与参数名相同
+        private final String name;
+        // 客户端代理方法的参数
+        private final ParameterSpec parameterSpec;
+        // 字段类型
+        private final TypeName fieldTypeName;
+        // codec的读写方法
+        private final String readMethodName;
+        private final String writeMethodName;
+
+        SpecField(String name, ParameterSpec parameterSpec, TypeName fieldTypeName, String readMethodName, String writeMethodName) {
+            this.name = name;
+            this.parameterSpec = parameterSpec;
+            this.fieldTypeName = fieldTypeName;
+            this.readMethodName = readMethodName;
+            this.writeMethodName = writeMethodName;
         }
-
     }
 
     private TypeMirror getNonPrimitiveReturnType(ExecutableElement method) {
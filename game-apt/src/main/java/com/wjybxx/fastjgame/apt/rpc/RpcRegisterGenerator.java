@@ -16,8 +16,8 @@
 
 package com.wjybxx.fastjgame.apt.rpc;
 
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
-import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.wjybxx.fastjgame.apt.core.AbstractGenerator;
@@ -48,7 +48,8 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
     private static final String instance = "instance";
 
     private static final String context = "context";
-    private static final String methodParams = "methodParams";
+    private static final String methodSpec = "methodSpec";
+    private static final String spec = "spec";
 
     private final short serviceId;
     private final List<ExecutableElement> rpcMethods;
@@ -113,13 +114,14 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
     }
 
     /**
-     * 为某个具体方法生成注册方法，方法分为两类
+     * 为某个具体方法生成注册方法，方法参数直接从客户端代理类生成的方法描述信息中读取，方法分为两类
      * 1. 有返回值的，直接返回方法执行结果（任意值）
      * <pre>
      * {@code
      * 		private static void registerGetMethod2(RpcFunctionRegistry registry, T instance) {
-     * 		    registry.register(10001, (context, methodParams) -> {
-     * 		        return instance.method2(methodParams.get(0), methodParams.get(1));
+     * 		    registry.register(1, 2, (context, methodSpec) -> {
+     * 		        final XXXRpcProxy.Method2Spec_2 spec = (XXXRpcProxy.Method2Spec_2) methodSpec;
+     * 		        return instance.method2(spec.id, spec.param);
      *         }
      *     }
      * }
@@ -127,9 +129,10 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
      * 2. 无返回值的，代理执行完之后直接返回null
      * <pre>
      * {@code
-     * 		private static void registerGetMethod2(RpcFunctionRegistry registry, T instance) {
-     * 		    registry.register(10002, (context, methodParams) -> {
-     * 		        instance.method1(methodParams.get(0), methodParams.get(1), promise);
+     * 		private static void registerGetMethod1(RpcFunctionRegistry registry, T instance) {
+     * 		    registry.register(1, 1, (context, methodSpec) -> {
+     * 		        final XXXRpcProxy.Method1Spec_1 spec = (XXXRpcProxy.Method1Spec_1) methodSpec;
+     * 		        instance.method1(spec.id, spec.param);
      * 		        return null;
      *            }
      *     }
@@ -150,7 +153,12 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
         builder.addCode("$L.register((short)$L, (short)$L, ($L, $L) -> {\n",
                 registry,
                 serviceId, methodId,
-                context, methodParams);
+                context, methodSpec);
+
+        if (hasSpecField(method)) {
+            final ClassName specTypeName = processor.getMethodSpecTypeName(typeElement, method);
+            builder.addStatement("    final $T $L = ($T) $L", specTypeName, spec, specTypeName, methodSpec);
+        }
 
         final InvokeStatement invokeStatement = genInvokeStatement(method);
         if (method.getReturnType().getKind() != TypeKind.VOID) {
@@ -175,6 +183,18 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
         return "_register" + BeanUtils.firstCharToUpperCase(method.getSimpleName().toString()) + "_" + methodId;
     }
 
+    /**
+     * @return 如果方法描述信息中有字段，则返回true
+     */
+    private boolean hasSpecField(ExecutableElement method) {
+        for (VariableElement variableElement : method.getParameters()) {
+            if (!processor.isContext(variableElement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 生成方法调用代码，没有分号和换行符。
      * {@code instance.rpcMethod(a, b, c)}
@@ -190,7 +210,6 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
 
         // 填充参数
         boolean needDelimiter = false;
-        int index = 0;
         for (VariableElement variableElement : method.getParameters()) {
             if (needDelimiter) {
                 format.append(", ");
@@ -203,23 +222,16 @@ class RpcRegisterGenerator extends AbstractGenerator<RpcServiceProcessor> {
                 continue;
             }
 
-            final TypeName parameterTypeName = ParameterizedTypeName.get(variableElement.asType());
-            if (parameterTypeName.isPrimitive()) {
-                // 基本类型需要两次转换，否则可能导致重载问题
-                // (int)((Integer)methodParams.get(index))
-                // eg:
-                // getName(int age);
-                // getName(Integer age);
-                format.append("($T)(($T)$L.get($L))");
-                params.add(parameterTypeName);
-                params.add(parameterTypeName.box());
+            if (processor.isLazySerializeParameter(variableElement) || processor.isPreDeserializeParameter(variableElement)) {
+                // 这两种参数在方法描述信息中的字段类型为Object
+                format.append("($T)$L.$L");
+                params.add(TypeName.get(typeUtils.erasure(variableElement.asType())));
             } else {
-                format.append("($T)$L.get($L)");
-                params.add(parameterTypeName);
+                // 字段类型与参数类型一致(擦除泛型)，基本类型也不需要拆箱
+                format.append("$L.$L");
             }
-            params.add(methodParams);
-            params.add(index);
-            index++;
+            params.add(spec);
+            params.add(variableElement.getSimpleName().toString());
         }
         format.append(")");
         return new InvokeStatement(format.toString(), params);
@@ -18,15 +18,16 @@ package com.wjybxx.fastjgame.apt.rpc;
 
 import com.google.auto.service.AutoService;
 import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.TypeName;
 import com.wjybxx.fastjgame.apt.core.MyAbstractProcessor;
 import com.wjybxx.fastjgame.apt.serializer.SerializableClassProcessor;
 import com.wjybxx.fastjgame.apt.utils.AutoUtils;
+import com.wjybxx.fastjgame.apt.utils.BeanUtils;
 
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.element.*;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.WildcardType;
 import javax.tools.Diagnostic;
@@ -55,7 +56,11 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
     private static final String RPC_METHOD_CANONICAL_NAME = "com.wjybxx.fastjgame.net.rpc.RpcMethod";
 
     private static final String METHOD_SPEC_CANONICAL_NAME = "com.wjybxx.fastjgame.net.rpc.RpcMethodSpec";
-    private static final String DEFAULT_METHOD_SPEC_CANONICAL_NAME = "com.wjybxx.fastjgame.net.rpc.DefaultRpcMethodSpec";
+    private static final String ABSTRACT_METHOD_SPEC_CANONICAL_NAME = "com.wjybxx.fastjgame.net.rpc.AbstractRpcMethodSpec";
+
+    private static final String CODEC_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.PojoCodecImpl";
+    private static final String OBJECT_READER_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.ObjectReader";
+    private static final String OBJECT_WRITER_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.ObjectWriter";
 
     private static final String METHOD_REGISTRY_CANONICAL_NAME = "com.wjybxx.fastjgame.net.rpc.RpcMethodProxyRegistry";
 
@@ -64,6 +69,7 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
 
     private static final String SERVICE_ID_METHOD_NAME = "serviceId";
     private static final String METHOD_ID_METHOD_NAME = "methodId";
+    private static final String ONE_WAY_METHOD_NAME = "oneWay";
 
     WildcardType wildcardType;
 
@@ -71,7 +77,11 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
     private DeclaredType futureDeclaredType;
 
     TypeElement methodSpecElement;
-    TypeName defaultMethodSpecRawTypeName;
+    ClassName abstractMethodSpecTypeName;
+
+    ClassName codecTypeName;
+    ClassName readerTypeName;
+    ClassName writerTypeName;
 
     DeclaredType lazySerializableDeclaredType;
     DeclaredType preDeserializeDeclaredType;
@@ -88,6 +98,8 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
     private TypeMirror collectionTypeMirror;
     private TypeMirror arrayListTypeMirror;
 
+    private TypeMirror stringTypeMirror;
+
     @Override
     public Set<String> getSupportedAnnotationTypes() {
         return Collections.singleton(RPC_SERVICE_CANONICAL_NAME);
@@ -111,7 +123,11 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
         futureDeclaredType = typeUtils.getDeclaredType(elementUtils.getTypeElement(FUTURE_CANONICAL_NAME));
 
         methodSpecElement = elementUtils.getTypeElement(METHOD_SPEC_CANONICAL_NAME);
-        defaultMethodSpecRawTypeName = TypeName.get(typeUtils.getDeclaredType(elementUtils.getTypeElement(DEFAULT_METHOD_SPEC_CANONICAL_NAME)));
+        abstractMethodSpecTypeName = ClassName.get(elementUtils.getTypeElement(ABSTRACT_METHOD_SPEC_CANONICAL_NAME));
+
+        codecTypeName = ClassName.get(elementUtils.getTypeElement(CODEC_CANONICAL_NAME));
+        readerTypeName = ClassName.get(elementUtils.getTypeElement(OBJECT_READER_CANONICAL_NAME));
+        writerTypeName = ClassName.get(elementUtils.getTypeElement(OBJECT_WRITER_CANONICAL_NAME));
 
         lazySerializableDeclaredType = typeUtils.getDeclaredType(elementUtils.getTypeElement(SerializableClassProcessor.LAZY_SERIALIZABLE_CANONICAL_NAME));
         preDeserializeDeclaredType = typeUtils.getDeclaredType(elementUtils.getTypeElement(SerializableClassProcessor.PRE_DESERIALIZE_CANONICAL_NAME));
@@ -121,6 +137,8 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
 
         collectionTypeMirror = elementUtils.getTypeElement(Collection.class.getCanonicalName()).asType();
         arrayListTypeMirror = elementUtils.getTypeElement(ArrayList.class.getCanonicalName()).asType();
+
+        stringTypeMirror = elementUtils.getTypeElement(String.class.getCanonicalName()).asType();
     }
 
     @Override
@@ -195,12 +213,29 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
                 messager.printMessage(Diagnostic.Kind.ERROR, " methodId " + methodId + " is duplicate!", method);
             }
 
+            if (isOneWay(method) && method.getReturnType().getKind() != TypeKind.VOID) {
+                // 单向调用不会返回结果
+                messager.printMessage(Diagnostic.Kind.ERROR, "oneWay RpcMethod must return void!", method);
+            }
+
             checkParameters(method);
         }
     }
 
     private void checkParameters(ExecutableElement method) {
         for (VariableElement variableElement : method.getParameters()) {
+            if (isAnnotationPresent(variableElement, lazySerializableDeclaredType) && !isByteArray(variableElement.asType())) {
+                // 延迟序列化的参数(对方可以发送任意数据)，我接收为一个byte[]
+                messager.printMessage(Diagnostic.Kind.ERROR, "Annotation LazySerializable only support byte[]", variableElement);
+                continue;
+            }
+
+            if (isAnnotationPresent(variableElement, preDeserializeDeclaredType) && isByteArray(variableElement.asType())) {
+                // 提前反序列化的参数(要求对方发来的是byte[])，我接收为一个非byte[]对象
+                messager.printMessage(Diagnostic.Kind.ERROR, "Annotation PreDeserializable doesn't support byte[]", variableElement);
+                continue;
+            }
+
             if (isMap(variableElement)) {
                 checkMap(variableElement);
                 continue;
@@ -265,6 +300,31 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
                 .get();
     }
 
+    boolean isOneWay(ExecutableElement method) {
+        final Boolean oneWay = AutoUtils.findAnnotation(typeUtils, method, rpcMethodDeclaredType)
+                .map(annotationMirror -> (Boolean) AutoUtils.getAnnotationValueValueWithDefaults(elementUtils, annotationMirror, ONE_WAY_METHOD_NAME))
+                .get();
+        return oneWay;
+    }
+
+    static String getClientProxyClassName(TypeElement typeElement) {
+        return typeElement.getSimpleName().toString() + "RpcProxy";
+    }
+
+    /**
+     * 加上methodId防止重载方法重复
+     *
+     * @return 方法描述信息类的名字，它是客户端代理类的内部类
+     */
+    static String getMethodSpecClassName(short methodId, ExecutableElement method) {
+        return BeanUtils.firstCharToUpperCase(method.getSimpleName().toString()) + "Spec_" + methodId;
+    }
+
+    ClassName getMethodSpecTypeName(TypeElement typeElement, ExecutableElement method) {
+        final String packageName = elementUtils.getPackageOf(typeElement).getQualifiedName().toString();
+        return ClassName.get(packageName, getClientProxyClassName(typeElement), getMethodSpecClassName(getMethodId(method), method));
+    }
+
     /**
      * 为客户端生成代理文件
      * XXXRpcProxy
@@ -299,6 +359,36 @@ public class RpcServiceProcessor extends MyAbstractProcessor {
         return AutoUtils.isSubTypeIgnoreTypeParameter(typeUtils, arrayListTypeMirror, variableElement.asType());
     }
 
+    /**
+     * 是否可延迟序列化的参数？（无论对方发送什么，我接收为一个byte[]）
+     * 1. 必须带有{@link SerializableClassProcessor#LAZY_SERIALIZABLE_CANONICAL_NAME}注解
+     * 2. 必须是字节数组
+     */
+    boolean isLazySerializeParameter(VariableElement variableElement) {
+        return isAnnotationPresent(variableElement, lazySerializableDeclaredType) && isByteArray(variableElement.asType());
+    }
+
+    /**
+     * 是否是需要提前反序列化的参数？（无论对方发送什么，我接收为一个非byte[]对象）
+     * 1. 必须带有{@link SerializableClassProcessor#PRE_DESERIALIZE_CANONICAL_NAME}注解
+     * 2. 不能是字节数组
+     */
+    boolean isPreDeserializeParameter(VariableElement variableElement) {
+        return isAnnotationPresent(variableElement, preDeserializeDeclaredType) && !isByteArray(variableElement.asType());
+    }
+
+    private boolean isAnnotationPresent(Element element, DeclaredType annotationMirror) {
+        return AutoUtils.isAnnotationPresent(typeUtils, element, annotationMirror);
+    }
+
+    boolean isByteArray(TypeMirror typeMirror) {
+        return AutoUtils.isTargetPrimitiveArrayType(typeMirror, TypeKind.BYTE);
+    }
+
+    boolean isString(TypeMirror typeMirror) {
+        return typeUtils.isSameType(typeMirror, stringTypeMirror);
+    }
+
     boolean isContext(VariableElement variableElement) {
         return AutoUtils.isSameTypeIgnoreTypeParameter(typeUtils, variableElement.asType(), contextDeclaredType);
     }
@@ -27,10 +27,12 @@ import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author wjybxx
@@ -54,7 +56,12 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
     private static final String WRITE_ARRAY_METHOD_NAME = "writeArray";
     private static final String WRITE_OBJECT_METHOD_NAME = "writeObject";
 
+    private static final String WRITE_METHOD_PREFIX = "write";
+    private static final String COMPUTE_METHOD_PREFIX = "compute";
+
     private static final String CONSTRUCTOR_FIELD_NAME = "r_constructor";
+    private static final String SCHEMA_FIELD_NAME = "SCHEMA";
+    private static final String REMOTE_FIELD_NUMBERS_VAR_NAME = "remoteFieldNumbers";
 
     private TypeName instanceRawTypeName;
     private DeclaredType superDeclaredType;
@@ -66,6 +73,7 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
     private MethodSpec.Builder newInstanceMethodBuilder;
     private MethodSpec.Builder readFieldsMethodBuilder;
     private MethodSpec.Builder writeObjectMethodBuilder;
+    private MethodSpec.Builder computeSizeMethodBuilder;
 
     private List<? extends Element> allFieldsAndMethodWithInherit;
 
@@ -91,6 +99,7 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         newInstanceMethodBuilder = newInstanceMethodBuilder();
         readFieldsMethodBuilder = newReadFieldsMethodBuilder();
         writeObjectMethodBuilder = newWriteObjectMethodBuilder();
+        computeSizeMethodBuilder = newComputeSizeMethodBuilder();
 
         // 必须包含超类字段
         allFieldsAndMethodWithInherit = BeanUtils.getAllFieldsAndMethodsWithInherit(typeElement);
@@ -99,6 +108,18 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
     private void gen() {
         genFactoryMethod();
 
+        computeSizeMethodBuilder.addStatement("int size = 0");
+
+        final boolean tagged = processor.isTaggedClass(typeElement);
+        if (tagged) {
+            // 字段布局信息必须是第一个值
+            writeObjectMethodBuilder.addStatement("writer.writeSchema($L)", SCHEMA_FIELD_NAME);
+            computeSizeMethodBuilder.addStatement("size += calculator.computeSchema($L)", SCHEMA_FIELD_NAME);
+        }
+
+        final List<Integer> fieldNumbers = new ArrayList<>();
+        final List<CodeBlock> readStatements = new ArrayList<>();
+
         for (Element element : allFieldsAndMethodWithInherit) {
             // 非成员属性
             if (element.getKind() != ElementKind.FIELD) {
@@ -113,9 +134,20 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
 
             addWriteStatement(variableElement);
 
-            addReadStatement(variableElement);
+            addComputeSizeStatement(variableElement);
+
+            readStatements.add(newReadStatement(variableElement));
+            fieldNumbers.add(processor.getFieldNumber(variableElement));
         }
 
+        if (tagged) {
+            genTaggedReadFields(fieldNumbers, readStatements);
+        } else {
+            addPositionalReadStatements(readStatements);
+        }
+
+        computeSizeMethodBuilder.addStatement("return size");
+
         typeBuilder.addModifiers(Modifier.PUBLIC, Modifier.FINAL)
                 .addAnnotation(AutoUtils.SUPPRESS_UNCHECKED_ANNOTATION)
                 .addAnnotation(processorInfoAnnotation)
@@ -123,7 +155,8 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
                 .addMethod(getEntityMethod)
                 .addMethod(writeObjectMethodBuilder.build())
                 .addMethod(newInstanceMethodBuilder.build())
-                .addMethod(readFieldsMethodBuilder.build());
+                .addMethod(readFieldsMethodBuilder.build())
+                .addMethod(computeSizeMethodBuilder.build());
 
         if (!staticCodeBlockBuilder.isEmpty()) {
             typeBuilder.addStaticBlock(staticCodeBlockBuilder.build());
@@ -146,20 +179,22 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
             // 非private，直接new
             newInstanceMethodBuilder.addStatement("return new $T()", instanceRawTypeName);
         } else {
-            // 创建构造函数反射字段
+            // 创建构造函数的MethodHandle字段
             final FieldSpec constructorFieldSpec = getConstructorFieldSpec();
 
             typeBuilder.addField(constructorFieldSpec);
-            staticCodeBlockBuilder.addStatement("$L = $T.getNoArgsConstructor($T.class)", CONSTRUCTOR_FIELD_NAME, AptReflectUtils.class, instanceRawTypeName);
-            // 反射创建对象
-            newInstanceMethodBuilder.addStatement("return $L.newInstance($T.EMPTY_OBJECT_ARRAY)", CONSTRUCTOR_FIELD_NAME, AptReflectUtils.class);
+            staticCodeBlockBuilder.addStatement("$L = $T.findNoArgsConstructor($T.class)", CONSTRUCTOR_FIELD_NAME, AptReflectUtils.class, instanceRawTypeName);
+            // invokeExact创建对象 - 调用点类型必须与MethodHandle的类型完全一致，因此需要强转
+            newInstanceMethodBuilder.beginControlFlow("try")
+                    .addStatement("return ($T) $L.invokeExact()", instanceRawTypeName, CONSTRUCTOR_FIELD_NAME)
+                    .nextControlFlow("catch ($T e)", Throwable.class)
+                    .addStatement("return $T.rethrow(e)", AptReflectUtils.class)
+                    .endControlFlow();
         }
     }
 
     private FieldSpec getConstructorFieldSpec() {
-        final ClassName className = ClassName.get(Constructor.class);
-        final ParameterizedTypeName fieldTypeName = ParameterizedTypeName.get(className, instanceRawTypeName);
-        return FieldSpec.builder(fieldTypeName, CONSTRUCTOR_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        return FieldSpec.builder(MethodHandle.class, CONSTRUCTOR_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
                 .build();
     }
 
@@ -173,6 +208,15 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         writeObjectMethodBuilder.addStatement("writer.$L(instance.$L())", writeMethodName, getterName);
     }
 
+    /**
+     * 计算大小与写对象一一对应 size += calculator.computeInt(instance.getId())
+     */
+    private void addComputeSizeStatement(VariableElement variableElement) {
+        final String getterName = getGetterName(variableElement);
+        final String computeMethodName = COMPUTE_METHOD_PREFIX + getWriteMethodName(variableElement).substring(WRITE_METHOD_PREFIX.length());
+        computeSizeMethodBuilder.addStatement("size += calculator.$L(instance.$L())", computeMethodName, getterName);
+    }
+
     private String getGetterName(VariableElement variableElement) {
         return BeanUtils.getterMethodName(variableElement.getSimpleName().toString(),
                 BeanUtils.isPrimitiveBoolean(variableElement.asType()));
@@ -205,7 +249,7 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
     }
 
     private static String getWritePrimitiveTypeMethodName(VariableElement variableElement) {
-        return "write" + primitiveTypeName(variableElement);
+        return WRITE_METHOD_PREFIX + primitiveTypeName(variableElement);
     }
 
     private static String primitiveTypeName(VariableElement variableElement) {
@@ -216,14 +260,74 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         return AutoUtils.isTargetPrimitiveArrayType(typeMirror, TypeKind.BYTE);
     }
 
+    private void addPositionalReadStatements(List<CodeBlock> readStatements) {
+        for (CodeBlock readStatement : readStatements) {
+            readFieldsMethodBuilder.addStatement("$L", readStatement);
+        }
+    }
+
+    /**
+     * 带标签的类：布局相同时按位置读取，否则按照对方的字段编号读取，未知字段跳过
+     * <pre>{@code
+     *  final int[] remoteFieldNumbers = reader.readSchema(SCHEMA);
+     *  if (remoteFieldNumbers == null) {
+     *      instance.setId(reader.readInt());
+     *      return;
+     *  }
+     *  for (int number : remoteFieldNumbers) {
+     *      switch (number) {
+     *          case 1:
+     *              instance.setId(reader.readInt());
+     *              break;
+     *          default:
+     *              reader.skipValue();
+     *              break;
+     *      }
+     *  }
+     * }</pre>
+     */
+    private void genTaggedReadFields(List<Integer> fieldNumbers, List<CodeBlock> readStatements) {
+        final ClassName schemaClassName = processor.getTaggedSchemaClassName();
+        final String fieldNumbersLiteral = fieldNumbers.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(", "));
+        typeBuilder.addField(FieldSpec.builder(schemaClassName, SCHEMA_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.newInstance($L)", schemaClassName, fieldNumbersLiteral)
+                .build());
+
+        readFieldsMethodBuilder.addStatement("final int[] $L = reader.readSchema($L)", REMOTE_FIELD_NUMBERS_VAR_NAME, SCHEMA_FIELD_NAME);
+
+        // 快速路径
+        readFieldsMethodBuilder.beginControlFlow("if ($L == null)", REMOTE_FIELD_NUMBERS_VAR_NAME);
+        addPositionalReadStatements(readStatements);
+        readFieldsMethodBuilder.addStatement("return");
+        readFieldsMethodBuilder.endControlFlow();
+
+        // 兼容路径
+        readFieldsMethodBuilder.beginControlFlow("for (int number : $L)", REMOTE_FIELD_NUMBERS_VAR_NAME);
+        readFieldsMethodBuilder.beginControlFlow("switch (number)");
+        for (int index = 0; index < fieldNumbers.size(); index++) {
+            readFieldsMethodBuilder.addCode("case $L:\n$>", fieldNumbers.get(index));
+            readFieldsMethodBuilder.addStatement("$L", readStatements.get(index));
+            readFieldsMethodBuilder.addStatement("break");
+            readFieldsMethodBuilder.addCode("$<");
+        }
+        readFieldsMethodBuilder.addCode("default:\n$>");
+        readFieldsMethodBuilder.addStatement("reader.skipValue()");
+        readFieldsMethodBuilder.addStatement("break");
+        readFieldsMethodBuilder.addCode("$<");
+        readFieldsMethodBuilder.endControlFlow();
+        readFieldsMethodBuilder.endControlFlow();
+    }
+
     /**
      * 读对象用的setter
      */
-    private void addReadStatement(VariableElement variableElement) {
+    private CodeBlock newReadStatement(VariableElement variableElement) {
         if (containsNotPrivateSetterMethod(variableElement)) {
-            readBySetter(variableElement);
+            return readBySetter(variableElement);
         } else {
-            readByReflect(variableElement);
+            return readByReflect(variableElement);
         }
     }
 
@@ -231,7 +335,7 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         return BeanUtils.containsNotPrivateSetterMethod(typeUtils, variableElement, allFieldsAndMethodWithInherit);
     }
 
-    private void readBySetter(VariableElement variableElement) {
+    private CodeBlock readBySetter(VariableElement variableElement) {
         // 包含非private的setter方法 instance.setId(reader.readInt())
         final String setterName = getSetterName(variableElement);
         List<Object> params = new ArrayList<>(8);
@@ -241,7 +345,7 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         appendReadStatement(variableElement, readFormat, params);
         readFormat.append(")");
 
-        readFieldsMethodBuilder.addStatement(readFormat.toString(), params.toArray());
+        return CodeBlock.of(readFormat.toString(), params.toArray());
     }
 
     private String getSetterName(VariableElement variableElement) {
@@ -362,25 +466,58 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         return "read" + primitiveTypeName(variableElement);
     }
 
-    private void readByReflect(VariableElement variableElement) {
-        // 需要定义反射构造方法字段
+    private CodeBlock readByReflect(VariableElement variableElement) {
+        if (variableElement.getModifiers().contains(Modifier.FINAL)) {
+            return readByReflectField(variableElement);
+        }
+        // 需要定义VarHandle字段，static final才能被JIT内联
+        final String fieldName = variableElement.getSimpleName().toString();
+        final String reflectFieldName = "r_field_" + fieldName;
+        typeBuilder.addField(VarHandle.class, reflectFieldName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+
+        // 这里需要使用getEnclosingElement获取真正定义该字段的类
+        final TypeName fieldDeclaredClassTypeName = TypeName.get(typeUtils.erasure(variableElement.getEnclosingElement().asType()));
+        final TypeName fieldRawTypeName = TypeName.get(typeUtils.erasure(variableElement.asType()));
+        staticCodeBlockBuilder.addStatement("$L = $T.findVarHandle($T.class, $S, $T.class)", reflectFieldName, AptReflectUtils.class,
+                fieldDeclaredClassTypeName, fieldName, fieldRawTypeName);
+
+        // VarHandle赋值 r_field_id.set((A) instance, (int) reader.readInt())
+        // VarHandle的方法是签名多态的，强转为精确类型可以避免调用时的类型适配
+        StringBuilder readFormat = new StringBuilder("$L.set(($T) instance, ($T) ");
+        List<Object> params = new ArrayList<>(8);
+        params.add(reflectFieldName);
+        params.add(fieldDeclaredClassTypeName);
+        params.add(fieldRawTypeName);
+
+        appendReadStatement(variableElement, readFormat, params);
+        readFormat.append(")");
+        return CodeBlock.of(readFormat.toString(), params.toArray());
+    }
+
+    /**
+     * final字段不能通过{@link VarHandle}赋值(会抛出{@link UnsupportedOperationException})，
+     * 只能通过setAccessible之后的{@link Field}赋值。
+     */
+    private CodeBlock readByReflectField(VariableElement variableElement) {
         final String fieldName = variableElement.getSimpleName().toString();
         final String reflectFieldName = "r_field_" + fieldName;
         typeBuilder.addField(Field.class, reflectFieldName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
 
         // 这里需要使用getEnclosingElement获取真正定义该字段的类
         final TypeName fieldDeclaredClassTypeName = TypeName.get(typeUtils.erasure(variableElement.getEnclosingElement().asType()));
-        staticCodeBlockBuilder.addStatement("$L = $T.getDeclaredField($T.class ,$S)", reflectFieldName, AptReflectUtils.class,
+        staticCodeBlockBuilder.addStatement("$L = $T.getDeclaredField($T.class, $S)", reflectFieldName, AptReflectUtils.class,
                 fieldDeclaredClassTypeName, fieldName);
 
-        // 反射赋值 r_field_id.set(instance, reader.readInt())
-        StringBuilder readFormat = new StringBuilder("$L.set(instance, ");
+        // 反射赋值 r_field_id.setInt(instance, reader.readInt())，基本类型使用对应的方法避免装箱
+        final String setMethodName = isPrimitiveType(variableElement) ? "set" + primitiveTypeName(variableElement) : "set";
+        StringBuilder readFormat = new StringBuilder("$L.$L(instance, ");
         List<Object> params = new ArrayList<>(8);
         params.add(reflectFieldName);
+        params.add(setMethodName);
 
         appendReadStatement(variableElement, readFormat, params);
         readFormat.append(")");
-        readFieldsMethodBuilder.addStatement(readFormat.toString(), params.toArray());
+        return CodeBlock.of(readFormat.toString(), params.toArray());
     }
 
     private MethodSpec newGetEncoderClassMethodBuilder() {
@@ -395,6 +532,10 @@ class DefaultCodecGenerator extends AbstractGenerator<SerializableClassProcessor
         return processor.newWriteMethodBuilder(superDeclaredType);
     }
 
+    private MethodSpec.Builder newComputeSizeMethodBuilder() {
+        return processor.newComputeSizeMethodBuilder(superDeclaredType);
+    }
+
     private MethodSpec.Builder newReadFieldsMethodBuilder() {
         return MethodSpec.overriding(processor.readFieldsMethod, superDeclaredType, typeUtils);
     }
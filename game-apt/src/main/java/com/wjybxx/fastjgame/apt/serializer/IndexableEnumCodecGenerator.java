@@ -59,6 +59,10 @@ class IndexableEnumCodecGenerator extends AbstractGenerator<SerializableClassPro
         final MethodSpec.Builder readMethodBuilder = processor.newReadObjectMethodBuilder(superDeclaredType);
         readMethodBuilder.addStatement("return $T.$L(reader.readInt())", instanceRawTypeName, FOR_NUMBER_METHOD_NAME);
 
+        // 大小即number的大小 return calculator.computeInt(instance.getNumber())
+        final MethodSpec.Builder computeSizeMethodBuilder = processor.newComputeSizeMethodBuilder(superDeclaredType);
+        computeSizeMethodBuilder.addStatement("return calculator.computeInt(instance.$L())", GET_NUMBER_METHOD_NAME);
+
         final TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(getCodecClassName(typeElement));
         typeBuilder.addModifiers(Modifier.PUBLIC, Modifier.FINAL)
                 .addAnnotation(AutoUtils.SUPPRESS_UNCHECKED_ANNOTATION)
@@ -66,7 +70,8 @@ class IndexableEnumCodecGenerator extends AbstractGenerator<SerializableClassPro
                 .addSuperinterface(TypeName.get(superDeclaredType))
                 .addMethod(getEncoderClassMethod)
                 .addMethod(writeMethodBuilder.build())
-                .addMethod(readMethodBuilder.build());
+                .addMethod(readMethodBuilder.build())
+                .addMethod(computeSizeMethodBuilder.build());
 
         // 写入文件
         AutoUtils.writeToFile(typeElement, typeBuilder, elementUtils, messager, filer);
@@ -63,13 +63,18 @@ class IndexableObjectCodecGenerator extends AbstractGenerator<SerializableClassP
         final MethodSpec.Builder readMethodBuilder = processor.newReadObjectMethodBuilder(superDeclaredType);
         readMethodBuilder.addStatement("return $T.$L(reader.readObject())", instanceRawTypeName, FOR_INDEX_METHOD_NAME);
 
+        // 大小即索引的大小 return calculator.computeObject(instance.getIndex())
+        final MethodSpec.Builder computeSizeMethodBuilder = processor.newComputeSizeMethodBuilder(superDeclaredType);
+        computeSizeMethodBuilder.addStatement("return calculator.computeObject(instance.$L())", GET_INDEX_METHOD_NAME);
+
         typeBuilder.addModifiers(Modifier.PUBLIC, Modifier.FINAL)
                 .addAnnotation(AutoUtils.SUPPRESS_UNCHECKED_ANNOTATION)
                 .addAnnotation(processorInfoAnnotation)
                 .addSuperinterface(TypeName.get(superDeclaredType))
                 .addMethod(getEncoderClassMethod)
                 .addMethod(writeMethodBuilder.build())
-                .addMethod(readMethodBuilder.build());
+                .addMethod(readMethodBuilder.build())
+                .addMethod(computeSizeMethodBuilder.build());
 
         // 写入文件
         AutoUtils.writeToFile(typeElement, typeBuilder, elementUtils, messager, filer);
@@ -17,6 +17,7 @@
 package com.wjybxx.fastjgame.apt.serializer;
 
 import com.google.auto.service.AutoService;
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeName;
 import com.wjybxx.fastjgame.apt.core.MyAbstractProcessor;
@@ -56,10 +57,16 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
 
     private static final String CODEC_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.PojoCodecImpl";
     private static final String ABSTRACT_CODEC_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.AbstractPojoCodecImpl";
+    private static final String SIZE_CALCULATOR_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.ObjectSizeCalculator";
+    private static final String TAGGED_SCHEMA_CANONICAL_NAME = "com.wjybxx.fastjgame.net.binary.TaggedSchema";
+
+    private static final String TAGGED_PROPERTY_NAME = "tagged";
+    private static final String NUMBER_PROPERTY_NAME = "number";
 
     private static final String GET_ENCODER_CLASS_METHOD_NAME = "getEncoderClass";
     private static final String WRITE_OBJECT_METHOD_NAME = "writeObject";
     private static final String READ_OBJECT_METHOD_NAME = "readObject";
+    private static final String COMPUTE_SIZE_METHOD_NAME = "computeSize";
 
     private static final String NEW_INSTANCE_METHOD_NAME = "newInstance";
     private static final String READ_FIELDS_METHOD_NAME = "readFields";
@@ -71,6 +78,7 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
     TypeMirror enumMapRawTypeMirror;
 
     private TypeElement serializableClassElement;
+    private DeclaredType serializableClassDeclaredType;
     private DeclaredType serializableFieldDeclaredType;
     private DeclaredType impDeclaredType;
 
@@ -105,6 +113,7 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
         enumMapRawTypeMirror = typeUtils.erasure(elementUtils.getTypeElement(EnumMap.class.getCanonicalName()).asType());
 
         serializableClassElement = elementUtils.getTypeElement(SERIALIZABLE_CLASS_CANONICAL_NAME);
+        serializableClassDeclaredType = typeUtils.getDeclaredType(serializableClassElement);
         serializableFieldDeclaredType = typeUtils.getDeclaredType(elementUtils.getTypeElement(SERIALIZABLE_FIELD_CANONICAL_NAME));
         impDeclaredType = typeUtils.getDeclaredType(elementUtils.getTypeElement(IMPL_CANONICAL_NAME));
 
@@ -280,6 +289,9 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
     }
 
     private void checkNormalClass(TypeElement typeElement) {
+        final boolean tagged = isTaggedClass(typeElement);
+        final Set<Integer> fieldNumbers = new HashSet<>();
+
         // 父类可能是不序列化的，但是有字段要序列化
         final List<? extends Element> allFieldsAndMethodWithInherit = BeanUtils.getAllFieldsAndMethodsWithInherit(typeElement);
         for (Element element : allFieldsAndMethodWithInherit) {
@@ -306,6 +318,11 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
                 continue;
             }
 
+            // 带标签的类，字段编号必须为正数且唯一
+            if (tagged) {
+                checkFieldNumber(variableElement, fieldNumbers);
+            }
+
             // map和集合类型
             if (isMapOrCollection(variableElement.asType())) {
                 checkMapAndCollectionField(variableElement);
@@ -326,6 +343,44 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
         }
     }
 
+    private void checkFieldNumber(VariableElement variableElement, Set<Integer> fieldNumbers) {
+        final int number = getFieldNumber(variableElement);
+        if (number <= 0) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "field number of tagged class must be positive", variableElement);
+            return;
+        }
+        if (!fieldNumbers.add(number)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "duplicate field number " + number, variableElement);
+        }
+    }
+
+    /**
+     * 是否是使用带标签字段布局的类
+     */
+    boolean isTaggedClass(TypeElement typeElement) {
+        final AnnotationMirror annotationMirror = AutoUtils.findAnnotation(typeUtils, typeElement, serializableClassDeclaredType)
+                .orElse(null);
+        if (annotationMirror == null) {
+            return false;
+        }
+        final Boolean tagged = AutoUtils.getAnnotationValueValueWithDefaults(elementUtils, annotationMirror, TAGGED_PROPERTY_NAME);
+        return tagged;
+    }
+
+    /**
+     * 获取字段的编号，仅对带标签的类有意义
+     */
+    int getFieldNumber(VariableElement variableElement) {
+        final AnnotationMirror annotationMirror = AutoUtils.findAnnotation(typeUtils, variableElement, serializableFieldDeclaredType)
+                .orElseThrow();
+        final Integer number = AutoUtils.getAnnotationValueValueWithDefaults(elementUtils, annotationMirror, NUMBER_PROPERTY_NAME);
+        return number;
+    }
+
+    ClassName getTaggedSchemaClassName() {
+        return ClassName.bestGuess(TAGGED_SCHEMA_CANONICAL_NAME);
+    }
+
     /**
      * {@link #SERIALIZABLE_FIELD_CANONICAL_NAME}注解的字段是可以序列化的
      */
@@ -439,6 +494,21 @@ public class SerializableClassProcessor extends MyAbstractProcessor {
         return MethodSpec.overriding(writeObjectMethod, superDeclaredType, typeUtils);
     }
 
+    /**
+     * 创建computeSize方法。
+     * 由于该方法是接口的default方法，这里不使用{@link MethodSpec#overriding(ExecutableElement, DeclaredType, javax.lang.model.util.Types)}，
+     * 避免生成的方法带有default修饰符。
+     */
+    MethodSpec.Builder newComputeSizeMethodBuilder(DeclaredType superDeclaredType) {
+        return MethodSpec.methodBuilder(COMPUTE_SIZE_METHOD_NAME)
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(TypeName.INT)
+                .addParameter(TypeName.get(superDeclaredType.getTypeArguments().get(0)), "instance")
+                .addParameter(ClassName.bestGuess(SIZE_CALCULATOR_CANONICAL_NAME), "calculator")
+                .addException(Exception.class);
+    }
+
     /**
      * 创建readObject方法
      */
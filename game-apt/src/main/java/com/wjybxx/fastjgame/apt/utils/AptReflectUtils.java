@@ -20,7 +20,10 @@ package com.wjybxx.fastjgame.apt.utils;
 
 import com.google.common.primitives.Ints;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Field;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -43,15 +46,14 @@ public class AptReflectUtils {
     public static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
 
     /**
-     * 获取对的无参构造方法
-     * 生成的代码调用
+     * 获取类的无参构造方法（可以是private的）的{@link MethodHandle}，其类型为{@code ()T}。
+     * 生成的代码保存在static final字段中，并通过{@link MethodHandle#invokeExact(Object...)}调用，可以被JIT内联。
      */
-    public static <T> Constructor<T> getNoArgsConstructor(Class<T> clazz) {
+    public static MethodHandle findNoArgsConstructor(Class<?> clazz) {
         try {
-            final Constructor<T> constructor = clazz.getDeclaredConstructor();
-            constructor.setAccessible(true);
-            return constructor;
-        } catch (NoSuchMethodException e) {
+            final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+            return lookup.findConstructor(clazz, MethodType.methodType(void.class));
+        } catch (Throwable e) {
             return rethrow(e);
         }
     }
@@ -62,6 +64,25 @@ public class AptReflectUtils {
     }
 
     /**
+     * 获取字段（可以是private的）的{@link VarHandle}。
+     * 与{@link java.lang.reflect.Field#set(Object, Object)}相比，基本类型不需要装箱，且static final的VarHandle可以被JIT内联。
+     * 生成的代码调用
+     *
+     * @param clazz     定义该字段的类
+     * @param fieldName 字段名
+     * @param fieldType 字段的类型（擦除后的）
+     */
+    public static VarHandle findVarHandle(Class<?> clazz, String fieldName, Class<?> fieldType) {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+            return lookup.findVarHandle(clazz, fieldName, fieldType);
+        } catch (Throwable e) {
+            return rethrow(e);
+        }
+    }
+
+    /**
+     * 获取字段（可以是private的）的{@link Field}，用于final字段的赋值 - final字段不支持通过{@link VarHandle}赋值。
      * 生成的代码调用
      */
     public static Field getDeclaredField(Class<?> clazz, String fieldName) {
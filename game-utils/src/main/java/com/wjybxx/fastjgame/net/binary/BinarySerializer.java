@@ -85,6 +85,10 @@ public class BinarySerializer implements Serializer {
         this.defaultByteBufCapacity = defaultByteBufCapacity;
     }
 
+    /**
+     * 估算值必须是O(1)的，因为每一个消息都会调用该方法，只对可快速得出大小的对象返回精确值。
+     * 如果需要精确值，请调用{@link #computeBufferSize(Object)}或{@link #computeSerializedSize(Object)}。
+     */
     @Override
     public int estimateSerializedSize(@Nullable Object object) {
         if (object == null) {
@@ -105,6 +109,41 @@ public class BinarySerializer implements Serializer {
         return defaultByteBufCapacity;
     }
 
+    /**
+     * 如果对象的编解码器支持逐字段计算大小（注解处理器生成的编解码器），则通过{@link #computeSerializedSize(Object)}计算精确值，
+     * 否则返回{@link #estimateSerializedSize(Object)}。
+     */
+    @Override
+    public int computeBufferSize(@Nullable Object object) {
+        if (object == null) {
+            return 1;
+        }
+
+        final PojoCodec<?> pojoCodec = codecRegistry.get(object.getClass());
+        if (pojoCodec == null || !pojoCodec.isComputeSizeSupported()) {
+            return estimateSerializedSize(object);
+        }
+
+        try {
+            return computeSerializedSize(object);
+        } catch (Exception e) {
+            // 由真正的序列化过程抛出异常
+            return defaultByteBufCapacity;
+        }
+    }
+
+    /**
+     * 通过{@link PojoCodecImpl#computeSize(Object, ObjectSizeCalculator)}计算对象序列化后的精确大小。
+     * 注意：该方法会遍历整个对象图，代价与序列化相当，只应在确实需要精确大小的地方调用，
+     * 比如一次序列化、多次发送的大对象。
+     *
+     * @throws Exception 对象不支持序列化
+     */
+    public int computeSerializedSize(@Nullable Object object) throws Exception {
+        final ObjectSizeCalculator calculator = new ObjectSizeCalculatorImpl(this);
+        return calculator.computeObject(object);
+    }
+
     @Override
     public void writeObject(ByteBuf byteBuf, @Nullable Object object) throws Exception {
         final CodedDataOutputStream outputStream = CodedDataOutputStream.newInstance(byteBuf);
@@ -113,14 +152,16 @@ public class BinarySerializer implements Serializer {
 
     @Override
     public Object readObject(ByteBuf data) throws Exception {
-        if (data.nioBufferCount() == 1) {
+        if (data.nioBufferCount() > 0) {
+            // 单个缓冲区，或CompositeByteBuf等由多个缓冲区组成的byteBuf(跨越TCP包的帧)，都直接读取，不拷贝
             final CodedDataInputStream codedDataInputStream = CodedDataInputStream.newInstance(data);
             return decodeObject(codedDataInputStream);
         } else {
-            final byte[] localBuffer = BufferPool.allocateBuffer();
+            // 不支持nio的byteBuf
+            final int readableBytes = data.readableBytes();
+            final byte[] localBuffer = BufferPool.allocateBuffer(readableBytes);
             try {
                 // 读入缓存数组
-                final int readableBytes = data.readableBytes();
                 data.readBytes(localBuffer, 0, readableBytes);
 
                 // 解析对象
@@ -135,17 +176,16 @@ public class BinarySerializer implements Serializer {
     @Nonnull
     @Override
     public byte[] toBytes(@Nullable Object object) throws Exception {
-        final byte[] localBuffer = BufferPool.allocateBuffer();
+        final CodedDataOutputStream.PooledArrayCodedDataOutputStream outputStream = CodedDataOutputStream.newPooledInstance(computeBufferSize(object));
         try {
-            final CodedDataOutputStream outputStream = CodedDataOutputStream.newInstance(localBuffer);
             encodeObject(outputStream, object);
 
             // 拷贝序列化结果
             final byte[] resultBytes = new byte[outputStream.getTotalBytesWritten()];
-            System.arraycopy(localBuffer, 0, resultBytes, 0, resultBytes.length);
+            System.arraycopy(outputStream.buffer(), 0, resultBytes, 0, resultBytes.length);
             return resultBytes;
         } finally {
-            BufferPool.releaseBuffer(localBuffer);
+            outputStream.release();
         }
     }
 
@@ -159,17 +199,16 @@ public class BinarySerializer implements Serializer {
         if (object == null) {
             return null;
         }
-        final byte[] localBuffer = BufferPool.allocateBuffer();
+        final CodedDataOutputStream.PooledArrayCodedDataOutputStream outputStream = CodedDataOutputStream.newPooledInstance(computeBufferSize(object));
         try {
             // 写入缓冲区
-            final CodedDataOutputStream outputStream = CodedDataOutputStream.newInstance(localBuffer);
             encodeObject(outputStream, object);
 
             // 读出
-            final CodedDataInputStream inputStream = CodedDataInputStream.newInstance(localBuffer, 0, outputStream.getTotalBytesWritten());
+            final CodedDataInputStream inputStream = CodedDataInputStream.newInstance(outputStream.buffer(), 0, outputStream.getTotalBytesWritten());
             return decodeObject(inputStream);
         } finally {
-            BufferPool.releaseBuffer(localBuffer);
+            outputStream.release();
         }
     }
 
@@ -26,6 +26,7 @@ import com.wjybxx.fastjgame.util.dsl.IndexableEnumMapper;
  * 值类型
  * 1. 普通值：原始类型，及其包装类型，{@link String}，字节数组，NULL
  * 2. 容器值：{@link #OBJECT}
+ * 3. 基本类型数组：{@link #INT_ARRAY}等
  * <p>
  * Q: 如何解决常用数组和集合的解析？
  * A: 为其分配{@link TypeId}和工厂。简单稳定的方式：扫描指定包。可以使用{@link CollectionScanner}
@@ -81,7 +82,21 @@ public enum BinaryValueType implements IndexableEnum {
      * 1. 容器的每一个值都是调用{@link ObjectWriter}中的方法进行序列化的，否则就不算容器。
      * 2. 你可以将对方序列化的一个对象读取为其它容器类型。比如对方序列化的任意容器都可以读取为一个ArrayList。
      */
-    OBJECT(12);
+    OBJECT(12),
+
+    // --------------------------------------- 基本类型数组 -------------------------------
+    /**
+     * 基本类型数组（字节数组除外）的紧凑格式：tag + count + value,value,value...
+     * 与{@link #OBJECT}不同，每个元素不写tag，也不需要装箱，详见{@link PackedArrays}。
+     * fastutil的{@code IntArrayList}和{@code LongArrayList}仍然是{@link #OBJECT}，但其内容为单个紧凑数组。
+     */
+    INT_ARRAY(13),
+    LONG_ARRAY(14),
+    FLOAT_ARRAY(15),
+    DOUBLE_ARRAY(16),
+    SHORT_ARRAY(17),
+    CHAR_ARRAY(18),
+    BOOLEAN_ARRAY(19);
 
     private final int number;
 
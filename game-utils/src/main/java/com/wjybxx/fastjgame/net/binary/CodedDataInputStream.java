@@ -22,6 +22,7 @@ import io.netty.buffer.ByteBuf;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * {@link CodedInputStream}的封装，屏蔽转义一些接口。
@@ -60,15 +61,33 @@ public class CodedDataInputStream {
         return newInstance(byteBuf, byteBuf.readerIndex(), byteBuf.readableBytes());
     }
 
+    /**
+     * 如果byteBuf由多个缓冲区组成（如{@link io.netty.buffer.CompositeByteBuf}），则直接跨越各个缓冲区读取，不拷贝数据。
+     * 注意：不会修改byteBuf的读索引。
+     */
     public static CodedDataInputStream newInstance(ByteBuf byteBuf, int index, int length) {
         validateByteBuf(byteBuf, index, length);
-        final ByteBuffer byteBuffer = byteBuf.internalNioBuffer(index, length);
-        return newInstance(CodedInputStream.newInstance(byteBuffer));
+        if (byteBuf.nioBufferCount() == 1) {
+            final ByteBuffer byteBuffer = byteBuf.internalNioBuffer(index, length);
+            return newInstance(CodedInputStream.newInstance(byteBuffer));
+        } else {
+            return newInstance(Arrays.asList(byteBuf.nioBuffers(index, length)));
+        }
+    }
+
+    /**
+     * 跨越多个缓冲区读取数据，不拷贝数据。
+     * 当所有缓冲区都是直接内存时效率最好，否则会以流的方式分段读取。
+     *
+     * @param byteBuffers 数据所在的缓冲区，读取期间不可以修改
+     */
+    public static CodedDataInputStream newInstance(@Nonnull Iterable<ByteBuffer> byteBuffers) {
+        return newInstance(CodedInputStream.newInstance(byteBuffers));
     }
 
     private static void validateByteBuf(ByteBuf byteBuf, int index, int length) {
-        if (byteBuf.nioBufferCount() != 1) {
-            throw new IllegalArgumentException("nioBufferCount: " + byteBuf.nioBufferCount() + " (expected: 1)");
+        if (byteBuf.nioBufferCount() < 1) {
+            throw new IllegalArgumentException("nioBufferCount: " + byteBuf.nioBufferCount() + " (expected: >= 1)");
         }
 
         if (index < 0 || length < 0 || index + length > byteBuf.capacity()) {
@@ -123,6 +142,10 @@ public class CodedDataInputStream {
         return codedInputStream.readRawBytes(size);
     }
 
+    public void skipRawBytes(int size) throws IOException {
+        codedInputStream.skipRawBytes(size);
+    }
+
     public <T extends MessageLite> T readMessageNoSize(@Nonnull Parser<T> parser) throws IOException {
         return parser.parseFrom(codedInputStream, EMPTY_REGISTRY);
     }
@@ -135,6 +158,13 @@ public class CodedDataInputStream {
         return codedInputStream.isAtEnd();
     }
 
+    /**
+     * @return 到当前限制为止剩余的字节数，如果没有限制，则返回-1
+     */
+    public int getBytesUntilLimit() {
+        return codedInputStream.getBytesUntilLimit();
+    }
+
     public void popLimit(int oldLimit) {
         codedInputStream.popLimit(oldLimit);
     }
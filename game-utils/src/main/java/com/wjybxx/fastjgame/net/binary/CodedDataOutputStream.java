@@ -18,6 +18,7 @@ package com.wjybxx.fastjgame.net.binary;
 
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
+import com.wjybxx.fastjgame.net.misc.BufferPool;
 import com.wjybxx.fastjgame.util.annotation.UnstableApi;
 import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
@@ -46,6 +47,23 @@ public abstract class CodedDataOutputStream {
         return new ArrayCodedDataOutputStream(buffer, offset, length);
     }
 
+    /**
+     * 创建一个使用{@link BufferPool}中的缓冲区的输出流，空间不足时自动扩容。
+     * 使用完毕后必须调用{@link PooledArrayCodedDataOutputStream#release()}归还缓冲区。
+     *
+     * @param initCapacity 初始容量
+     */
+    static PooledArrayCodedDataOutputStream newPooledInstance(int initCapacity) {
+        return new PooledArrayCodedDataOutputStream(BufferPool.allocateBuffer(initCapacity));
+    }
+
+    /**
+     * 创建一个只计数不写入的输出流，用于计算序列化后的大小。
+     */
+    static CodedDataOutputStream newCountingInstance() {
+        return new CountingCodedDataOutputStream();
+    }
+
     public static CodedDataOutputStream newInstance(ByteBuf byteBuf) {
         return new NioDataOutputStream(byteBuf);
     }
@@ -220,6 +238,257 @@ public abstract class CodedDataOutputStream {
         }
     }
 
+    /**
+     * 只计数不写入的输出流，各方法的计数与{@link CodedOutputStream}的编码结果一致。
+     */
+    private static class CountingCodedDataOutputStream extends CodedDataOutputStream {
+
+        private int totalBytesWritten;
+
+        @Override
+        public void writeRawByte(byte value) {
+            totalBytesWritten++;
+        }
+
+        @Override
+        public void writeInt32(int value) {
+            totalBytesWritten += CodedOutputStream.computeInt32SizeNoTag(value);
+        }
+
+        @Override
+        public void writeFixed32(int value) {
+            totalBytesWritten += CodedOutputStream.computeFixed32SizeNoTag(value);
+        }
+
+        @Override
+        public void writeInt64(long value) {
+            totalBytesWritten += CodedOutputStream.computeInt64SizeNoTag(value);
+        }
+
+        @Override
+        public void writeFixed64(long value) {
+            totalBytesWritten += CodedOutputStream.computeFixed64SizeNoTag(value);
+        }
+
+        @Override
+        public void writeFloat(float value) {
+            totalBytesWritten += CodedOutputStream.computeFloatSizeNoTag(value);
+        }
+
+        @Override
+        public void writeDouble(double value) {
+            totalBytesWritten += CodedOutputStream.computeDoubleSizeNoTag(value);
+        }
+
+        @Override
+        public void writeBool(boolean value) {
+            totalBytesWritten += CodedOutputStream.computeBoolSizeNoTag(value);
+        }
+
+        @Override
+        public void writeString(String value) {
+            totalBytesWritten += CodedOutputStream.computeStringSizeNoTag(value);
+        }
+
+        @Override
+        public void writeRawBytes(byte[] value, int offset, int length) {
+            totalBytesWritten += length;
+        }
+
+        @Override
+        public void writeMessageNoSize(MessageLite value) {
+            totalBytesWritten += value.getSerializedSize();
+        }
+
+        @Override
+        public void flush() {
+
+        }
+
+        @Override
+        public int getTotalBytesWritten() {
+            return totalBytesWritten;
+        }
+
+        @Override
+        public void setFixedInt32(int index, int value) {
+            // 不写入内容，大小不变
+        }
+
+        @Override
+        public String toString() {
+            return "CountingCodedDataOutputStream{" +
+                    "totalBytesWritten=" + totalBytesWritten +
+                    '}';
+        }
+    }
+
+    /**
+     * 基于{@link BufferPool}的可扩容的数组输出流。
+     * 与{@link NioDataOutputStream}不同，它在写之前检查剩余空间，空间不足时先扩容，而不是写失败后扩容重写。
+     */
+    static class PooledArrayCodedDataOutputStream extends CodedDataOutputStream {
+
+        /**
+         * varint32的最大字节数
+         */
+        private static final int MAX_VARINT32_SIZE = 5;
+        /**
+         * varint64的最大字节数
+         */
+        private static final int MAX_VARINT64_SIZE = 10;
+        /**
+         * 一个char编码为UTF-8的最大字节数
+         */
+        private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+        private byte[] buffer;
+
+        private int codedOutputStreamOffset;
+        private CodedOutputStream codedOutputStream;
+
+        PooledArrayCodedDataOutputStream(byte[] buffer) {
+            this.buffer = buffer;
+            this.codedOutputStreamOffset = 0;
+            this.codedOutputStream = CodedOutputStream.newInstance(buffer);
+        }
+
+        /**
+         * 获取当前的缓冲区，有效内容为前{@link #getTotalBytesWritten()}个字节。
+         * 注意：扩容后缓冲区会改变，因此必须在写完以后获取。
+         */
+        byte[] buffer() {
+            return buffer;
+        }
+
+        /**
+         * 归还缓冲区，之后不可以再使用该对象
+         */
+        void release() {
+            final byte[] buffer = this.buffer;
+            if (buffer != null) {
+                this.buffer = null;
+                this.codedOutputStream = null;
+                BufferPool.releaseBuffer(buffer);
+            }
+        }
+
+        private void ensureSpace(int required) {
+            if (codedOutputStream.spaceLeft() >= required) {
+                return;
+            }
+
+            final int writerIndex = getTotalBytesWritten();
+            final long minCapacity = (long) writerIndex + required;
+            if (minCapacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("required capacity overflow, writerIndex " + writerIndex + ", required " + required);
+            }
+
+            buffer = BufferPool.growBuffer(buffer, writerIndex, (int) minCapacity);
+            codedOutputStreamOffset = writerIndex;
+            codedOutputStream = CodedOutputStream.newInstance(buffer, writerIndex, buffer.length - writerIndex);
+        }
+
+        @Override
+        public void writeRawByte(byte value) throws IOException {
+            ensureSpace(1);
+            codedOutputStream.writeRawByte(value);
+        }
+
+        @Override
+        public void writeInt32(int value) throws IOException {
+            // 负数会符号扩展为10字节
+            ensureSpace(MAX_VARINT64_SIZE);
+            codedOutputStream.writeInt32NoTag(value);
+        }
+
+        @Override
+        public void writeFixed32(int value) throws IOException {
+            ensureSpace(4);
+            codedOutputStream.writeFixed32NoTag(value);
+        }
+
+        @Override
+        public void writeInt64(long value) throws IOException {
+            ensureSpace(MAX_VARINT64_SIZE);
+            codedOutputStream.writeInt64NoTag(value);
+        }
+
+        @Override
+        public void writeFixed64(long value) throws IOException {
+            ensureSpace(8);
+            codedOutputStream.writeFixed64NoTag(value);
+        }
+
+        @Override
+        public void writeFloat(float value) throws IOException {
+            ensureSpace(4);
+            codedOutputStream.writeFloatNoTag(value);
+        }
+
+        @Override
+        public void writeDouble(double value) throws IOException {
+            ensureSpace(8);
+            codedOutputStream.writeDoubleNoTag(value);
+        }
+
+        @Override
+        public void writeBool(boolean value) throws IOException {
+            ensureSpace(1);
+            codedOutputStream.writeBoolNoTag(value);
+        }
+
+        @Override
+        public void writeString(String value) throws IOException {
+            // 长度 + 内容：剩余空间足够容纳最大可能长度时，不必计算UTF-8长度；
+            // 否则按实际编码长度扩容，避免ASCII字符串按3倍长度申请缓冲区
+            if (codedOutputStream.spaceLeft() < MAX_VARINT32_SIZE + (long) value.length() * MAX_UTF8_BYTES_PER_CHAR) {
+                ensureSpace(CodedOutputStream.computeStringSizeNoTag(value));
+            }
+            codedOutputStream.writeStringNoTag(value);
+        }
+
+        @Override
+        public void writeRawBytes(byte[] value, int offset, int length) throws IOException {
+            ensureSpace(length);
+            codedOutputStream.writeRawBytes(value, offset, length);
+        }
+
+        @Override
+        public void writeMessageNoSize(MessageLite value) throws IOException {
+            // getSerializedSize是有缓存的
+            ensureSpace(value.getSerializedSize());
+            value.writeTo(codedOutputStream);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            codedOutputStream.flush();
+        }
+
+        @Override
+        public int getTotalBytesWritten() {
+            return codedOutputStreamOffset + codedOutputStream.getTotalBytesWritten();
+        }
+
+        @Override
+        public void setFixedInt32(final int index, int value) throws IOException {
+            buffer[index] = (byte) value;
+            buffer[index + 1] = (byte) (value >>> 8);
+            buffer[index + 2] = (byte) (value >>> 16);
+            buffer[index + 3] = (byte) (value >>> 24);
+        }
+
+        @Override
+        public String toString() {
+            return "PooledArrayCodedDataOutputStream{" +
+                    "arrayLength=" + (buffer == null ? -1 : buffer.length) +
+                    ", codedOutputStreamOffset=" + codedOutputStreamOffset +
+                    ", totalBytesWritten=" + (codedOutputStream == null ? -1 : getTotalBytesWritten()) +
+                    '}';
+        }
+    }
+
     /**
      * 扩容有两种方式：
      * 1. 外部写失败后，扩容，然后重写。
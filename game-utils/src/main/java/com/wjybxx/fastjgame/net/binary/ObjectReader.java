@@ -115,6 +115,20 @@ public interface ObjectReader {
     @Nullable
     <E> E readObject(Supplier<E> factory) throws Exception;
 
+    /**
+     * 读取带标签的类的字段布局信息，对应{@link ObjectWriter#writeSchema(TaggedSchema)}。
+     *
+     * @param localSchema 本地的字段布局
+     * @return 如果对方的布局与本地相同，则返回null，可以按位置读取字段；否则返回对方写入字段的编号（按写入顺序）
+     */
+    @Nullable
+    int[] readSchema(@Nonnull TaggedSchema localSchema) throws Exception;
+
+    /**
+     * 跳过下一个值，用于跳过本地不存在的字段
+     */
+    void skipValue() throws Exception;
+
     // ----------------------------------------- 底层API ----------------------------------
     // 用户一般不该使用以下接口，要正确的使用它们并不容易
 
@@ -216,6 +216,15 @@ public class ObjectReaderImpl implements ObjectReader {
 
             case OBJECT:
                 return readPojo(this::readAnyPojo);
+
+            case INT_ARRAY:
+            case LONG_ARRAY:
+            case FLOAT_ARRAY:
+            case DOUBLE_ARRAY:
+            case SHORT_ARRAY:
+            case CHAR_ARRAY:
+            case BOOLEAN_ARRAY:
+                return PackedArrays.readArray(inputStream, valueType);
             default:
                 throw new IOException("unexpected valueType : " + valueType);
         }
@@ -269,12 +278,12 @@ public class ObjectReaderImpl implements ObjectReader {
         if (Collection.class.isAssignableFrom(type)) {
             final Supplier<? extends Collection<Object>> factory = getCollectionFactory(type);
             if (factory != null) {
-                return readCollectionImpl(factory);
+                return readCollectionImpl(type, factory);
             }
             if (Set.class.isAssignableFrom(type)) {
                 return readAsDefaultSet();
             }
-            return readAsDefaultList();
+            return readCollectionImpl(type, ArrayList::new);
         }
 
         // map
@@ -305,11 +314,11 @@ public class ObjectReaderImpl implements ObjectReader {
     }
 
     private Object readAsDefaultSet() throws Exception {
-        return readCollectionImpl(LinkedHashSet::new);
+        return readCollectionImpl(null, LinkedHashSet::new);
     }
 
     private Object readAsDefaultList() throws Exception {
-        return readCollectionImpl(ArrayList::new);
+        return readCollectionImpl(null, ArrayList::new);
     }
 
     private Object readAsDefaultMap() throws Exception {
@@ -409,6 +418,81 @@ public class ObjectReaderImpl implements ObjectReader {
         return result;
     }
 
+    @Nullable
+    @Override
+    public int[] readSchema(@Nonnull TaggedSchema localSchema) throws Exception {
+        readAndCheckValueType(BinaryValueType.BINARY);
+        final int size = inputStream.readFixed32();
+        if (size < 4) {
+            throw new IOException("invalid schema size " + size);
+        }
+
+        final int hash = inputStream.readFixed32();
+        if (hash == localSchema.getHash() && size == localSchema.getEncoded().length) {
+            // 布局相同，走按位置读取的快速路径
+            inputStream.skipRawBytes(size - 4);
+            return null;
+        }
+
+        final int oldLimit = inputStream.pushLimit(size - 4);
+        final int count = inputStream.readInt32();
+        if (count < 0 || count > size) {
+            throw new IOException("invalid schema field count " + count);
+        }
+        final int[] fieldNumbers = new int[count];
+        for (int index = 0; index < count; index++) {
+            fieldNumbers[index] = inputStream.readInt32();
+        }
+        inputStream.popLimit(oldLimit);
+        return fieldNumbers;
+    }
+
+    @Override
+    public void skipValue() throws Exception {
+        final BinaryValueType valueType = inputStream.readType();
+        switch (valueType) {
+            case NULL:
+                return;
+            case BYTE:
+                inputStream.skipRawBytes(1);
+                return;
+            case CHAR:
+            case SHORT:
+            case INT:
+            case LONG:
+            case BOOLEAN:
+                // varint
+                inputStream.readInt64();
+                return;
+            case FLOAT:
+                inputStream.skipRawBytes(4);
+                return;
+            case DOUBLE:
+                inputStream.skipRawBytes(8);
+                return;
+            case STRING:
+                inputStream.skipRawBytes(inputStream.readInt32());
+                return;
+            case BINARY:
+            case MESSAGE:
+            case OBJECT:
+                // tag + length + content
+                inputStream.skipRawBytes(inputStream.readFixed32());
+                return;
+            case INT_ARRAY:
+            case LONG_ARRAY:
+            case FLOAT_ARRAY:
+            case DOUBLE_ARRAY:
+            case SHORT_ARRAY:
+            case CHAR_ARRAY:
+            case BOOLEAN_ARRAY:
+                PackedArrays.skipArray(inputStream, valueType);
+                return;
+            default:
+                throw new IOException("unexpected valueType : " + valueType);
+        }
+    }
+
     private Object readProtoEnumImpl(Internal.EnumLiteMap<?> enumLiteMap) throws Exception {
         // 需要按照POJO的方式，必须调用其它基本值方法
         final int number = readInt();
@@ -434,6 +518,12 @@ public class ObjectReaderImpl implements ObjectReader {
         if (currentValueType == BinaryValueType.BINARY) {
             return (T) readBytesImpl();
         }
+        // 基本类型数组拦截
+        if (PackedArrays.isPackedArrayType(currentValueType)) {
+            final Object array = PackedArrays.readArray(inputStream, currentValueType);
+            @SuppressWarnings("unchecked") final T result = (T) convertPackedArray(array, componentType);
+            return result;
+        }
 
         final Object array = readNullablePojo(currentValueType, typeId -> readArrayImpl(componentType));
         @SuppressWarnings("unchecked") final T result = (T) array;
@@ -445,7 +535,7 @@ public class ObjectReaderImpl implements ObjectReader {
      */
     private Object readArrayImpl(@Nonnull Class<?> componentType) throws Exception {
         // fastutil的List可以获取内部数组
-        final ObjectArrayList<Object> list = readCollectionImpl(ObjectArrayList::new);
+        final ObjectArrayList<Object> list = readCollectionImpl(null, ObjectArrayList::new);
         final Object array = convertArray(list.elements(), list.size(), componentType);
         // help gc
         list.clear();
@@ -459,7 +549,10 @@ public class ObjectReaderImpl implements ObjectReader {
         final Object array = Array.newInstance(componentType, length);
         for (int index = 0; index < length; index++) {
             final Object element = src[index];
-            if (componentType.isArray()) {
+            if (element == null || componentType.isInstance(element)) {
+                // 基本类型数组等已是目标类型的元素
+                Array.set(array, index, element);
+            } else if (componentType.isArray()) {
                 final Object[] childSrc = (Object[]) element;
                 Array.set(array, index, convertArray(childSrc, childSrc.length, componentType.getComponentType()));
             } else {
@@ -469,17 +562,39 @@ public class ObjectReaderImpl implements ObjectReader {
         return array;
     }
 
+    /**
+     * 将紧凑格式读取的基本类型数组转换为期望的元素类型（如{@code Integer}）
+     */
+    private static Object convertPackedArray(Object array, Class<?> componentType) {
+        if (array.getClass().getComponentType() == componentType) {
+            return array;
+        }
+        final int length = Array.getLength(array);
+        final Object result = Array.newInstance(componentType, length);
+        for (int index = 0; index < length; index++) {
+            Array.set(result, index, Array.get(array, index));
+        }
+        return result;
+    }
+
     @Nullable
     @Override
     public <C extends Collection<E>, E> C readCollection(@Nonnull Supplier<? extends C> collectionFactory) throws Exception {
         Objects.requireNonNull(collectionFactory, "collectionFactory");
 
         final BinaryValueType currentValueType = inputStream.readType();
-        return readNullablePojo(currentValueType, typeId -> readCollectionImpl(collectionFactory));
+        return readNullablePojo(currentValueType, typeId -> readCollectionImpl(serializer.typeIdMapper.ofId(typeId), collectionFactory));
     }
 
-    private <C extends Collection<E>, E> C readCollectionImpl(Supplier<C> collectionFactory) throws Exception {
+    /**
+     * @param type 序列化时的集合类型，用于识别紧凑格式的内容，未知时为null
+     */
+    private <C extends Collection<E>, E> C readCollectionImpl(@Nullable Class<?> type, Supplier<C> collectionFactory) throws Exception {
         final C collection = collectionFactory.get();
+        if (PackedArrays.isPackedListType(type)) {
+            PackedArrays.readList(inputStream, collection);
+            return collection;
+        }
         while (!inputStream.isAtEnd()) {
             collection.add(readObject());
         }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.binary;
+
+import com.google.protobuf.MessageLite;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 序列化大小计算器，计算值按照{@link ObjectWriter}的格式写入后的精确字节数，但不真正写入。
+ * 它的接口与{@link ObjectWriter}的写方法一一对应，使得注解处理器生成的{@link PojoCodecImpl#computeSize(Object, ObjectSizeCalculator)}
+ * 与{@link PojoCodecImpl#writeObject(Object, ObjectWriter)}保持同样的结构。
+ * <p>
+ * 主要用途：序列化前一次性分配大小恰好的缓冲区，避免默认大小不足时的扩容与拷贝，以及默认大小过大时的内存浪费。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public interface ObjectSizeCalculator {
+
+    // -------------------------------------------- 基本值 --------------------------------------
+
+    int computeInt(int value);
+
+    int computeLong(long value);
+
+    int computeFloat(float value);
+
+    int computeDouble(double value);
+
+    int computeShort(short value);
+
+    int computeBoolean(boolean value);
+
+    int computeByte(byte value);
+
+    int computeChar(char value);
+
+    int computeString(@Nullable String value);
+
+    int computeBytes(@Nullable byte[] value);
+
+    int computeMessage(@Nullable MessageLite messageLite);
+
+    // ------------------------------------------------- 容器对象 ------------------------------------------------
+
+    int computeArray(@Nullable Object array) throws Exception;
+
+    int computeCollection(@Nullable Collection<?> collection) throws Exception;
+
+    int computeMap(@Nullable Map<?, ?> map) throws Exception;
+
+    /**
+     * 计算任意对象的大小，对应{@link ObjectWriter#writeObject(Object)}
+     */
+    int computeObject(@Nullable Object value) throws Exception;
+
+    /**
+     * 按照超类格式计算对象的大小，对应{@link ObjectWriter#writeObject(Object, Class)}
+     */
+    <T> int computeObject(@Nullable T value, @Nonnull Class<? super T> superClass) throws Exception;
+
+    /**
+     * 对应{@link ObjectWriter#writeLazySerializeObject(Object)}
+     */
+    int computeLazySerializeObject(@Nullable Object value) throws Exception;
+
+    /**
+     * 对应{@link ObjectWriter#writeSchema(TaggedSchema)}
+     */
+    int computeSchema(@Nonnull TaggedSchema schema);
+
+    // ----------------------------------------- 底层API ----------------------------------
+
+    /**
+     * 通过执行一次{@link PojoCodecImpl#writeObject(Object, ObjectWriter)}计算对象内容的大小（只计数，不写入）。
+     * 这是{@link PojoCodecImpl#computeSize(Object, ObjectSizeCalculator)}的默认实现，手写的编解码器通常不需要覆盖它。
+     *
+     * @return 对象内容的大小，不包括对象头(tag、长度、typeId)
+     */
+    <T> int computeByWriting(@Nonnull PojoCodecImpl<T> codec, @Nonnull T instance) throws Exception;
+}
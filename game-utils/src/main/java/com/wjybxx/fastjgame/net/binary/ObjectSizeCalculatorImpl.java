@@ -0,0 +1,325 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.binary;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.ProtocolMessageEnum;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link ObjectSizeCalculator}的默认实现，计算规则与{@link ObjectWriterImpl}的写入格式一一对应，修改其中一个时必须同时修改另一个。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+class ObjectSizeCalculatorImpl implements ObjectSizeCalculator {
+
+    /**
+     * 值类型tag的大小
+     */
+    private static final int TYPE_SIZE = 1;
+    /**
+     * 长度字段的大小（fixed32）
+     */
+    private static final int LENGTH_SIZE = 4;
+    /**
+     * typeId的大小：namespace(1) + classId(fixed32)
+     */
+    private static final int TYPE_ID_SIZE = 5;
+    /**
+     * 对象头的大小：tag + length + typeId
+     */
+    private static final int OBJECT_HEADER_SIZE = TYPE_SIZE + LENGTH_SIZE + TYPE_ID_SIZE;
+
+    private final BinarySerializer serializer;
+
+    private final int recursionLimit = ObjectWriterImpl.DEFAULT_RECURSION_LIMIT;
+    private int recursionDepth;
+
+    ObjectSizeCalculatorImpl(BinarySerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    // -------------------------------------------- 基本值 --------------------------------------
+
+    @Override
+    public int computeInt(int value) {
+        return TYPE_SIZE + CodedOutputStream.computeInt32SizeNoTag(value);
+    }
+
+    @Override
+    public int computeLong(long value) {
+        return TYPE_SIZE + CodedOutputStream.computeInt64SizeNoTag(value);
+    }
+
+    @Override
+    public int computeFloat(float value) {
+        return TYPE_SIZE + CodedOutputStream.computeFloatSizeNoTag(value);
+    }
+
+    @Override
+    public int computeDouble(double value) {
+        return TYPE_SIZE + CodedOutputStream.computeDoubleSizeNoTag(value);
+    }
+
+    @Override
+    public int computeShort(short value) {
+        return TYPE_SIZE + CodedOutputStream.computeInt32SizeNoTag(value);
+    }
+
+    @Override
+    public int computeBoolean(boolean value) {
+        return TYPE_SIZE + CodedOutputStream.computeBoolSizeNoTag(value);
+    }
+
+    @Override
+    public int computeByte(byte value) {
+        return TYPE_SIZE + 1;
+    }
+
+    @Override
+    public int computeChar(char value) {
+        return TYPE_SIZE + CodedOutputStream.computeInt32SizeNoTag(value);
+    }
+
+    @Override
+    public int computeString(@Nullable String value) {
+        if (value == null) {
+            return TYPE_SIZE;
+        }
+        return TYPE_SIZE + CodedOutputStream.computeStringSizeNoTag(value);
+    }
+
+    @Override
+    public int computeBytes(@Nullable byte[] value) {
+        if (value == null) {
+            return TYPE_SIZE;
+        }
+        return TYPE_SIZE + LENGTH_SIZE + value.length;
+    }
+
+    @Override
+    public int computeMessage(@Nullable MessageLite messageLite) {
+        if (messageLite == null) {
+            return TYPE_SIZE;
+        }
+        return OBJECT_HEADER_SIZE + messageLite.getSerializedSize();
+    }
+
+    // ------------------------------------------------- 容器对象 ------------------------------------------------
+
+    @Override
+    public int computeObject(@Nullable Object value) throws Exception {
+        if (value == null) {
+            return TYPE_SIZE;
+        }
+        return computeObjectHelper(value);
+    }
+
+    /**
+     * 该方法用于捕获类型，分派顺序与{@link ObjectWriterImpl#writeObject(Object)}一致
+     */
+    private <T> int computeObjectHelper(@Nonnull T value) throws Exception {
+        @SuppressWarnings("unchecked") final Class<T> type = (Class<T>) value.getClass();
+        final PojoCodec<? super T> pojoCodec = serializer.codecRegistry.get(type);
+        if (pojoCodec != null) {
+            return computePojo(value, pojoCodec);
+        }
+
+        // 第一梯队
+        if (type == Integer.class) {
+            return computeInt((Integer) value);
+        }
+        if (type == Long.class) {
+            return computeLong((Long) value);
+        }
+        if (type == String.class) {
+            return computeString((String) value);
+        }
+        if (type == Float.class) {
+            return computeFloat((Float) value);
+        }
+        if (type == Double.class) {
+            return computeDouble((Double) value);
+        }
+        if (type == Boolean.class) {
+            return computeBoolean((Boolean) value);
+        }
+        if (type == byte[].class) {
+            return computeBytes((byte[]) value);
+        }
+
+        // 第二梯队
+        if (value instanceof MessageLite) {
+            return computeMessage((MessageLite) value);
+        }
+        if (value instanceof Collection) {
+            return computeCollection((Collection<?>) value);
+        }
+        if (value instanceof Map) {
+            return computeMap((Map<?, ?>) value);
+        }
+        if (type.isArray()) {
+            return computeArray(value);
+        }
+
+        // 第三梯队
+        if (type == Short.class) {
+            return computeShort((Short) value);
+        }
+        if (type == Byte.class) {
+            return computeByte((Byte) value);
+        }
+        if (type == Character.class) {
+            return computeChar((Character) value);
+        }
+        if (value instanceof ProtocolMessageEnum) {
+            // 按照pojo的格式序列化
+            return OBJECT_HEADER_SIZE + computeInt(((ProtocolMessageEnum) value).getNumber());
+        }
+
+        throw new IOException("Unsupported type " + type.getName());
+    }
+
+    private <T> int computePojo(@Nonnull T value, @Nonnull PojoCodec<? super T> pojoCodec) throws Exception {
+        increaseRecursionDepth();
+        final int size = OBJECT_HEADER_SIZE + pojoCodec.computeSize(this, value);
+
+        recursionDepth--;
+        return size;
+    }
+
+    @Override
+    public <T> int computeObject(@Nullable T value, @Nonnull Class<? super T> superClass) throws Exception {
+        if (value == null) {
+            return TYPE_SIZE;
+        }
+
+        final PojoCodec<? super T> pojoCodec = serializer.codecRegistry.get(superClass);
+        if (pojoCodec == null) {
+            throw new IOException("Unsupported type " + superClass.getName());
+        }
+
+        return computePojo(value, pojoCodec);
+    }
+
+    @Override
+    public int computeLazySerializeObject(@Nullable Object value) throws Exception {
+        if (value == null) {
+            return TYPE_SIZE;
+        }
+
+        if (value instanceof byte[]) {
+            return computeBytes((byte[]) value);
+        }
+
+        // 以字节数组的格式写入
+        return TYPE_SIZE + LENGTH_SIZE + computeObject(value);
+    }
+
+    @Override
+    public int computeSchema(@Nonnull TaggedSchema schema) {
+        return computeBytes(schema.getEncoded());
+    }
+
+    @Override
+    public int computeArray(@Nullable Object array) throws Exception {
+        if (array == null) {
+            return TYPE_SIZE;
+        }
+
+        final BinaryValueType packedType = PackedArrays.valueTypeOf(array.getClass());
+        if (packedType != null) {
+            return PackedArrays.computeArraySize(packedType, array);
+        }
+
+        increaseRecursionDepth();
+        int size = OBJECT_HEADER_SIZE;
+        if (array instanceof Object[]) {
+            for (Object object : (Object[]) array) {
+                size += computeObject(object);
+            }
+        } else {
+            for (int index = 0, length = Array.getLength(array); index < length; index++) {
+                size += computeObject(Array.get(array, index));
+            }
+        }
+        recursionDepth--;
+        return size;
+    }
+
+    @Override
+    public int computeCollection(@Nullable Collection<?> collection) throws Exception {
+        if (collection == null) {
+            return TYPE_SIZE;
+        }
+
+        if (PackedArrays.isPackedListType(collection.getClass())
+                && serializer.typeIdMapper.ofType(collection.getClass()) != null) {
+            return OBJECT_HEADER_SIZE + PackedArrays.computeListSize(collection);
+        }
+
+        increaseRecursionDepth();
+        int size = OBJECT_HEADER_SIZE;
+        for (Object e : collection) {
+            size += computeObject(e);
+        }
+        recursionDepth--;
+        return size;
+    }
+
+    @Override
+    public int computeMap(@Nullable Map<?, ?> map) throws Exception {
+        if (map == null) {
+            return TYPE_SIZE;
+        }
+
+        increaseRecursionDepth();
+        int size = OBJECT_HEADER_SIZE;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            size += computeObject(entry.getKey());
+            size += computeObject(entry.getValue());
+        }
+        recursionDepth--;
+        return size;
+    }
+
+    private void increaseRecursionDepth() throws IOException {
+        if (++recursionDepth > recursionLimit) {
+            throw new IOException("Object had too many levels of nesting");
+        }
+    }
+
+    // ----------------------------------------- 底层API ----------------------------------
+
+    @Override
+    public <T> int computeByWriting(@Nonnull PojoCodecImpl<T> codec, @Nonnull T instance) throws Exception {
+        final CodedDataOutputStream outputStream = CodedDataOutputStream.newCountingInstance();
+        final ObjectWriter writer = new ObjectWriterImpl(serializer, outputStream);
+        codec.writeObject(instance, writer);
+        return outputStream.getTotalBytesWritten();
+    }
+}
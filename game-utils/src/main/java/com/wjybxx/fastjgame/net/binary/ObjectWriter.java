@@ -111,6 +111,12 @@ public interface ObjectWriter extends AutoCloseable {
      */
     void writeLazySerializeObject(@Nullable Object value) throws Exception;
 
+    /**
+     * 写入带标签的类的字段布局信息，必须是对象的第一个值。
+     * 生成的代码调用，对应{@link ObjectReader#readSchema(TaggedSchema)}
+     */
+    void writeSchema(@Nonnull TaggedSchema schema) throws Exception;
+
     /**
      * 如果存在缓冲区，则刷新缓冲区
      */
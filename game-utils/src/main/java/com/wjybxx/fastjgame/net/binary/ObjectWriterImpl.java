@@ -326,6 +326,12 @@ public class ObjectWriterImpl implements ObjectWriter {
         backpatchSize(preIndex);
     }
 
+    @Override
+    public void writeSchema(@Nonnull TaggedSchema schema) throws Exception {
+        // 预先编码好的，按照字节数组写入，不认识该格式的读取方可以将其读取为字节数组
+        writeBytes(schema.getEncoded());
+    }
+
     // ---------------------------------------- 通用容器类型 --------------------------------------
     private <T> void writeAsPojo(@Nonnull T value, TypeId typeId, ContainerWriter<? super T> writer) throws Exception {
         if (++recursionDepth > recursionLimit) {
@@ -362,6 +368,12 @@ public class ObjectWriterImpl implements ObjectWriter {
             writeNull();
             return;
         }
+        final BinaryValueType packedType = PackedArrays.valueTypeOf(array.getClass());
+        if (packedType != null) {
+            // 基本类型数组使用紧凑格式，不装箱
+            PackedArrays.writeArray(outputStream, packedType, array);
+            return;
+        }
         writeAsPojo(array, getArrayTypeId(array), this::writeArrayImpl);
     }
 
@@ -391,11 +403,20 @@ public class ObjectWriterImpl implements ObjectWriter {
             writeNull();
             return;
         }
-        writeAsPojo(collection, getCollectionTypeId(collection), this::writeCollectionImpl);
+        final TypeId typeId = getTypeIdMapper().ofType(collection.getClass());
+        if (typeId != null && PackedArrays.isPackedListType(collection.getClass())) {
+            // 基本类型集合的内容使用紧凑格式，需要typeId才能正确读取
+            writeAsPojo(collection, typeId, this::writePackedListImpl);
+            return;
+        }
+        writeAsPojo(collection, getCollectionTypeId(collection, typeId), this::writeCollectionImpl);
     }
 
-    private TypeId getCollectionTypeId(@Nonnull Collection<?> collection) {
-        final TypeId typeId = getTypeIdMapper().ofType(collection.getClass());
+    private void writePackedListImpl(@Nonnull Collection<?> collection) throws Exception {
+        PackedArrays.writeList(outputStream, collection);
+    }
+
+    private static TypeId getCollectionTypeId(@Nonnull Collection<?> collection, @Nullable TypeId typeId) {
         if (typeId != null) {
             return typeId;
         }
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.binary;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.wjybxx.fastjgame.net.misc.BufferPool;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+
+/**
+ * 基本类型数组的紧凑编码，{@link ObjectWriterImpl}、{@link ObjectReaderImpl}、{@link ObjectSizeCalculatorImpl}共用。
+ * <p>
+ * 序列化格式：tag + count(varint) + value,value,value...
+ * 1. int/long/short使用zigzag编码的varint，负数也不会膨胀为10字节。
+ * 2. char使用varint。
+ * 3. float/double使用小端的定长编码，boolean每个值一个字节，解码时整块拷贝。
+ * <p>
+ * 与{@link BinaryValueType#OBJECT}格式相比，每个元素省去了一个tag，也不需要装箱拆箱。
+ * 字节数组仍然使用{@link BinaryValueType#BINARY}格式。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+final class PackedArrays {
+
+    /**
+     * 元素个数上限，保证定长编码的字节数不溢出
+     */
+    private static final int MAX_COUNT = Integer.MAX_VALUE >> 3;
+
+    private PackedArrays() {
+
+    }
+
+    /**
+     * @return 如果是可以紧凑编码的数组类型，则返回对应的值类型，否则返回null
+     */
+    @Nullable
+    static BinaryValueType valueTypeOf(@Nonnull Class<?> arrayType) {
+        if (arrayType == int[].class) {
+            return BinaryValueType.INT_ARRAY;
+        }
+        if (arrayType == long[].class) {
+            return BinaryValueType.LONG_ARRAY;
+        }
+        if (arrayType == float[].class) {
+            return BinaryValueType.FLOAT_ARRAY;
+        }
+        if (arrayType == double[].class) {
+            return BinaryValueType.DOUBLE_ARRAY;
+        }
+        if (arrayType == short[].class) {
+            return BinaryValueType.SHORT_ARRAY;
+        }
+        if (arrayType == char[].class) {
+            return BinaryValueType.CHAR_ARRAY;
+        }
+        if (arrayType == boolean[].class) {
+            return BinaryValueType.BOOLEAN_ARRAY;
+        }
+        return null;
+    }
+
+    static boolean isPackedArrayType(BinaryValueType valueType) {
+        return valueType.getNumber() >= BinaryValueType.INT_ARRAY.getNumber()
+                && valueType.getNumber() <= BinaryValueType.BOOLEAN_ARRAY.getNumber();
+    }
+
+    /**
+     * 是否是需要紧凑编码的集合类型。
+     * 集合仍然按照{@link BinaryValueType#OBJECT}格式写入（以保留typeId），其内容为单个紧凑数组。
+     */
+    static boolean isPackedListType(@Nullable Class<?> type) {
+        return type == IntArrayList.class || type == LongArrayList.class;
+    }
+
+    // ------------------------------------------------- 写 ---------------------------------------------
+
+    static void writeArray(CodedDataOutputStream outputStream, BinaryValueType valueType, Object array) throws IOException {
+        switch (valueType) {
+            case INT_ARRAY: {
+                final int[] values = (int[]) array;
+                writeInts(outputStream, values, values.length);
+                break;
+            }
+            case LONG_ARRAY: {
+                final long[] values = (long[]) array;
+                writeLongs(outputStream, values, values.length);
+                break;
+            }
+            case FLOAT_ARRAY: {
+                final float[] values = (float[]) array;
+                outputStream.writeType(BinaryValueType.FLOAT_ARRAY);
+                outputStream.writeInt32(values.length);
+                writeFixedWidth(outputStream, values.length, Float.BYTES, byteBuffer -> byteBuffer.asFloatBuffer().put(values));
+                break;
+            }
+            case DOUBLE_ARRAY: {
+                final double[] values = (double[]) array;
+                outputStream.writeType(BinaryValueType.DOUBLE_ARRAY);
+                outputStream.writeInt32(values.length);
+                writeFixedWidth(outputStream, values.length, Double.BYTES, byteBuffer -> byteBuffer.asDoubleBuffer().put(values));
+                break;
+            }
+            case SHORT_ARRAY: {
+                final short[] values = (short[]) array;
+                outputStream.writeType(BinaryValueType.SHORT_ARRAY);
+                outputStream.writeInt32(values.length);
+                for (short value : values) {
+                    outputStream.writeInt64(encodeZigZag32(value));
+                }
+                break;
+            }
+            case CHAR_ARRAY: {
+                final char[] values = (char[]) array;
+                outputStream.writeType(BinaryValueType.CHAR_ARRAY);
+                outputStream.writeInt32(values.length);
+                for (char value : values) {
+                    outputStream.writeInt32(value);
+                }
+                break;
+            }
+            case BOOLEAN_ARRAY: {
+                final boolean[] values = (boolean[]) array;
+                outputStream.writeType(BinaryValueType.BOOLEAN_ARRAY);
+                outputStream.writeInt32(values.length);
+                writeFixedWidth(outputStream, values.length, 1, byteBuffer -> {
+                    for (boolean value : values) {
+                        byteBuffer.put((byte) (value ? 1 : 0));
+                    }
+                });
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unexpected valueType : " + valueType);
+        }
+    }
+
+    /**
+     * 写入{@link #isPackedListType(Class)}为true的集合的内容
+     */
+    static void writeList(CodedDataOutputStream outputStream, Collection<?> collection) throws IOException {
+        if (collection instanceof IntArrayList) {
+            final IntArrayList list = (IntArrayList) collection;
+            writeInts(outputStream, list.elements(), list.size());
+        } else {
+            final LongArrayList list = (LongArrayList) collection;
+            writeLongs(outputStream, list.elements(), list.size());
+        }
+    }
+
+    private static void writeInts(CodedDataOutputStream outputStream, int[] values, int count) throws IOException {
+        outputStream.writeType(BinaryValueType.INT_ARRAY);
+        outputStream.writeInt32(count);
+        for (int index = 0; index < count; index++) {
+            outputStream.writeInt64(encodeZigZag32(values[index]));
+        }
+    }
+
+    private static void writeLongs(CodedDataOutputStream outputStream, long[] values, int count) throws IOException {
+        outputStream.writeType(BinaryValueType.LONG_ARRAY);
+        outputStream.writeInt32(count);
+        for (int index = 0; index < count; index++) {
+            outputStream.writeInt64(CodedOutputStream.encodeZigZag64(values[index]));
+        }
+    }
+
+    /**
+     * zigzag编码后按照无符号数写入，与protoBuf的sint32编码结果一致（最多5字节）
+     */
+    private static long encodeZigZag32(int value) {
+        return Integer.toUnsignedLong(CodedOutputStream.encodeZigZag32(value));
+    }
+
+    /**
+     * 定长编码的数组先整块拷贝到临时缓冲区，再一次写入输出流
+     */
+    private static void writeFixedWidth(CodedDataOutputStream outputStream, int count, int width, BlockWriter blockWriter) throws IOException {
+        final int length = count * width;
+        final byte[] buffer = BufferPool.allocateBuffer(length);
+        try {
+            blockWriter.accept(ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.LITTLE_ENDIAN));
+            outputStream.writeRawBytes(buffer, 0, length);
+        } finally {
+            BufferPool.releaseBuffer(buffer);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockWriter {
+
+        void accept(ByteBuffer byteBuffer);
+    }
+
+    // ------------------------------------------------- 计算大小 ---------------------------------------------
+
+    static int computeArraySize(BinaryValueType valueType, Object array) {
+        switch (valueType) {
+            case INT_ARRAY: {
+                final int[] values = (int[]) array;
+                return computeIntsSize(values, values.length);
+            }
+            case LONG_ARRAY: {
+                final long[] values = (long[]) array;
+                return computeLongsSize(values, values.length);
+            }
+            case FLOAT_ARRAY:
+                return computeHeaderSize(((float[]) array).length) + ((float[]) array).length * Float.BYTES;
+            case DOUBLE_ARRAY:
+                return computeHeaderSize(((double[]) array).length) + ((double[]) array).length * Double.BYTES;
+            case SHORT_ARRAY: {
+                final short[] values = (short[]) array;
+                int size = computeHeaderSize(values.length);
+                for (short value : values) {
+                    size += CodedOutputStream.computeSInt32SizeNoTag(value);
+                }
+                return size;
+            }
+            case CHAR_ARRAY: {
+                final char[] values = (char[]) array;
+                int size = computeHeaderSize(values.length);
+                for (char value : values) {
+                    size += CodedOutputStream.computeUInt32SizeNoTag(value);
+                }
+                return size;
+            }
+            case BOOLEAN_ARRAY:
+                return computeHeaderSize(((boolean[]) array).length) + ((boolean[]) array).length;
+            default:
+                throw new IllegalArgumentException("unexpected valueType : " + valueType);
+        }
+    }
+
+    static int computeListSize(Collection<?> collection) {
+        if (collection instanceof IntArrayList) {
+            final IntArrayList list = (IntArrayList) collection;
+            return computeIntsSize(list.elements(), list.size());
+        } else {
+            final LongArrayList list = (LongArrayList) collection;
+            return computeLongsSize(list.elements(), list.size());
+        }
+    }
+
+    private static int computeIntsSize(int[] values, int count) {
+        int size = computeHeaderSize(count);
+        for (int index = 0; index < count; index++) {
+            size += CodedOutputStream.computeSInt32SizeNoTag(values[index]);
+        }
+        return size;
+    }
+
+    private static int computeLongsSize(long[] values, int count) {
+        int size = computeHeaderSize(count);
+        for (int index = 0; index < count; index++) {
+            size += CodedOutputStream.computeSInt64SizeNoTag(values[index]);
+        }
+        return size;
+    }
+
+    /**
+     * tag + count
+     */
+    private static int computeHeaderSize(int count) {
+        return 1 + CodedOutputStream.computeInt32SizeNoTag(count);
+    }
+
+    // ------------------------------------------------- 读 ---------------------------------------------
+
+    /**
+     * 读取一个紧凑数组，tag已被读取
+     */
+    static Object readArray(CodedDataInputStream inputStream, BinaryValueType valueType) throws IOException {
+        final int count = inputStream.readInt32();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("invalid array count " + count);
+        }
+        switch (valueType) {
+            case INT_ARRAY: {
+                checkVarintCount(inputStream, count);
+                final int[] result = new int[count];
+                for (int index = 0; index < count; index++) {
+                    result[index] = CodedInputStream.decodeZigZag32((int) inputStream.readInt64());
+                }
+                return result;
+            }
+            case LONG_ARRAY: {
+                checkVarintCount(inputStream, count);
+                final long[] result = new long[count];
+                for (int index = 0; index < count; index++) {
+                    result[index] = CodedInputStream.decodeZigZag64(inputStream.readInt64());
+                }
+                return result;
+            }
+            case FLOAT_ARRAY: {
+                final float[] result = new float[count];
+                readFixedWidth(inputStream, count * Float.BYTES).asFloatBuffer().get(result);
+                return result;
+            }
+            case DOUBLE_ARRAY: {
+                final double[] result = new double[count];
+                readFixedWidth(inputStream, count * Double.BYTES).asDoubleBuffer().get(result);
+                return result;
+            }
+            case SHORT_ARRAY: {
+                checkVarintCount(inputStream, count);
+                final short[] result = new short[count];
+                for (int index = 0; index < count; index++) {
+                    result[index] = (short) CodedInputStream.decodeZigZag32((int) inputStream.readInt64());
+                }
+                return result;
+            }
+            case CHAR_ARRAY: {
+                checkVarintCount(inputStream, count);
+                final char[] result = new char[count];
+                for (int index = 0; index < count; index++) {
+                    result[index] = (char) inputStream.readInt32();
+                }
+                return result;
+            }
+            case BOOLEAN_ARRAY: {
+                final byte[] bytes = inputStream.readRawBytes(count);
+                final boolean[] result = new boolean[count];
+                for (int index = 0; index < count; index++) {
+                    result[index] = bytes[index] != 0;
+                }
+                return result;
+            }
+            default:
+                throw new IOException("unexpected valueType : " + valueType);
+        }
+    }
+
+    /**
+     * 跳过一个紧凑数组，tag已被读取
+     */
+    static void skipArray(CodedDataInputStream inputStream, BinaryValueType valueType) throws IOException {
+        final int count = inputStream.readInt32();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("invalid array count " + count);
+        }
+        switch (valueType) {
+            case FLOAT_ARRAY:
+                inputStream.skipRawBytes(count * Float.BYTES);
+                return;
+            case DOUBLE_ARRAY:
+                inputStream.skipRawBytes(count * Double.BYTES);
+                return;
+            case BOOLEAN_ARRAY:
+                inputStream.skipRawBytes(count);
+                return;
+            default:
+                // varint
+                for (int index = 0; index < count; index++) {
+                    inputStream.readInt64();
+                }
+        }
+    }
+
+    /**
+     * 每个varint至少一个字节，在分配数组之前检查，避免错误的数据导致分配超大数组
+     */
+    private static void checkVarintCount(CodedDataInputStream inputStream, int count) throws IOException {
+        final int bytesUntilLimit = inputStream.getBytesUntilLimit();
+        if (bytesUntilLimit >= 0 && count > bytesUntilLimit) {
+            throw new IOException("array count " + count + " exceeds remaining bytes " + bytesUntilLimit);
+        }
+    }
+
+    private static ByteBuffer readFixedWidth(CodedDataInputStream inputStream, int length) throws IOException {
+        return ByteBuffer.wrap(inputStream.readRawBytes(length)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 读取{@link #isPackedListType(Class)}为true的集合的内容到给定集合，基本类型集合整块拷贝，其它集合逐个装箱。
+     */
+    @SuppressWarnings("unchecked")
+    static void readList(CodedDataInputStream inputStream, Collection<?> collection) throws IOException {
+        final BinaryValueType valueType = inputStream.readType();
+        if (valueType == BinaryValueType.INT_ARRAY) {
+            final int[] values = (int[]) readArray(inputStream, valueType);
+            if (collection instanceof IntArrayList) {
+                ((IntArrayList) collection).addElements(collection.size(), values);
+            } else {
+                final Collection<Object> target = (Collection<Object>) collection;
+                for (int value : values) {
+                    target.add(value);
+                }
+            }
+        } else if (valueType == BinaryValueType.LONG_ARRAY) {
+            final long[] values = (long[]) readArray(inputStream, valueType);
+            if (collection instanceof LongArrayList) {
+                ((LongArrayList) collection).addElements(collection.size(), values);
+            } else {
+                final Collection<Object> target = (Collection<Object>) collection;
+                for (long value : values) {
+                    target.add(value);
+                }
+            }
+        } else {
+            throw new IOException("expected packed array, but found " + valueType);
+        }
+    }
+}
@@ -27,9 +27,22 @@ package com.wjybxx.fastjgame.net.binary;
 public final class PojoCodec<T> {
 
     private PojoCodecImpl<T> codec;
+    /**
+     * 是否覆盖了{@link PojoCodecImpl#computeSize(Object, ObjectSizeCalculator)}，即是否能低代价地计算精确大小。
+     */
+    private final boolean computeSizeSupported;
 
     PojoCodec(PojoCodecImpl<T> codec) {
         this.codec = codec;
+        this.computeSizeSupported = isComputeSizeOverridden(codec);
+    }
+
+    private static boolean isComputeSizeOverridden(PojoCodecImpl<?> codec) {
+        try {
+            return codec.getClass().getMethod("computeSize", Object.class, ObjectSizeCalculator.class).getDeclaringClass() != PojoCodecImpl.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
     /**
@@ -55,6 +68,22 @@ public final class PojoCodec<T> {
         codec.writeObject(instance, writer);
     }
 
+    /**
+     * 计算对象内容序列化后的大小（不包括对象头）
+     */
+    public int computeSize(ObjectSizeCalculator calculator, T instance) throws Exception {
+        return codec.computeSize(instance, calculator);
+    }
+
+    /**
+     * 是否能逐字段计算对象大小。
+     * 注解处理器生成的编解码器都支持；手写的编解码器如果没有覆盖{@link PojoCodecImpl#computeSize(Object, ObjectSizeCalculator)}，
+     * 计算大小需要执行一次只计数的写操作，代价与序列化相当。
+     */
+    public boolean isComputeSizeSupported() {
+        return computeSizeSupported;
+    }
+
     /**
      * 是否支持读取字段方法
      */
@@ -76,4 +76,14 @@ public interface PojoCodecImpl<T> {
      */
     void writeObject(T instance, ObjectWriter writer) throws Exception;
 
+    /**
+     * 计算对象内容序列化后的精确大小（不包括对象头：tag、长度、typeId），必须与{@link #writeObject(Object, ObjectWriter)}写入的内容一致。
+     * 注解处理器生成的类会逐字段计算；手写实现可以不覆盖，默认实现会执行一次只计数不写入的{@link #writeObject(Object, ObjectWriter)}。
+     *
+     * @param instance 支持子类型
+     */
+    default int computeSize(T instance, ObjectSizeCalculator calculator) throws Exception {
+        return calculator.computeByWriting(this, instance);
+    }
+
 }
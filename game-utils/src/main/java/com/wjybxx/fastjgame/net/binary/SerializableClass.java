@@ -46,6 +46,10 @@ import java.lang.annotation.Target;
  * 仅当某些类使用大量的反射调用进行编解码导致性能瓶颈时，才应该考虑实现{@link PojoCodecImpl}负责编解码相关的类，那么不需要该注解。
  * 2. 并不建议都实现为javabean格式。
  *
+ * <h3>兼容性</h3>
+ * 默认情况下，字段按照声明顺序写入，不写字段编号，因此增删字段后新旧版本无法互通。
+ * 如果类需要在滚动更新期间被新旧版本的进程共同使用，可以将{@link #tagged()}设置为true，并为每个字段指定{@link SerializableField#number()}。
+ *
  * @author wjybxx
  * @version 1.0
  * date - 2019/8/17
@@ -55,4 +59,11 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface SerializableClass {
 
+    /**
+     * 是否使用带标签的字段布局。
+     * 如果为true，则所有要序列化的字段都必须指定唯一的{@link SerializableField#number()}，
+     * 对象会额外写入字段布局信息（预编码的，几个字节），对方布局不同时按照字段编号读取，未知字段会被跳过。
+     * 双方布局相同时，仍然按位置读取，详见{@link TaggedSchema}。
+     */
+    boolean tagged() default false;
 }
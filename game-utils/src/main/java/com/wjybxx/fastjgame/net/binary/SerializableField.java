@@ -34,4 +34,9 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 public @interface SerializableField {
 
+    /**
+     * 字段编号，仅在{@link SerializableClass#tagged()}为true时有效，必须大于0，且在类（包括父类）中唯一。
+     * 与protoBuf一样，字段编号一旦使用就不应该修改，删除的字段的编号也不应该再被使用。
+     */
+    int number() default 0;
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.binary;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 带标签的类（{@link SerializableClass#tagged()}）的字段布局，由生成的编解码器持有（static final）。
+ * <p>
+ * 序列化格式：对象的第一个值是{@link BinaryValueType#BINARY}格式的布局信息，内容为 hash(fixed32) + count + number,number,number...
+ * 之后的字段值仍然按照声明顺序写入，不写字段编号。
+ * <p>
+ * 读取时：
+ * 1. 如果对方的布局与本地布局相同（hash和长度相同），则直接跳过布局信息，按位置读取字段，与普通类的解析方式完全相同。
+ * 2. 否则按照对方的字段编号顺序读取，本地存在的字段正常赋值，本地不存在的字段跳过，对方没有的字段保持默认值。
+ * <p>
+ * 布局信息是预先编码好的，写入时只是一次数组拷贝。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public final class TaggedSchema {
+
+    private final int[] fieldNumbers;
+    private final int hash;
+    private final byte[] encoded;
+
+    private TaggedSchema(int[] fieldNumbers) {
+        this.fieldNumbers = fieldNumbers;
+        this.hash = computeHash(fieldNumbers);
+        this.encoded = encode(hash, fieldNumbers);
+    }
+
+    /**
+     * 生成的代码调用
+     *
+     * @param fieldNumbers 按照字段的写入顺序排列的字段编号
+     */
+    public static TaggedSchema newInstance(int... fieldNumbers) {
+        final int[] copy = fieldNumbers.clone();
+        for (int fieldNumber : copy) {
+            if (fieldNumber <= 0) {
+                throw new IllegalArgumentException("fieldNumber must be positive, " + fieldNumber);
+            }
+        }
+        return new TaggedSchema(copy);
+    }
+
+    private static int computeHash(int[] fieldNumbers) {
+        // FNV-1a
+        int hash = 0x811c9dc5;
+        hash = (hash ^ fieldNumbers.length) * 0x01000193;
+        for (int fieldNumber : fieldNumbers) {
+            hash = (hash ^ fieldNumber) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private static byte[] encode(int hash, int[] fieldNumbers) {
+        int size = 4 + CodedOutputStream.computeInt32SizeNoTag(fieldNumbers.length);
+        for (int fieldNumber : fieldNumbers) {
+            size += CodedOutputStream.computeInt32SizeNoTag(fieldNumber);
+        }
+
+        final byte[] result = new byte[size];
+        final CodedOutputStream outputStream = CodedOutputStream.newInstance(result);
+        try {
+            outputStream.writeFixed32NoTag(hash);
+            outputStream.writeInt32NoTag(fieldNumbers.length);
+            for (int fieldNumber : fieldNumbers) {
+                outputStream.writeInt32NoTag(fieldNumber);
+            }
+            outputStream.checkNoSpaceLeft();
+        } catch (IOException e) {
+            // 不会发生
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    int getHash() {
+        return hash;
+    }
+
+    /**
+     * @return 编码后的布局信息，不可以修改
+     */
+    byte[] getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public String toString() {
+        return "TaggedSchema{" +
+                "fieldNumbers=" + Arrays.toString(fieldNumbers) +
+                ", hash=" + hash +
+                '}';
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.wjybxx.fastjgame.net.eventloop;
 
+import com.wjybxx.fastjgame.net.socket.SocketEvent;
 import com.wjybxx.fastjgame.util.concurrent.EventLoop;
 import com.wjybxx.fastjgame.util.eventbus.EventDispatcher;
 
@@ -40,4 +41,14 @@ public interface NetEventLoop extends EventLoop, NetEventLoopGroup, EventDispatc
      */
     @Override
     void post(@Nonnull Object event);
+
+    /**
+     * 提交一个socket事件，该事件会直接交给对应的session处理，不经过{@link EventDispatcher}。
+     * socket事件是网络层最频繁的事件，因此单独处理。
+     *
+     * @param event       socket事件
+     * @param forAcceptor 是否是发给接收方(服务端)session的事件
+     * @apiNote 时序保证：实现必须和{@link #execute(Runnable)}具有相同的时序保证。
+     */
+    void fireSocketEvent(@Nonnull SocketEvent event, boolean forAcceptor);
 }
@@ -35,6 +35,10 @@ public class NetEventLoopGroupBuilder {
      */
     private int bossGroupThreadNum = 1;
     private int workerGroupThreadNum = 8;
+    /**
+     * 是否优先使用native epoll传输层(不可用时自动使用nio)
+     */
+    private boolean preferEpoll = true;
 
     private ThreadFactory threadFactory = new DefaultThreadFactory("NetEventLoop");
     private RejectedExecutionHandler rejectedExecutionHandler = RejectedExecutionHandlers.abort();
@@ -54,6 +58,11 @@ public class NetEventLoopGroupBuilder {
         return this;
     }
 
+    public NetEventLoopGroupBuilder setPreferEpoll(boolean preferEpoll) {
+        this.preferEpoll = preferEpoll;
+        return this;
+    }
+
     public NetEventLoopGroupBuilder setThreadFactory(@Nonnull ThreadFactory threadFactory) {
         this.threadFactory = threadFactory;
         return this;
@@ -65,7 +74,7 @@ public class NetEventLoopGroupBuilder {
     }
 
     public NetEventLoopGroupImp build() {
-        final NetEventLoopGroupImp.GroupConfig groupConfig = new NetEventLoopGroupImp.GroupConfig(bossGroupThreadNum, workerGroupThreadNum);
+        final NetEventLoopGroupImp.GroupConfig groupConfig = new NetEventLoopGroupImp.GroupConfig(bossGroupThreadNum, workerGroupThreadNum, preferEpoll);
         return new NetEventLoopGroupImp(netEventLoopNum, threadFactory, rejectedExecutionHandler, groupConfig);
     }
 }
\ No newline at end of file
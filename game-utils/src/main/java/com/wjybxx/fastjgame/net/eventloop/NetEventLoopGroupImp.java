@@ -55,7 +55,7 @@ class NetEventLoopGroupImp extends AbstractFixedEventLoopGroup implements NetEve
 
         // 初始化配置
         final NettyThreadManager nettyThreadManager = groupConfig.injector.getInstance(NettyThreadManager.class);
-        nettyThreadManager.init(groupConfig.bossGroupThreadNum, groupConfig.workerGroupThreadNum);
+        nettyThreadManager.init(groupConfig.bossGroupThreadNum, groupConfig.workerGroupThreadNum, groupConfig.preferEpoll);
 
         // 这里使用final可以保证初始化完成
         this.nettyThreadManager = nettyThreadManager;
@@ -73,10 +73,12 @@ class NetEventLoopGroupImp extends AbstractFixedEventLoopGroup implements NetEve
         private final Injector injector = Guice.createInjector(Stage.PRODUCTION, new NetEventLoopGroupModule());
         private final int bossGroupThreadNum;
         private final int workerGroupThreadNum;
+        private final boolean preferEpoll;
 
-        GroupConfig(int bossGroupThreadNum, int workerGroupThreadNum) {
+        GroupConfig(int bossGroupThreadNum, int workerGroupThreadNum, boolean preferEpoll) {
             this.bossGroupThreadNum = bossGroupThreadNum;
             this.workerGroupThreadNum = workerGroupThreadNum;
+            this.preferEpoll = preferEpoll;
         }
     }
 
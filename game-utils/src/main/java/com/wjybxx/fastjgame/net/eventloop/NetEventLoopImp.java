@@ -40,6 +40,7 @@ import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 网络事件循环。
@@ -55,6 +56,10 @@ import java.util.concurrent.ThreadFactory;
 class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
 
     private static final int TASK_BATCH_SIZE = 2048;
+    /**
+     * 批量执行任务的时间预算，突发流量下保证时间更新、定时器和rpc超时检测的及时性
+     */
+    private static final long TASK_BATCH_TIME_BUDGET_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
 
     private final Set<EventLoop> appEventLoopSet = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private final NetEventLoopManager netEventLoopManager;
@@ -63,6 +68,8 @@ class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
     private final ConnectorManager connectorManager;
     private final NetTimeManager netTimeManager;
     private final NetTimerManager netTimerManager;
+    private final RpcTimeoutManager rpcTimeoutManager;
+    private final SessionFlushManager sessionFlushManager;
     private final NettyThreadManager nettyThreadManager;
     private final NetEventBusManager netEventBusManager;
 
@@ -70,7 +77,7 @@ class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
                     @Nonnull ThreadFactory threadFactory,
                     @Nonnull RejectedExecutionHandler rejectedExecutionHandler,
                     @Nonnull Injector parentInjector) {
-        super(parent, threadFactory, rejectedExecutionHandler, TASK_BATCH_SIZE);
+        super(parent, threadFactory, rejectedExecutionHandler, TASK_BATCH_SIZE, TASK_BATCH_TIME_BUDGET_NANOS);
 
         Injector injector = parentInjector.createChildInjector(new NetEventLoopModule());
         NetManagerWrapper managerWrapper = injector.getInstance(NetManagerWrapper.class);
@@ -84,6 +91,8 @@ class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
         // 时间管理器和timer管理器
         netTimeManager = managerWrapper.getNetTimeManager();
         netTimerManager = managerWrapper.getNetTimerManager();
+        rpcTimeoutManager = managerWrapper.getRpcTimeoutManager();
+        sessionFlushManager = managerWrapper.getSessionFlushManager();
 
         // EventBus
         netEventBusManager = managerWrapper.getEventBusManager();
@@ -157,6 +166,10 @@ class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
         netTimeManager.update(System.currentTimeMillis());
         // 检测定时器
         netTimerManager.tick();
+        // 检测rpc超时
+        rpcTimeoutManager.tick();
+        // 发送延迟刷新的消息
+        sessionFlushManager.tick();
     }
 
     @Override
@@ -164,6 +177,8 @@ class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
         appEventLoopSet.clear();
         // 清理定时器
         CloseableUtils.closeSafely(netTimerManager::close);
+        CloseableUtils.closeSafely(rpcTimeoutManager::close);
+        CloseableUtils.closeSafely(sessionFlushManager::close);
 
         // 清理资源
         CloseableUtils.closeSafely(acceptorManager::clean);
@@ -199,26 +214,39 @@ class NetEventLoopImp extends TemplateEventLoop implements NetEventLoop {
 
     // ---------------------------------------------- socket -------------------------------------------------
 
-    @Subscribe
-    void fireConnectRequest(GenericSocketEvent<SocketConnectRequestEvent> event) {
-        acceptorManager.onRcvConnectRequest(event.child());
+    @Override
+    public void fireSocketEvent(@Nonnull SocketEvent event, boolean forAcceptor) {
+        execute(new SocketEventTask(event, forAcceptor));
     }
 
-    @Subscribe
-    void fireConnectResponse(GenericSocketEvent<SocketConnectResponseEvent> event) {
-        connectorManager.onRcvConnectResponse(event.child());
-    }
-
-    @Subscribe(onlySubEvents = true, subEvents = {
-            SocketPingPongEvent.class,
-            SocketMessageEvent.class,
-            SocketChannelInactiveEvent.class
-    })
-    void fireSocketEvent(GenericSocketEvent<SocketEvent> event) {
-        if (event.isForAcceptor()) {
-            acceptorManager.onSessionEvent(event.child());
+    private void onSocketEvent(SocketEvent event, boolean forAcceptor) {
+        if (event instanceof SocketConnectRequestEvent) {
+            acceptorManager.onRcvConnectRequest((SocketConnectRequestEvent) event);
+        } else if (event instanceof SocketConnectResponseEvent) {
+            connectorManager.onRcvConnectResponse((SocketConnectResponseEvent) event);
+        } else if (forAcceptor) {
+            acceptorManager.onSessionEvent(event);
         } else {
-            connectorManager.onSessionEvent(event.child());
+            connectorManager.onSessionEvent(event);
+        }
+    }
+
+    /**
+     * socket事件直接分发给对应的session，不经过EventBus
+     */
+    private class SocketEventTask implements Runnable {
+
+        private final SocketEvent event;
+        private final boolean forAcceptor;
+
+        SocketEventTask(SocketEvent event, boolean forAcceptor) {
+            this.event = event;
+            this.forAcceptor = forAcceptor;
+        }
+
+        @Override
+        public void run() {
+            onSocketEvent(event, forAcceptor);
         }
     }
 
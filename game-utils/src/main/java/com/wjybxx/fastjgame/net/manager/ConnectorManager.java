@@ -116,11 +116,7 @@ public class ConnectorManager implements SessionRegistry {
             // 异步建立连接
             session.pipeline().addLast(new OuterConnectorHandler(remoteAddress, initializer, nettyThreadManager, connectPromise));
         } else {
-            ChannelFuture channelFuture = nettyThreadManager.connectAsyn(remoteAddress,
-                    config.sndBuffer(),
-                    config.rcvBuffer(),
-                    config.connectTimeoutMs(),
-                    initializer);
+            ChannelFuture channelFuture = nettyThreadManager.connectAsyn(remoteAddress, config, initializer);
 
             // 异步建立连接
             session.pipeline().addLast(new InnerConnectorHandler(channelFuture, connectPromise));
@@ -35,6 +35,9 @@ public class NetManagerWrapper {
     private final NettyThreadManager nettyThreadManager;
     private final NetTimeManager netTimeManager;
     private final NetTimerManager netTimerManager;
+    private final SessionTickManager sessionTickManager;
+    private final SessionFlushManager sessionFlushManager;
+    private final RpcTimeoutManager rpcTimeoutManager;
     private final NetEventBusManager eventBusManager;
     private final AcceptorManager acceptorManager;
     private final ConnectorManager connectorManager;
@@ -43,13 +46,19 @@ public class NetManagerWrapper {
     public NetManagerWrapper(NetEventLoopManager netEventLoopManager, HttpSessionManager httpSessionManager,
                              NettyThreadManager nettyThreadManager,
                              NetTimeManager netTimeManager,
-                             NetTimerManager netTimerManager, NetEventBusManager eventBusManager, AcceptorManager acceptorManager,
+                             NetTimerManager netTimerManager, SessionTickManager sessionTickManager,
+                             SessionFlushManager sessionFlushManager,
+                             RpcTimeoutManager rpcTimeoutManager,
+                             NetEventBusManager eventBusManager, AcceptorManager acceptorManager,
                              ConnectorManager connectorManager) {
         this.netEventLoopManager = netEventLoopManager;
         this.httpSessionManager = httpSessionManager;
         this.nettyThreadManager = nettyThreadManager;
         this.netTimeManager = netTimeManager;
         this.netTimerManager = netTimerManager;
+        this.sessionTickManager = sessionTickManager;
+        this.sessionFlushManager = sessionFlushManager;
+        this.rpcTimeoutManager = rpcTimeoutManager;
         this.eventBusManager = eventBusManager;
         this.acceptorManager = acceptorManager;
         this.connectorManager = connectorManager;
@@ -75,6 +84,18 @@ public class NetManagerWrapper {
         return netTimerManager;
     }
 
+    public SessionTickManager getSessionTickManager() {
+        return sessionTickManager;
+    }
+
+    public SessionFlushManager getSessionFlushManager() {
+        return sessionFlushManager;
+    }
+
+    public RpcTimeoutManager getRpcTimeoutManager() {
+        return rpcTimeoutManager;
+    }
+
     public NetEventBusManager getEventBusManager() {
         return eventBusManager;
     }
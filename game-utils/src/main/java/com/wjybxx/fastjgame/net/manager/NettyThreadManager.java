@@ -20,12 +20,14 @@ import com.google.inject.Inject;
 import com.wjybxx.fastjgame.net.misc.HostAndPort;
 import com.wjybxx.fastjgame.net.misc.PortRange;
 import com.wjybxx.fastjgame.net.socket.DefaultSocketPort;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
 import com.wjybxx.fastjgame.net.utils.NetUtils;
 import com.wjybxx.fastjgame.util.concurrent.DefaultThreadFactory;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
+import io.netty.channel.epoll.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -34,9 +36,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.BindException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Netty线程管理器。
+ * <p>
+ * 通过{@link #init(int, int, boolean)}开启preferEpoll后，在Linux下如果native epoll可用，则使用epoll传输层
+ * （更少的垃圾，支持边缘触发、SO_REUSEPORT、TCP_QUICKACK等），否则使用nio。
+ * 旧的{@link #init(int, int)}保持原有行为，总是使用nio。
  *
  * @author wjybxx
  * @version 1.0
@@ -54,19 +62,52 @@ public class NettyThreadManager {
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    /**
+     * 是否使用的是native epoll传输层
+     */
+    private boolean epoll;
 
     @Inject
     public NettyThreadManager() {
 
     }
 
+    /**
+     * 使用nio传输层初始化，与之前的版本行为一致。
+     *
+     * @param bossGroupThreadNum   acceptor线程数
+     * @param workerGroupThreadNum io线程数
+     */
     public void init(int bossGroupThreadNum, int workerGroupThreadNum) {
+        init(bossGroupThreadNum, workerGroupThreadNum, false);
+    }
+
+    /**
+     * @param bossGroupThreadNum   acceptor线程数，开启SO_REUSEPORT时，建议不小于每个端口的监听socket数
+     * @param workerGroupThreadNum io线程数
+     * @param preferEpoll          是否优先使用native epoll，如果为true但epoll不可用，则仍使用nio
+     */
+    public void init(int bossGroupThreadNum, int workerGroupThreadNum, boolean preferEpoll) {
         if (bossGroup != null) {
             // 非法调用
             throw new IllegalStateException();
         }
-        bossGroup = new NioEventLoopGroup(bossGroupThreadNum, new DefaultThreadFactory("ACCEPTOR_THREAD"));
-        workerGroup = new NioEventLoopGroup(workerGroupThreadNum, new DefaultThreadFactory("WORKER_THREAD"));
+        epoll = preferEpoll && Epoll.isAvailable();
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(bossGroupThreadNum, new DefaultThreadFactory("ACCEPTOR_THREAD"));
+            workerGroup = new EpollEventLoopGroup(workerGroupThreadNum, new DefaultThreadFactory("WORKER_THREAD"));
+        } else {
+            bossGroup = new NioEventLoopGroup(bossGroupThreadNum, new DefaultThreadFactory("ACCEPTOR_THREAD"));
+            workerGroup = new NioEventLoopGroup(workerGroupThreadNum, new DefaultThreadFactory("WORKER_THREAD"));
+        }
+        logger.info("NettyThreadManager init success, transport {}", epoll ? "epoll" : "nio");
+    }
+
+    /**
+     * @return 如果使用的是native epoll传输层，则返回true
+     */
+    public boolean isEpoll() {
+        return epoll;
     }
 
     /**
@@ -91,10 +132,28 @@ public class NettyThreadManager {
      * @return 监听成功成功则返回绑定的地址，失败则返回null
      */
     public DefaultSocketPort bind(String host, int port, int sndBuffer, int rcvBuffer, ChannelInitializer<SocketChannel> initializer) throws BindException {
+        return bind(host, port, new SocketOptions(sndBuffer, rcvBuffer), initializer);
+    }
+
+    /**
+     * 监听某个端口,阻塞直到成功或失败。
+     * 如果配置了多个监听socket且epoll可用，则使用SO_REUSEPORT在同一端口上创建多个监听socket，由内核在它们之间分配新连接。
+     *
+     * @param host        地址
+     * @param port        需要绑定的端口
+     * @param config      socket配置
+     * @param initializer channel初始化类，根据使用的协议(eg:tcp,ws) 和 序列化方式(eg:json,protoBuf)确定
+     * @return 监听成功成功则返回绑定的地址，失败则返回null
+     */
+    public DefaultSocketPort bind(String host, int port, SocketSessionConfig config, ChannelInitializer<SocketChannel> initializer) throws BindException {
+        return bind(host, port, new SocketOptions(config), initializer);
+    }
+
+    private DefaultSocketPort bind(String host, int port, SocketOptions options, ChannelInitializer<SocketChannel> initializer) throws BindException {
         ServerBootstrap serverBootstrap = new ServerBootstrap();
         serverBootstrap.group(bossGroup, workerGroup);
 
-        serverBootstrap.channel(NioServerSocketChannel.class);
+        serverBootstrap.channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
         serverBootstrap.childHandler(initializer);
 
         // parentGroup参数
@@ -105,26 +164,67 @@ public class NettyThreadManager {
 
         // childGroup参数
         serverBootstrap.childOption(ChannelOption.SO_KEEPALIVE, false);
-        serverBootstrap.childOption(ChannelOption.TCP_NODELAY, true);
-        serverBootstrap.childOption(ChannelOption.SO_SNDBUF, sndBuffer);
-        serverBootstrap.childOption(ChannelOption.SO_RCVBUF, rcvBuffer);
+        serverBootstrap.childOption(ChannelOption.TCP_NODELAY, options.tcpNoDelay);
+        serverBootstrap.childOption(ChannelOption.SO_SNDBUF, options.sndBuffer);
+        serverBootstrap.childOption(ChannelOption.SO_RCVBUF, options.rcvBuffer);
         serverBootstrap.childOption(ChannelOption.SO_LINGER, 0);
         serverBootstrap.childOption(ChannelOption.SO_REUSEADDR, true);
         serverBootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         serverBootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK);
 
-        ChannelFuture channelFuture = serverBootstrap.bind(host, port);
-        try {
-            channelFuture.sync();
-            logger.info("bind {}:{} success.", host, port);
-            return new DefaultSocketPort(channelFuture.channel(), new HostAndPort(host, port));
-        } catch (InterruptedException e) {
-            // ignore e
-            NetUtils.closeQuietly(channelFuture);
-            Thread.currentThread().interrupt();
-        } catch (Exception e) {
-            // ignore, may another process bind this port
-            NetUtils.closeQuietly(channelFuture);
+        int listenerCount = options.reusePortListeners;
+        if (epoll) {
+            final EpollMode epollMode = options.epollEdgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+            serverBootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode);
+            serverBootstrap.childOption(EpollChannelOption.EPOLL_MODE, epollMode);
+            serverBootstrap.childOption(EpollChannelOption.TCP_QUICKACK, options.tcpQuickAck);
+            if (listenerCount > 1) {
+                serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        } else if (listenerCount > 1) {
+            logger.warn("SO_REUSEPORT requires epoll, bind {}:{} with single listener", host, port);
+            listenerCount = 1;
+        }
+
+        final List<Channel> channels = bindListeners(serverBootstrap, host, port, listenerCount);
+        logger.info("bind {}:{} success, listeners {}.", host, port, listenerCount);
+        return new DefaultSocketPort(channels, new HostAndPort(host, port));
+    }
+
+    /**
+     * 在同一端口上创建指定数量的监听socket，部分成功也视为失败，会关闭所有已成功的监听socket。
+     *
+     * @param serverBootstrap 已配置好的bootstrap
+     * @param listenerCount   监听socket数量
+     * @return 所有监听socket
+     * @throws BindException 任意一个监听socket创建失败
+     */
+    static List<Channel> bindListeners(ServerBootstrap serverBootstrap, String host, int port, int listenerCount) throws BindException {
+        final List<Channel> channels = new ArrayList<>(listenerCount);
+        for (int index = 0; index < listenerCount; index++) {
+            // 每次bind都会注册到bossGroup的下一个线程，因此多个监听socket由不同的acceptor线程处理
+            ChannelFuture channelFuture = serverBootstrap.bind(host, port);
+            try {
+                channelFuture.sync();
+                channels.add(channelFuture.channel());
+            } catch (InterruptedException e) {
+                // ignore e
+                NetUtils.closeQuietly(channelFuture);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // ignore, may another process bind this port
+                NetUtils.closeQuietly(channelFuture);
+                break;
+            }
+        }
+
+        if (channels.size() == listenerCount) {
+            return channels;
+        }
+        // 部分成功也视为失败
+        for (Channel channel : channels) {
+            NetUtils.closeQuietly(channel);
         }
         throw new BindException("can't bind " + host + ":" + port);
     }
@@ -140,6 +240,23 @@ public class NettyThreadManager {
      * @return 监听成功的端口号，失败返回null
      */
     public DefaultSocketPort bindRange(String host, PortRange portRange, int sndBuffer, int rcvBuffer, ChannelInitializer<SocketChannel> initializer) throws BindException {
+        return bindRange(host, portRange, new SocketOptions(sndBuffer, rcvBuffer), initializer);
+    }
+
+    /**
+     * 在某个端口范围内选择一个端口监听.
+     *
+     * @param host        地址
+     * @param portRange   端口范围
+     * @param config      socket配置
+     * @param initializer channel初始化类
+     * @return 监听成功的端口号，失败返回null
+     */
+    public DefaultSocketPort bindRange(String host, PortRange portRange, SocketSessionConfig config, ChannelInitializer<SocketChannel> initializer) throws BindException {
+        return bindRange(host, portRange, new SocketOptions(config), initializer);
+    }
+
+    private DefaultSocketPort bindRange(String host, PortRange portRange, SocketOptions options, ChannelInitializer<SocketChannel> initializer) throws BindException {
         if (portRange.startPort <= 0) {
             throw new IllegalArgumentException("fromPort " + portRange.startPort);
         }
@@ -148,7 +265,7 @@ public class NettyThreadManager {
         }
         for (int port = portRange.startPort; port <= portRange.endPort; port++) {
             try {
-                return bind(host, port, sndBuffer, rcvBuffer, initializer);
+                return bind(host, port, options, initializer);
             } catch (BindException e) {
                 // ignore
             }
@@ -170,20 +287,41 @@ public class NettyThreadManager {
      */
     public ChannelFuture connectAsyn(HostAndPort hostAndPort, int sndBuffer, int rcvBuffer, int connectTimeoutMs,
                                      ChannelInitializer<SocketChannel> initializer) {
+        return connectAsyn(hostAndPort, new SocketOptions(sndBuffer, rcvBuffer), connectTimeoutMs, initializer);
+    }
+
+    /**
+     * 异步建立连接
+     *
+     * @param hostAndPort 服务器地址
+     * @param config      socket配置
+     * @param initializer channel初始化类，根据使用的协议(eg:tcp,ws) 和 序列化方式(eg:json,protoBuf)确定
+     * @return channelFuture 使用方式同{@link #connectAsyn(HostAndPort, int, int, int, ChannelInitializer)}
+     */
+    public ChannelFuture connectAsyn(HostAndPort hostAndPort, SocketSessionConfig config, ChannelInitializer<SocketChannel> initializer) {
+        return connectAsyn(hostAndPort, new SocketOptions(config), config.connectTimeoutMs(), initializer);
+    }
+
+    private ChannelFuture connectAsyn(HostAndPort hostAndPort, SocketOptions options, int connectTimeoutMs,
+                                      ChannelInitializer<SocketChannel> initializer) {
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(workerGroup);
 
-        bootstrap.channel(NioSocketChannel.class);
+        bootstrap.channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class);
         bootstrap.handler(initializer);
 
         bootstrap.option(ChannelOption.SO_KEEPALIVE, false);
-        bootstrap.option(ChannelOption.TCP_NODELAY, true);
-        bootstrap.option(ChannelOption.SO_SNDBUF, sndBuffer);
-        bootstrap.option(ChannelOption.SO_RCVBUF, rcvBuffer);
+        bootstrap.option(ChannelOption.TCP_NODELAY, options.tcpNoDelay);
+        bootstrap.option(ChannelOption.SO_SNDBUF, options.sndBuffer);
+        bootstrap.option(ChannelOption.SO_RCVBUF, options.rcvBuffer);
         bootstrap.option(ChannelOption.SO_LINGER, 0);
         bootstrap.option(ChannelOption.SO_REUSEADDR, true);
         bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK);
         bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs);
+        if (epoll) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, options.epollEdgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, options.tcpQuickAck);
+        }
         return bootstrap.connect(hostAndPort.getHost(), hostAndPort.getPort());
     }
 
@@ -203,4 +341,35 @@ public class NettyThreadManager {
         channelFuture.awaitUninterruptibly();
         return channelFuture.channel();
     }
+
+    /**
+     * 建立socket时使用的参数
+     */
+    private static class SocketOptions {
+
+        final int sndBuffer;
+        final int rcvBuffer;
+        final boolean tcpNoDelay;
+        final boolean tcpQuickAck;
+        final boolean epollEdgeTriggered;
+        final int reusePortListeners;
+
+        SocketOptions(int sndBuffer, int rcvBuffer) {
+            this.sndBuffer = sndBuffer;
+            this.rcvBuffer = rcvBuffer;
+            this.tcpNoDelay = true;
+            this.tcpQuickAck = false;
+            this.epollEdgeTriggered = true;
+            this.reusePortListeners = 1;
+        }
+
+        SocketOptions(SocketSessionConfig config) {
+            this.sndBuffer = config.sndBuffer();
+            this.rcvBuffer = config.rcvBuffer();
+            this.tcpNoDelay = config.isTcpNoDelay();
+            this.tcpQuickAck = config.isTcpQuickAck();
+            this.epollEdgeTriggered = config.isEpollEdgeTriggered();
+            this.reusePortListeners = config.reusePortListeners();
+        }
+    }
 }
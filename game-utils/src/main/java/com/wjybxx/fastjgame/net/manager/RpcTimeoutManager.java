@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.manager;
+
+import com.google.inject.Inject;
+import com.wjybxx.fastjgame.util.timer.TimeoutHandle;
+import com.wjybxx.fastjgame.util.timer.TimerSystem;
+import com.wjybxx.fastjgame.util.timer.TimerTask;
+import com.wjybxx.fastjgame.util.timer.TimingWheelTimerSystem;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * rpc超时管理器，NetEventLoop上所有session的rpc请求共享一个时间轮。
+ * <p>
+ * 在之前的设计中，每个session使用一个有序map保存rpc请求的超时信息，每次tick从头部开始检查，
+ * 而同步rpc请求会被移动到首位，导致排在它后面的已超时的异步rpc请求不能被及时检测到。
+ * 使用时间轮之后：
+ * 1. 注册和取消都是O(1)的。
+ * 2. 不同超时时间的rpc请求之间也能按照截止时间的顺序超时。
+ * 3. 每帧只需要检查一次，而不是每个session检查一次。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+public class RpcTimeoutManager {
+
+    private final TimerSystem timerSystem;
+
+    @Inject
+    public RpcTimeoutManager(NetTimeManager netTimeManager) {
+        timerSystem = new TimingWheelTimerSystem(netTimeManager);
+    }
+
+    /**
+     * 注册一个rpc请求的超时任务，rpc请求完成时需要关闭返回的handle。
+     *
+     * @param timeoutMs   超时时间
+     * @param timeoutTask 超时之后执行的任务
+     * @return timer对应的handle
+     */
+    @Nonnull
+    public TimeoutHandle newTimeout(long timeoutMs, @Nonnull TimerTask timeoutTask) {
+        return timerSystem.newTimeout(timeoutMs, timeoutTask);
+    }
+
+    public void tick() {
+        timerSystem.tick();
+    }
+
+    public void close() {
+        timerSystem.close();
+    }
+}
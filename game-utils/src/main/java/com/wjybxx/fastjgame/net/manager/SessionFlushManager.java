@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.manager;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+
+/**
+ * 延迟刷新管理器，NetEventLoop上所有需要延迟发送缓冲消息的session共享。
+ * <p>
+ * session的tick间隔为{@link SessionTickManager#TICK_INTERVAL}毫秒，对于内网高频通信来说，要么每次请求刷新都立即发送，
+ * 要么最多延迟一个tick间隔，粒度太粗了。该管理器在NetEventLoop的每次循环中检查，使得刷新可以延迟微秒级的时间，
+ * 以便同一批任务中产生的消息可以合并发送。
+ * <p>
+ * 实际精度取决于NetEventLoop的循环频率(每处理一批任务或者等待超时都会循环一次)。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+public class SessionFlushManager {
+
+    /**
+     * 等待刷新的任务
+     */
+    private ArrayList<PendingFlush> pendingFlushes = new ArrayList<>();
+    /**
+     * 与{@link #pendingFlushes}交换使用，避免刷新的过程中修改正在遍历的集合
+     */
+    private ArrayList<PendingFlush> flushingList = new ArrayList<>();
+
+    /**
+     * 注册一个延迟刷新任务，同一个任务在执行之前不应该重复注册。
+     */
+    public void register(PendingFlush pendingFlush) {
+        pendingFlushes.add(pendingFlush);
+    }
+
+    public void tick() {
+        if (pendingFlushes.isEmpty()) {
+            return;
+        }
+
+        final ArrayList<PendingFlush> flushes = pendingFlushes;
+        pendingFlushes = flushingList;
+        flushingList = flushes;
+
+        final long curTimeNanos = System.nanoTime();
+        for (int index = 0, size = flushes.size(); index < size; index++) {
+            final PendingFlush pendingFlush = flushes.get(index);
+            if (curTimeNanos - pendingFlush.deadlineNanos() >= 0) {
+                pendingFlush.flush();
+            } else {
+                pendingFlushes.add(pendingFlush);
+            }
+        }
+        flushes.clear();
+    }
+
+    /**
+     * 关闭时立即执行所有的刷新任务
+     */
+    public void close() {
+        final ArrayList<PendingFlush> flushes = pendingFlushes;
+        pendingFlushes = flushingList;
+        flushingList = flushes;
+
+        for (PendingFlush pendingFlush : flushes) {
+            pendingFlush.flush();
+        }
+        flushes.clear();
+    }
+
+    /**
+     * 延迟刷新任务
+     */
+    public interface PendingFlush {
+
+        /**
+         * @return 截止时间，{@link System#nanoTime()}的时间基准
+         */
+        long deadlineNanos();
+
+        /**
+         * 执行刷新
+         */
+        void flush();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.manager;
+
+import com.google.inject.Inject;
+import com.wjybxx.fastjgame.net.session.AbstractSession;
+import com.wjybxx.fastjgame.net.session.SessionConfig;
+import com.wjybxx.fastjgame.util.timer.TimerHandle;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+
+/**
+ * session刷帧管理器。
+ * <p>
+ * 在之前的设计中，每个session都注册一个20ms的心跳timer，每次都会调用管道中所有handler的tick方法，即使session是空闲的。
+ * 当一个NetEventLoop上有大量的空闲session时（比如玩家session），这是一笔很大的开销。
+ * <p>
+ * 现在session分为两类：
+ * 1. 脏session：有待发送或待确认的消息、尚未建立连接等，在下一帧进行tick。
+ * 2. 空闲session：停放在一个粗粒度的时间轮上，每{@link #IDLE_TICK_INTERVAL}毫秒tick一次，用于session超时检测、心跳等低精度的逻辑。
+ * 如果session配置的超时时间或心跳间隔小于{@link #IDLE_TICK_INTERVAL}（见{@link SessionConfig#maxIdleTickIntervalMs()}），则每帧都tick。
+ * <p>
+ * 读写消息会自动将session标记为脏，handler如果需要继续精确的tick，可以在tick的时候调用
+ * {@link com.wjybxx.fastjgame.net.session.SessionHandlerContext#requestTick()}再次请求。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+public class SessionTickManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionTickManager.class);
+
+    /**
+     * 脏session的tick间隔
+     */
+    public static final int TICK_INTERVAL = 20;
+    /**
+     * 时间轮槽位数
+     */
+    private static final int WHEEL_SIZE = 50;
+    /**
+     * 空闲session的tick间隔
+     */
+    public static final int IDLE_TICK_INTERVAL = TICK_INTERVAL * WHEEL_SIZE;
+
+    /**
+     * 粗粒度的时间轮，每个session注册时均匀的分配到某一个槽位，每转一圈被tick一次。
+     * 关闭的session延迟到轮到它的槽位时再删除。
+     */
+    private final ArrayList<AbstractSession>[] wheel;
+    /**
+     * 空闲时也需要每帧tick的session，关闭的session在下一帧删除。
+     */
+    private final ArrayList<AbstractSession> everyTickSessions = new ArrayList<>();
+    /**
+     * 下一帧需要tick的session，同一帧多次请求只tick一次
+     */
+    private ReferenceLinkedOpenHashSet<AbstractSession> dirtySessions = new ReferenceLinkedOpenHashSet<>(1024);
+    /**
+     * 与{@link #dirtySessions}交换使用，避免tick的过程中修改正在遍历的集合
+     */
+    private ReferenceLinkedOpenHashSet<AbstractSession> tickingSessions = new ReferenceLinkedOpenHashSet<>(1024);
+
+    private int cursor = 0;
+    /**
+     * 下一个注册的session分配到的槽位
+     */
+    private int registerCursor = 0;
+
+    @Inject
+    @SuppressWarnings("unchecked")
+    public SessionTickManager(NetTimerManager netTimerManager) {
+        wheel = new ArrayList[WHEEL_SIZE];
+        for (int index = 0; index < WHEEL_SIZE; index++) {
+            wheel[index] = new ArrayList<>();
+        }
+        netTimerManager.newHeartbeatTimer(TICK_INTERVAL, this::tick);
+    }
+
+    /**
+     * 注册一个session，新注册的session会在下一帧进行tick
+     */
+    public void register(AbstractSession session) {
+        if (session.config().maxIdleTickIntervalMs() < IDLE_TICK_INTERVAL) {
+            everyTickSessions.add(session);
+        } else {
+            wheel[registerCursor].add(session);
+            registerCursor = (registerCursor + 1) % WHEEL_SIZE;
+        }
+        dirtySessions.add(session);
+    }
+
+    /**
+     * 请求在下一帧tick指定session
+     */
+    public void requestTick(AbstractSession session) {
+        dirtySessions.add(session);
+    }
+
+    private void tick(TimerHandle handle) {
+        // 时间轮转到的槽位上的session，本帧也需要tick
+        cursor = (cursor + 1) % WHEEL_SIZE;
+        markDirty(wheel[cursor]);
+        markDirty(everyTickSessions);
+
+        if (dirtySessions.isEmpty()) {
+            return;
+        }
+
+        // 交换集合，tick期间产生的请求在下一帧处理
+        final ReferenceLinkedOpenHashSet<AbstractSession> sessions = dirtySessions;
+        dirtySessions = tickingSessions;
+        tickingSessions = sessions;
+
+        try {
+            for (AbstractSession session : sessions) {
+                if (session.isClosed()) {
+                    continue;
+                }
+                try {
+                    session.tick();
+                } catch (Throwable e) {
+                    // 不能影响其它session的tick
+                    logger.warn("session {} tick caught exception", session.sessionId(), e);
+                }
+            }
+        } finally {
+            sessions.clear();
+        }
+    }
+
+    /**
+     * 将列表中未关闭的session标记为脏，并删除已关闭的session
+     */
+    private void markDirty(ArrayList<AbstractSession> sessions) {
+        int writeIndex = 0;
+        for (int readIndex = 0, size = sessions.size(); readIndex < size; readIndex++) {
+            final AbstractSession session = sessions.get(readIndex);
+            if (session.isClosed()) {
+                continue;
+            }
+            sessions.set(writeIndex++, session);
+            dirtySessions.add(session);
+        }
+        sessions.subList(writeIndex, sessions.size()).clear();
+    }
+}
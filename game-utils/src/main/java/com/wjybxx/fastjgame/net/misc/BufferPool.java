@@ -16,48 +16,372 @@
 
 package com.wjybxx.fastjgame.net.misc;
 
+import javax.annotation.concurrent.ThreadSafe;
 import java.util.ArrayDeque;
-import java.util.Queue;
 
 /**
- * 临时实现
+ * 线程本地的字节数组缓存池。
+ * <p>
+ * 缓冲区按照大小分级：256B、512B ... 4MB，每一级的大小都是2的整次幂，申请时返回不小于需求容量的最小一级。
+ * 每个线程的每一级都有独立的缓存队列，因此申请和归还都不需要同步。
+ * <p>
+ * 1. 超过最大一级(4MB)的需求，直接分配精确大小的数组，且不缓存。
+ * 2. 使用队列主要是为了解决用户在序列化的过程中，递归调用序列化方法问题。
+ * 3. 每当申请一定次数以后，会将每一级的缓存数量收缩到这段时间内的最大使用量，避免偶尔的大对象长期占用内存。
  *
  * @author wjybxx
- * @version 1.0
+ * @version 1.1
  * date - 2020/3/15
  * github - https://github.com/hl845740757
  */
+@ThreadSafe
 public class BufferPool {
 
+    private static final int MIN_SIZE_SHIFT = 8;
+    private static final int MAX_SIZE_SHIFT = 22;
+    private static final int SIZE_CLASS_COUNT = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+
+    /**
+     * 最小一级缓冲区大小 256B
+     */
+    public static final int MIN_BUFFER_SIZE = 1 << MIN_SIZE_SHIFT;
     /**
-     * 缓冲区大小
-     * 64K应该足够游戏内的任何内容了。
+     * 最大一级缓冲区大小 4MB
      */
-    private static final int BUFFER_SIZE = 64 * 1024;
+    public static final int MAX_BUFFER_SIZE = 1 << MAX_SIZE_SHIFT;
     /**
-     * 缓存数量
+     * 未指定大小时的缓冲区大小
      */
-    private static final int POOL_SIZE = 16;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
     /**
-     * 使用队列主要是为了解决用户在序列化的过程中，递归调用序列化方法问题。
+     * 一些虚拟机会在数组中保留一些头信息
      */
-    private static final ThreadLocal<Queue<byte[]>> LOCAL_BUFFER_QUEUE = ThreadLocal.withInitial(() -> new ArrayDeque<>(POOL_SIZE));
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    /**
+     * 每申请多少次尝试收缩一次缓存
+     */
+    private static final int TRIM_INTERVAL = 4096;
+
+    private static final ThreadLocal<LocalArena> LOCAL_ARENA = ThreadLocal.withInitial(LocalArena::new);
 
+    /**
+     * 申请一个默认大小的缓冲区
+     */
     public static byte[] allocateBuffer() {
-        final byte[] buffer = LOCAL_BUFFER_QUEUE.get().poll();
-        if (buffer == null) {
-            return new byte[BUFFER_SIZE];
-        } else {
-            return buffer;
+        return allocateBuffer(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 申请一个容量不小于指定值的缓冲区
+     *
+     * @param minCapacity 需要的最小容量
+     * @return 缓冲区，使用完毕后需要调用{@link #releaseBuffer(byte[])}归还
+     */
+    public static byte[] allocateBuffer(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("minCapacity " + minCapacity);
         }
+        return LOCAL_ARENA.get().allocate(minCapacity);
     }
 
+    /**
+     * 归还一个缓冲区，非本池分配的缓冲区会被丢弃。
+     *
+     * @param buffer 通过{@link #allocateBuffer(int)}申请的缓冲区
+     */
     public static void releaseBuffer(byte[] buffer) {
-        final Queue<byte[]> queue = LOCAL_BUFFER_QUEUE.get();
-        if (queue.size() >= POOL_SIZE) {
-            return;
+        LOCAL_ARENA.get().release(buffer);
+    }
+
+    /**
+     * 扩容：申请一个容量不小于指定值的缓冲区，拷贝旧缓冲区的前{@code length}个字节，并归还旧的缓冲区。
+     *
+     * @param buffer      旧的缓冲区，调用之后不可以再使用
+     * @param length      旧缓冲区的有效内容长度
+     * @param minCapacity 需要的最小容量
+     * @return 新的缓冲区
+     */
+    public static byte[] growBuffer(byte[] buffer, int length, int minCapacity) {
+        if (minCapacity <= buffer.length) {
+            return buffer;
+        }
+        // 至少2倍扩容，避免频繁扩容
+        final int targetCapacity = (int) Math.min(MAX_ARRAY_SIZE, Math.max(minCapacity, (long) buffer.length << 1));
+        final LocalArena arena = LOCAL_ARENA.get();
+        final byte[] newBuffer = arena.allocate(targetCapacity);
+        System.arraycopy(buffer, 0, newBuffer, 0, length);
+        arena.release(buffer);
+        arena.growCount++;
+        return newBuffer;
+    }
+
+    /**
+     * @return 当前线程的缓存池统计信息快照
+     */
+    public static Stats localStats() {
+        return LOCAL_ARENA.get().stats();
+    }
+
+    /**
+     * @return 不小于指定容量的最小一级的索引，如果超过最大一级，则返回{@link #SIZE_CLASS_COUNT}
+     */
+    private static int sizeClassIndex(int capacity) {
+        if (capacity <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        if (capacity > MAX_BUFFER_SIZE) {
+            return SIZE_CLASS_COUNT;
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SIZE_SHIFT;
+    }
+
+    private static int sizeOfClass(int sizeClass) {
+        return 1 << (sizeClass + MIN_SIZE_SHIFT);
+    }
+
+    /**
+     * @return 每一级最大缓存数量，缓冲区越大，缓存数量越少
+     */
+    private static int maxCachedCount(int sizeClass) {
+        final int size = sizeOfClass(sizeClass);
+        if (size <= 16 * 1024) {
+            return 16;
+        }
+        if (size <= 256 * 1024) {
+            return 8;
+        }
+        if (size <= 1024 * 1024) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * 线程本地的缓存
+     */
+    private static class LocalArena {
+
+        private final SizeClass[] sizeClasses = new SizeClass[SIZE_CLASS_COUNT];
+
+        private long allocateCount;
+        private long hitCount;
+        private long hugeAllocateCount;
+        private long growCount;
+        private long discardCount;
+        private long trimCount;
+
+        LocalArena() {
+            for (int index = 0; index < SIZE_CLASS_COUNT; index++) {
+                sizeClasses[index] = new SizeClass(sizeOfClass(index), maxCachedCount(index));
+            }
+        }
+
+        byte[] allocate(int minCapacity) {
+            if (++allocateCount % TRIM_INTERVAL == 0) {
+                trim();
+            }
+
+            final int index = sizeClassIndex(minCapacity);
+            if (index == SIZE_CLASS_COUNT) {
+                // 超过最大一级，不缓存
+                hugeAllocateCount++;
+                return new byte[minCapacity];
+            }
+
+            final SizeClass sizeClass = sizeClasses[index];
+            final byte[] buffer = sizeClass.allocate();
+            if (buffer != null) {
+                hitCount++;
+                return buffer;
+            }
+            return new byte[sizeClass.bufferSize];
+        }
+
+        void release(byte[] buffer) {
+            final int index = sizeClassIndex(buffer.length);
+            if (index == SIZE_CLASS_COUNT || sizeOfClass(index) != buffer.length) {
+                // 不是本池分配的
+                discardCount++;
+                return;
+            }
+
+            if (!sizeClasses[index].release(buffer)) {
+                discardCount++;
+            }
+        }
+
+        private void trim() {
+            for (SizeClass sizeClass : sizeClasses) {
+                trimCount += sizeClass.trim();
+            }
+        }
+
+        Stats stats() {
+            long cachedBytes = 0;
+            long inUseBytes = 0;
+            for (SizeClass sizeClass : sizeClasses) {
+                cachedBytes += (long) sizeClass.queue.size() * sizeClass.bufferSize;
+                inUseBytes += (long) sizeClass.inUseCount * sizeClass.bufferSize;
+            }
+            return new Stats(allocateCount, hitCount, hugeAllocateCount, growCount, discardCount, trimCount,
+                    cachedBytes, inUseBytes);
+        }
+    }
+
+    /**
+     * 某一级缓冲区的缓存
+     */
+    private static class SizeClass {
+
+        final int bufferSize;
+        final int maxCachedCount;
+        final ArrayDeque<byte[]> queue;
+
+        /**
+         * 已申请未归还的数量（其它线程归还的缓冲区会导致不准确，因此不会小于0）
+         */
+        int inUseCount;
+        /**
+         * 上次收缩以来的最大使用量
+         */
+        int maxInUseCount;
+
+        SizeClass(int bufferSize, int maxCachedCount) {
+            this.bufferSize = bufferSize;
+            this.maxCachedCount = maxCachedCount;
+            this.queue = new ArrayDeque<>(maxCachedCount);
+        }
+
+        byte[] allocate() {
+            if (++inUseCount > maxInUseCount) {
+                maxInUseCount = inUseCount;
+            }
+            return queue.pollLast();
+        }
+
+        boolean release(byte[] buffer) {
+            if (inUseCount > 0) {
+                inUseCount--;
+            }
+            if (queue.size() >= maxCachedCount) {
+                return false;
+            }
+            // 后进先出，刚归还的缓冲区更可能在cpu缓存中
+            queue.offerLast(buffer);
+            return true;
+        }
+
+        /**
+         * 将缓存数量收缩到上次收缩以来的最大使用量
+         *
+         * @return 释放的缓冲区数量
+         */
+        int trim() {
+            int trimmed = 0;
+            while (queue.size() > maxInUseCount) {
+                queue.pollFirst();
+                trimmed++;
+            }
+            maxInUseCount = inUseCount;
+            return trimmed;
+        }
+    }
+
+    /**
+     * 缓存池统计信息
+     */
+    public static class Stats {
+
+        private final long allocateCount;
+        private final long hitCount;
+        private final long hugeAllocateCount;
+        private final long growCount;
+        private final long discardCount;
+        private final long trimCount;
+        private final long cachedBytes;
+        private final long inUseBytes;
+
+        Stats(long allocateCount, long hitCount, long hugeAllocateCount, long growCount, long discardCount, long trimCount,
+              long cachedBytes, long inUseBytes) {
+            this.allocateCount = allocateCount;
+            this.hitCount = hitCount;
+            this.hugeAllocateCount = hugeAllocateCount;
+            this.growCount = growCount;
+            this.discardCount = discardCount;
+            this.trimCount = trimCount;
+            this.cachedBytes = cachedBytes;
+            this.inUseBytes = inUseBytes;
+        }
+
+        /**
+         * @return 申请次数
+         */
+        public long getAllocateCount() {
+            return allocateCount;
+        }
+
+        /**
+         * @return 命中缓存的次数
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return 超过最大一级的申请次数
+         */
+        public long getHugeAllocateCount() {
+            return hugeAllocateCount;
+        }
+
+        /**
+         * @return 扩容次数
+         */
+        public long getGrowCount() {
+            return growCount;
+        }
+
+        /**
+         * @return 归还时丢弃的缓冲区数量(缓存已满或非本池分配)
+         */
+        public long getDiscardCount() {
+            return discardCount;
+        }
+
+        /**
+         * @return 收缩时释放的缓冲区数量
+         */
+        public long getTrimCount() {
+            return trimCount;
+        }
+
+        /**
+         * @return 当前缓存的字节数
+         */
+        public long getCachedBytes() {
+            return cachedBytes;
+        }
+
+        /**
+         * @return 已申请未归还的字节数（估算值）
+         */
+        public long getInUseBytes() {
+            return inUseBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "allocateCount=" + allocateCount +
+                    ", hitCount=" + hitCount +
+                    ", hugeAllocateCount=" + hugeAllocateCount +
+                    ", growCount=" + growCount +
+                    ", discardCount=" + discardCount +
+                    ", trimCount=" + trimCount +
+                    ", cachedBytes=" + cachedBytes +
+                    ", inUseBytes=" + inUseBytes +
+                    '}';
         }
-        queue.offer(buffer);
     }
 }
@@ -82,7 +82,7 @@ public class DefaultNetContext implements NetContext {
     public SocketPort bindTcpRange(String host, PortRange portRange, @Nonnull SocketSessionConfig config) throws BindException {
         SocketPortContext portExtraInfo = new SocketPortContext(this, config);
         TCPServerChannelInitializer initializer = new TCPServerChannelInitializer(portExtraInfo);
-        return nettyThreadManager.bindRange(host, portRange, config.sndBuffer(), config.rcvBuffer(), initializer);
+        return nettyThreadManager.bindRange(host, portRange, config, initializer);
     }
 
     @Override
@@ -99,7 +99,7 @@ public class DefaultNetContext implements NetContext {
     public SocketPort bindWSRange(String host, PortRange portRange, String websocketPath, @Nonnull SocketSessionConfig config) throws BindException {
         SocketPortContext portExtraInfo = new SocketPortContext(this, config);
         WsServerChannelInitializer initializer = new WsServerChannelInitializer(websocketPath, portExtraInfo);
-        return nettyThreadManager.bindRange(host, portRange, config.sndBuffer(), config.rcvBuffer(), initializer);
+        return nettyThreadManager.bindRange(host, portRange, config, initializer);
     }
 
     @Override
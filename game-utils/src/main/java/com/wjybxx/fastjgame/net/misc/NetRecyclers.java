@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.misc;
+
+import com.wjybxx.fastjgame.util.SystemUtils;
+import io.netty.util.Recycler;
+
+import java.util.function.Function;
+
+/**
+ * 网络层消息对象池。
+ * <p>
+ * 一次rpc调用会创建大量的短生命周期对象(调用任务、消息对象、socket事件...)，在高吞吐量的情况下，这会产生大量的年轻代垃圾。
+ * 对于生命周期明确的对象，可以使用线程本地的对象池({@link Recycler})，并在确定不再使用的地方显式的回收。
+ * <p>
+ * 1. 对象池默认是关闭的，通过启动参数 -Dfastjgame.net.recycler=true 开启。
+ * 关闭时每次都创建新对象，且回收操作什么也不做。
+ * 2. 可以在其它线程回收对象，{@link Recycler}支持跨线程回收。
+ * 3. 未回收的对象会被正常的垃圾回收，因此只有在确定不再使用的地方回收，不确定的地方不要回收。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public final class NetRecyclers {
+
+    /**
+     * 是否开启对象池
+     */
+    private static final boolean ENABLED = SystemUtils.getProperties().getAsBool("fastjgame.net.recycler", false);
+    /**
+     * 每个线程最多缓存的对象数
+     */
+    private static final int MAX_CAPACITY_PER_THREAD = 4096;
+
+    private NetRecyclers() {
+
+    }
+
+    /**
+     * @return 是否开启了对象池
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 创建一个对象池
+     *
+     * @param factory 对象工厂，创建的对象需要持有handle，以便回收
+     * @return 如果对象池未开启，返回的对象池总是创建新对象
+     */
+    public static <T> Recycler<T> newRecycler(Function<Recycler.Handle<T>, T> factory) {
+        return newRecycler(ENABLED ? MAX_CAPACITY_PER_THREAD : 0, factory);
+    }
+
+    /**
+     * @param maxCapacityPerThread 每个线程最多缓存的对象数，0表示不缓存
+     */
+    static <T> Recycler<T> newRecycler(int maxCapacityPerThread, Function<Recycler.Handle<T>, T> factory) {
+        return new Recycler<T>(maxCapacityPerThread) {
+            @Override
+            protected T newObject(Handle<T> handle) {
+                return factory.apply(handle);
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.rpc;
+
+/**
+ * 可以根据{@link #getServiceId()}和{@link #getMethodId()}确定唯一方法的rpc方法描述信息，{@link DefaultRpcProcessor}根据这两个id分发请求。
+ * <p>
+ * 注解处理器会为每一个{@link RpcMethod}生成一个子类：方法参数直接存储为类型明确的字段，并生成专用的codec。
+ * 这样基本类型参数不需要装箱，也不需要序列化参数列表的头部信息以及每个参数的类型信息，服务器也不需要从列表中拆箱。
+ * <p>
+ * 警告：不要修改对象的内容，否则可能引发bug(并发错误)。
+ *
+ * @param <V> the type of return type
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public abstract class AbstractRpcMethodSpec<V> implements RpcMethodSpec<V> {
+
+    /**
+     * @return 远程服务id
+     */
+    public abstract short getServiceId();
+
+    /**
+     * @return 远程方法id
+     */
+    public abstract short getMethodId();
+
+}
@@ -19,11 +19,17 @@ package com.wjybxx.fastjgame.net.rpc;
 import com.wjybxx.fastjgame.net.exception.RpcSessionClosedException;
 import com.wjybxx.fastjgame.net.exception.RpcSessionNotFoundException;
 import com.wjybxx.fastjgame.net.exception.RpcTimeoutException;
+import com.wjybxx.fastjgame.net.serialization.Serializer;
 import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
 import com.wjybxx.fastjgame.util.concurrent.FluentFuture;
 import com.wjybxx.fastjgame.util.concurrent.FutureUtils;
 import com.wjybxx.fastjgame.util.concurrent.Promise;
 import com.wjybxx.fastjgame.util.function.FunctionUtils;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -39,6 +45,8 @@ import static com.wjybxx.fastjgame.util.concurrent.FutureUtils.newFailedFuture;
  */
 public final class DefaultRpcInvoker implements RpcInvoker {
 
+    private static final Logger logger = LoggerFactory.getLogger(DefaultRpcInvoker.class);
+
     public DefaultRpcInvoker() {
     }
 
@@ -48,7 +56,62 @@ public final class DefaultRpcInvoker implements RpcInvoker {
             // session不存在或关闭的情况下丢弃消息
             return;
         }
-        session.netEventLoop().execute(new OneWayInvocationTask(session, message, flush));
+        PreSerializeUtils.execute(session, OneWayInvocationTask.newInstance(session, message, flush));
+    }
+
+    @Override
+    public void broadcast(@Nonnull Iterable<? extends Session> sessions, @Nonnull RpcMethodSpec<?> message, boolean flush) {
+        // 通常所有session使用同一个序列化工具，每个序列化工具只序列化一次
+        final Reference2ObjectMap<Serializer, Object> serializedBodyMap = new Reference2ObjectArrayMap<>(1);
+        try {
+            for (Session session : sessions) {
+                if (session == null || session.isClosed()) {
+                    // session不存在或关闭的情况下丢弃消息
+                    continue;
+                }
+
+                if (!(session.config() instanceof SocketSessionConfig)) {
+                    // 本地session会克隆消息内容，不需要序列化
+                    send(session, message, flush);
+                    continue;
+                }
+
+                final Serializer serializer = session.config().serializer();
+                Object body = serializedBodyMap.get(serializer);
+                if (body == null) {
+                    body = trySerialize(serializer, message);
+                    serializedBodyMap.put(serializer, body);
+                }
+
+                // 与send走相同的提交路径，保证同一个session上消息的顺序；任务被拒绝时，由任务释放复制的引用
+                if (body instanceof SerializedBody) {
+                    // 每个session持有独立的读写索引和引用
+                    PreSerializeUtils.execute(session, OneWayInvocationTask.newInstance(session, ((SerializedBody) body).retainedDuplicate(), flush));
+                } else {
+                    // 序列化失败，由codec再次尝试序列化并记录日志
+                    PreSerializeUtils.execute(session, OneWayInvocationTask.newInstance(session, message, flush));
+                }
+            }
+        } finally {
+            // 释放自身持有的引用
+            for (Object body : serializedBodyMap.values()) {
+                if (body instanceof SerializedBody) {
+                    ((SerializedBody) body).release();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 序列化成功则返回{@link SerializedBody}，否则返回原始的消息内容
+     */
+    private static Object trySerialize(Serializer serializer, RpcMethodSpec<?> message) {
+        try {
+            return SerializedBody.newInstance(serializer, message);
+        } catch (Exception e) {
+            logger.warn("serialize broadcast message {} caught exception.", message.getClass().getName(), e);
+            return message;
+        }
     }
 
     @Override
@@ -63,10 +126,16 @@ public final class DefaultRpcInvoker implements RpcInvoker {
             return newFailedFuture(RpcSessionClosedException.INSTANCE);
         }
 
+        if (request.isOneWay()) {
+            // 单向调用，不创建promise，也不等待响应
+            send(session, request, flush);
+            return FutureUtils.newSucceedFuture(null);
+        }
+
         // 会话活动的状态下才会发送
         final Promise<V> promise = FutureUtils.newPromise();
-        session.netEventLoop()
-                .execute(new RpcRequestInvocationTask(session, request, false, session.config().getAsyncRpcTimeoutMs(), promise, flush));
+        PreSerializeUtils.execute(session,
+                RpcRequestInvocationTask.newInstance(session, request, false, session.config().getAsyncRpcTimeoutMs(), promise, flush));
 
         // 回调到用户线程
         return promise.whenCompleteAsync(FunctionUtils.emptyBiConsumer(), session.appEventLoop());
@@ -87,11 +156,17 @@ public final class DefaultRpcInvoker implements RpcInvoker {
             return future.getNow();
         }
 
+        if (request.isOneWay()) {
+            // 单向调用，不阻塞等待响应
+            send(session, request, true);
+            return null;
+        }
+
         final Promise<V> promise = FutureUtils.newPromise();
         final long syncRpcTimeoutMs = session.config().getSyncRpcTimeoutMs();
 
-        session.netEventLoop()
-                .execute(new RpcRequestInvocationTask(session, request, true, syncRpcTimeoutMs, promise, true));
+        PreSerializeUtils.execute(session,
+                RpcRequestInvocationTask.newInstance(session, request, true, syncRpcTimeoutMs, promise, true));
 
         if (!promise.awaitUninterruptibly(syncRpcTimeoutMs, TimeUnit.MILLISECONDS)) {
             promise.tryFailure(RpcTimeoutException.INSTANCE);
@@ -28,6 +28,7 @@ import java.util.List;
 
 /**
  * 默认的rpc方法结构体，可以根据{@link #serviceId} 和{@link #methodId}确定唯一的一个方法。
+ * 方法参数存储为{@link List}，基本类型会被装箱，主要用于手写的rpc调用；注解处理器会为每个方法生成专用的{@link AbstractRpcMethodSpec}子类。
  * <p>
  * 警告：不要修改对象的内容，否则可能引发bug(并发错误)。
  *
@@ -38,7 +39,7 @@ import java.util.List;
  * github - https://github.com/hl845740757
  */
 @NotThreadSafe
-public class DefaultRpcMethodSpec<V> implements RpcMethodSpec<V> {
+public class DefaultRpcMethodSpec<V> extends AbstractRpcMethodSpec<V> {
 
     /**
      * 远程服务id
@@ -65,19 +66,31 @@ public class DefaultRpcMethodSpec<V> implements RpcMethodSpec<V> {
      * 需要序列化到接收方，真正的接收方在反序列化该对象的时候，才会使用到。
      */
     private final int preIndexes;
+    /**
+     * 是否是单向调用。
+     * 该参数不需要序列化，只在发送方使用。
+     */
+    private final boolean oneWay;
 
     public DefaultRpcMethodSpec(short serviceId, short methodId, List<Object> methodParams, int lazyIndexes, int preIndexes) {
+        this(serviceId, methodId, methodParams, lazyIndexes, preIndexes, false);
+    }
+
+    public DefaultRpcMethodSpec(short serviceId, short methodId, List<Object> methodParams, int lazyIndexes, int preIndexes, boolean oneWay) {
         this.serviceId = serviceId;
         this.methodId = methodId;
         this.methodParams = methodParams;
         this.lazyIndexes = lazyIndexes;
         this.preIndexes = preIndexes;
+        this.oneWay = oneWay;
     }
 
+    @Override
     public short getServiceId() {
         return serviceId;
     }
 
+    @Override
     public short getMethodId() {
         return methodId;
     }
@@ -94,6 +107,11 @@ public class DefaultRpcMethodSpec<V> implements RpcMethodSpec<V> {
         return preIndexes;
     }
 
+    @Override
+    public boolean isOneWay() {
+        return oneWay;
+    }
+
     @Override
     public String toString() {
         return "DefaultRpcMethodSpec{" +
@@ -102,6 +120,7 @@ public class DefaultRpcMethodSpec<V> implements RpcMethodSpec<V> {
                 ", methodParams=" + methodParams +
                 ", lazyIndexes=" + lazyIndexes +
                 ", preIndexes=" + preIndexes +
+                ", oneWay=" + oneWay +
                 '}';
     }
 
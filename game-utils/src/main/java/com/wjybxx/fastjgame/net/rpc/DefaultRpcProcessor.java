@@ -16,14 +16,21 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
+ * 默认的rpc请求处理器。
+ * <p>
+ * serviceId和methodId都是较小且连续的short，因此使用两级数组(serviceId -> methodId -> method)作为分发表，
+ * 查找只需要两次带边界检查的数组访问，不需要计算hash。
+ * <p>
+ * 默认会统计每个方法的调用次数、失败次数以及耗时直方图，可以通过{@link #statsSnapshot()}获取快照，
+ * 如果不需要统计，可以通过{@link #DefaultRpcProcessor(boolean)}关闭。
+ *
  * @author wjybxx
  * @version 1.0
  * date - 2019/8/26
@@ -31,34 +38,95 @@ import java.util.List;
  */
 public class DefaultRpcProcessor implements RpcMethodProxyRegistry, RpcProcessor {
 
+    private static final RpcMethodEntry[][] EMPTY_SERVICES = new RpcMethodEntry[0][];
+
+    /**
+     * 所有的Rpc请求处理函数, serviceId -> methodId -> method
+     */
+    private RpcMethodEntry[][] services = EMPTY_SERVICES;
+
     /**
-     * 所有的Rpc请求处理函数, methodKey -> methodProxy
+     * 是否统计方法调用信息
      */
-    private final Int2ObjectMap<RpcMethodProxy> proxyMap = new Int2ObjectOpenHashMap<>(512);
+    private final boolean statsEnabled;
 
     public DefaultRpcProcessor() {
+        this(true);
+    }
 
+    /**
+     * @param statsEnabled 是否统计方法的调用次数及耗时
+     */
+    public DefaultRpcProcessor(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
     }
 
     @Override
     public final void register(short serviceId, short methodId, @Nonnull RpcMethodProxy proxy) {
-        // rpc请求id不可以重复
-        final int methodKey = calMethodKey(serviceId, methodId);
-        if (proxyMap.containsKey(methodKey)) {
-            throw new IllegalArgumentException("methodKey " + methodKey + " is already registered!");
+        if (serviceId < 0 || methodId < 0) {
+            throw new IllegalArgumentException("serviceId " + serviceId + ", methodId " + methodId);
         }
-        proxyMap.put(methodKey, proxy);
-    }
 
-    private static int calMethodKey(short serviceId, short methodId) {
-        return serviceId * 10000 + methodId;
+        if (serviceId >= services.length) {
+            services = Arrays.copyOf(services, serviceId + 1);
+        }
+
+        RpcMethodEntry[] methods = services[serviceId];
+        if (methods == null) {
+            methods = new RpcMethodEntry[methodId + 1];
+        } else if (methodId >= methods.length) {
+            methods = Arrays.copyOf(methods, methodId + 1);
+        }
+        services[serviceId] = methods;
+
+        // rpc请求id不可以重复
+        if (methods[methodId] != null) {
+            throw new IllegalArgumentException("serviceId " + serviceId + ", methodId " + methodId + " is already registered!");
+        }
+        methods[methodId] = new RpcMethodEntry(proxy, new RpcMethodStats(serviceId, methodId));
     }
 
     /**
      * 释放所有捕获的对象，避免内存泄漏
      */
     public final void release() {
-        proxyMap.clear();
+        services = EMPTY_SERVICES;
+    }
+
+    /**
+     * 获取所有方法的调用统计信息快照，需要在处理请求的线程中调用。
+     *
+     * @return 快照，可以安全的交给其它线程使用
+     */
+    public final List<RpcMethodStats> statsSnapshot() {
+        final List<RpcMethodStats> result = new ArrayList<>();
+        for (RpcMethodEntry[] methods : services) {
+            if (methods == null) {
+                continue;
+            }
+            for (RpcMethodEntry entry : methods) {
+                if (entry != null) {
+                    result.add(entry.stats.copy());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 重置所有方法的调用统计信息，需要在处理请求的线程中调用。
+     */
+    public final void resetStats() {
+        for (RpcMethodEntry[] methods : services) {
+            if (methods == null) {
+                continue;
+            }
+            for (RpcMethodEntry entry : methods) {
+                if (entry != null) {
+                    entry.stats.reset();
+                }
+            }
+        }
     }
 
     @Override
@@ -67,25 +135,51 @@ public class DefaultRpcProcessor implements RpcMethodProxyRegistry, RpcProcessor
             throw new IllegalArgumentException(context.session().sessionId() + " send null request");
         }
 
-        if (request instanceof DefaultRpcMethodSpec) {
-            return postImp(context, (DefaultRpcMethodSpec) request);
+        if (request instanceof AbstractRpcMethodSpec) {
+            return postImp(context, (AbstractRpcMethodSpec<?>) request);
         } else {
             return post0(context, request);
         }
     }
 
-    private Object postImp(@Nonnull RpcProcessContext context, @Nonnull DefaultRpcMethodSpec<?> rpcMethodSpec) throws Exception {
-        final int methodKey = calMethodKey(rpcMethodSpec.getServiceId(), rpcMethodSpec.getMethodId());
-        final RpcMethodProxy methodProxy = proxyMap.get(methodKey);
-        if (null == methodProxy) {
+    private Object postImp(@Nonnull RpcProcessContext context, @Nonnull AbstractRpcMethodSpec<?> rpcMethodSpec) throws Exception {
+        final RpcMethodEntry entry = findMethod(rpcMethodSpec.getServiceId(), rpcMethodSpec.getMethodId());
+        if (null == entry) {
             final String msg = String.format("rcv unknown request, session %s, serviceId=%d methodId=%d",
                     context.session().sessionId(), rpcMethodSpec.getServiceId(), rpcMethodSpec.getMethodId());
             throw new IllegalArgumentException(msg);
         }
 
-        final List<Object> params = rpcMethodSpec.getMethodParams();
+        if (!statsEnabled) {
+            return invoke(context, rpcMethodSpec, entry.proxy);
+        }
+
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            final Object result = invoke(context, rpcMethodSpec, entry.proxy);
+            success = true;
+            return result;
+        } finally {
+            entry.stats.record(System.nanoTime() - startNanos, success);
+        }
+    }
+
+    private RpcMethodEntry findMethod(short serviceId, short methodId) {
+        final RpcMethodEntry[][] services = this.services;
+        if (serviceId < 0 || serviceId >= services.length) {
+            return null;
+        }
+        final RpcMethodEntry[] methods = services[serviceId];
+        if (methods == null || methodId < 0 || methodId >= methods.length) {
+            return null;
+        }
+        return methods[methodId];
+    }
+
+    private static Object invoke(RpcProcessContext context, AbstractRpcMethodSpec<?> rpcMethodSpec, RpcMethodProxy methodProxy) {
         try {
-            return methodProxy.invoke(context, params);
+            return methodProxy.invoke(context, rpcMethodSpec);
         } catch (Exception e) {
             final String msg = String.format("invoke caught exception, session %s, serviceId=%d methodId=%d",
                     context.session().sessionId(), rpcMethodSpec.getServiceId(), rpcMethodSpec.getMethodId());
@@ -94,7 +188,7 @@ public class DefaultRpcProcessor implements RpcMethodProxyRegistry, RpcProcessor
     }
 
     /**
-     * 如果rpc描述信息不是{@link DefaultRpcMethodSpec}对象，那么需要自己实现分发操作
+     * 如果rpc描述信息不是{@link AbstractRpcMethodSpec}对象，那么需要自己实现分发操作
      */
     protected Object post0(RpcProcessContext context, RpcMethodSpec<?> request) {
         final String msg = String.format("unknown requestType, session %s, requestType=%s",
@@ -102,4 +196,14 @@ public class DefaultRpcProcessor implements RpcMethodProxyRegistry, RpcProcessor
         throw new UnsupportedOperationException(msg);
     }
 
+    private static class RpcMethodEntry {
+
+        final RpcMethodProxy proxy;
+        final RpcMethodStats stats;
+
+        RpcMethodEntry(RpcMethodProxy proxy, RpcMethodStats stats) {
+            this.proxy = proxy;
+            this.stats = stats;
+        }
+    }
 }
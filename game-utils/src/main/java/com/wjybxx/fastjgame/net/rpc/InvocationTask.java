@@ -16,6 +16,8 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
+import com.wjybxx.fastjgame.net.serialization.Serializer;
+
 /**
  * 客户端执行调用任务。
  * 实现{@link Runnable}是为了消除lambda表达式，减少中间对象。
@@ -33,4 +35,22 @@ public interface InvocationTask extends Runnable {
      */
     void run();
 
+    /**
+     * 预序列化消息内容，运行在网络线程之外。
+     * 默认不执行任何操作，由codec在网络线程中序列化。
+     *
+     * @param serializer 序列化工具
+     * @throws Exception error
+     */
+    default void preSerialize(Serializer serializer) throws Exception {
+
+    }
+
+    /**
+     * 任务未能提交到网络线程时调用，释放预序列化的内容，避免泄漏。
+     */
+    default void onRejected() {
+
+    }
+
 }
@@ -52,7 +52,19 @@ public enum NetMessageType {
     /**
      * 单向消息包。
      */
-    ONE_WAY_MESSAGE(6);
+    ONE_WAY_MESSAGE(6),
+
+    /**
+     * 批量消息包。
+     * 包含多个完整的消息帧(长度字段 + 包类型 + 内容)，仅用于合并发送{@link #RPC_REQUEST}、{@link #RPC_RESPONSE}、{@link #ONE_WAY_MESSAGE}。
+     */
+    BATCH_MESSAGE(7),
+
+    /**
+     * 压缩消息包。
+     * 内容为压缩后的一个完整消息帧(包类型 + 内容)，仅在建立连接时协商启用压缩之后使用。
+     */
+    COMPRESSED_MESSAGE(8);
 
     public final byte pkgType;
 
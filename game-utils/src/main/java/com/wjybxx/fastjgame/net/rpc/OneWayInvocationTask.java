@@ -16,7 +16,10 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
+import com.wjybxx.fastjgame.net.serialization.Serializer;
 import com.wjybxx.fastjgame.net.session.Session;
+import io.netty.util.Recycler;
 
 /**
  * 单向消息发送任务
@@ -28,20 +31,67 @@ import com.wjybxx.fastjgame.net.session.Session;
  */
 public class OneWayInvocationTask implements InvocationTask {
 
-    private final Session session;
-    private final Object message;
-    private final boolean flush;
+    private static final Recycler<OneWayInvocationTask> RECYCLER = NetRecyclers.newRecycler(OneWayInvocationTask::new);
+
+    private final Recycler.Handle<OneWayInvocationTask> handle;
+    private Session session;
+    private Object message;
+    private boolean flush;
 
     public OneWayInvocationTask(Session session, Object message, boolean flush) {
+        this.handle = null;
         this.session = session;
         this.message = message;
         this.flush = flush;
     }
 
+    private OneWayInvocationTask(Recycler.Handle<OneWayInvocationTask> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个任务对象，如果对象池未开启，则创建一个新对象
+     */
+    public static OneWayInvocationTask newInstance(Session session, Object message, boolean flush) {
+        final OneWayInvocationTask task = RECYCLER.get();
+        task.session = session;
+        task.message = message;
+        task.flush = flush;
+        return task;
+    }
+
+    /**
+     * 回收到对象池，调用之后不可以再使用该对象。
+     * 通过构造方法创建的对象不会被回收。
+     */
+    public void recycle() {
+        if (handle != null) {
+            session = null;
+            message = null;
+            handle.recycle(this);
+        }
+    }
+
     public Object getMessage() {
         return message;
     }
 
+    @Override
+    public void preSerialize(Serializer serializer) throws Exception {
+        if (message instanceof SerializedBody) {
+            // 广播时已经序列化
+            return;
+        }
+        message = SerializedBody.newInstance(serializer, message);
+    }
+
+    @Override
+    public void onRejected() {
+        if (message instanceof SerializedBody) {
+            ((SerializedBody) message).release();
+        }
+    }
+
     @Override
     public void run() {
         if (flush) {
@@ -16,6 +16,9 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
+import io.netty.util.Recycler;
+
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -29,8 +32,38 @@ import javax.annotation.concurrent.NotThreadSafe;
 @NotThreadSafe
 public class OneWayMessage extends NetLogicMessage {
 
+    private static final Recycler<OneWayMessage> RECYCLER = NetRecyclers.newRecycler(OneWayMessage::new);
+
+    private final Recycler.Handle<OneWayMessage> handle;
+
     public OneWayMessage(Object messageBody) {
         super(messageBody);
+        this.handle = null;
+    }
+
+    private OneWayMessage(Recycler.Handle<OneWayMessage> handle) {
+        super(null);
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个消息对象，如果对象池未开启，则创建一个新对象
+     */
+    public static OneWayMessage newInstance(Object messageBody) {
+        final OneWayMessage oneWayMessage = RECYCLER.get();
+        oneWayMessage.setBody(messageBody);
+        return oneWayMessage;
+    }
+
+    /**
+     * 回收到对象池，调用之后不可以再使用该对象。
+     * 通过构造方法创建的对象不会被回收。
+     */
+    public void recycle() {
+        if (handle != null) {
+            setBody(null);
+            handle.recycle(this);
+        }
     }
 
     @Override
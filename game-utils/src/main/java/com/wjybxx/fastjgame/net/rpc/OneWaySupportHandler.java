@@ -40,6 +40,8 @@ public class OneWaySupportHandler extends SessionDuplexHandlerAdapter {
             OneWayMessage oneWayMessage = (OneWayMessage) msg;
             ConcurrentUtils.safeExecute(ctx.appEventLoop(),
                     new OneWayProcessTask(ctx.session(), oneWayMessage.getBody()));
+            // 消息内容已提交给应用层
+            oneWayMessage.recycle();
         } else {
             ctx.fireRead(msg);
         }
@@ -50,7 +52,10 @@ public class OneWaySupportHandler extends SessionDuplexHandlerAdapter {
         if (msg instanceof OneWayInvocationTask) {
             // 单向消息
             OneWayInvocationTask task = (OneWayInvocationTask) msg;
-            ctx.fireWrite(new OneWayMessage(task.getMessage()));
+            final OneWayMessage oneWayMessage = OneWayMessage.newInstance(task.getMessage());
+            // 任务已转换为消息，可以回收了
+            task.recycle();
+            ctx.fireWrite(oneWayMessage);
         } else {
             ctx.fireWrite(msg);
         }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.net.session.SessionConfig;
+import com.wjybxx.fastjgame.net.socket.PreSerializeMode;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
+import com.wjybxx.fastjgame.net.utils.NetUtils;
+import com.wjybxx.fastjgame.util.concurrent.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 预序列化工具类，根据{@link SocketSessionConfig#preSerializeMode()}决定消息内容的序列化线程。
+ * 只有socket会话支持预序列化，本地会话的消息内容是直接克隆的，不需要序列化。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+final class PreSerializeUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreSerializeUtils.class);
+
+    private PreSerializeUtils() {
+
+    }
+
+    /**
+     * 提交一个发送任务到网络线程，如果开启了预序列化，会先序列化消息内容。
+     * 同一个session的所有发送任务(包括广播)都必须经过该方法，否则可能越过之前提交的任务，破坏消息顺序。
+     *
+     * @param session 要发送消息的session
+     * @param task    发送任务
+     * @throws RejectedExecutionException 任务被拒绝，任务持有的预序列化内容已释放
+     */
+    static void execute(Session session, InvocationTask task) {
+        final PreSerializeMode mode = preSerializeMode(session);
+        try {
+            switch (mode) {
+                case CALLER_THREAD:
+                    tryPreSerialize(session, task);
+                    session.netEventLoop().execute(task);
+                    break;
+                case SERIALIZE_GROUP:
+                    // 同一个session总是选中同一个线程，保证同一个线程提交的消息的顺序
+                    selectSerializeEventLoop(session).execute(new PreSerializeTask(session, task));
+                    break;
+                default:
+                    session.netEventLoop().execute(task);
+                    break;
+            }
+        } catch (RejectedExecutionException e) {
+            task.onRejected();
+            throw e;
+        }
+    }
+
+    private static PreSerializeMode preSerializeMode(Session session) {
+        final SessionConfig config = session.config();
+        if (config instanceof SocketSessionConfig) {
+            return ((SocketSessionConfig) config).preSerializeMode();
+        }
+        return PreSerializeMode.NONE;
+    }
+
+    private static EventLoop selectSerializeEventLoop(Session session) {
+        final SocketSessionConfig config = (SocketSessionConfig) session.config();
+        assert config.serializeEventLoopGroup() != null;
+        return config.serializeEventLoopGroup().select(NetUtils.fixedKey(session.sessionId()));
+    }
+
+    private static void tryPreSerialize(Session session, InvocationTask task) {
+        try {
+            task.preSerialize(session.config().serializer());
+        } catch (Exception e) {
+            // 为了不影响该连接上的其它消息，需要捕获异常，由codec再次尝试序列化并记录日志
+            logger.warn("preSerialize task {} caught exception.", task.getClass().getName(), e);
+        }
+    }
+
+    private static class PreSerializeTask implements Runnable {
+
+        private final Session session;
+        private final InvocationTask task;
+
+        PreSerializeTask(Session session, InvocationTask task) {
+            this.session = session;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!session.isClosed()) {
+                // session已关闭时不再序列化，但仍然要提交给网络线程，由网络层统一处理
+                tryPreSerialize(session, task);
+            }
+            try {
+                session.netEventLoop().execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.info("Try commit failure, target executor may shutdown.");
+                task.onRejected();
+            }
+        }
+    }
+}
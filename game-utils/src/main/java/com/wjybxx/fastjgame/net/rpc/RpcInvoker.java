@@ -56,6 +56,19 @@ public interface RpcInvoker {
      */
     void send(@Nullable Session session, @Nonnull RpcMethodSpec<?> message, boolean flush);
 
+    /**
+     * 广播一个单向消息给多个session。
+     * 对于socket会话，消息内容只序列化一次，所有会话共享序列化后的字节，每个会话仍然有独立的协议头(sequence/ack)。
+     * 对于其它会话，等同于对每一个session调用{@link #send(Session, RpcMethodSpec, boolean)}。
+     * <p>
+     * 注意：消息内容在调用线程序列化，且不会克隆，调用之后不可以再修改消息内容。
+     *
+     * @param sessions 要广播的session，为null或已关闭的session会被忽略
+     * @param message  单向消息
+     * @param flush    是否刷新缓冲区
+     */
+    void broadcast(@Nonnull Iterable<? extends Session> sessions, @Nonnull RpcMethodSpec<?> message, boolean flush);
+
     /**
      * 发送一个rpc请求给对方。
      *
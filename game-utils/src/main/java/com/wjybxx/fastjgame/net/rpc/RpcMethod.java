@@ -38,6 +38,7 @@ import java.lang.annotation.Target;
  * 1. {{@link RpcProcessContext}不会出现在客户端的代理方法的中，因此必须避免出现相同签名的代理方法。
  * 2. 方法不能是private - 至少是包级访问权限。
  * 3. methodId必须在[0,9999]区间段。
+ * 4. {@link #oneWay()}为true的方法，返回值必须是void。
  *
  * @author wjybxx
  * @version 1.0
@@ -55,4 +56,14 @@ public @interface RpcMethod {
      * @return 由该id和serviceId构成唯一索引。
      */
     short methodId();
+
+    /**
+     * 是否是单向调用(fire-and-forget)。
+     * 如果为true，则客户端即使通过{@code call}调用该方法，也只会发送一个单向消息：
+     * 不创建promise，不注册超时，服务器也不会返回响应。
+     * 客户端拿到的是一个已完成的future(结果为null)。
+     *
+     * @return 如果方法不需要返回结果，且调用方也不关心是否执行成功，则可以设置为true。
+     */
+    boolean oneWay() default false;
 }
@@ -16,8 +16,6 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
-import java.util.List;
-
 /**
  * rpc方法代理。
  * 用于代码生成工具为{@link RpcMethod}生成对应lambda表达式，以代替反射调用。
@@ -34,10 +32,10 @@ public interface RpcMethodProxy {
     /**
      * 执行调用
      *
-     * @param context      rpc执行时的一些上下文
-     * @param methodParams 方法的参数，不包含{@link RpcProcessContext}。
-     *                     如果原始方法需要{@link RpcProcessContext}的话，代理方法需要自动传入。
+     * @param context    rpc执行时的一些上下文
+     * @param methodSpec 方法描述信息，生成的代理会将其转换为对应方法的子类，并直接读取类型明确的参数字段。
+     *                   参数不包含{@link RpcProcessContext}，如果原始方法需要{@link RpcProcessContext}的话，代理方法需要自动传入。
      */
-    Object invoke(RpcProcessContext context, List<Object> methodParams) throws Exception;
+    Object invoke(RpcProcessContext context, AbstractRpcMethodSpec<?> methodSpec) throws Exception;
 
 }
@@ -35,4 +35,14 @@ import com.wjybxx.fastjgame.util.misc.MethodSpec;
  */
 public interface RpcMethodSpec<V> extends MethodSpec<V> {
 
+    /**
+     * 是否是单向调用。
+     * 如果返回true，则{@link RpcInvoker#call}等方法会退化为{@link RpcInvoker#send}，
+     * 不会创建promise，也不会等待响应。
+     *
+     * @return 默认false
+     */
+    default boolean isOneWay() {
+        return false;
+    }
 }
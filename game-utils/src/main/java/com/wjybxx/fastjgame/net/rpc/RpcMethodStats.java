@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * rpc方法的调用统计信息，由{@link DefaultRpcProcessor}在处理请求的线程中更新。
+ * <p>
+ * 1. 耗时只统计{@link RpcMethodProxy#invoke(RpcProcessContext, AbstractRpcMethodSpec)}的同步执行部分，
+ * 返回future的方法，其异步部分的耗时和失败不会被统计。
+ * 2. 耗时直方图按照2的整次幂分桶(单位微秒)：第0个桶表示小于1微秒，第i个桶表示[2^(i-1), 2^i)微秒，最后一个桶包含所有更大的值。
+ * 3. 外部获取到的是快照对象{@link DefaultRpcProcessor#statsSnapshot()}，可以安全的交给其它线程(如运维监控)使用。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+public final class RpcMethodStats {
+
+    /**
+     * 耗时直方图的桶数量，最后一个桶的下界约为4秒
+     */
+    public static final int LATENCY_BUCKET_COUNT = 24;
+
+    private final short serviceId;
+    private final short methodId;
+
+    private long invokeCount;
+    private long failureCount;
+    private long totalCostNanos;
+    private long maxCostNanos;
+    private final long[] latencyBuckets;
+
+    RpcMethodStats(short serviceId, short methodId) {
+        this.serviceId = serviceId;
+        this.methodId = methodId;
+        this.latencyBuckets = new long[LATENCY_BUCKET_COUNT];
+    }
+
+    private RpcMethodStats(RpcMethodStats other) {
+        this.serviceId = other.serviceId;
+        this.methodId = other.methodId;
+        this.invokeCount = other.invokeCount;
+        this.failureCount = other.failureCount;
+        this.totalCostNanos = other.totalCostNanos;
+        this.maxCostNanos = other.maxCostNanos;
+        this.latencyBuckets = other.latencyBuckets.clone();
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param costNanos 调用耗时
+     * @param success   是否执行成功
+     */
+    void record(long costNanos, boolean success) {
+        invokeCount++;
+        if (!success) {
+            failureCount++;
+        }
+        totalCostNanos += costNanos;
+        if (costNanos > maxCostNanos) {
+            maxCostNanos = costNanos;
+        }
+        latencyBuckets[bucketIndex(costNanos / 1000)]++;
+    }
+
+    void reset() {
+        invokeCount = 0;
+        failureCount = 0;
+        totalCostNanos = 0;
+        maxCostNanos = 0;
+        Arrays.fill(latencyBuckets, 0);
+    }
+
+    RpcMethodStats copy() {
+        return new RpcMethodStats(this);
+    }
+
+    private static int bucketIndex(long costMicros) {
+        if (costMicros <= 0) {
+            return 0;
+        }
+        return Math.min(LATENCY_BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(costMicros));
+    }
+
+    /**
+     * @param index 桶的索引
+     * @return 指定桶的上界(不包含)，单位微秒；最后一个桶返回{@link Long#MAX_VALUE}
+     */
+    public static long bucketUpperBoundMicros(int index) {
+        if (index >= LATENCY_BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        return 1L << index;
+    }
+
+    public short getServiceId() {
+        return serviceId;
+    }
+
+    public short getMethodId() {
+        return methodId;
+    }
+
+    public long getInvokeCount() {
+        return invokeCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getTotalCostNanos() {
+        return totalCostNanos;
+    }
+
+    public long getMaxCostNanos() {
+        return maxCostNanos;
+    }
+
+    /**
+     * @return 平均耗时，单位纳秒
+     */
+    public long getAvgCostNanos() {
+        return invokeCount == 0 ? 0 : totalCostNanos / invokeCount;
+    }
+
+    /**
+     * @return 耗时直方图的拷贝
+     */
+    public long[] getLatencyBuckets() {
+        return latencyBuckets.clone();
+    }
+
+    /**
+     * 根据直方图估算百分位耗时，返回值为所在桶的上界，因此是一个偏大的估计值。
+     *
+     * @param percentile 百分位，(0, 100]
+     * @return 耗时上界，单位微秒；没有调用记录时返回0
+     */
+    public long percentileMicros(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile " + percentile);
+        }
+        if (invokeCount == 0) {
+            return 0;
+        }
+        final long threshold = (long) Math.ceil(invokeCount * percentile / 100);
+        long count = 0;
+        for (int index = 0; index < LATENCY_BUCKET_COUNT; index++) {
+            count += latencyBuckets[index];
+            if (count >= threshold) {
+                return bucketUpperBoundMicros(index);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcMethodStats{" +
+                "serviceId=" + serviceId +
+                ", methodId=" + methodId +
+                ", invokeCount=" + invokeCount +
+                ", failureCount=" + failureCount +
+                ", avgCostNanos=" + getAvgCostNanos() +
+                ", maxCostNanos=" + maxCostNanos +
+                ", p99Micros=" + (invokeCount == 0 ? 0 : percentileMicros(99)) +
+                '}';
+    }
+}
@@ -16,8 +16,11 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
+import com.wjybxx.fastjgame.net.serialization.Serializer;
 import com.wjybxx.fastjgame.net.session.Session;
 import com.wjybxx.fastjgame.util.concurrent.Promise;
+import io.netty.util.Recycler;
 
 import javax.annotation.Nonnull;
 
@@ -31,18 +34,30 @@ import javax.annotation.Nonnull;
  */
 public class RpcRequestInvocationTask implements InvocationTask {
 
-    private final Session session;
+    private static final Recycler<RpcRequestInvocationTask> RECYCLER = NetRecyclers.newRecycler(RpcRequestInvocationTask::new);
 
-    private final Object request;
-    private final boolean sync;
-    private final long timeoutMs;
+    private final Recycler.Handle<RpcRequestInvocationTask> handle;
+    private Session session;
 
-    private final Promise<?> rpcPromise;
-    private final boolean flush;
+    private Object request;
+    private boolean sync;
+    private long timeoutMs;
+
+    private Promise<?> rpcPromise;
+    private boolean flush;
 
     public RpcRequestInvocationTask(Session session,
                                     @Nonnull Object request, boolean sync, long timeoutMs,
                                     @Nonnull Promise<?> rpcPromise, boolean flush) {
+        this.handle = null;
+        init(session, request, sync, timeoutMs, rpcPromise, flush);
+    }
+
+    private RpcRequestInvocationTask(Recycler.Handle<RpcRequestInvocationTask> handle) {
+        this.handle = handle;
+    }
+
+    private void init(Session session, Object request, boolean sync, long timeoutMs, Promise<?> rpcPromise, boolean flush) {
         this.session = session;
         this.request = request;
         this.sync = sync;
@@ -51,6 +66,30 @@ public class RpcRequestInvocationTask implements InvocationTask {
         this.rpcPromise = rpcPromise;
     }
 
+    /**
+     * 从对象池中获取一个任务对象，如果对象池未开启，则创建一个新对象
+     */
+    public static RpcRequestInvocationTask newInstance(Session session,
+                                                       @Nonnull Object request, boolean sync, long timeoutMs,
+                                                       @Nonnull Promise<?> rpcPromise, boolean flush) {
+        final RpcRequestInvocationTask task = RECYCLER.get();
+        task.init(session, request, sync, timeoutMs, rpcPromise, flush);
+        return task;
+    }
+
+    /**
+     * 回收到对象池，调用之后不可以再使用该对象。
+     * 通过构造方法创建的对象不会被回收。
+     */
+    public void recycle() {
+        if (handle != null) {
+            session = null;
+            request = null;
+            rpcPromise = null;
+            handle.recycle(this);
+        }
+    }
+
     public Object getRequest() {
         return request;
     }
@@ -67,6 +106,18 @@ public class RpcRequestInvocationTask implements InvocationTask {
         return rpcPromise;
     }
 
+    @Override
+    public void preSerialize(Serializer serializer) throws Exception {
+        request = SerializedBody.newInstance(serializer, request);
+    }
+
+    @Override
+    public void onRejected() {
+        if (request instanceof SerializedBody) {
+            ((SerializedBody) request).release();
+        }
+    }
+
     @Override
     public void run() {
         if (flush || sync) {
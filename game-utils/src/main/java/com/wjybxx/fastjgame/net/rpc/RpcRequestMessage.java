@@ -16,6 +16,9 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
+import io.netty.util.Recycler;
+
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -29,21 +32,52 @@ import javax.annotation.concurrent.NotThreadSafe;
 @NotThreadSafe
 public class RpcRequestMessage extends NetLogicMessage {
 
+    private static final Recycler<RpcRequestMessage> RECYCLER = NetRecyclers.newRecycler(RpcRequestMessage::new);
+
+    private final Recycler.Handle<RpcRequestMessage> handle;
     /**
      * rpc请求编号，用于返回消息
      */
-    private final long requestGuid;
+    private long requestGuid;
     /**
      * 是否是同步调用(同步调用表示紧急)
      */
-    private final boolean sync;
+    private boolean sync;
 
     public RpcRequestMessage(long requestGuid, boolean sync, Object requestBody) {
         super(requestBody);
+        this.handle = null;
         this.requestGuid = requestGuid;
         this.sync = sync;
     }
 
+    private RpcRequestMessage(Recycler.Handle<RpcRequestMessage> handle) {
+        super(null);
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个消息对象，如果对象池未开启，则创建一个新对象
+     */
+    public static RpcRequestMessage newInstance(long requestGuid, boolean sync, Object requestBody) {
+        final RpcRequestMessage requestMessage = RECYCLER.get();
+        requestMessage.requestGuid = requestGuid;
+        requestMessage.sync = sync;
+        requestMessage.setBody(requestBody);
+        return requestMessage;
+    }
+
+    /**
+     * 回收到对象池，调用之后不可以再使用该对象。
+     * 通过构造方法创建的对象不会被回收。
+     */
+    public void recycle() {
+        if (handle != null) {
+            setBody(null);
+            handle.recycle(this);
+        }
+    }
+
     public long getRequestGuid() {
         return requestGuid;
     }
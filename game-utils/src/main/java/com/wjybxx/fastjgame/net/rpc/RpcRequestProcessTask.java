@@ -15,19 +15,27 @@
  */
 package com.wjybxx.fastjgame.net.rpc;
 
-import com.wjybxx.fastjgame.util.concurrent.FutureUtils;
+import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.util.concurrent.FutureListener;
 import com.wjybxx.fastjgame.util.concurrent.ListenableFuture;
-import com.wjybxx.fastjgame.util.concurrent.Promise;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * rpc请求提交任务
+ * rpc请求提交任务。
+ * <p>
+ * 在应用线程处理完请求之后，直接由应用线程构建响应并提交给网络线程(或序列化线程)，不再创建promise中转结果。
+ * 如果返回的是future，则任务自身作为监听器，在future完成时发送响应。
  *
  * @author wjybxx
  * @version 1.0
  * date - 2019/8/8
  * github - https://github.com/hl845740757
  */
-public class RpcRequestProcessTask implements ProcessTask {
+public class RpcRequestProcessTask implements ProcessTask, FutureListener<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcRequestProcessTask.class);
 
     /**
      * 执行上下文
@@ -37,40 +45,51 @@ public class RpcRequestProcessTask implements ProcessTask {
      * 请求内容
      */
     private final Object request;
-    /**
-     * 返回结果的通道
-     */
-    private final Promise<?> promise;
 
-    public RpcRequestProcessTask(RpcProcessContext context, Object request, Promise<?> promise) {
+    public RpcRequestProcessTask(RpcProcessContext context, Object request) {
         this.context = context;
-        this.promise = promise;
         this.request = request;
     }
 
     @Override
     public void run() {
+        final Object result;
         try {
-            final Object result = context.session().config().processor().process(context, (RpcMethodSpec) request);
-            if (result == null) {
-                promise.trySuccess(null);
-                return;
-            }
-            if (result instanceof ListenableFuture) {
-                final ListenableFuture<?> future = (ListenableFuture<?>) result;
-                setFuture(promise, future);
-                return;
-            }
-
-            @SuppressWarnings("unchecked") final Promise<Object> castPromise = (Promise<Object>) promise;
-            castPromise.trySuccess(result);
+            result = context.session().config().processor().process(context, (RpcMethodSpec) request);
         } catch (Throwable e) {
-            promise.tryFailure(e);
+            writeFailure(e);
+            return;
+        }
+
+        if (result instanceof ListenableFuture) {
+            @SuppressWarnings("unchecked") final ListenableFuture<Object> future = (ListenableFuture<Object>) result;
+            future.addListener(this);
+        } else {
+            writeResponse(RpcErrorCode.SUCCESS, result);
         }
     }
 
-    private static <V> void setFuture(Promise<?> promise, ListenableFuture<V> future) {
-        @SuppressWarnings("unchecked") final Promise<V> castPromise = (Promise<V>) promise;
-        FutureUtils.setFuture(castPromise, future);
+    @Override
+    public void onComplete(ListenableFuture<Object> future) {
+        final Throwable cause = future.cause();
+        if (cause != null) {
+            writeFailure(cause);
+        } else {
+            writeResponse(RpcErrorCode.SUCCESS, future.getNow());
+        }
+    }
+
+    private void writeFailure(Throwable cause) {
+        // 不返回完整信息（传输量太大），但要打印日志，避免异常信息丢失
+        logger.warn("dispatch rpcRequest caught exception", cause);
+        writeResponse(RpcErrorCode.SERVER_EXCEPTION, ExceptionUtils.getRootCauseMessage(cause));
+    }
+
+    private void writeResponse(RpcErrorCode errorCode, Object body) {
+        final Session session = context.session();
+        if (session.isClosed()) {
+            return;
+        }
+        PreSerializeUtils.execute(session, new RpcResponseInvocationTask(session, context.requestGuid(), context.isSyncRpc(), errorCode, body));
     }
 }
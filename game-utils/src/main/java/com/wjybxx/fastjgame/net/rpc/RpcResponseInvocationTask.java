@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.serialization.Serializer;
+import com.wjybxx.fastjgame.net.session.Session;
+
+/**
+ * rpc响应发送任务。
+ * 由应用线程在处理完rpc请求之后直接提交给网络线程(或序列化线程)，不再经过promise中转。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+class RpcResponseInvocationTask implements InvocationTask {
+
+    private final Session session;
+    private final long requestGuid;
+    private final boolean sync;
+    private final RpcErrorCode errorCode;
+    private Object body;
+
+    RpcResponseInvocationTask(Session session, long requestGuid, boolean sync, RpcErrorCode errorCode, Object body) {
+        this.session = session;
+        this.requestGuid = requestGuid;
+        this.sync = sync;
+        this.errorCode = errorCode;
+        this.body = body;
+    }
+
+    @Override
+    public void preSerialize(Serializer serializer) throws Exception {
+        // 错误信息由codec直接编码
+        if (errorCode.isSuccess()) {
+            body = SerializedBody.newInstance(serializer, body);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (session.isClosed()) {
+            // session已关闭，丢弃消息
+            if (body instanceof SerializedBody) {
+                ((SerializedBody) body).release();
+            }
+            return;
+        }
+        session.fireWrite(RpcResponseMessage.newInstance(requestGuid, sync, errorCode, body));
+    }
+}
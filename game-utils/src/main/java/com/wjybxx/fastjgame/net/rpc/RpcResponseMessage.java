@@ -16,6 +16,9 @@
 
 package com.wjybxx.fastjgame.net.rpc;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
+import io.netty.util.Recycler;
+
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -29,26 +32,59 @@ import javax.annotation.concurrent.NotThreadSafe;
 @NotThreadSafe
 public class RpcResponseMessage extends NetLogicMessage {
 
+    private static final Recycler<RpcResponseMessage> RECYCLER = NetRecyclers.newRecycler(RpcResponseMessage::new);
+
+    private final Recycler.Handle<RpcResponseMessage> handle;
     /**
      * 客户端的哪一个请求
      */
-    private final long requestGuid;
+    private long requestGuid;
     /**
      * 是否是同步调用的结果
      */
-    private final boolean sync;
+    private boolean sync;
     /**
      * 错误码
      */
-    private final RpcErrorCode errorCode;
+    private RpcErrorCode errorCode;
 
     public RpcResponseMessage(long requestGuid, boolean sync, RpcErrorCode errorCode, Object body) {
         super(body);
+        this.handle = null;
         this.requestGuid = requestGuid;
         this.sync = sync;
         this.errorCode = errorCode;
     }
 
+    private RpcResponseMessage(Recycler.Handle<RpcResponseMessage> handle) {
+        super(null);
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个消息对象，如果对象池未开启，则创建一个新对象
+     */
+    public static RpcResponseMessage newInstance(long requestGuid, boolean sync, RpcErrorCode errorCode, Object body) {
+        final RpcResponseMessage responseMessage = RECYCLER.get();
+        responseMessage.requestGuid = requestGuid;
+        responseMessage.sync = sync;
+        responseMessage.errorCode = errorCode;
+        responseMessage.setBody(body);
+        return responseMessage;
+    }
+
+    /**
+     * 回收到对象池，调用之后不可以再使用该对象。
+     * 通过构造方法创建的对象不会被回收。
+     */
+    public void recycle() {
+        if (handle != null) {
+            setBody(null);
+            errorCode = null;
+            handle.recycle(this);
+        }
+    }
+
     public long getRequestGuid() {
         return requestGuid;
     }
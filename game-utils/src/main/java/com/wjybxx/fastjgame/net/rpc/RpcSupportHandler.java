@@ -19,17 +19,16 @@ package com.wjybxx.fastjgame.net.rpc;
 import com.wjybxx.fastjgame.net.exception.DefaultRpcServerException;
 import com.wjybxx.fastjgame.net.exception.RpcSessionClosedException;
 import com.wjybxx.fastjgame.net.exception.RpcTimeoutException;
+import com.wjybxx.fastjgame.net.manager.RpcTimeoutManager;
+import com.wjybxx.fastjgame.net.session.AbstractSession;
 import com.wjybxx.fastjgame.net.session.Session;
 import com.wjybxx.fastjgame.net.session.SessionDuplexHandlerAdapter;
 import com.wjybxx.fastjgame.net.session.SessionHandlerContext;
-import com.wjybxx.fastjgame.util.concurrent.FutureListener;
-import com.wjybxx.fastjgame.util.concurrent.FutureUtils;
-import com.wjybxx.fastjgame.util.concurrent.ListenableFuture;
 import com.wjybxx.fastjgame.util.concurrent.Promise;
-import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
-import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.wjybxx.fastjgame.util.timer.TimeoutHandle;
+import com.wjybxx.fastjgame.util.timer.TimerHandle;
+import com.wjybxx.fastjgame.util.timer.TimerTask;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -50,8 +49,6 @@ import java.io.IOException;
 @NotThreadSafe
 public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
 
-    private static final Logger logger = LoggerFactory.getLogger(RpcSupportHandler.class);
-
     /**
      * RpcRequestId分配器
      */
@@ -61,37 +58,19 @@ public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
      * rpc请求超时信息
      * - 在现在的设计中，只有服务器之间有rpc支持，与玩家之间是没有该handler的，因此不会浪费资源。
      * - 避免频繁的扩容，扩容和重新计算hash值是非常消耗资源的。
+     * - 超时检测由NetEventLoop共享的{@link RpcTimeoutManager}负责，这里不需要有序。
      */
-    private final Long2ObjectLinkedOpenHashMap<RpcTimeoutInfo> rpcTimeoutInfoMap = new Long2ObjectLinkedOpenHashMap<>(1024);
+    private final Long2ObjectOpenHashMap<RpcTimeoutInfo> rpcTimeoutInfoMap = new Long2ObjectOpenHashMap<>(1024);
+
+    private RpcTimeoutManager rpcTimeoutManager;
 
     public RpcSupportHandler() {
 
     }
 
     @Override
-    public void tick(SessionHandlerContext ctx) {
-        checkRpcTimeout(ctx);
-    }
-
-    /**
-     * 并不需要检查全部的rpc请求，只要第一个未超时，即可停止。
-     * Q: why?
-     * A: 当第一个是同步rpc调用时，检查异步rpc的超时没有太大意义，因为用户线程是阻塞的。
-     * 当第一个是异步rpc调用时，如果该rpc请求未超时，那么它后面的rpc请求也没超时，因为异步rpc请求之间是有序的，先请求的先超时，后请求的后超时。
-     */
-    private void checkRpcTimeout(SessionHandlerContext ctx) {
-        final long curTimeMillis = ctx.timerSystem().curTimeMillis();
-        while (rpcTimeoutInfoMap.size() > 0) {
-            final long requestGuid = rpcTimeoutInfoMap.firstLongKey();
-            final RpcTimeoutInfo timeoutInfo = rpcTimeoutInfoMap.get(requestGuid);
-
-            if (curTimeMillis < timeoutInfo.deadline) {
-                return;
-            }
-
-            rpcTimeoutInfoMap.removeFirst();
-            timeoutInfo.rpcPromise.tryFailure(RpcTimeoutException.INSTANCE);
-        }
+    public void handlerAdded(SessionHandlerContext ctx) throws Exception {
+        rpcTimeoutManager = ((AbstractSession) ctx.session()).rpcTimeoutManager();
     }
 
     @Override
@@ -109,18 +88,17 @@ public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
             // rpc请求
             RpcRequestInvocationTask task = (RpcRequestInvocationTask) msg;
 
-            long deadline = ctx.timerSystem().curTimeMillis() + task.getTimeoutMs();
-            RpcTimeoutInfo rpcTimeoutInfo = new RpcTimeoutInfo(task.getPromise(), deadline);
             long requestGuid = ++requestGuidSequencer;
+            RpcTimeoutInfo rpcTimeoutInfo = new RpcTimeoutInfo(requestGuid, task.getPromise());
+            rpcTimeoutInfo.timeoutHandle = rpcTimeoutManager.newTimeout(task.getTimeoutMs(), rpcTimeoutInfo);
 
-            // 保存超时信息，如果是同步rpc调用，放在超时信息的首位
-            if (task.isSync()) {
-                rpcTimeoutInfoMap.putAndMoveToFirst(requestGuid, rpcTimeoutInfo);
-            } else {
-                rpcTimeoutInfoMap.put(requestGuid, rpcTimeoutInfo);
-            }
+            // 保存超时信息
+            rpcTimeoutInfoMap.put(requestGuid, rpcTimeoutInfo);
 
-            ctx.fireWrite(new RpcRequestMessage(requestGuid, task.isSync(), task.getRequest()));
+            final RpcRequestMessage requestMessage = RpcRequestMessage.newInstance(requestGuid, task.isSync(), task.getRequest());
+            // 任务已转换为消息，可以回收了
+            task.recycle();
+            ctx.fireWrite(requestMessage);
         } else {
             ctx.fireWrite(msg);
         }
@@ -133,11 +111,11 @@ public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
             final RpcRequestMessage requestMessage = (RpcRequestMessage) msg;
             // 创建执行上下文
             final DefaultRpcProcessContext context = new DefaultRpcProcessContext(ctx.session(), requestMessage.getRequestGuid(), requestMessage.isSync());
-            final Promise<?> promise = FutureUtils.newPromise();
-
-            ctx.appEventLoop().execute(new RpcRequestProcessTask(context, requestMessage.getBody(), promise));
+            // 由应用线程处理完之后直接提交响应，不再创建promise中转
+            ctx.appEventLoop().execute(new RpcRequestProcessTask(context, requestMessage.getBody()));
 
-            promise.addListener(new RpcResultListener(context), ctx.netEventLoop());
+            // 消息内容已提交给应用层
+            requestMessage.recycle();
         } else if (msg instanceof RpcResponseMessage) {
             // 读取到一个Rpc响应消息，提交给应用层
             final RpcResponseMessage responseMessage = (RpcResponseMessage) msg;
@@ -145,9 +123,11 @@ public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
 
             final RpcTimeoutInfo rpcTimeoutInfo = rpcTimeoutInfoMap.remove(requestGuid);
             if (null != rpcTimeoutInfo) {
+                rpcTimeoutInfo.timeoutHandle.close();
                 commitRpcResponse(rpcTimeoutInfo.rpcPromise, responseMessage.getErrorCode(), responseMessage.getBody());
             }
             // else 可能超时了
+            responseMessage.recycle();
         } else {
             ctx.fireRead(msg);
         }
@@ -172,19 +152,37 @@ public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
      */
     private void cancelAllRpcRequest() {
         for (RpcTimeoutInfo rpcTimeoutInfo : rpcTimeoutInfoMap.values()) {
+            rpcTimeoutInfo.timeoutHandle.close();
             rpcTimeoutInfo.rpcPromise.tryFailure(RpcSessionClosedException.INSTANCE);
         }
         rpcTimeoutInfoMap.clear();
     }
 
-    private static class RpcTimeoutInfo {
+    /**
+     * @return 等待响应的rpc请求数
+     */
+    int pendingRpcCount() {
+        return rpcTimeoutInfoMap.size();
+    }
 
+    /**
+     * rpc请求的超时信息，同时也是超时之后执行的任务
+     */
+    private class RpcTimeoutInfo implements TimerTask {
+
+        private final long requestGuid;
         private final Promise<?> rpcPromise;
-        private final long deadline;
+        private TimeoutHandle timeoutHandle;
 
-        RpcTimeoutInfo(Promise<?> rpcPromise, long deadline) {
+        RpcTimeoutInfo(long requestGuid, Promise<?> rpcPromise) {
+            this.requestGuid = requestGuid;
             this.rpcPromise = rpcPromise;
-            this.deadline = deadline;
+        }
+
+        @Override
+        public void run(TimerHandle handle) {
+            rpcTimeoutInfoMap.remove(requestGuid);
+            rpcPromise.tryFailure(RpcTimeoutException.INSTANCE);
         }
     }
 
@@ -221,38 +219,4 @@ public class RpcSupportHandler extends SessionDuplexHandlerAdapter {
             return sync;
         }
     }
-
-    private static class RpcResultListener implements FutureListener<Object> {
-
-        private final DefaultRpcProcessContext context;
-
-        RpcResultListener(DefaultRpcProcessContext context) {
-            this.context = context;
-        }
-
-        @Override
-        public void onComplete(ListenableFuture<Object> future) throws Exception {
-            if (context.session.isClosed()) {
-                return;
-            }
-
-            final RpcErrorCode errorCode;
-            final Object body;
-            if (future.isCompletedExceptionally()) {
-                errorCode = RpcErrorCode.SERVER_EXCEPTION;
-                // 不返回完整信息（传输量太大），但要打印日志，避免异常信息丢失
-                final Throwable cause = future.cause();
-                body = ExceptionUtils.getRootCauseMessage(cause);
-                logger.warn("dispatch rpcRequest caught exception", cause);
-            } else {
-                errorCode = RpcErrorCode.SUCCESS;
-                body = future.getNow();
-            }
-
-            // 此时已经在网络线程，直接write,但还是需要流经整个管道
-            final RpcResponseMessage responseMessage = new RpcResponseMessage(context.requestGuid, context.sync, errorCode, body);
-            context.session.fireWrite(responseMessage);
-        }
-    }
-
 }
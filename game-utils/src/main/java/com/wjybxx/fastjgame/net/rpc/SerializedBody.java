@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.serialization.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.DefaultByteBufHolder;
+
+import javax.annotation.Nullable;
+
+/**
+ * 已序列化的消息内容。
+ * <p>
+ * 当开启预序列化时，{@link NetLogicMessage#getBody()}会在进入网络层之前被替换为该对象，
+ * codec不再执行序列化，只负责写入协议头并和{@link #content()}组合发送。
+ * <p>
+ * 引用计数约定：
+ * 1. 持有该对象的消息拥有一个引用。
+ * 2. codec每编码一次，会消耗一个引用，因此每次发送之前都需要调用{@link #retainBody(NetMessage)}，除非发送之后不再持有该消息。
+ * 3. 消息被丢弃或确认之后，需要调用{@link #releaseBody(NetMessage)}。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public final class SerializedBody extends DefaultByteBufHolder {
+
+    public SerializedBody(ByteBuf data) {
+        super(data);
+    }
+
+    /**
+     * @return 序列化后的字节数
+     */
+    public int serializedSize() {
+        return content().readableBytes();
+    }
+
+    @Override
+    public SerializedBody replace(ByteBuf content) {
+        return new SerializedBody(content);
+    }
+
+    @Override
+    public SerializedBody retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public SerializedBody retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public SerializedBody touch() {
+        super.touch();
+        return this;
+    }
+
+    @Override
+    public SerializedBody touch(Object hint) {
+        super.touch(hint);
+        return this;
+    }
+
+    /**
+     * 序列化一个消息内容。
+     * 注意：该方法可以在任意线程调用，使用{@link ByteBufAllocator#DEFAULT}分配内存。
+     *
+     * @param serializer 序列化工具
+     * @param body       消息内容
+     * @return 已序列化的内容，引用计数为1
+     * @throws Exception error
+     */
+    public static SerializedBody newInstance(Serializer serializer, @Nullable Object body) throws Exception {
+        final ByteBuf byteBuf = ByteBufAllocator.DEFAULT.buffer(serializer.computeBufferSize(body));
+        try {
+            serializer.writeObject(byteBuf, body);
+            return new SerializedBody(byteBuf);
+        } catch (Exception e) {
+            byteBuf.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 如果消息的内容是已序列化的，则增加一个引用
+     */
+    public static void retainBody(NetMessage message) {
+        if (message instanceof NetLogicMessage) {
+            final Object body = ((NetLogicMessage) message).getBody();
+            if (body instanceof SerializedBody) {
+                ((SerializedBody) body).retain();
+            }
+        }
+    }
+
+    /**
+     * 如果消息的内容是已序列化的，则释放一个引用
+     */
+    public static void releaseBody(NetMessage message) {
+        if (message instanceof NetLogicMessage) {
+            final Object body = ((NetLogicMessage) message).getBody();
+            if (body instanceof SerializedBody) {
+                ((SerializedBody) body).release();
+            }
+        }
+    }
+}
@@ -76,6 +76,18 @@ public interface Serializer {
      */
     int estimateSerializedSize(@Nullable Object object);
 
+    /**
+     * 计算序列化对象所需的缓冲区大小，用于一次性分配大小合适的{@link ByteBuf}，避免扩容。
+     * 能低代价地计算精确大小的对象应返回精确值，其它对象返回{@link #estimateSerializedSize(Object)}。
+     * 注意：该方法不抛出异常，不支持序列化的对象由真正的序列化过程抛出异常。
+     *
+     * @param object 待序列化的对象
+     * @return 缓冲区大小
+     */
+    default int computeBufferSize(@Nullable Object object) {
+        return estimateSerializedSize(object);
+    }
+
     /**
      * 写入一个对象到给的的byteBuf。
      * 用途：
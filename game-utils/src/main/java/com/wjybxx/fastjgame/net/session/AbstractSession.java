@@ -18,11 +18,13 @@ package com.wjybxx.fastjgame.net.session;
 
 import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
 import com.wjybxx.fastjgame.net.manager.NetManagerWrapper;
+import com.wjybxx.fastjgame.net.manager.RpcTimeoutManager;
+import com.wjybxx.fastjgame.net.manager.SessionFlushManager;
+import com.wjybxx.fastjgame.net.manager.SessionTickManager;
 import com.wjybxx.fastjgame.net.misc.NetContext;
 import com.wjybxx.fastjgame.util.annotation.Internal;
 import com.wjybxx.fastjgame.util.concurrent.EventLoop;
 import com.wjybxx.fastjgame.util.concurrent.EventLoopUtils;
-import com.wjybxx.fastjgame.util.timer.TimerHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,8 +48,6 @@ public abstract class AbstractSession implements Session {
     private static final int ST_CONNECTED = 1;
     private static final int ST_CLOSED = 2;
 
-    private static final int TICK_INTERVAL = 20;
-
     private final NetContext netContext;
     private final String sessionId;
     private final SessionConfig config;
@@ -68,9 +68,17 @@ public abstract class AbstractSession implements Session {
      */
     private final AtomicInteger stateHolder = new AtomicInteger(ST_BOUND);
     /**
-     * tick用的handle
+     * 负责调度session的tick
+     */
+    private final SessionTickManager tickManager;
+    /**
+     * rpc超时管理器
      */
-    private final TimerHandle tickHandle;
+    private final RpcTimeoutManager rpcTimeoutManager;
+    /**
+     * 延迟刷新管理器
+     */
+    private final SessionFlushManager flushManager;
     /**
      * 附加属性 - 非volatile，只有用户线程可以使用
      */
@@ -84,8 +92,11 @@ public abstract class AbstractSession implements Session {
         this.sessionRegistry = sessionRegistry;
         this.pipeline = new DefaultSessionPipeline(this, managerWrapper.getNetTimeManager());
         this.netEventLoop = managerWrapper.getNetEventLoopManager().getEventLoop();
-        this.tickHandle = managerWrapper.getNetTimerManager().newHeartbeatTimer(TICK_INTERVAL, this::tick);
+        this.tickManager = managerWrapper.getSessionTickManager();
+        this.rpcTimeoutManager = managerWrapper.getRpcTimeoutManager();
+        this.flushManager = managerWrapper.getSessionFlushManager();
         sessionRegistry.registerSession(this);
+        tickManager.register(this);
     }
 
     @Override
@@ -160,7 +171,6 @@ public abstract class AbstractSession implements Session {
     private void doCloseSafely() {
         try {
             sessionRegistry.removeSession(sessionId);
-            tickHandle.close();
             pipeline.fireClose();
         } catch (Throwable t) {
             logger.warn("doClose caught exception", t);
@@ -185,6 +195,7 @@ public abstract class AbstractSession implements Session {
     public void fireRead(@Nonnull Object msg) {
         ensureInNetEventLoop();
         pipeline.fireRead(msg);
+        requestTick();
     }
 
     @Internal
@@ -192,12 +203,14 @@ public abstract class AbstractSession implements Session {
     public void fireWrite(@Nonnull Object msg) {
         ensureInNetEventLoop();
         pipeline.fireWrite(msg);
+        requestTick();
     }
 
     @Override
     public void fireWriteAndFlush(@Nonnull Object msg) {
         ensureInNetEventLoop();
         pipeline.fireWriteAndFlush(msg);
+        requestTick();
     }
 
     /**
@@ -210,10 +223,39 @@ public abstract class AbstractSession implements Session {
     }
 
     /**
-     * tick刷帧 - 不暴露给应用层
+     * tick刷帧 - 不暴露给应用层。
+     * 建立连接的过程中（未激活），每一帧都需要tick。
      */
-    private void tick(TimerHandle handle) {
+    @Internal
+    public void tick() {
         pipeline.fireTick();
+        if (stateHolder.get() == ST_BOUND) {
+            requestTick();
+        }
+    }
+
+    /**
+     * 请求在下一帧进行tick，否则session只会按照{@link SessionTickManager#IDLE_TICK_INTERVAL}的间隔tick。
+     */
+    @Internal
+    public void requestTick() {
+        tickManager.requestTick(this);
+    }
+
+    /**
+     * @return session所在的NetEventLoop的rpc超时管理器 - 不暴露给应用层
+     */
+    @Internal
+    public RpcTimeoutManager rpcTimeoutManager() {
+        return rpcTimeoutManager;
+    }
+
+    /**
+     * @return session所在的NetEventLoop的延迟刷新管理器 - 不暴露给应用层
+     */
+    @Internal
+    public SessionFlushManager flushManager() {
+        return flushManager;
     }
 
     /**
@@ -115,6 +115,11 @@ abstract class AbstractSessionHandlerContext implements SessionHandlerContext {
         }
     }
 
+    @Override
+    public void requestTick() {
+        pipeline.requestTick();
+    }
+
     // --------------------------------------------------- inbound ----------------------------------------------
 
     @Override
@@ -41,7 +41,7 @@ class DefaultSessionPipeline implements SessionPipeline {
     private static final Logger logger = LoggerFactory.getLogger(DefaultSessionPipeline.class);
     private static final int TIMER_SYSTEM_CAPACITY = 5;
 
-    private final Session session;
+    private final AbstractSession session;
     private final TimerSystem timerSystem;
 
     /**
@@ -53,7 +53,7 @@ class DefaultSessionPipeline implements SessionPipeline {
      */
     private final HeadContext head;
 
-    DefaultSessionPipeline(Session session, TimeProvider timeProvider) {
+    DefaultSessionPipeline(AbstractSession session, TimeProvider timeProvider) {
         this.session = session;
         this.timerSystem = new DefaultTimerSystem(timeProvider, TIMER_SYSTEM_CAPACITY);
         this.tail = new TailContext(this);
@@ -251,6 +251,10 @@ class DefaultSessionPipeline implements SessionPipeline {
         } while (context != null);
     }
 
+    void requestTick() {
+        session.requestTick();
+    }
+
     // ------------------------------------------------- outbound -----------------------------------------------------
 
     @Override
@@ -16,6 +16,7 @@
 
 package com.wjybxx.fastjgame.net.session;
 
+import com.wjybxx.fastjgame.net.manager.SessionTickManager;
 import com.wjybxx.fastjgame.net.rpc.RpcProcessor;
 import com.wjybxx.fastjgame.net.serialization.Serializer;
 import com.wjybxx.fastjgame.util.CheckUtils;
@@ -84,6 +85,16 @@ public class SessionConfig {
         return sessionTimeoutMs;
     }
 
+    /**
+     * session空闲时允许的最大tick间隔，超时检测等逻辑依赖于空闲时的tick。
+     * 如果该值小于{@link SessionTickManager#IDLE_TICK_INTERVAL}，session不会停放在空闲时间轮上，而是每帧都tick。
+     *
+     * @return 毫秒
+     */
+    public long maxIdleTickIntervalMs() {
+        return sessionTimeoutMs;
+    }
+
     /**
      * @return rpc是否可用(是否启用rpc支持)
      */
@@ -78,4 +78,11 @@ public interface SessionHandlerContext extends SessionInboundInvoker, SessionOut
      * 刷帧
      */
     void tick();
+
+    /**
+     * 请求在下一帧tick该session。
+     * 空闲的session只会低频率的tick，如果handler还有需要尽快处理的工作（如：缓存的消息、待确认的消息），
+     * 则需要在tick的时候再次请求。
+     */
+    void requestTick();
 }
@@ -23,6 +23,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.channel.socket.DefaultSocketChannelConfig;
+import io.netty.util.concurrent.PromiseCombiner;
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,13 +48,56 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractSocketCodec.class);
 
+    /**
+     * 用户消息帧的帧头：长度字段(4) + 包类型(1) + sequence(8) + ack(8) + endOfBatch(1)
+     */
+    public static final int MESSAGE_FRAME_HEADER_LENGTH = 4 + 1 + 8 + 8 + 1;
+    /**
+     * rpc请求头：requestGuid(8) + sync(1)
+     */
+    public static final int RPC_REQUEST_HEADER_LENGTH = 8 + 1;
+    /**
+     * rpc响应头：requestGuid(8) + sync(1) + errorCode(4)
+     */
+    public static final int RPC_RESPONSE_HEADER_LENGTH = 8 + 1 + 4;
+    /**
+     * 用户消息帧中，可缓存内容的偏移量：帧头之后的内容与ack无关，重传时可以直接复用。
+     */
+    private static final int MESSAGE_PAYLOAD_OFFSET = MESSAGE_FRAME_HEADER_LENGTH;
+    /**
+     * 批量帧的帧头：长度字段(4) + 包类型(1)
+     */
+    private static final int BATCH_FRAME_HEADER_LENGTH = 4 + 1;
+    /**
+     * 批量帧的初始容量，不足时由netty自动扩容
+     */
+    private static final int BATCH_FRAME_INIT_CAPACITY = 4 * 1024;
+    /**
+     * 建立连接请求和应答的标记字节：close标记，之前的版本只会写入0或1
+     */
+    private static final int HANDSHAKE_FLAG_CLOSE = 1;
+    /**
+     * 建立连接请求和应答的标记字节：之后附带了压缩能力或协商结果
+     */
+    private static final int HANDSHAKE_FLAG_COMPRESSION = 1 << 1;
+
     /**
      * 序列化工具
      */
     private final Serializer serializer;
+    /**
+     * 允许的最大帧长度
+     */
+    private final int maxFrameLength;
+    /**
+     * 消息帧压缩器
+     */
+    private final FrameCompressor compressor;
 
-    protected AbstractSocketCodec(Serializer serializer) {
-        this.serializer = serializer;
+    protected AbstractSocketCodec(SocketSessionConfig config) {
+        this.serializer = config.serializer();
+        this.maxFrameLength = config.maxFrameLength();
+        this.compressor = new FrameCompressor(config);
     }
 
     /**
@@ -86,19 +130,74 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         ByteBuf msg = (ByteBuf) byteBuf;
         try {
             // 任何编解码出现问题都会在上层消息判断哪里出现问题，这里并不处理channel数据是否异常
-            byte pkgTypeNumber = msg.readByte();
-            NetMessageType netMessageType = NetMessageType.forNumber(pkgTypeNumber);
-            if (null == netMessageType) {
-                // 约定之外的包类型
-                throw new IOException("Unknown pkgTypeNumber: " + pkgTypeNumber);
+            NetMessageType netMessageType = readMessageType(msg);
+            if (netMessageType == NetMessageType.COMPRESSED_MESSAGE) {
+                readCompressedMessage(ctx, msg);
+            } else {
+                readFrame(ctx, netMessageType, msg);
             }
-            readMsg(ctx, netMessageType, msg);
         } finally {
             // 解码结束，释放资源
             msg.release();
         }
     }
 
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        compressor.close();
+        super.handlerRemoved(ctx);
+    }
+
+    private void readFrame(ChannelHandlerContext ctx, NetMessageType netMessageType, ByteBuf msg) throws Exception {
+        if (netMessageType == NetMessageType.BATCH_MESSAGE) {
+            readBatchMessage(ctx, msg);
+        } else {
+            readMsg(ctx, netMessageType, msg);
+        }
+    }
+
+    /**
+     * 解码压缩帧 - 解压缩之后按照普通的帧读取，压缩帧中可能是一个批量帧
+     */
+    private void readCompressedMessage(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+        final ByteBuf frame = compressor.decompress(ctx.alloc(), msg, maxFrameLength);
+        try {
+            final NetMessageType netMessageType = readMessageType(frame);
+            if (netMessageType == NetMessageType.COMPRESSED_MESSAGE) {
+                throw new IOException("Nested compressed message");
+            }
+            readFrame(ctx, netMessageType, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static NetMessageType readMessageType(ByteBuf msg) throws IOException {
+        byte pkgTypeNumber = msg.readByte();
+        NetMessageType netMessageType = NetMessageType.forNumber(pkgTypeNumber);
+        if (null == netMessageType) {
+            // 约定之外的包类型
+            throw new IOException("Unknown pkgTypeNumber: " + pkgTypeNumber);
+        }
+        return netMessageType;
+    }
+
+    /**
+     * 解码批量帧 - 依次切分出其中的每一个消息帧，按照普通的消息帧读取。
+     * 切片共享批量帧的内存，解码是同步的，因此不需要额外的引用计数。
+     */
+    private void readBatchMessage(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+        while (msg.isReadable()) {
+            final int frameLength = msg.readInt();
+            final ByteBuf frame = msg.readSlice(frameLength);
+            final NetMessageType netMessageType = readMessageType(frame);
+            if (netMessageType == NetMessageType.BATCH_MESSAGE || netMessageType == NetMessageType.COMPRESSED_MESSAGE) {
+                throw new IOException("Unexpected message type in batch message " + netMessageType);
+            }
+            readMsg(ctx, netMessageType, frame);
+        }
+    }
+
     /**
      * 子类真正的读取数据
      *
@@ -116,6 +215,18 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
      * @throws Exception error
      */
     protected final void writeBatchMessage(ChannelHandlerContext ctx, BatchSocketMessageTO batchSocketMessageTO, ChannelPromise promise) throws Exception {
+        try {
+            if (batchSocketMessageTO.maxBatchFrameLength() > 0) {
+                writeBatchFrame(ctx, batchSocketMessageTO, promise);
+            } else {
+                writeBatchMessageOneByOne(ctx, batchSocketMessageTO, promise);
+            }
+        } finally {
+            batchSocketMessageTO.recycle();
+        }
+    }
+
+    private void writeBatchMessageOneByOne(ChannelHandlerContext ctx, BatchSocketMessageTO batchSocketMessageTO, ChannelPromise promise) throws Exception {
         // 批量协议包 - 主要是这里的list不一定是arrayList，因此不能消除iterator
         final long ack = batchSocketMessageTO.getAck();
         final int size = batchSocketMessageTO.getSocketMessageList().size();
@@ -128,6 +239,191 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         promise.trySuccess();
     }
 
+    /**
+     * 将批量消息编码到连续的批量帧中，一次write发送多个消息。
+     * 批量帧超过最大长度时，将最后一个消息移动到新的批量帧；单个消息加上批量帧头就超过最大长度时，该消息按普通的消息帧单独发送。
+     * 拆分为多个帧时，所有帧都发送成功之后才通知promise。
+     */
+    private void writeBatchFrame(ChannelHandlerContext ctx, BatchSocketMessageTO batchSocketMessageTO, ChannelPromise promise) throws Exception {
+        final int maxFrameLength = batchSocketMessageTO.maxBatchFrameLength();
+        final long ack = batchSocketMessageTO.getAck();
+        final int size = batchSocketMessageTO.getSocketMessageList().size();
+        final Iterator<SocketMessage> iterator = batchSocketMessageTO.getSocketMessageList().iterator();
+
+        // 只有发生拆分且需要追踪结果时才创建
+        PromiseCombiner promiseCombiner = null;
+        ByteBuf frame = newBatchFrame(ctx, maxFrameLength);
+        try {
+            for (int count = 1; iterator.hasNext(); count++) {
+                final int subFrameIndex = frame.writerIndex();
+                writeSubFrame(frame, ack, count == size, iterator.next());
+                final int subFrameLength = frame.writerIndex() - subFrameIndex;
+
+                if (BATCH_FRAME_HEADER_LENGTH + subFrameLength > maxFrameLength) {
+                    // 放入批量帧之后对方无法解码，子帧本身就是一个完整的消息帧(与writeSingleMsg的输出相同)，单独发送
+                    final ByteBuf fullFrame = frame;
+                    frame = newBatchFrame(ctx, maxFrameLength);
+                    final ByteBuf singleFrame = fullFrame.retainedSlice(subFrameIndex, subFrameLength);
+                    if (subFrameIndex > BATCH_FRAME_HEADER_LENGTH) {
+                        // 先发送之前的消息
+                        fullFrame.writerIndex(subFrameIndex);
+                        try {
+                            promiseCombiner = writeSplitFrame(ctx, fullFrame, promise, promiseCombiner);
+                        } catch (Throwable e) {
+                            singleFrame.release();
+                            throw e;
+                        }
+                    } else {
+                        fullFrame.release();
+                    }
+                    promiseCombiner = writeSplitFrame(ctx, singleFrame, promise, promiseCombiner);
+                } else if (frame.readableBytes() > maxFrameLength && subFrameIndex > BATCH_FRAME_HEADER_LENGTH) {
+                    // 超过最大帧长度，先发送之前的消息
+                    final ByteBuf fullFrame = frame;
+                    frame = newBatchFrame(ctx, subFrameLength);
+                    frame.writeBytes(fullFrame, subFrameIndex, subFrameLength);
+                    fullFrame.writerIndex(subFrameIndex);
+                    promiseCombiner = writeSplitFrame(ctx, fullFrame, promise, promiseCombiner);
+                }
+            }
+        } catch (Throwable e) {
+            // 已编码的消息由writeSubFrame释放，这里释放当前帧和尚未编码的消息
+            frame.release();
+            while (iterator.hasNext()) {
+                releaseSocketMessage(iterator.next());
+            }
+            throw e;
+        }
+
+        if (frame.readableBytes() == BATCH_FRAME_HEADER_LENGTH) {
+            // 没有剩余的消息
+            frame.release();
+            if (promiseCombiner == null) {
+                promise.trySuccess();
+            } else {
+                promiseCombiner.finish(promise);
+            }
+            return;
+        }
+
+        if (promiseCombiner == null) {
+            setLengthAndWrite(ctx, frame, promise);
+            return;
+        }
+        final ChannelPromise framePromise = ctx.newPromise();
+        promiseCombiner.add(framePromise);
+        setLengthAndWrite(ctx, frame, framePromise);
+        promiseCombiner.finish(promise);
+    }
+
+    /**
+     * 发送拆分出的一个帧，需要追踪结果时，将该帧的promise合并到{@link PromiseCombiner}中。
+     *
+     * @return 合并后的promiseCombiner，不需要追踪结果时为null
+     */
+    @Nullable
+    private PromiseCombiner writeSplitFrame(ChannelHandlerContext ctx, ByteBuf frame, ChannelPromise promise, @Nullable PromiseCombiner promiseCombiner) {
+        if (promise.isVoid()) {
+            setLengthAndWrite(ctx, frame, ctx.voidPromise());
+            return null;
+        }
+        if (promiseCombiner == null) {
+            promiseCombiner = new PromiseCombiner(ctx.executor());
+        }
+        final ChannelPromise framePromise = ctx.newPromise();
+        promiseCombiner.add(framePromise);
+        setLengthAndWrite(ctx, frame, framePromise);
+        return promiseCombiner;
+    }
+
+    /**
+     * 释放一个未编码的消息持有的引用
+     */
+    private static void releaseSocketMessage(SocketMessage socketMessage) {
+        if (socketMessage instanceof EncodedSocketMessage) {
+            ((EncodedSocketMessage) socketMessage).getEncodedPayload().release();
+        } else {
+            SerializedBody.releaseBody(socketMessage.getWrappedMessage());
+        }
+    }
+
+    private static ByteBuf newBatchFrame(ChannelHandlerContext ctx, int minCapacity) {
+        final ByteBuf byteBuf = ctx.alloc().buffer(BATCH_FRAME_HEADER_LENGTH + Math.max(minCapacity, BATCH_FRAME_INIT_CAPACITY));
+        byteBuf.writeInt(0);
+        byteBuf.writeByte(NetMessageType.BATCH_MESSAGE.pkgType);
+        return byteBuf;
+    }
+
+    /**
+     * 将一个消息编码为完整的消息帧，追加到批量帧中。
+     * 与单独发送时的格式相同，但是内容会被拷贝到批量帧中，无论成功与否，都会释放消息持有的引用。
+     */
+    private void writeSubFrame(ByteBuf frame, long ack, boolean endOfBatch, SocketMessage socketMessage) throws IOException {
+        final int lengthIndex = frame.writerIndex();
+        if (socketMessage instanceof EncodedSocketMessage) {
+            final EncodedSocketMessage encodedSocketMessage = (EncodedSocketMessage) socketMessage;
+            final ByteBuf encodedPayload = encodedSocketMessage.getEncodedPayload();
+            try {
+                writeSubFrameHeader(frame, encodedSocketMessage.getMessageType(), encodedSocketMessage.getSequence(), ack, endOfBatch);
+                frame.writeBytes(encodedPayload, encodedPayload.readerIndex(), encodedPayload.readableBytes());
+            } finally {
+                encodedPayload.release();
+            }
+            frame.setInt(lengthIndex, frame.writerIndex() - lengthIndex - 4);
+            return;
+        }
+
+        final NetMessage wrappedMessage = socketMessage.getWrappedMessage();
+        if (wrappedMessage == null) {
+            // 同writeSingleMsg，丢弃即可
+            return;
+        }
+        try {
+            writeSubFrameBody(frame, ack, endOfBatch, socketMessage.getSequence(), wrappedMessage);
+        } finally {
+            SerializedBody.releaseBody(wrappedMessage);
+        }
+        frame.setInt(lengthIndex, frame.writerIndex() - lengthIndex - 4);
+    }
+
+    private void writeSubFrameBody(ByteBuf frame, long ack, boolean endOfBatch, long sequence, NetMessage wrappedMessage) throws IOException {
+        writeSubFrameHeader(frame, wrappedMessage.type(), sequence, ack, endOfBatch);
+        switch (wrappedMessage.type()) {
+            case RPC_REQUEST: {
+                final RpcRequestMessage requestMessage = (RpcRequestMessage) wrappedMessage;
+                writeRpcRequestHeader(frame, requestMessage);
+                writeLogicMessageBody(frame, requestMessage.getBody());
+                break;
+            }
+            case RPC_RESPONSE: {
+                final RpcResponseMessage responseMessage = (RpcResponseMessage) wrappedMessage;
+                writeRpcResponseHeader(frame, responseMessage);
+                if (responseMessage.getErrorCode().isSuccess()) {
+                    writeLogicMessageBody(frame, responseMessage.getBody());
+                } else {
+                    frame.writeBytes(CodecUtils.getBytesUTF8((String) responseMessage.getBody()));
+                }
+                break;
+            }
+            case ONE_WAY_MESSAGE:
+                writeLogicMessageBody(frame, ((OneWayMessage) wrappedMessage).getBody());
+                break;
+            default:
+                throw new IOException("Unexpected message type " + wrappedMessage.type());
+        }
+    }
+
+    /**
+     * 写入消息帧的长度占位符、包类型以及捎带确认信息
+     */
+    private static void writeSubFrameHeader(ByteBuf frame, NetMessageType netMessageType, long sequence, long ack, boolean endOfBatch) {
+        frame.writeInt(0);
+        frame.writeByte(netMessageType.pkgType);
+        frame.writeLong(sequence);
+        frame.writeLong(ack);
+        frame.writeByte(endOfBatch ? 1 : 0);
+    }
+
     /**
      * 单个消息传输
      *
@@ -140,7 +436,18 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
     }
 
     private void writeSingleMsg(ChannelHandlerContext ctx, long ack, boolean endOfBatch, SocketMessage socketMessage, ChannelPromise promise) throws Exception {
-        switch (socketMessage.getWrappedMessage().type()) {
+        if (socketMessage instanceof EncodedSocketMessage) {
+            // 重传已编码的消息
+            writeEncodedMessage(ctx, ack, endOfBatch, (EncodedSocketMessage) socketMessage, promise);
+            return;
+        }
+        final NetMessage wrappedMessage = socketMessage.getWrappedMessage();
+        if (wrappedMessage == null) {
+            // 原始消息已释放 - 发送时总是持有原始消息的引用，正常情况下不会出现，丢弃即可
+            promise.trySuccess();
+            return;
+        }
+        switch (wrappedMessage.type()) {
             case RPC_REQUEST:
                 // rpc请求
                 writeRpcRequestMessage(ctx, ack, endOfBatch, socketMessage, promise);
@@ -154,12 +461,33 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
                 writeOneWayMessage(ctx, ack, endOfBatch, socketMessage, promise);
                 break;
             default:
-                throw new IOException("Unexpected message type " + socketMessage.getWrappedMessage().type());
+                throw new IOException("Unexpected message type " + wrappedMessage.type());
         }
     }
 
+    /**
+     * 编码已编码的消息 - 只需要写入新的协议头，然后与已编码的内容组合发送
+     */
+    private void writeEncodedMessage(ChannelHandlerContext ctx, long ack, boolean endOfBatch, EncodedSocketMessage encodedSocketMessage, ChannelPromise promise) {
+        final ByteBuf byteBuf = newByteBuf(ctx, 8 + 8 + 1, encodedSocketMessage.getMessageType());
+
+        byteBuf.writeLong(encodedSocketMessage.getSequence());
+        byteBuf.writeLong(ack);
+        byteBuf.writeByte(endOfBatch ? 1 : 0);
+
+        // 组合后的byteBuf释放时消耗已编码内容的一个引用
+        setLengthAndWrite(ctx, Unpooled.wrappedBuffer(byteBuf, encodedSocketMessage.getEncodedPayload()), promise);
+    }
+
     // ---------------------------------------------- 请求和应答协议  ---------------------------------------
 
+    /**
+     * 建立连接请求和应答中的标记字节，未开启压缩时只有close标记，与之前的版本一致
+     */
+    private static int handshakeFlags(boolean close, boolean compression) {
+        return (close ? HANDSHAKE_FLAG_CLOSE : 0) | (compression ? HANDSHAKE_FLAG_COMPRESSION : 0);
+    }
+
     /**
      * 编码协议1 - 连接请求
      *
@@ -171,7 +499,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         final SocketConnectRequest socketConnectRequest = socketConnectRequestTO.getConnectRequest();
         final byte[] sessionIdBytes = CodecUtils.getBytesUTF8(sessionId);
 
-        final int contentLength = 4 + 4 + 8 + 8 + 1 + sessionIdBytes.length;
+        final boolean offer = compressor.hasOffer();
+        final int contentLength = 4 + 4 + 8 + 8 + 1 + (offer ? FrameCompressor.OFFER_LENGTH : 0) + sessionIdBytes.length;
         ByteBuf byteBuf = newByteBuf(ctx, contentLength, NetMessageType.CONNECT_REQUEST);
 
         byteBuf.writeInt(socketConnectRequest.getVerifyingTimes());
@@ -179,7 +508,12 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
 
         byteBuf.writeLong(socketConnectRequestTO.getInitSequence());
         byteBuf.writeLong(socketConnectRequestTO.getAck());
-        byteBuf.writeByte(socketConnectRequestTO.isClose() ? 1 : 0);
+        byteBuf.writeByte(handshakeFlags(socketConnectRequestTO.isClose(), offer));
+
+        // 压缩能力 - 只有开启压缩时才附带
+        if (offer) {
+            compressor.writeOffer(byteBuf);
+        }
 
         // sessionId放最后可以省去长度标记
         byteBuf.writeBytes(sessionIdBytes);
@@ -198,7 +532,11 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         // initSequence和ack
         long initSequence = msg.readLong();
         long ack = msg.readLong();
-        boolean close = msg.readByte() == 1;
+        int flags = msg.readByte();
+        boolean close = (flags & HANDSHAKE_FLAG_CLOSE) != 0;
+
+        // 压缩能力
+        compressor.readOffer(msg, (flags & HANDSHAKE_FLAG_COMPRESSION) != 0);
 
         // sessionId
         byte[] sessionIdBytes = readRemainBytes(msg);
@@ -212,7 +550,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
      * 编码协议2 - 建立连接应答
      */
     final void writeConnectResponse(ChannelHandlerContext ctx, SocketConnectResponseTO socketConnectResponseTO, ChannelPromise promise) {
-        ByteBuf byteBuf = newByteBuf(ctx, 1 + 4 + 4 + 8 + 8 + 1, NetMessageType.CONNECT_RESPONSE);
+        final boolean answer = compressor.hasAnswer();
+        ByteBuf byteBuf = newByteBuf(ctx, 1 + 4 + 4 + 8 + 8 + 1 + (answer ? FrameCompressor.ANSWER_LENGTH : 0), NetMessageType.CONNECT_RESPONSE);
         SocketConnectResponse socketConnectResponse = socketConnectResponseTO.getConnectResponse();
 
         // 建立连接结果
@@ -223,7 +562,10 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         // initSequence和ack
         byteBuf.writeLong(socketConnectResponseTO.getInitSequence());
         byteBuf.writeLong(socketConnectResponseTO.getAck());
-        byteBuf.writeByte(socketConnectResponseTO.isClose() ? 1 : 0);
+        byteBuf.writeByte(handshakeFlags(socketConnectResponseTO.isClose(), answer));
+
+        // 压缩协商结果 - 只有客户端附带了压缩能力时才附带，之后的消息开始压缩
+        compressor.writeAnswer(byteBuf);
 
         setLengthAndWrite(ctx, byteBuf, promise);
     }
@@ -238,7 +580,11 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
 
         long initSequence = msg.readLong();
         long ack = msg.readLong();
-        boolean close = msg.readByte() == 1;
+        int flags = msg.readByte();
+        boolean close = (flags & HANDSHAKE_FLAG_CLOSE) != 0;
+
+        // 压缩协商结果
+        compressor.readAnswer(msg, (flags & HANDSHAKE_FLAG_COMPRESSION) != 0);
 
         SocketConnectResponse socketConnectResponse = new SocketConnectResponse(success, verifyingTimes, verifiedTimes);
         return new SocketConnectResponseEvent(channel, sessionId, initSequence, ack, close, socketConnectResponse);
@@ -277,8 +623,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
      */
     private void writeRpcRequestMessage(ChannelHandlerContext ctx, long ack, boolean endOfBatch, SocketMessage socketMessage, ChannelPromise promise) {
         final RpcRequestMessage requestMessage = (RpcRequestMessage) socketMessage.getWrappedMessage();
-        final int bodySize = serializer.estimateSerializedSize(requestMessage.getBody());
-        final ByteBuf byteBuf = newByteBuf(ctx, 8 + 8 + 1 + 8 + 1 + bodySize, NetMessageType.RPC_REQUEST);
+        final int bodySize = estimateBodySize(requestMessage.getBody());
+        final ByteBuf byteBuf = newByteBuf(ctx, 8 + 8 + 1 + RPC_REQUEST_HEADER_LENGTH + bodySize, NetMessageType.RPC_REQUEST);
 
         // 捎带确认消息
         byteBuf.writeLong(socketMessage.getSequence());
@@ -286,11 +632,15 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         byteBuf.writeByte(endOfBatch ? 1 : 0);
 
         // rpc请求头
-        byteBuf.writeLong(requestMessage.getRequestGuid());
-        byteBuf.writeByte(requestMessage.isSync() ? 1 : 0);
+        writeRpcRequestHeader(byteBuf, requestMessage);
 
         // rpc请求内容 - 合并之后发送
-        writeLogicMessageBodyAndWrite(ctx, byteBuf, requestMessage.getBody(), promise);
+        writeLogicMessageBodyAndWrite(ctx, socketMessage, byteBuf, requestMessage.getBody(), promise);
+    }
+
+    private static void writeRpcRequestHeader(ByteBuf byteBuf, RpcRequestMessage requestMessage) {
+        byteBuf.writeLong(requestMessage.getRequestGuid());
+        byteBuf.writeByte(requestMessage.isSync() ? 1 : 0);
     }
 
     /**
@@ -308,8 +658,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         // 方法描述信息 - 不限制结构
         Object rpcMethodSpec = tryDecodeBody(msg);
 
-        RpcRequestMessage rpcRequestMessage = new RpcRequestMessage(requestGuid, sync, rpcMethodSpec);
-        return new SocketMessageEvent(channel, sessionId, sequence, ack, endOfBatch, rpcRequestMessage);
+        RpcRequestMessage rpcRequestMessage = RpcRequestMessage.newInstance(requestGuid, sync, rpcMethodSpec);
+        return SocketMessageEvent.newInstance(channel, sessionId, sequence, ack, endOfBatch, rpcRequestMessage);
     }
 
     /**
@@ -317,8 +667,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
      */
     private void writeRpcResponseMessage(ChannelHandlerContext ctx, long ack, boolean endOfBatch, SocketMessage socketMessage, ChannelPromise promise) {
         final RpcResponseMessage responseMessage = (RpcResponseMessage) socketMessage.getWrappedMessage();
-        final int bodySize = serializer.estimateSerializedSize(responseMessage.getBody());
-        final ByteBuf byteBuf = newByteBuf(ctx, 8 + 8 + 1 + 8 + 1 + 4 + bodySize, NetMessageType.RPC_RESPONSE);
+        final int bodySize = estimateBodySize(responseMessage.getBody());
+        final ByteBuf byteBuf = newByteBuf(ctx, 8 + 8 + 1 + RPC_RESPONSE_HEADER_LENGTH + bodySize, NetMessageType.RPC_RESPONSE);
 
         // 捎带确认信息
         byteBuf.writeLong(socketMessage.getSequence());
@@ -326,23 +676,27 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         byteBuf.writeByte(endOfBatch ? 1 : 0);
 
         // rpc响应头
-        byteBuf.writeLong(responseMessage.getRequestGuid());
-        byteBuf.writeByte(responseMessage.isSync() ? 1 : 0);
-        byteBuf.writeInt(responseMessage.getErrorCode().getNumber());
+        writeRpcResponseHeader(byteBuf, responseMessage);
 
         if (responseMessage.getErrorCode().isSuccess()) {
             // rpc响应内容 - 合并之后发送
-            writeLogicMessageBodyAndWrite(ctx, byteBuf, responseMessage.getBody(), promise);
+            writeLogicMessageBodyAndWrite(ctx, socketMessage, byteBuf, responseMessage.getBody(), promise);
         } else {
             // 错误信息直接编码
             final String errorMsg = (String) responseMessage.getBody();
             final byte[] errorMsgBytes = CodecUtils.getBytesUTF8(errorMsg);
             final ByteBuf bodyByteBuf = ctx.alloc().buffer(errorMsgBytes.length);
             bodyByteBuf.writeBytes(errorMsgBytes);
-            setLengthAndWrite(ctx, Unpooled.wrappedBuffer(byteBuf, bodyByteBuf), promise);
+            setLengthAndWrite(ctx, socketMessage, Unpooled.wrappedBuffer(byteBuf, bodyByteBuf), promise);
         }
     }
 
+    private static void writeRpcResponseHeader(ByteBuf byteBuf, RpcResponseMessage responseMessage) {
+        byteBuf.writeLong(responseMessage.getRequestGuid());
+        byteBuf.writeByte(responseMessage.isSync() ? 1 : 0);
+        byteBuf.writeInt(responseMessage.getErrorCode().getNumber());
+    }
+
     /**
      * 解码rpc响应包
      */
@@ -365,8 +719,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
             body = CodecUtils.newStringUTF8(readRemainBytes(msg));
         }
 
-        RpcResponseMessage rpcResponseMessage = new RpcResponseMessage(requestGuid, sync, errorCode, body);
-        return new SocketMessageEvent(channel, sessionId, sequence, ack, endOfBatch, rpcResponseMessage);
+        RpcResponseMessage rpcResponseMessage = RpcResponseMessage.newInstance(requestGuid, sync, errorCode, body);
+        return SocketMessageEvent.newInstance(channel, sessionId, sequence, ack, endOfBatch, rpcResponseMessage);
     }
 
     // ------------------------------------------ 单向消息 --------------------------------------------
@@ -376,7 +730,7 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
      */
     private void writeOneWayMessage(ChannelHandlerContext ctx, long ack, boolean endOfBatch, SocketMessage socketMessage, ChannelPromise promise) {
         final OneWayMessage oneWayMessage = (OneWayMessage) socketMessage.getWrappedMessage();
-        final int bodySize = serializer.estimateSerializedSize(oneWayMessage.getBody());
+        final int bodySize = estimateBodySize(oneWayMessage.getBody());
         final ByteBuf byteBuf = newByteBuf(ctx, 8 + 8 + 1 + bodySize, NetMessageType.ONE_WAY_MESSAGE);
 
         // 捎带确认
@@ -385,7 +739,7 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         byteBuf.writeByte(endOfBatch ? 1 : 0);
 
         // 合并之后发送
-        writeLogicMessageBodyAndWrite(ctx, byteBuf, oneWayMessage.getBody(), promise);
+        writeLogicMessageBodyAndWrite(ctx, socketMessage, byteBuf, oneWayMessage.getBody(), promise);
     }
 
     /**
@@ -400,8 +754,8 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
         // 消息内容
         Object message = tryDecodeBody(msg);
 
-        OneWayMessage oneWayMessage = new OneWayMessage(message);
-        return new SocketMessageEvent(channel, sessionId, sequence, ack, endOfBatch, oneWayMessage);
+        OneWayMessage oneWayMessage = OneWayMessage.newInstance(message);
+        return SocketMessageEvent.newInstance(channel, sessionId, sequence, ack, endOfBatch, oneWayMessage);
     }
 
     // ---------------------------------------------- 分割线 ----------------------------------------------------
@@ -409,12 +763,51 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
     /**
      * 写入逻辑消息的内容并发送
      *
-     * @param byteBuf 协议头
+     * @param socketMessage 正在编码的消息
+     * @param byteBuf       协议头
+     * @param body          待编码的body
+     */
+    private void writeLogicMessageBodyAndWrite(ChannelHandlerContext ctx, SocketMessage socketMessage, ByteBuf byteBuf, Object body, ChannelPromise promise) {
+        if (body instanceof SerializedBody) {
+            // 已预序列化，只需要组合协议头和内容，组合后的byteBuf持有内容的一个独立引用，由netty在发送完成或失败时释放
+            // 消息持有的引用无论发送成功与否都在这里释放，避免向已关闭的channel写入时泄漏
+            // 重传时也不需要再次序列化，因此不缓存编码结果
+            final SerializedBody serializedBody = (SerializedBody) body;
+            try {
+                final ByteBuf content = serializedBody.content().retainedDuplicate();
+                setLengthAndWrite(ctx, Unpooled.wrappedBuffer(byteBuf, content), promise);
+            } finally {
+                serializedBody.release();
+            }
+            return;
+        }
+        tryEncodeBody(byteBuf, body);
+        setLengthAndWrite(ctx, socketMessage, byteBuf, promise);
+    }
+
+    /**
+     * 将逻辑消息的内容写入到指定byteBuf中，预序列化的内容由调用者释放
+     *
+     * @param byteBuf 要写入的对象
      * @param body    待编码的body
      */
-    private void writeLogicMessageBodyAndWrite(ChannelHandlerContext ctx, ByteBuf byteBuf, Object body, ChannelPromise promise) {
+    private void writeLogicMessageBody(ByteBuf byteBuf, Object body) {
+        if (body instanceof SerializedBody) {
+            final ByteBuf content = ((SerializedBody) body).content();
+            byteBuf.writeBytes(content, content.readerIndex(), content.readableBytes());
+            return;
+        }
         tryEncodeBody(byteBuf, body);
-        setLengthAndWrite(ctx, byteBuf, promise);
+    }
+
+    /**
+     * 计算body序列化后的大小，已预序列化的内容不需要额外的空间
+     */
+    private int estimateBodySize(Object body) {
+        if (body instanceof SerializedBody) {
+            return 0;
+        }
+        return serializer.computeBufferSize(body);
     }
 
     /**
@@ -476,15 +869,39 @@ public abstract class AbstractSocketCodec extends ChannelDuplexHandler {
     }
 
     /**
-     * 设置长度字段并发送
+     * 设置长度字段并发送，协商启用压缩后，达到阈值的用户消息会被压缩
      *
      * @param ctx     handlerContext，用于将数据发送出去
      * @param byteBuf 待发送的数据包
      * @param promise 操作回执
      */
-    private static void setLengthAndWrite(ChannelHandlerContext ctx, ByteBuf byteBuf, ChannelPromise promise) {
-        byteBuf.setInt(0, byteBuf.readableBytes() - 4);
-        ctx.write(byteBuf, promise);
+    private void setLengthAndWrite(ChannelHandlerContext ctx, ByteBuf byteBuf, ChannelPromise promise) {
+        final ByteBuf frame;
+        try {
+            frame = compressor.tryCompress(ctx.alloc(), byteBuf);
+        } catch (Throwable e) {
+            byteBuf.release();
+            throw e;
+        }
+        frame.setInt(0, frame.readableBytes() - 4);
+        ctx.write(frame, promise);
+    }
+
+    /**
+     * 设置长度字段并发送，如果消息需要缓存编码结果，则在发送前保留捎带确认字段之后的内容
+     *
+     * @param socketMessage 正在编码的消息
+     * @param byteBuf       待发送的数据包
+     */
+    private void setLengthAndWrite(ChannelHandlerContext ctx, SocketMessage socketMessage, ByteBuf byteBuf, ChannelPromise promise) {
+        if (socketMessage.isCacheEncodedPayload()) {
+            // 共享底层内存，不拷贝 - 缓存的是未压缩的内容，重传时重新压缩
+            final ByteBuf payload = byteBuf.retainedSlice(MESSAGE_PAYLOAD_OFFSET, byteBuf.readableBytes() - MESSAGE_PAYLOAD_OFFSET);
+            if (!socketMessage.cacheEncodedPayload(payload)) {
+                payload.release();
+            }
+        }
+        setLengthAndWrite(ctx, byteBuf, promise);
     }
 
     /**
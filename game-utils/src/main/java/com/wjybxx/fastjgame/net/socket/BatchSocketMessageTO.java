@@ -31,4 +31,21 @@ public interface BatchSocketMessageTO {
 
     List<SocketMessage> getSocketMessageList();
 
+    /**
+     * 是否将所有消息编码到连续的批量帧中({@link com.wjybxx.fastjgame.net.rpc.NetMessageType#BATCH_MESSAGE})，
+     * 而不是每个消息一个帧。
+     *
+     * @return 单个批量帧的最大长度，超过该长度时拆分为多个批量帧。0表示不使用批量帧。
+     */
+    default int maxBatchFrameLength() {
+        return 0;
+    }
+
+    /**
+     * 编码完成之后由codec调用，回收到对象池，调用之后不可以再使用该对象。
+     */
+    default void recycle() {
+
+    }
+
 }
@@ -18,7 +18,6 @@ package com.wjybxx.fastjgame.net.socket;
 
 import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
 import com.wjybxx.fastjgame.net.rpc.NetMessageType;
-import com.wjybxx.fastjgame.net.serialization.Serializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
@@ -54,8 +53,8 @@ public class ClientSocketCodec extends AbstractSocketCodec {
      */
     private final NetEventLoop netEventLoop;
 
-    public ClientSocketCodec(Serializer serializer, String sessionId, NetEventLoop netEventLoop) {
-        super(serializer);
+    public ClientSocketCodec(SocketSessionConfig config, String sessionId, NetEventLoop netEventLoop) {
+        super(config);
         this.sessionId = sessionId;
         this.netEventLoop = netEventLoop;
     }
@@ -164,6 +163,6 @@ public class ClientSocketCodec extends AbstractSocketCodec {
     }
 
     private void publish(@Nonnull SocketEvent event) {
-        netEventLoop.post(new GenericSocketEvent<>(event, false));
+        netEventLoop.fireSocketEvent(event, false);
     }
 }
@@ -18,8 +18,13 @@ package com.wjybxx.fastjgame.net.socket;
 import com.wjybxx.fastjgame.net.misc.HostAndPort;
 import io.netty.channel.Channel;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * 绑定端口结果
+ * <p>
+ * 使用SO_REUSEPORT时，同一个端口上会有多个监听socket，{@link #channel()}返回第一个，关闭时全部关闭。
  *
  * @author wjybxx
  * @version 1.0
@@ -28,17 +33,31 @@ import io.netty.channel.Channel;
  */
 public class DefaultSocketPort implements SocketPort {
 
-    private final Channel channel;
+    private final List<Channel> channels;
     private final HostAndPort hostAndPort;
 
     public DefaultSocketPort(Channel channel, HostAndPort hostAndPort) {
-        this.channel = channel;
+        this(Collections.singletonList(channel), hostAndPort);
+    }
+
+    public DefaultSocketPort(List<Channel> channels, HostAndPort hostAndPort) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("channels is empty");
+        }
+        this.channels = List.copyOf(channels);
         this.hostAndPort = hostAndPort;
     }
 
     @Override
     public Channel channel() {
-        return channel;
+        return channels.get(0);
+    }
+
+    /**
+     * @return 该端口上的全部监听channel
+     */
+    public List<Channel> channels() {
+        return channels;
     }
 
     @Override
@@ -48,7 +67,9 @@ public class DefaultSocketPort implements SocketPort {
 
     @Override
     public void close() {
-        channel.close();
+        for (Channel channel : channels) {
+            channel.close();
+        }
     }
 
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.net.rpc.NetMessage;
+import com.wjybxx.fastjgame.net.rpc.NetMessageType;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 已编码的socket消息 - 重传时使用。
+ * 它持有消息首次编码时的内容(捎带确认字段之后的部分)，编码器只需要写入新的协议头，然后组合发送，不再序列化消息内容。
+ * <p>
+ * 编码器会消耗{@link #getEncodedPayload()}的一个引用，因此每个实例只能发送一次。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public final class EncodedSocketMessage implements SocketMessage {
+
+    private final long sequence;
+    private final NetMessageType messageType;
+    private final ByteBuf encodedPayload;
+
+    /**
+     * @param sequence       消息的sequence
+     * @param messageType    消息的类型
+     * @param encodedPayload 已编码的内容，调用者需要为编码器保留一个引用
+     */
+    public EncodedSocketMessage(long sequence, NetMessageType messageType, ByteBuf encodedPayload) {
+        this.sequence = sequence;
+        this.messageType = messageType;
+        this.encodedPayload = encodedPayload;
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return null，消息内容已编码，原始消息可能已被释放
+     */
+    @Override
+    public NetMessage getWrappedMessage() {
+        return null;
+    }
+
+    public NetMessageType getMessageType() {
+        return messageType;
+    }
+
+    public ByteBuf getEncodedPayload() {
+        return encodedPayload;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.socket;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongComparator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Adler32;
+
+/**
+ * 消息帧压缩的工具方法和统计信息。
+ * <p>
+ * 压缩使用jdk自带的zlib(deflate)，每一帧独立压缩，因此断线重连、消息重传都不受影响。
+ * 对于结构相似的消息(比如场景快照)，单个消息内部的重复内容有限，而消息之间的重复内容(字段名、类型信息、常见的值)很多，
+ * 因此支持预置字典：通过{@link #trainDictionary(Collection, int)}从样本消息中训练出一个字典，配置到通信双方，
+ * 建立连接时双方协商，字典一致时才使用字典。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class FrameCompression {
+
+    /**
+     * 训练字典时使用的片段长度，刚好可以用一个long表示
+     */
+    private static final int SEGMENT_LENGTH = 8;
+
+    static final LongAdder compressedFrames = new LongAdder();
+    static final LongAdder compressBytesIn = new LongAdder();
+    static final LongAdder compressBytesOut = new LongAdder();
+    static final LongAdder skippedFrames = new LongAdder();
+    static final LongAdder decompressedFrames = new LongAdder();
+    static final LongAdder decompressBytesIn = new LongAdder();
+    static final LongAdder decompressBytesOut = new LongAdder();
+
+    private FrameCompression() {
+
+    }
+
+    /**
+     * 计算字典的id，与zlib协议中的字典id(adler32)相同，协商时用于判断双方的字典是否一致。
+     *
+     * @param dictionary 字典内容
+     * @return 字典id
+     */
+    public static int dictionaryId(byte[] dictionary) {
+        final Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        return (int) adler32.getValue();
+    }
+
+    /**
+     * 从样本消息中训练一个字典。
+     * <p>
+     * 算法很简单：统计每个固定长度的片段出现在多少个样本中，按照出现的样本数从多到少选择片段，
+     * 直到达到字典大小。deflate优先匹配距离近的内容，因此出现次数越多的片段放在越靠后的位置。
+     *
+     * @param samples           样本消息(完整的序列化结果)，样本应当覆盖常见的消息类型
+     * @param maxDictionarySize 字典的最大字节数，deflate的窗口为32KB，超过窗口的部分是无效的
+     * @return 字典内容，如果样本之间没有公共的内容，则返回空数组
+     */
+    public static byte[] trainDictionary(Collection<byte[]> samples, int maxDictionarySize) {
+        if (maxDictionarySize <= 0) {
+            throw new IllegalArgumentException("maxDictionarySize " + maxDictionarySize);
+        }
+
+        // 片段 -> 出现在多少个样本中，同一个样本中出现多次只统计一次
+        final Long2IntOpenHashMap segmentFrequency = new Long2IntOpenHashMap();
+        final LongOpenHashSet sampleSegments = new LongOpenHashSet();
+        for (byte[] sample : samples) {
+            sampleSegments.clear();
+            for (int index = 0; index + SEGMENT_LENGTH <= sample.length; index++) {
+                final long segment = readSegment(sample, index);
+                if (sampleSegments.add(segment)) {
+                    segmentFrequency.addTo(segment, 1);
+                }
+            }
+        }
+
+        // 只出现在一个样本中的片段没有价值
+        final LongArrayList candidates = new LongArrayList(segmentFrequency.size());
+        for (Long2IntMap.Entry entry : segmentFrequency.long2IntEntrySet()) {
+            if (entry.getIntValue() > 1) {
+                candidates.add(entry.getLongKey());
+            }
+        }
+        candidates.sort((LongComparator) (a, b) -> Integer.compare(segmentFrequency.get(b), segmentFrequency.get(a)));
+
+        final int maxSegments = Math.min(candidates.size(), maxDictionarySize / SEGMENT_LENGTH);
+        final byte[] dictionary = new byte[maxSegments * SEGMENT_LENGTH];
+        // 出现次数最多的放在最后
+        for (int index = 0; index < maxSegments; index++) {
+            writeSegment(dictionary, dictionary.length - (index + 1) * SEGMENT_LENGTH, candidates.getLong(index));
+        }
+        return dictionary;
+    }
+
+    private static long readSegment(byte[] bytes, int offset) {
+        long segment = 0;
+        for (int index = 0; index < SEGMENT_LENGTH; index++) {
+            segment = (segment << 8) | (bytes[offset + index] & 0xFF);
+        }
+        return segment;
+    }
+
+    private static void writeSegment(byte[] bytes, int offset, long segment) {
+        for (int index = SEGMENT_LENGTH - 1; index >= 0; index--) {
+            bytes[offset + index] = (byte) segment;
+            segment >>>= 8;
+        }
+    }
+
+    /**
+     * @return 当前进程所有连接的压缩统计信息快照
+     */
+    public static Stats stats() {
+        return new Stats(compressedFrames.sum(), compressBytesIn.sum(), compressBytesOut.sum(), skippedFrames.sum(),
+                decompressedFrames.sum(), decompressBytesIn.sum(), decompressBytesOut.sum());
+    }
+
+    /**
+     * 压缩统计信息
+     */
+    public static class Stats {
+
+        private final long compressedFrames;
+        private final long compressBytesIn;
+        private final long compressBytesOut;
+        private final long skippedFrames;
+        private final long decompressedFrames;
+        private final long decompressBytesIn;
+        private final long decompressBytesOut;
+
+        Stats(long compressedFrames, long compressBytesIn, long compressBytesOut, long skippedFrames,
+              long decompressedFrames, long decompressBytesIn, long decompressBytesOut) {
+            this.compressedFrames = compressedFrames;
+            this.compressBytesIn = compressBytesIn;
+            this.compressBytesOut = compressBytesOut;
+            this.skippedFrames = skippedFrames;
+            this.decompressedFrames = decompressedFrames;
+            this.decompressBytesIn = decompressBytesIn;
+            this.decompressBytesOut = decompressBytesOut;
+        }
+
+        /**
+         * @return 压缩发送的帧数
+         */
+        public long getCompressedFrames() {
+            return compressedFrames;
+        }
+
+        /**
+         * @return 压缩发送的帧在压缩前的字节数
+         */
+        public long getCompressBytesIn() {
+            return compressBytesIn;
+        }
+
+        /**
+         * @return 压缩发送的帧在压缩后的字节数
+         */
+        public long getCompressBytesOut() {
+            return compressBytesOut;
+        }
+
+        /**
+         * @return 尝试压缩但是压缩后没有变小，因此未压缩发送的帧数
+         */
+        public long getSkippedFrames() {
+            return skippedFrames;
+        }
+
+        /**
+         * @return 解压缩的帧数
+         */
+        public long getDecompressedFrames() {
+            return decompressedFrames;
+        }
+
+        /**
+         * @return 解压缩前的字节数
+         */
+        public long getDecompressBytesIn() {
+            return decompressBytesIn;
+        }
+
+        /**
+         * @return 解压缩后的字节数
+         */
+        public long getDecompressBytesOut() {
+            return decompressBytesOut;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "compressedFrames=" + compressedFrames +
+                    ", compressBytesIn=" + compressBytesIn +
+                    ", compressBytesOut=" + compressBytesOut +
+                    ", skippedFrames=" + skippedFrames +
+                    ", decompressedFrames=" + decompressedFrames +
+                    ", decompressBytesIn=" + decompressBytesIn +
+                    ", decompressBytesOut=" + decompressBytesOut +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.net.rpc.NetMessageType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 单个channel的消息帧压缩器，由codec持有，只在channel所在的线程使用。
+ * <p>
+ * 协商过程：
+ * 1. 开启了压缩的客户端在建立连接请求中附带自己的字典id，未开启压缩时不附带任何内容，协议与之前的版本一致。
+ * 2. 如果请求中附带了压缩能力，服务器根据自己的配置决定是否压缩、是否使用字典，在建立连接应答中告知客户端，应答之后的消息开始压缩；
+ * 否则应答中也不附带任何内容。
+ * 3. 客户端收到应答之后的消息开始压缩。
+ * 是否附带压缩能力由codec写在协议的标记字节中，读取方先检查标记。
+ * <p>
+ * 压缩帧格式：长度字段(4) + 包类型{@link NetMessageType#COMPRESSED_MESSAGE}(1) + 原始内容长度(4) + 压缩后的(原始包类型 + 原始内容)
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+final class FrameCompressor {
+
+    /**
+     * 压缩帧的帧头：长度字段(4) + 包类型(1) + 原始内容长度(4)
+     */
+    private static final int COMPRESSED_FRAME_HEADER_LENGTH = 4 + 1 + 4;
+    /**
+     * 建立连接请求中附带的压缩能力的长度：字典id
+     */
+    static final int OFFER_LENGTH = 4;
+    /**
+     * 建立连接应答中附带的协商结果的长度：是否压缩(1) + 字典id(4)
+     */
+    static final int ANSWER_LENGTH = 1 + 4;
+
+    private final boolean supported;
+    private final int threshold;
+    private final int level;
+    private final byte[] dictionary;
+    private final int dictionaryId;
+
+    /**
+     * 服务器：建立连接请求中是否附带了压缩能力，如果未附带，则应答中也不附带协商结果
+     */
+    private boolean peerOffered;
+    /**
+     * 服务器：收到建立连接请求时确定的协商结果，发送应答之后才生效
+     */
+    private boolean acceptedOffer;
+    private boolean acceptedDictionary;
+    /**
+     * 协商之后是否压缩发送的消息
+     */
+    private boolean negotiated;
+    /**
+     * 协商之后是否使用字典
+     */
+    private boolean useDictionary;
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    FrameCompressor(SocketSessionConfig config) {
+        this.supported = config.isCompressionEnabled();
+        this.threshold = config.compressionThreshold();
+        this.level = config.compressionLevel();
+        this.dictionary = config.compressionDictionary();
+        this.dictionaryId = dictionary == null ? 0 : FrameCompression.dictionaryId(dictionary);
+    }
+
+    // ------------------------------------------------ 协商 --------------------------------------------
+
+    /**
+     * 客户端：建立连接请求中是否需要附带压缩能力
+     */
+    boolean hasOffer() {
+        return supported;
+    }
+
+    /**
+     * 客户端：在建立连接请求中写入压缩能力，只有{@link #hasOffer()}为true时调用
+     */
+    void writeOffer(ByteBuf byteBuf) {
+        byteBuf.writeInt(dictionaryId);
+    }
+
+    /**
+     * 服务器：读取客户端的压缩能力，并确定协商结果
+     *
+     * @param offered 请求中是否附带了压缩能力，如果为false，则不读取任何内容
+     */
+    void readOffer(ByteBuf msg, boolean offered) {
+        peerOffered = offered;
+        if (!offered) {
+            acceptedOffer = false;
+            acceptedDictionary = false;
+            return;
+        }
+        final int peerDictionaryId = msg.readInt();
+        acceptedOffer = supported;
+        acceptedDictionary = acceptedOffer && dictionaryId != 0 && dictionaryId == peerDictionaryId;
+    }
+
+    /**
+     * 服务器：建立连接应答中是否需要附带协商结果，只有客户端附带了压缩能力时才附带
+     */
+    boolean hasAnswer() {
+        return peerOffered;
+    }
+
+    /**
+     * 服务器：在建立连接应答中写入协商结果(如果需要的话)，之后的消息开始压缩
+     */
+    void writeAnswer(ByteBuf byteBuf) {
+        if (peerOffered) {
+            byteBuf.writeByte(acceptedOffer ? 1 : 0);
+            byteBuf.writeInt(acceptedDictionary ? dictionaryId : 0);
+        }
+        negotiated = acceptedOffer;
+        useDictionary = acceptedDictionary;
+    }
+
+    /**
+     * 客户端：读取服务器的协商结果
+     *
+     * @param answered 应答中是否附带了协商结果，如果为false，则不读取任何内容，且不压缩
+     */
+    void readAnswer(ByteBuf msg, boolean answered) {
+        if (!answered) {
+            negotiated = false;
+            useDictionary = false;
+            return;
+        }
+        final boolean peerNegotiated = msg.readByte() == 1;
+        final int negotiatedDictionaryId = msg.readInt();
+        negotiated = supported && peerNegotiated;
+        useDictionary = negotiated && negotiatedDictionaryId != 0 && negotiatedDictionaryId == dictionaryId;
+    }
+
+    // ------------------------------------------------ 压缩和解压缩 --------------------------------------------
+
+    /**
+     * 尝试压缩一个完整的消息帧
+     *
+     * @param allocator 分配器
+     * @param frame     长度字段尚未设置的消息帧
+     * @return 压缩后的帧(长度字段尚未设置)，如果不需要压缩或压缩后没有变小，则返回原来的帧
+     */
+    ByteBuf tryCompress(ByteBufAllocator allocator, ByteBuf frame) {
+        final int rawLength = frame.readableBytes() - 4;
+        if (!negotiated || rawLength < threshold || !isCompressible(frame.getByte(frame.readerIndex() + 4))) {
+            return frame;
+        }
+
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            deflater.reset();
+        }
+        if (useDictionary) {
+            deflater.setDictionary(dictionary);
+        }
+
+        // 压缩后的内容不能超过原始内容，否则没有意义
+        final ByteBuf compressedFrame = allocator.buffer(COMPRESSED_FRAME_HEADER_LENGTH + rawLength);
+        compressedFrame.writeInt(0);
+        compressedFrame.writeByte(NetMessageType.COMPRESSED_MESSAGE.pkgType);
+        compressedFrame.writeInt(rawLength);
+
+        final ByteBuffer output = compressedFrame.nioBuffer(COMPRESSED_FRAME_HEADER_LENGTH, rawLength);
+        for (ByteBuffer input : frame.nioBuffers(frame.readerIndex() + 4, rawLength)) {
+            deflater.setInput(input);
+            while (!deflater.needsInput() && output.hasRemaining()) {
+                deflater.deflate(output);
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished() && output.hasRemaining()) {
+            deflater.deflate(output);
+        }
+
+        if (!deflater.finished()) {
+            // 压缩后没有变小
+            FrameCompression.skippedFrames.increment();
+            compressedFrame.release();
+            return frame;
+        }
+
+        compressedFrame.writerIndex(COMPRESSED_FRAME_HEADER_LENGTH + output.position());
+        frame.release();
+
+        FrameCompression.compressedFrames.increment();
+        FrameCompression.compressBytesIn.add(rawLength);
+        FrameCompression.compressBytesOut.add(output.position());
+        return compressedFrame;
+    }
+
+    /**
+     * 只压缩用户消息，建立连接和心跳协议很小，而且建立连接时尚未协商完成
+     */
+    private static boolean isCompressible(byte pkgType) {
+        return pkgType == NetMessageType.RPC_REQUEST.pkgType
+                || pkgType == NetMessageType.RPC_RESPONSE.pkgType
+                || pkgType == NetMessageType.ONE_WAY_MESSAGE.pkgType
+                || pkgType == NetMessageType.BATCH_MESSAGE.pkgType;
+    }
+
+    /**
+     * 解压缩一个压缩帧
+     *
+     * @param allocator      分配器
+     * @param msg            压缩帧(包类型之后的内容)
+     * @param maxFrameLength 解压缩后允许的最大长度
+     * @return 解压缩后的内容(原始包类型 + 原始内容)，使用完毕后需要释放
+     */
+    ByteBuf decompress(ByteBufAllocator allocator, ByteBuf msg, int maxFrameLength) throws IOException {
+        final int compressedLength = msg.readableBytes() - 4;
+        final int rawLength = msg.readInt();
+        if (rawLength <= 0 || rawLength > maxFrameLength) {
+            throw new IOException("rawLength " + rawLength + ", maxFrameLength " + maxFrameLength);
+        }
+
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            inflater.reset();
+        }
+
+        final ByteBuf result = allocator.buffer(rawLength);
+        boolean success = false;
+        try {
+            final ByteBuffer output = result.nioBuffer(0, rawLength);
+            inflater.setInput(msg.nioBuffer());
+            while (output.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(output) == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null || inflater.getAdler() != dictionaryId) {
+                            throw new IOException("dictionary mismatch, expected " + inflater.getAdler());
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("truncated compressed frame");
+                    }
+                }
+            }
+            if (!inflater.finished() || output.hasRemaining()) {
+                throw new IOException("rawLength mismatch, rawLength " + rawLength);
+            }
+            result.writerIndex(rawLength);
+            success = true;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            if (!success) {
+                result.release();
+            }
+        }
+
+        FrameCompression.decompressedFrames.increment();
+        FrameCompression.decompressBytesIn.add(compressedLength);
+        FrameCompression.decompressBytesOut.add(rawLength);
+        return result;
+    }
+
+    /**
+     * 释放zlib的本地内存
+     */
+    void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
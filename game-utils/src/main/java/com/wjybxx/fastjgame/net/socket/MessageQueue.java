@@ -1,17 +1,17 @@
 /*
- *  Copyright 2019 wjybxx
+ * Copyright 2019 wjybxx
  *
- *  Licensed under the Apache License, Version 2.0 (the "License");
- *  you may not use this file except in compliance with the License.
- *  You may obtain a copy of the License at
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
  *
- *      http://www.apache.org/licenses/LICENSE-2.0
+ *     http://www.apache.org/licenses/LICENSE-2.0
  *
- *  Unless required by applicable law or agreed to iBn writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
  */
 
 package com.wjybxx.fastjgame.net.socket;
@@ -19,9 +19,7 @@ package com.wjybxx.fastjgame.net.socket;
 import com.wjybxx.fastjgame.net.socket.outer.OuterSocketMessage;
 import org.apache.commons.lang3.RandomUtils;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.LinkedList;
+import javax.annotation.Nullable;
 
 /**
  * 消息队列，可与tcp的收发缓冲区比较
@@ -41,9 +39,22 @@ import java.util.LinkedList;
  * |------------------------------
  *
  * </pre>
+ * <p>
+ * 实现：待确认的消息和未发送的消息存储在同一个固定容量的环形数组中，二者以{@link #emitIndex}分隔。
+ * 由于消息的sequence是连续的，因此：
+ * 1. 发送消息只需要移动{@link #emitIndex}，不需要在两个队列之间移动消息。
+ * 2. 根据ack可以直接计算出需要删除的消息数量，不需要逐个比较。
+ * 3. 不会像链表一样为每个消息创建节点，也不会扩容。
+ * <p>
+ * <p>
+ * 重传：[headIndex, resendIndex)为当前连接上已重传的消息，[resendIndex, emitIndex)为等待重传的消息。
+ * 开启重传窗口时，每次最多重传窗口大小的消息，收到确认之后再继续重传，重传完成之前不发送新消息。
+ * <p>
+ * Q: 为什么不复用{@link OuterSocketMessage}对象？
+ * A: 消息对象会交给netty线程编码，重发的消息可能在对方确认之后才被编码，复用会导致netty线程读取到错误的数据。
  *
  * @author wjybxx
- * @version 1.0
+ * @version 1.1
  * date - 2019/4/27 11:43
  * github - https://github.com/hl845740757
  */
@@ -66,15 +77,59 @@ public final class MessageQueue {
     private long ack = 0;
 
     /**
-     * 已发送待确认的消息队列，只要发送过就不会再放入{@link #cacheQueue}
+     * 环形数组，容量为2的整次幂
+     * 已发送待确认的消息：[headIndex, emitIndex)，只要发送过就不会再回到未发送队列
+     * 未发送的消息：[emitIndex, tailIndex)，还没有尝试过发送的消息。
      */
-    private Deque<OuterSocketMessage> pendingQueue = new ArrayDeque<>();
+    private OuterSocketMessage[] buffer;
+    private final int mask;
 
     /**
-     * 未发送的消息队列，还没有尝试过发送的消息。
-     * 使用{@link LinkedList}是因为需要回收内存。
+     * 单调递增的索引，使用时与{@link #mask}取与，避免区分首尾的大小关系
      */
-    private Deque<OuterSocketMessage> cacheQueue = new LinkedList<>();
+    private long headIndex;
+    private long resendIndex;
+    private long emitIndex;
+    private long tailIndex;
+
+    /**
+     * 重传窗口大小
+     */
+    private final int resendWindow;
+    /**
+     * 固定的ack超时时间
+     */
+    private final long ackTimeoutMs;
+    /**
+     * rtt估算器，未开启自适应超时时为null
+     */
+    private final RttEstimator rttEstimator;
+    /**
+     * 是否缓存已发送消息的编码结果
+     */
+    private final boolean cacheEncodedMessages;
+
+    public MessageQueue(SocketSessionConfig config) {
+        final int capacity = tableSizeFor(config.maxPendingMessages() + config.maxCacheMessages());
+        this.buffer = new OuterSocketMessage[capacity];
+        this.mask = capacity - 1;
+
+        this.resendWindow = config.resendWindow() > 0 ? config.resendWindow() : Integer.MAX_VALUE;
+        this.ackTimeoutMs = config.ackTimeoutMs();
+        this.rttEstimator = config.isAdaptiveAckTimeout() ? new RttEstimator(config.minAckTimeoutMs(), config.ackTimeoutMs()) : null;
+        this.cacheEncodedMessages = config.isCacheEncodedMessages();
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        if (expectedSize <= 1) {
+            return 1;
+        }
+        final int capacity = Integer.highestOneBit(expectedSize - 1) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("expectedSize " + expectedSize);
+        }
+        return capacity;
+    }
 
     /**
      * 对方发送过来的ack是否有效。
@@ -89,8 +144,8 @@ public final class MessageQueue {
      */
     private long getAckLowerBound() {
         // 如果有消息未确认，那么ack的最小值就是未确认的第一个消息
-        if (pendingQueue.size() > 0) {
-            return pendingQueue.getFirst().getSequence();
+        if (getPendingMessages() > 0) {
+            return slotAt(headIndex).getSequence();
         }
         // 都已确认，那么期望的消息号就是我的下一个消息
         return sequencer + 1;
@@ -104,27 +159,170 @@ public final class MessageQueue {
         return sequencer + 1;
     }
 
+    /**
+     * 根据对方发送的ack更新已发送队列，并采样rtt
+     *
+     * @param ack           对方发来的ack
+     * @param curTimeMillis 当前时间
+     */
+    public void updatePendingQueue(long ack, long curTimeMillis) {
+        final OuterSocketMessage lastAckMessage = updatePendingQueue(ack);
+        if (rttEstimator != null && lastAckMessage != null && !lastAckMessage.isResent()) {
+            // 只使用未重传过的消息采样(Karn算法)，重传过的消息无法确定确认的是哪一次发送
+            rttEstimator.onSample(curTimeMillis - lastAckMessage.getSendTimeMs());
+        }
+    }
+
     /**
      * 根据对方发送的ack更新已发送队列
+     * 注意：该方法不采样rtt，适用于重连时的确认，此时的确认时间包含了断线的时间。
      *
      * @param ack 对方发来的ack
+     * @return 本次确认的最后一个消息，如果没有消息被确认，则返回null
      */
-    public void updatePendingQueue(long ack) {
+    public OuterSocketMessage updatePendingQueue(long ack) {
         assert isAckOK(ack);
-        while (pendingQueue.size() > 0) {
-            if (pendingQueue.getFirst().getSequence() >= ack) {
-                break;
-            }
-            pendingQueue.removeFirst();
+        final int pendingMessages = getPendingMessages();
+        if (pendingMessages == 0) {
+            return null;
         }
+        // sequence是连续的，可直接计算出已确认的消息数
+        final int ackMessages = (int) Math.min(pendingMessages, ack - slotAt(headIndex).getSequence());
+        OuterSocketMessage lastAckMessage = null;
+        for (int index = 0; index < ackMessages; index++) {
+            final int slot = (int) (headIndex++ & mask);
+            lastAckMessage = buffer[slot];
+            // 对方已确认，释放预序列化的内容和缓存的编码结果
+            lastAckMessage.release();
+            buffer[slot] = null;
+        }
+        if (resendIndex < headIndex) {
+            resendIndex = headIndex;
+        }
+        return lastAckMessage;
+    }
+
+    /**
+     * @return 当前的ack超时时间
+     */
+    public long getAckTimeoutMs() {
+        return rttEstimator != null ? rttEstimator.rtoMs() : ackTimeoutMs;
     }
 
+    /**
+     * 发生了ack超时，如果开启了自适应超时，则超时时间加倍
+     */
+    public void onAckTimeout() {
+        if (rttEstimator != null) {
+            rttEstimator.backoff();
+        }
+    }
+
+    /**
+     * @return 是否缓存已发送消息的编码结果，开启后重传时不再序列化消息内容
+     */
+    public boolean isCacheEncodedMessages() {
+        return cacheEncodedMessages;
+    }
+
+    /**
+     * @return 已发送待确认的消息数
+     */
     public int getPendingMessages() {
-        return pendingQueue.size();
+        return (int) (emitIndex - headIndex);
     }
 
+    /**
+     * @return 未发送的消息数
+     */
     public int getCacheMessages() {
-        return cacheQueue.size();
+        return (int) (tailIndex - emitIndex);
+    }
+
+    /**
+     * 将一个消息压入未发送队列
+     *
+     * @param message 新消息，其sequence应当由{@link #nextSequence()}分配
+     */
+    public void addCacheMessage(OuterSocketMessage message) {
+        if (tailIndex - headIndex >= buffer.length) {
+            // 调用者应当在压入之前检查缓存上限
+            throw new IllegalStateException("messageQueue is full, capacity " + buffer.length);
+        }
+        buffer[(int) (tailIndex++ & mask)] = message;
+    }
+
+    /**
+     * 将未发送队列的第一个消息移动到已发送队列
+     * 注意：重传完成之前不可以发送新消息。
+     *
+     * @return 被移动的消息，如果没有未发送的消息，则返回null
+     */
+    @Nullable
+    public OuterSocketMessage emitCacheMessage() {
+        assert resendIndex == emitIndex;
+        if (emitIndex == tailIndex) {
+            return null;
+        }
+        resendIndex++;
+        return slotAt(emitIndex++);
+    }
+
+    /**
+     * 开始重传，所有待确认的消息都需要重传
+     */
+    public void resetResendIndex() {
+        resendIndex = headIndex;
+    }
+
+    /**
+     * @return 等待重传的消息数
+     */
+    public int getResendMessages() {
+        return (int) (emitIndex - resendIndex);
+    }
+
+    /**
+     * @return 本次可以重传的消息数，受重传窗口限制
+     */
+    public int getResendableMessages() {
+        final int inflightMessages = (int) (resendIndex - headIndex);
+        return Math.max(0, Math.min(getResendMessages(), resendWindow - inflightMessages));
+    }
+
+    /**
+     * @return 下一个需要重传的消息，如果没有，则返回null
+     */
+    @Nullable
+    public OuterSocketMessage nextResendMessage() {
+        if (resendIndex == emitIndex) {
+            return null;
+        }
+        return slotAt(resendIndex++);
+    }
+
+    /**
+     * @return 第一个待确认的消息，如果没有，则返回null
+     */
+    @Nullable
+    public OuterSocketMessage getFirstPendingMessage() {
+        return getPendingMessages() > 0 ? slotAt(headIndex) : null;
+    }
+
+    /**
+     * 获取指定位置的待确认消息，按照sequence升序
+     *
+     * @param index 0 ~ {@link #getPendingMessages()} - 1
+     */
+    public OuterSocketMessage getPendingMessage(int index) {
+        if (index < 0 || index >= getPendingMessages()) {
+            throw new IndexOutOfBoundsException("index " + index + ", pendingMessages " + getPendingMessages());
+        }
+        return slotAt(headIndex + index);
+    }
+
+    private OuterSocketMessage slotAt(long index) {
+        return buffer[(int) (index & mask)];
     }
 
     /**
@@ -158,21 +356,19 @@ public final class MessageQueue {
         this.ack = ack;
     }
 
-    public Deque<OuterSocketMessage> getPendingQueue() {
-        return pendingQueue;
-    }
-
-    public Deque<OuterSocketMessage> getCacheQueue() {
-        return cacheQueue;
-    }
-
     /**
      * 删除已发送和未发送的消息队列
      * help gc
      */
     public void cleanMessageQueue() {
-        pendingQueue = null;
-        cacheQueue = null;
+        if (null == buffer) {
+            return;
+        }
+        for (long index = headIndex; index < tailIndex; index++) {
+            slotAt(index).release();
+        }
+        buffer = null;
+        headIndex = resendIndex = emitIndex = tailIndex = 0;
     }
 
     @Override
@@ -180,8 +376,8 @@ public final class MessageQueue {
         return "MessageQueue{" +
                 "sequencer=" + sequencer +
                 ", ack=" + ack +
-                ", pendingQueueSize=" + pendingQueue.size() +
-                ", cacheQueueSize=" + cacheQueue.size() +
+                ", pendingQueueSize=" + getPendingMessages() +
+                ", cacheQueueSize=" + getCacheMessages() +
                 "}";
     }
 }
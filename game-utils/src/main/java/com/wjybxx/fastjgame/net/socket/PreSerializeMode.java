@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.util.concurrent.FixedEventLoopGroup;
+
+/**
+ * 消息内容(body)的序列化时机。
+ * <p>
+ * 默认情况下，消息内容在{@link AbstractSocketCodec}中序列化，也就是在netty的IO线程中序列化，
+ * 一个很大的消息（如大量的广播）会阻塞该线程上的所有连接。
+ * 开启预序列化后，消息内容会在进入网络层之前序列化为{@link com.wjybxx.fastjgame.net.rpc.SerializedBody}，
+ * codec只负责组帧和发送。
+ * <p>
+ * 注意：预序列化只影响用户消息(rpc请求、rpc响应、单向消息)，不影响控制协议。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public enum PreSerializeMode {
+
+    /**
+     * 不预序列化，在netty的IO线程中序列化（默认）
+     */
+    NONE,
+
+    /**
+     * 在发起调用的线程中序列化，通常是应用的EventLoop。
+     * rpc响应在完成rpc调用的线程中序列化。
+     */
+    CALLER_THREAD,
+
+    /**
+     * 在{@link SocketSessionConfig#serializeEventLoopGroup()}中序列化。
+     * 同一个session的消息总是由同一个{@link FixedEventLoopGroup#select(int)}线程序列化，以保证消息的顺序。
+     * 注意：此时消息会晚于同一线程中直接提交到网络层的操作（如关闭session）。
+     */
+    SERIALIZE_GROUP
+}
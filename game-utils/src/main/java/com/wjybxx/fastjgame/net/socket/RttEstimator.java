@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.socket;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 消息往返时间(rtt)估算器，根据rtt计算自适应的ack超时时间(rto)。
+ * 算法参考 RFC 6298 (Jacobson/Karels)：
+ * <pre>
+ * 首次采样：srtt = r; rttVar = r / 2
+ * 之后：   rttVar = 3/4 * rttVar + 1/4 * |srtt - r|; srtt = 7/8 * srtt + 1/8 * r
+ * rto = srtt + 4 * rttVar
+ * </pre>
+ * 注意：rtt包含对方的延迟确认时间（对方在批量消息结束或心跳时才确认），这正是ack超时需要考虑的。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+final class RttEstimator {
+
+    private final long minRtoMs;
+    private final long maxRtoMs;
+
+    /**
+     * 平滑后的rtt，小于0表示还没有采样
+     */
+    private long srttMs = -1;
+    private long rttVarMs;
+    private long rtoMs;
+
+    /**
+     * @param minRtoMs 最小超时时间
+     * @param maxRtoMs 最大超时时间，也是采样之前的超时时间
+     */
+    RttEstimator(long minRtoMs, long maxRtoMs) {
+        this.minRtoMs = minRtoMs;
+        this.maxRtoMs = maxRtoMs;
+        this.rtoMs = maxRtoMs;
+    }
+
+    /**
+     * 新的rtt采样
+     *
+     * @param rttMs 消息从发送到确认的时间
+     */
+    void onSample(long rttMs) {
+        if (rttMs < 0) {
+            return;
+        }
+        if (srttMs < 0) {
+            srttMs = rttMs;
+            rttVarMs = rttMs >> 1;
+        } else {
+            rttVarMs = rttVarMs - (rttVarMs >> 2) + (Math.abs(srttMs - rttMs) >> 2);
+            srttMs = srttMs - (srttMs >> 3) + (rttMs >> 3);
+        }
+        rtoMs = clamp(srttMs + Math.max(1, rttVarMs << 2));
+    }
+
+    /**
+     * 发生超时，超时时间加倍（指数退避），直到下一次有效采样
+     */
+    void backoff() {
+        rtoMs = clamp(rtoMs << 1);
+    }
+
+    /**
+     * @return 当前的超时时间
+     */
+    long rtoMs() {
+        return rtoMs;
+    }
+
+    /**
+     * @return 平滑后的rtt，还没有采样时返回-1
+     */
+    long srttMs() {
+        return srttMs;
+    }
+
+    private long clamp(long rto) {
+        return Math.max(minRtoMs, Math.min(maxRtoMs, rto));
+    }
+}
@@ -16,8 +16,8 @@
 
 package com.wjybxx.fastjgame.net.socket;
 
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
 import com.wjybxx.fastjgame.net.rpc.NetMessageType;
-import com.wjybxx.fastjgame.net.serialization.Serializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
@@ -38,10 +38,14 @@ import java.io.IOException;
 public class ServerSocketCodec extends AbstractSocketCodec {
 
     private String sessionId;
+    /**
+     * session所属的网络线程，收到连接请求之后确定，之后该channel的所有事件都直接提交给该线程
+     */
+    private NetEventLoop netEventLoop;
     private final SocketPortContext portExtraInfo;
 
-    public ServerSocketCodec(Serializer serializer, SocketPortContext portExtraInfo) {
-        super(serializer);
+    public ServerSocketCodec(SocketPortContext portExtraInfo) {
+        super(portExtraInfo.getSessionConfig());
         this.portExtraInfo = portExtraInfo;
     }
 
@@ -61,6 +65,7 @@ public class ServerSocketCodec extends AbstractSocketCodec {
      */
     private void init(String sessionId) {
         this.sessionId = sessionId;
+        this.netEventLoop = portExtraInfo.netEventLoopGroup().select(sessionId);
     }
 
     @Override
@@ -166,6 +171,6 @@ public class ServerSocketCodec extends AbstractSocketCodec {
     }
 
     private void publish(@Nonnull SocketEvent event) {
-        portExtraInfo.netEventLoopGroup().select(sessionId).post(new GenericSocketEvent<>(event, true));
+        netEventLoop.fireSocketEvent(event, true);
     }
 }
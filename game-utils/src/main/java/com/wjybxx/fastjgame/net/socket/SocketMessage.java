@@ -20,6 +20,7 @@ import com.wjybxx.fastjgame.net.rpc.NetMessage;
 import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
 import com.wjybxx.fastjgame.net.rpc.RpcRequestMessage;
 import com.wjybxx.fastjgame.net.rpc.RpcResponseMessage;
+import io.netty.buffer.ByteBuf;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -44,4 +45,23 @@ public interface SocketMessage {
     long getSequence();
 
     NetMessage getWrappedMessage();
+
+    /**
+     * 编码器在编码完成后调用，询问是否需要缓存编码结果。
+     *
+     * @return 如果需要缓存编码结果，以便重传时不再序列化，则返回true
+     */
+    default boolean isCacheEncodedPayload() {
+        return false;
+    }
+
+    /**
+     * 缓存编码结果 - 该方法在netty线程调用。
+     *
+     * @param payload 消息帧中捎带确认字段之后的内容
+     * @return 如果缓存成功，则返回true，否则调用者需要释放payload
+     */
+    default boolean cacheEncodedPayload(ByteBuf payload) {
+        return false;
+    }
 }
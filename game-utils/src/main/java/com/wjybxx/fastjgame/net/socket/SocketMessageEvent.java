@@ -16,8 +16,10 @@
 
 package com.wjybxx.fastjgame.net.socket;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
 import com.wjybxx.fastjgame.net.rpc.NetMessage;
 import io.netty.channel.Channel;
+import io.netty.util.Recycler;
 
 /**
  * 逻辑消息包事件
@@ -29,26 +31,38 @@ import io.netty.channel.Channel;
  */
 public final class SocketMessageEvent implements SocketEvent {
 
-    private final Channel channel;
-    private final String sessionId;
+    private static final Recycler<SocketMessageEvent> RECYCLER = NetRecyclers.newRecycler(SocketMessageEvent::new);
+
+    private final Recycler.Handle<SocketMessageEvent> handle;
+    private Channel channel;
+    private String sessionId;
     /**
      * 当前包id
      */
-    private final long sequence;
+    private long sequence;
     /**
      * 捎带确认的ack
      */
-    private final long ack;
+    private long ack;
     /**
      * 是否是批量消息的最后一个？ 需要立即进行确认
      */
-    private final boolean endOfBatch;
+    private boolean endOfBatch;
     /**
      * 被包装的消息
      */
-    private final NetMessage wrappedMessage;
+    private NetMessage wrappedMessage;
 
     public SocketMessageEvent(Channel channel, String sessionId, long sequence, long ack, boolean endOfBatch, NetMessage wrappedMessage) {
+        this.handle = null;
+        init(channel, sessionId, sequence, ack, endOfBatch, wrappedMessage);
+    }
+
+    private SocketMessageEvent(Recycler.Handle<SocketMessageEvent> handle) {
+        this.handle = handle;
+    }
+
+    private void init(Channel channel, String sessionId, long sequence, long ack, boolean endOfBatch, NetMessage wrappedMessage) {
         this.channel = channel;
         this.sessionId = sessionId;
         this.ack = ack;
@@ -57,6 +71,28 @@ public final class SocketMessageEvent implements SocketEvent {
         this.wrappedMessage = wrappedMessage;
     }
 
+    /**
+     * 从对象池中获取一个事件对象，如果对象池未开启，则创建一个新对象
+     */
+    public static SocketMessageEvent newInstance(Channel channel, String sessionId, long sequence, long ack, boolean endOfBatch, NetMessage wrappedMessage) {
+        final SocketMessageEvent event = RECYCLER.get();
+        event.init(channel, sessionId, sequence, ack, endOfBatch, wrappedMessage);
+        return event;
+    }
+
+    /**
+     * 回收到对象池，调用之后不可以再使用该对象。
+     * 注意：被包装的消息由处理它的handler负责回收。
+     */
+    public void recycle() {
+        if (handle != null) {
+            channel = null;
+            sessionId = null;
+            wrappedMessage = null;
+            handle.recycle(this);
+        }
+    }
+
     @Override
     public final Channel channel() {
         return channel;
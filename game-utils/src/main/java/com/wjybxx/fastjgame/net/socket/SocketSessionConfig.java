@@ -18,6 +18,12 @@ package com.wjybxx.fastjgame.net.socket;
 
 import com.wjybxx.fastjgame.net.session.SessionConfig;
 import com.wjybxx.fastjgame.util.CheckUtils;
+import com.wjybxx.fastjgame.util.concurrent.FixedEventLoopGroup;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.zip.Deflater;
 
 /**
  * socket连接配置
@@ -41,6 +47,11 @@ public final class SocketSessionConfig extends SessionConfig {
     private final int pingIntervalMs;
 
     private final int connectTimeoutMs;
+    // ------------------------------------- 传输层参数 -----------------------------
+    private final boolean tcpNoDelay;
+    private final boolean tcpQuickAck;
+    private final boolean epollEdgeTriggered;
+    private final int reusePortListeners;
     // ------------------------------------- 消息确认机制参数 -----------------------------
     private final boolean autoReconnect;
     private final int maxConnectTimes;
@@ -49,9 +60,28 @@ public final class SocketSessionConfig extends SessionConfig {
     private final int maxVerifyTimes;
 
     private final int ackTimeoutMs;
+    private final boolean adaptiveAckTimeout;
+    private final int minAckTimeoutMs;
+    private final int resendWindow;
 
     private final int maxPendingMessages;
     private final int maxCacheMessages;
+    private final boolean cacheEncodedMessages;
+    // ------------------------------------- 内网批量发送参数 -----------------------------
+    private final boolean batchFrameEnabled;
+    private final int flushThresholdBytes;
+    private final int flushLingerMicros;
+    // ------------------------------------- websocket参数 -----------------------------
+    private final boolean wsNativeFraming;
+    private final boolean wsPerMessageDeflate;
+    // ------------------------------------- 压缩参数 -----------------------------
+    private final boolean compressionEnabled;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+    private final byte[] compressionDictionary;
+    // ------------------------------------- 序列化参数 -----------------------------
+    private final PreSerializeMode preSerializeMode;
+    private final FixedEventLoopGroup serializeEventLoopGroup;
 
     private SocketSessionConfig(SocketSessionConfigBuilder builder) {
         super(builder);
@@ -62,6 +92,11 @@ public final class SocketSessionConfig extends SessionConfig {
         this.readTimeout = builder.readTimeout;
         this.pingIntervalMs = builder.pingIntervalMs;
 
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.tcpQuickAck = builder.tcpQuickAck;
+        this.epollEdgeTriggered = builder.epollEdgeTriggered;
+        this.reusePortListeners = builder.reusePortListeners;
+
         this.autoReconnect = builder.autoReconnect;
         this.maxConnectTimes = builder.maxConnectTimes;
 
@@ -69,8 +104,27 @@ public final class SocketSessionConfig extends SessionConfig {
         this.maxVerifyTimes = builder.maxVerifyTimes;
 
         this.ackTimeoutMs = builder.ackTimeoutMs;
+        this.adaptiveAckTimeout = builder.adaptiveAckTimeout;
+        this.minAckTimeoutMs = builder.minAckTimeoutMs;
+        this.resendWindow = builder.resendWindow;
         this.maxPendingMessages = builder.maxPendingMessages;
         this.maxCacheMessages = builder.maxCacheMessages;
+        this.cacheEncodedMessages = builder.cacheEncodedMessages;
+
+        this.batchFrameEnabled = builder.batchFrameEnabled;
+        this.flushThresholdBytes = builder.flushThresholdBytes;
+        this.flushLingerMicros = builder.flushLingerMicros;
+
+        this.wsNativeFraming = builder.wsNativeFraming;
+        this.wsPerMessageDeflate = builder.wsPerMessageDeflate;
+
+        this.compressionEnabled = builder.compressionEnabled;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.compressionLevel = builder.compressionLevel;
+        this.compressionDictionary = builder.compressionDictionary;
+
+        this.preSerializeMode = builder.preSerializeMode;
+        this.serializeEventLoopGroup = builder.serializeEventLoopGroup;
     }
 
     /**
@@ -115,6 +169,42 @@ public final class SocketSessionConfig extends SessionConfig {
         return pingIntervalMs;
     }
 
+    /**
+     * 心跳也依赖于空闲时的tick
+     */
+    @Override
+    public long maxIdleTickIntervalMs() {
+        return Math.min(super.maxIdleTickIntervalMs(), pingIntervalMs);
+    }
+
+    /**
+     * @return 是否禁用Nagle算法(TCP_NODELAY)，游戏中的消息大多很小且对延迟敏感，默认为true
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @return 是否开启TCP_QUICKACK(立即发送ack，而不是延迟确认)，仅在使用epoll时有效
+     */
+    public boolean isTcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    /**
+     * @return 是否使用边缘触发模式，仅在使用epoll时有效。false表示使用水平触发模式。
+     */
+    public boolean isEpollEdgeTriggered() {
+        return epollEdgeTriggered;
+    }
+
+    /**
+     * @return 监听端口时每个端口创建的监听socket数量，大于1时使用SO_REUSEPORT，由内核在多个socket间分配连接，仅在使用epoll时有效。
+     */
+    public int reusePortListeners() {
+        return reusePortListeners;
+    }
+
     /**
      * @return 是否开启了断线重连/消息确认机制。注意：必须双方都开启，否则消息确认将失败。
      */
@@ -151,6 +241,28 @@ public final class SocketSessionConfig extends SessionConfig {
         return ackTimeoutMs;
     }
 
+    /**
+     * @return 是否根据消息往返时间(rtt)自动调整ack超时时间，如果为true，则{@link #ackTimeoutMs()}为最大超时时间
+     */
+    public boolean isAdaptiveAckTimeout() {
+        return adaptiveAckTimeout;
+    }
+
+    /**
+     * @return 自动调整ack超时时间时，最小的ack超时时间 - 毫秒
+     */
+    public int minAckTimeoutMs() {
+        return minAckTimeoutMs;
+    }
+
+    /**
+     * @return 重传窗口大小 - 重传时最多同时发送多少个消息，收到确认之后再继续重传。0表示一次性重传全部消息。
+     * 对于网络较差的客户端，较小的窗口可以避免在重连之后立即发送大量消息。
+     */
+    public int resendWindow() {
+        return resendWindow;
+    }
+
     /**
      * @return 消息队列中允许的已发送未确认消息数，一旦到达该阈值，则暂停消息发送 (限流) - 实际是漏桶大小。
      * 注意：该值不建议太大，太大会加大消息重发压力。
@@ -167,6 +279,98 @@ public final class SocketSessionConfig extends SessionConfig {
         return maxCacheMessages;
     }
 
+    /**
+     * @return 是否缓存已发送未确认消息的编码结果。开启后，重传时直接发送首次编码的字节内容，不再序列化，
+     * 且消息在首次重传之后只保留字节内容，不再持有消息对象。仅在开启断线重连时有效，预序列化的消息本身就是字节内容，不需要缓存。
+     */
+    public boolean isCacheEncodedMessages() {
+        return cacheEncodedMessages;
+    }
+
+    /**
+     * @return 内网传输时，是否将缓冲的消息编码到一个连续的批量帧中发送，而不是每个消息一个帧。
+     * 注意：对方必须能解码批量帧，且单个批量帧的长度受{@link #maxFrameLength()}限制。
+     */
+    public boolean isBatchFrameEnabled() {
+        return batchFrameEnabled;
+    }
+
+    /**
+     * @return 内网传输时，缓冲区中的消息达到多少字节时立即发送(未预序列化的消息按估算值计算)
+     */
+    public int flushThresholdBytes() {
+        return flushThresholdBytes;
+    }
+
+    /**
+     * @return 内网传输时，请求刷新缓冲区后最多延迟多少微秒再发送，以便合并更多的消息。0表示立即发送。
+     * 实际精度取决于NetEventLoop的循环频率。
+     */
+    public int flushLingerMicros() {
+        return flushLingerMicros;
+    }
+
+    /**
+     * @return websocket连接是否使用原生的分帧方式：一个websocket二进制帧就是一个完整的包，不再包含自定义协议的长度字段，
+     * 也不再使用{@link io.netty.handler.codec.LengthFieldBasedFrameDecoder}二次分帧。注意：必须双方都开启。
+     */
+    public boolean isWsNativeFraming() {
+        return wsNativeFraming;
+    }
+
+    /**
+     * @return websocket连接是否启用permessage-deflate扩展，握手时协商，对方不支持时不压缩。
+     * 不可以与{@link #isCompressionEnabled()}同时开启，重复压缩只会浪费cpu。
+     */
+    public boolean isWsPerMessageDeflate() {
+        return wsPerMessageDeflate;
+    }
+
+    /**
+     * @return 是否支持压缩消息帧。建立连接时双方协商，双方都支持时才会压缩；未开启时建立连接的协议与之前的版本一致。
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * @return 消息帧达到多少字节时才压缩，小的消息帧压缩收益很低
+     */
+    public int compressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @return 压缩级别，同{@link java.util.zip.Deflater}的级别
+     */
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return 压缩使用的预置字典，双方字典一致时才会使用。
+     * 可以通过{@link FrameCompression#trainDictionary(java.util.Collection, int)}训练。
+     */
+    @Nullable
+    public byte[] compressionDictionary() {
+        return compressionDictionary;
+    }
+
+    /**
+     * @return 消息内容的序列化时机
+     */
+    public PreSerializeMode preSerializeMode() {
+        return preSerializeMode;
+    }
+
+    /**
+     * @return 序列化消息内容的线程组，仅当{@link #preSerializeMode()}为{@link PreSerializeMode#SERIALIZE_GROUP}时有值
+     */
+    @Nullable
+    public FixedEventLoopGroup serializeEventLoopGroup() {
+        return serializeEventLoopGroup;
+    }
+
     public static SocketSessionConfigBuilder newBuilder() {
         return new SocketSessionConfigBuilder();
     }
@@ -180,6 +384,11 @@ public final class SocketSessionConfig extends SessionConfig {
         private int pingIntervalMs = 5000;
         private int connectTimeoutMs = 10 * 1000;
 
+        private boolean tcpNoDelay = true;
+        private boolean tcpQuickAck = false;
+        private boolean epollEdgeTriggered = true;
+        private int reusePortListeners = 1;
+
         private boolean autoReconnect = false;
         private int maxConnectTimes = 3;
 
@@ -187,13 +396,42 @@ public final class SocketSessionConfig extends SessionConfig {
         private int maxVerifyTimes = 3;
 
         private int ackTimeoutMs = 5 * 1000;
+        private boolean adaptiveAckTimeout = false;
+        private int minAckTimeoutMs = 200;
+        private int resendWindow = 0;
 
         private int maxPendingMessages = 50;
         private int maxCacheMessages = 500;
+        private boolean cacheEncodedMessages = false;
+
+        private boolean batchFrameEnabled = false;
+        private int flushThresholdBytes = 32 * 1024;
+        private int flushLingerMicros = 0;
+
+        private boolean wsNativeFraming = false;
+        private boolean wsPerMessageDeflate = false;
+
+        private boolean compressionEnabled = false;
+        private int compressionThreshold = 1024;
+        private int compressionLevel = Deflater.BEST_SPEED;
+        private byte[] compressionDictionary;
+
+        private PreSerializeMode preSerializeMode = PreSerializeMode.NONE;
+        private FixedEventLoopGroup serializeEventLoopGroup;
 
         @Override
         protected void checkParams() {
             super.checkParams();
+            if (preSerializeMode == PreSerializeMode.SERIALIZE_GROUP) {
+                Objects.requireNonNull(serializeEventLoopGroup, "serializeEventLoopGroup");
+            }
+            if (adaptiveAckTimeout && minAckTimeoutMs > ackTimeoutMs) {
+                throw new IllegalArgumentException("minAckTimeoutMs " + minAckTimeoutMs + " > ackTimeoutMs " + ackTimeoutMs);
+            }
+            if (wsPerMessageDeflate && compressionEnabled) {
+                // 两层压缩，第二次压缩几乎没有收益，只会浪费cpu
+                throw new IllegalArgumentException("wsPerMessageDeflate and compressionEnabled can't be enabled at the same time");
+            }
         }
 
         public SocketSessionConfigBuilder setSndBuffer(int sndBuffer) {
@@ -226,6 +464,26 @@ public final class SocketSessionConfig extends SessionConfig {
             return this;
         }
 
+        public SocketSessionConfigBuilder setTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setTcpQuickAck(boolean tcpQuickAck) {
+            this.tcpQuickAck = tcpQuickAck;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setEpollEdgeTriggered(boolean epollEdgeTriggered) {
+            this.epollEdgeTriggered = epollEdgeTriggered;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setReusePortListeners(int reusePortListeners) {
+            this.reusePortListeners = CheckUtils.requirePositive(reusePortListeners, "reusePortListeners");
+            return this;
+        }
+
         public SocketSessionConfigBuilder setAutoReconnect(boolean autoReconnect) {
             this.autoReconnect = autoReconnect;
             return this;
@@ -261,6 +519,110 @@ public final class SocketSessionConfig extends SessionConfig {
             return this;
         }
 
+        public SocketSessionConfigBuilder setAdaptiveAckTimeout(boolean adaptiveAckTimeout) {
+            this.adaptiveAckTimeout = adaptiveAckTimeout;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setMinAckTimeoutMs(int minAckTimeoutMs) {
+            this.minAckTimeoutMs = CheckUtils.requirePositive(minAckTimeoutMs, "minAckTimeoutMs");
+            return this;
+        }
+
+        /**
+         * @param resendWindow 重传窗口大小，0表示一次性重传全部消息
+         */
+        public SocketSessionConfigBuilder setResendWindow(int resendWindow) {
+            if (resendWindow < 0) {
+                throw new IllegalArgumentException("resendWindow " + resendWindow);
+            }
+            this.resendWindow = resendWindow;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setCacheEncodedMessages(boolean cacheEncodedMessages) {
+            this.cacheEncodedMessages = cacheEncodedMessages;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setBatchFrameEnabled(boolean batchFrameEnabled) {
+            this.batchFrameEnabled = batchFrameEnabled;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setFlushThresholdBytes(int flushThresholdBytes) {
+            this.flushThresholdBytes = CheckUtils.requirePositive(flushThresholdBytes, "flushThresholdBytes");
+            return this;
+        }
+
+        /**
+         * @param flushLingerMicros 刷新缓冲区的最大延迟(微秒)，0表示立即发送
+         */
+        public SocketSessionConfigBuilder setFlushLingerMicros(int flushLingerMicros) {
+            if (flushLingerMicros < 0) {
+                throw new IllegalArgumentException("flushLingerMicros " + flushLingerMicros);
+            }
+            this.flushLingerMicros = flushLingerMicros;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setWsNativeFraming(boolean wsNativeFraming) {
+            this.wsNativeFraming = wsNativeFraming;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setWsPerMessageDeflate(boolean wsPerMessageDeflate) {
+            this.wsPerMessageDeflate = wsPerMessageDeflate;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setCompressionEnabled(boolean compressionEnabled) {
+            this.compressionEnabled = compressionEnabled;
+            return this;
+        }
+
+        public SocketSessionConfigBuilder setCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = CheckUtils.requirePositive(compressionThreshold, "compressionThreshold");
+            return this;
+        }
+
+        /**
+         * @param compressionLevel 压缩级别 0-9，同{@link Deflater}的级别
+         */
+        public SocketSessionConfigBuilder setCompressionLevel(int compressionLevel) {
+            if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("compressionLevel " + compressionLevel);
+            }
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * @param compressionDictionary 预置字典，null表示不使用字典
+         */
+        public SocketSessionConfigBuilder setCompressionDictionary(@Nullable byte[] compressionDictionary) {
+            this.compressionDictionary = compressionDictionary == null || compressionDictionary.length == 0 ? null : compressionDictionary.clone();
+            return this;
+        }
+
+        /**
+         * 在发起调用的线程中预序列化消息内容
+         */
+        public SocketSessionConfigBuilder setPreSerializeInCallerThread() {
+            this.preSerializeMode = PreSerializeMode.CALLER_THREAD;
+            this.serializeEventLoopGroup = null;
+            return this;
+        }
+
+        /**
+         * 在指定线程组中预序列化消息内容
+         */
+        public SocketSessionConfigBuilder setPreSerializeInGroup(@Nonnull FixedEventLoopGroup serializeEventLoopGroup) {
+            this.preSerializeMode = PreSerializeMode.SERIALIZE_GROUP;
+            this.serializeEventLoopGroup = Objects.requireNonNull(serializeEventLoopGroup, "serializeEventLoopGroup");
+            return this;
+        }
+
         @Override
         protected SocketSessionConfig newInstance() {
             return new SocketSessionConfig(this);
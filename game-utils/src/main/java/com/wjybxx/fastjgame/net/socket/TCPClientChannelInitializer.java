@@ -53,6 +53,6 @@ public class TCPClientChannelInitializer extends ChannelInitializer<SocketChanne
         // 读超时控制 - 注意：netty的EventLoop虽然支持定时任务任务，但是定时任务对EventLoop非常不友好，要尽量减少这种定时任务。
         pipeline.addLast(NetUtils.READ_TIMEOUT_HANDLER_NAME, new ReadTimeoutHandler(config.readTimeout()));
         pipeline.addLast(new LengthFieldBasedFrameDecoder(config.maxFrameLength(), 0, 4, 0, 4));
-        pipeline.addLast(new ClientSocketCodec(config.serializer(), sessionId, netEventLoop));
+        pipeline.addLast(new ClientSocketCodec(config, sessionId, netEventLoop));
     }
 }
@@ -16,13 +16,17 @@
 
 package com.wjybxx.fastjgame.net.socket.inner;
 
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
 import com.wjybxx.fastjgame.net.socket.BatchSocketMessageTO;
 import com.wjybxx.fastjgame.net.socket.SocketMessage;
+import io.netty.util.Recycler;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * 内网批量socket消息传输对象
+ * 内网批量socket消息传输对象。
+ * 它拷贝发送缓冲区中的消息，使得缓冲区可以立即复用，编码完成之后由codec回收。
  *
  * @author wjybxx
  * @version 1.0
@@ -30,13 +34,33 @@ import java.util.List;
  * github - https://github.com/hl845740757
  */
 public class InnerBatchSocketMessageTO implements BatchSocketMessageTO {
+
+    private static final Recycler<InnerBatchSocketMessageTO> RECYCLER = NetRecyclers.newRecycler(InnerBatchSocketMessageTO::new);
+
+    private final Recycler.Handle<InnerBatchSocketMessageTO> handle;
     /**
      * {@link InnerSocketMessage}
      */
-    private final List<SocketMessage> socketMessageList;
+    private final ArrayList<SocketMessage> socketMessageList = new ArrayList<>();
+    /**
+     * 单个批量帧的最大长度，0表示不使用批量帧
+     */
+    private int maxBatchFrameLength;
 
-    InnerBatchSocketMessageTO(List<SocketMessage> socketMessageList) {
-        this.socketMessageList = socketMessageList;
+    private InnerBatchSocketMessageTO(Recycler.Handle<InnerBatchSocketMessageTO> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个传输对象，并拷贝缓冲区中的消息，如果对象池未开启，则创建一个新对象
+     *
+     * @param buffer 发送缓冲区，方法返回之后可以立即清空
+     */
+    static InnerBatchSocketMessageTO newInstance(List<SocketMessage> buffer, int maxBatchFrameLength) {
+        final InnerBatchSocketMessageTO batchSocketMessageTO = RECYCLER.get();
+        batchSocketMessageTO.socketMessageList.addAll(buffer);
+        batchSocketMessageTO.maxBatchFrameLength = maxBatchFrameLength;
+        return batchSocketMessageTO;
     }
 
     @Override
@@ -48,4 +72,15 @@ public class InnerBatchSocketMessageTO implements BatchSocketMessageTO {
     public List<SocketMessage> getSocketMessageList() {
         return socketMessageList;
     }
+
+    @Override
+    public int maxBatchFrameLength() {
+        return maxBatchFrameLength;
+    }
+
+    @Override
+    public void recycle() {
+        socketMessageList.clear();
+        handle.recycle(this);
+    }
 }
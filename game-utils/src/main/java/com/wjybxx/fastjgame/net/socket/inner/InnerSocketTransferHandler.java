@@ -16,8 +16,12 @@
 
 package com.wjybxx.fastjgame.net.socket.inner;
 
+import com.wjybxx.fastjgame.net.manager.SessionFlushManager;
+import com.wjybxx.fastjgame.net.rpc.NetLogicMessage;
 import com.wjybxx.fastjgame.net.rpc.NetMessage;
 import com.wjybxx.fastjgame.net.rpc.PingPongMessage;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.session.AbstractSession;
 import com.wjybxx.fastjgame.net.session.ConnectAwareTask;
 import com.wjybxx.fastjgame.net.session.DisconnectAwareTask;
 import com.wjybxx.fastjgame.net.session.SessionDuplexHandlerAdapter;
@@ -27,12 +31,14 @@ import com.wjybxx.fastjgame.net.utils.NetUtils;
 import com.wjybxx.fastjgame.util.concurrent.ConcurrentUtils;
 import io.netty.channel.Channel;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 内网服务器之间传输支持。
  * 1. 由于它真正的向{@link Channel}中写入数据，因此也负责关闭channel
  * 2. 它负责过滤无效的消息
+ * 3. 它负责缓冲待发送的消息，消息数或字节数达到阈值时立即发送，否则在请求刷新时(可延迟{@link SocketSessionConfig#flushLingerMicros()})发送。
  *
  * @author wjybxx
  * @version 1.0
@@ -45,11 +51,37 @@ public class InnerSocketTransferHandler extends SessionDuplexHandlerAdapter {
      * 真正通信的channel。
      */
     private final Channel channel;
+    private final LingerFlushTask lingerFlushTask = new LingerFlushTask();
+
+    /**
+     * 未预序列化的消息内容的估算字节数 - 不执行序列化，使用固定值
+     */
+    private static final int UNSERIALIZED_BODY_BYTES = 64;
+
+    private AbstractSession session;
+    private SessionFlushManager flushManager;
+
     private int maxPendingMessages;
+    private int flushThresholdBytes;
+    private long flushLingerNanos;
+    /**
+     * 单个批量帧的最大长度，0表示不使用批量帧
+     */
+    private int maxBatchFrameLength;
+
     /**
      * 缓冲区 - 减少与netty的交互
      */
-    private LinkedList<SocketMessage> buffer = new LinkedList<>();
+    private final ArrayList<SocketMessage> buffer = new ArrayList<>();
+    /**
+     * 缓冲区中的消息的估算字节数
+     */
+    private int bufferedBytes;
+    /**
+     * 是否已注册延迟刷新任务
+     */
+    private boolean flushScheduled;
+    private long flushDeadlineNanos;
 
     InnerSocketTransferHandler(Channel channel) {
         this.channel = channel;
@@ -57,13 +89,20 @@ public class InnerSocketTransferHandler extends SessionDuplexHandlerAdapter {
 
     @Override
     public void handlerAdded(SessionHandlerContext ctx) throws Exception {
-        SocketSessionConfig config = (SocketSessionConfig) ctx.session().config();
+        session = (AbstractSession) ctx.session();
+        flushManager = session.flushManager();
+
+        SocketSessionConfig config = (SocketSessionConfig) session.config();
         maxPendingMessages = config.maxPendingMessages();
+        flushThresholdBytes = config.flushThresholdBytes();
+        flushLingerNanos = TimeUnit.MICROSECONDS.toNanos(config.flushLingerMicros());
+        maxBatchFrameLength = config.isBatchFrameEnabled() ? config.maxFrameLength() : 0;
     }
 
     @Override
     public void tick(SessionHandlerContext ctx) {
-        if (buffer.size() > 0) {
+        // 已注册延迟刷新的，由flushManager负责发送
+        if (buffer.size() > 0 && !flushScheduled) {
             doFlush();
         }
     }
@@ -90,7 +129,9 @@ public class InnerSocketTransferHandler extends SessionDuplexHandlerAdapter {
 
         if (msg instanceof SocketMessageEvent) {
             // 消息事件 - 它出现的概率更高，因此放在前面
-            ctx.fireRead(((SocketMessageEvent) msg).getWrappedMessage());
+            final SocketMessageEvent event = (SocketMessageEvent) msg;
+            ctx.fireRead(event.getWrappedMessage());
+            event.recycle();
             return;
         }
 
@@ -114,6 +155,7 @@ public class InnerSocketTransferHandler extends SessionDuplexHandlerAdapter {
     public void write(SessionHandlerContext ctx, Object msg) throws Exception {
         if (ctx.session().isClosed()) {
             // session已关闭，丢弃消息
+            SerializedBody.releaseBody((NetMessage) msg);
             return;
         }
         if (msg == PingPongMessage.PING || msg == PingPongMessage.PONG) {
@@ -121,9 +163,11 @@ public class InnerSocketTransferHandler extends SessionDuplexHandlerAdapter {
             channel.writeAndFlush(new InnerPingPongMessageTO((PingPongMessage) msg));
         } else {
             // 用户数据包
-            buffer.add(new InnerSocketMessage((NetMessage) msg));
+            final NetMessage netMessage = (NetMessage) msg;
+            buffer.add(new InnerSocketMessage(netMessage));
+            bufferedBytes += estimateMessageBytes(netMessage);
 
-            if (buffer.size() >= maxPendingMessages) {
+            if (buffer.size() >= maxPendingMessages || bufferedBytes >= flushThresholdBytes) {
                 // 检测是否需要清空缓冲区了
                 doFlush();
             }
@@ -138,22 +182,86 @@ public class InnerSocketTransferHandler extends SessionDuplexHandlerAdapter {
             return;
         }
 
-        if (buffer.size() > 0) {
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        if (flushLingerNanos == 0) {
             doFlush();
+            return;
+        }
+
+        if (!flushScheduled) {
+            // 延迟发送，以便合并之后产生的消息
+            flushScheduled = true;
+            flushDeadlineNanos = System.nanoTime() + flushLingerNanos;
+            flushManager.register(lingerFlushTask);
         }
     }
 
     private void doFlush() {
         if (buffer.size() == 1) {
-            channel.writeAndFlush(buffer.pollFirst());
+            channel.writeAndFlush(buffer.get(0));
+            buffer.clear();
         } else {
-            channel.writeAndFlush(new InnerBatchSocketMessageTO(buffer));
-            buffer = new LinkedList<>();
+            // 传输对象拷贝了缓冲区中的消息，缓冲区可以直接复用
+            channel.writeAndFlush(InnerBatchSocketMessageTO.newInstance(buffer, maxBatchFrameLength));
+            buffer.clear();
         }
+        bufferedBytes = 0;
+    }
+
+    /**
+     * 估算消息编码后的字节数，只用于判断是否需要发送，不需要精确。
+     * 该方法在每个消息写入时调用，因此不能序列化消息内容，预序列化的消息使用其真实长度，否则使用固定值。
+     */
+    private static int estimateMessageBytes(NetMessage netMessage) {
+        int bytes = AbstractSocketCodec.MESSAGE_FRAME_HEADER_LENGTH;
+        switch (netMessage.type()) {
+            case RPC_REQUEST:
+                bytes += AbstractSocketCodec.RPC_REQUEST_HEADER_LENGTH;
+                break;
+            case RPC_RESPONSE:
+                bytes += AbstractSocketCodec.RPC_RESPONSE_HEADER_LENGTH;
+                break;
+            default:
+                break;
+        }
+        if (netMessage instanceof NetLogicMessage) {
+            final Object body = ((NetLogicMessage) netMessage).getBody();
+            if (body instanceof SerializedBody) {
+                bytes += ((SerializedBody) body).content().readableBytes();
+            } else {
+                bytes += UNSERIALIZED_BODY_BYTES;
+            }
+        }
+        return bytes;
     }
 
     @Override
     public void close(SessionHandlerContext ctx) throws Exception {
         NetUtils.closeQuietly(channel);
+        // 释放未发送的消息 - 每个消息只会发送一次，发送之后由codec释放
+        for (SocketMessage socketMessage : buffer) {
+            SerializedBody.releaseBody(socketMessage.getWrappedMessage());
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    private class LingerFlushTask implements SessionFlushManager.PendingFlush {
+
+        @Override
+        public long deadlineNanos() {
+            return flushDeadlineNanos;
+        }
+
+        @Override
+        public void flush() {
+            flushScheduled = false;
+            if (!session.isClosed() && buffer.size() > 0) {
+                doFlush();
+            }
+        }
     }
 }
@@ -46,7 +46,6 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
 
     private int maxPendingMessages;
     private int maxCacheMessages;
-    private int ackTimeoutMs;
     /**
      * 会话channel一定不为null
      */
@@ -54,7 +53,7 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
     /**
      * 消息队列
      */
-    private final MessageQueue messageQueue = new MessageQueue();
+    private final MessageQueue messageQueue;
     /**
      * 最后一次成功建立连接时对应的请求信息 - 客户端上一次的请求信息
      */
@@ -64,9 +63,10 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
      */
     private boolean notify = true;
 
-    private OuterAcceptorHandler(Channel channel, SocketConnectRequest connectRequest) {
+    private OuterAcceptorHandler(Channel channel, SocketConnectRequest connectRequest, SocketSessionConfig config) {
         this.channel = channel;
         this.connectRequest = connectRequest;
+        this.messageQueue = new MessageQueue(config);
     }
 
     @Override
@@ -75,7 +75,6 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
         final SocketSessionConfig config = (SocketSessionConfig) ctx.session().config();
         maxPendingMessages = config.maxPendingMessages();
         maxCacheMessages = config.maxCacheMessages();
-        ackTimeoutMs = config.ackTimeoutMs();
     }
 
     @Override
@@ -95,7 +94,12 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
         // 清空缓冲队列
         OuterUtils.flush(ctx, channel,
                 messageQueue, maxPendingMessages,
-                ctx.timerSystem().curTimeMillis() + ackTimeoutMs);
+                ctx.timerSystem().curTimeMillis());
+
+        if (messageQueue.getCacheMessages() > 0) {
+            // 还有待发送的消息，需要继续发送（收到确认时会自动请求tick）
+            ctx.requestTick();
+        }
     }
 
     @Override
@@ -118,7 +122,7 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
             OuterUtils.readMessage(ctx, (SocketMessageEvent) event,
                     messageQueue, channel,
                     maxPendingMessages,
-                    ctx.timerSystem().curTimeMillis() + ackTimeoutMs);
+                    ctx.timerSystem().curTimeMillis());
             return;
         }
 
@@ -127,7 +131,7 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
             OuterUtils.readPingPong(ctx, (SocketPingPongEvent) event,
                     messageQueue, channel,
                     maxPendingMessages,
-                    ctx.timerSystem().curTimeMillis() + ackTimeoutMs);
+                    ctx.timerSystem().curTimeMillis());
             return;
         }
 
@@ -141,14 +145,14 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
                 messageQueue, maxCacheMessages,
                 (NetMessage) msg,
                 maxPendingMessages,
-                ctx.timerSystem().curTimeMillis() + ackTimeoutMs);
+                ctx.timerSystem().curTimeMillis());
     }
 
     @Override
     public void flush(SessionHandlerContext ctx) throws Exception {
         OuterUtils.flush(ctx, channel,
                 messageQueue, maxPendingMessages,
-                ctx.timerSystem().curTimeMillis() + ackTimeoutMs);
+                ctx.timerSystem().curTimeMillis());
     }
 
     @Override
@@ -246,7 +250,7 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
         // 1. 触发一次读，避免session超时
         ctx.fireRead(PingPongMessage.PONG);
         // 2. 重发消息
-        OuterUtils.resend(channel, messageQueue, ctx.timerSystem().curTimeMillis() + ackTimeoutMs);
+        OuterUtils.resend(channel, messageQueue, ctx.timerSystem().curTimeMillis());
     }
 
     // ------------------------------------------------------- 建立连接请求 ----------------------------------------------
@@ -281,7 +285,7 @@ public class OuterAcceptorHandler extends SessionDuplexHandlerAdapter {
                     acceptorManager);
 
             // 初始ack为客户端的初始sequence+1
-            final OuterAcceptorHandler acceptorHandler = new OuterAcceptorHandler(channel, connectRequest);
+            final OuterAcceptorHandler acceptorHandler = new OuterAcceptorHandler(channel, connectRequest, portExtraInfo.getSessionConfig());
             acceptorHandler.messageQueue.setAck(event.getInitSequence() + 1);
 
             // 初始化管道
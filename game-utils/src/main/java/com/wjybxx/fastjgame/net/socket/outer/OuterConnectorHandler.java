@@ -22,6 +22,7 @@ import com.wjybxx.fastjgame.net.rpc.NetMessage;
 import com.wjybxx.fastjgame.net.rpc.OneWaySupportHandler;
 import com.wjybxx.fastjgame.net.rpc.PingPongMessage;
 import com.wjybxx.fastjgame.net.rpc.RpcSupportHandler;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
 import com.wjybxx.fastjgame.net.session.*;
 import com.wjybxx.fastjgame.net.socket.*;
 import com.wjybxx.fastjgame.net.utils.NetUtils;
@@ -66,7 +67,7 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
     /**
      * 消息队列
      */
-    private final MessageQueue messageQueue = new MessageQueue();
+    private MessageQueue messageQueue;
     /**
      * 发起验证请求的次数 - 每次发起验证请求时增加
      */
@@ -103,6 +104,7 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
         // 缓存，减少堆栈深度
         this.ctx = ctx;
         config = (SocketSessionConfig) ctx.session().config();
+        messageQueue = new MessageQueue(config);
 
         // 尝试建立socket
         changeState(new ConnectingState());
@@ -265,6 +267,7 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
         void write(NetMessage msg) {
             if (ctx.session().isClosed()) {
                 // session已关闭，丢弃消息
+                SerializedBody.releaseBody(msg);
                 return;
             }
 
@@ -275,12 +278,14 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
 
             if (messageQueue.getCacheMessages() >= config.maxCacheMessages()) {
                 // 超出缓存限制
+                SerializedBody.releaseBody(msg);
                 ctx.session().close();
                 return;
             }
 
             // 放入缓存队列，稍后发送
-            messageQueue.getCacheQueue().addLast(new OuterSocketMessage(messageQueue.nextSequence(), msg));
+            messageQueue.addCacheMessage(new OuterSocketMessage(messageQueue.nextSequence(), msg,
+                    messageQueue.isCacheEncodedMessages()));
         }
 
         void flush() {
@@ -317,17 +322,15 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
             tryTimes++;
             connectStartTime = ctx.timerSystem().curTimeMillis();
 
-            channelFuture = nettyThreadManager.connectAsyn(
-                    remoteAddress,
-                    config.sndBuffer(),
-                    config.rcvBuffer(),
-                    config.connectTimeoutMs(),
-                    initializer);
+            channelFuture = nettyThreadManager.connectAsyn(remoteAddress, config, initializer);
             channel = channelFuture.channel();
         }
 
         @Override
         void tick() {
+            // 重连期间需要每帧tick
+            ctx.requestTick();
+
             if (channelFuture.isDone()) {
                 // 操作完成
                 if (channelFuture.isSuccess()) {
@@ -402,6 +405,9 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
 
         @Override
         void tick() {
+            // 验证期间需要每帧tick
+            ctx.requestTick();
+
             if (ctx.timerSystem().curTimeMillis() - verifyingStartTimeMillis <= config.verifyTimeoutMs()) {
                 // 应答还未超时，继续等待
                 return;
@@ -502,16 +508,17 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
                 // 1. 触发一次读，避免session超时
                 ctx.fireRead(PingPongMessage.PONG);
                 // 2. 重发消息
-                OuterUtils.resend(channel, messageQueue, ctx.timerSystem().curTimeMillis() + config.ackTimeoutMs());
+                OuterUtils.resend(channel, messageQueue, ctx.timerSystem().curTimeMillis());
             }
         }
 
         @Override
         void tick() {
             // 检查ack超时
-            final OuterSocketMessage firstMessage = messageQueue.getPendingQueue().peekFirst();
+            final OuterSocketMessage firstMessage = messageQueue.getFirstPendingMessage();
             if (null != firstMessage && ctx.timerSystem().curTimeMillis() > firstMessage.getAckDeadline()) {
                 // ack超时，进行重传验证
+                messageQueue.onAckTimeout();
                 changeState(new VerifyingState());
                 return;
             }
@@ -519,7 +526,12 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
             // 清空缓冲队列
             OuterUtils.flush(ctx, channel,
                     messageQueue, config.maxPendingMessages(),
-                    ctx.timerSystem().curTimeMillis() + config.ackTimeoutMs());
+                    ctx.timerSystem().curTimeMillis());
+
+            if (messageQueue.getCacheMessages() > 0 || messageQueue.getPendingMessages() > 0) {
+                // 还有待发送或待确认的消息，需要继续发送和检查ack超时
+                ctx.requestTick();
+            }
         }
 
         @Override
@@ -532,7 +544,7 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
             OuterUtils.readMessage(ctx, event, messageQueue,
                     channel,
                     config.maxPendingMessages(),
-                    ctx.timerSystem().curTimeMillis() + config.ackTimeoutMs());
+                    ctx.timerSystem().curTimeMillis());
         }
 
         @Override
@@ -540,7 +552,7 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
             OuterUtils.readPingPong(ctx, event, messageQueue,
                     channel,
                     config.maxPendingMessages(),
-                    ctx.timerSystem().curTimeMillis() + config.ackTimeoutMs());
+                    ctx.timerSystem().curTimeMillis());
         }
 
         @Override
@@ -549,14 +561,14 @@ public class OuterConnectorHandler extends SessionDuplexHandlerAdapter {
                     messageQueue, config.maxCacheMessages(),
                     msg,
                     config.maxPendingMessages(),
-                    ctx.timerSystem().curTimeMillis() + config.ackTimeoutMs());
+                    ctx.timerSystem().curTimeMillis());
         }
 
         @Override
         void flush() {
             OuterUtils.flush(ctx, channel,
                     messageQueue, config.maxPendingMessages(),
-                    ctx.timerSystem().curTimeMillis() + config.ackTimeoutMs());
+                    ctx.timerSystem().curTimeMillis());
         }
     }
 
@@ -17,14 +17,25 @@
 package com.wjybxx.fastjgame.net.socket.outer;
 
 import com.wjybxx.fastjgame.net.rpc.NetMessage;
+import com.wjybxx.fastjgame.net.rpc.NetMessageType;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.socket.EncodedSocketMessage;
 import com.wjybxx.fastjgame.net.socket.SocketMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * 对外的socket消息对象 - 启用了消息确认机制
  * 它并非线程安全的，通过以下方式保证安全性：
- * 1. netty线程只会访问{@link #wrappedMessage}和{@link #sequence}，这俩一旦赋值便不会变更
+ * 1. 未开启编码结果缓存时，netty线程只会访问{@link #wrappedMessage}和{@link #sequence}，这俩一旦赋值便不会变更
+ * 2. 开启编码结果缓存时，交给netty线程的是{@link #newWriteMessage()}创建的{@link PendingWrite}，它持有原始消息的引用，
+ * netty线程不会访问{@link #wrappedMessage}。netty线程首次编码之后通过CAS发布{@link #encodedPayload}，之后的重传都使用{@link EncodedSocketMessage}，
+ * 因此NetEventLoop线程观察到编码结果之后便可以释放{@link #wrappedMessage}，只保留字节内容，而尚未编码的发送不受影响。
  *
  * @author wjybxx
  * @version 1.0
@@ -34,23 +45,50 @@ import javax.annotation.concurrent.NotThreadSafe;
 @NotThreadSafe
 public class OuterSocketMessage implements SocketMessage {
 
+    /**
+     * 编码结果已释放的标记
+     */
+    private static final ByteBuf RELEASED = Unpooled.EMPTY_BUFFER;
+
     /**
      * 当前包id - 一旦分配就不会改变
      */
     private final long sequence;
     /**
-     * 被包装的消息
+     * 消息类型 - 释放{@link #wrappedMessage}之后仍然需要
+     */
+    private final NetMessageType messageType;
+    /**
+     * 被包装的消息，缓存编码结果之后，由NetEventLoop线程置为null - 开启编码结果缓存时只有NetEventLoop线程访问
+     */
+    private NetMessage wrappedMessage;
+    /**
+     * 是否缓存编码结果
      */
-    private final NetMessage wrappedMessage;
+    private final boolean cacheEncoded;
+    /**
+     * 首次编码的结果(捎带确认字段之后的部分) - netty线程写入，NetEventLoop线程读取和释放
+     */
+    private volatile ByteBuf encodedPayload;
     /**
      * 消息确认超时时间
      * 每次发送的时候设置超时时间 - 线程封闭(NetEventLoop线程访问)
      */
     private long ackDeadline;
+    /**
+     * 最近一次的发送时间，用于估算rtt - 线程封闭(NetEventLoop线程访问)
+     */
+    private long sendTimeMs;
+    /**
+     * 是否重传过，重传过的消息不能用于估算rtt(Karn算法) - 线程封闭(NetEventLoop线程访问)
+     */
+    private boolean resent;
 
-    OuterSocketMessage(long sequence, NetMessage wrappedMessage) {
+    OuterSocketMessage(long sequence, NetMessage wrappedMessage, boolean cacheEncoded) {
         this.sequence = sequence;
+        this.messageType = wrappedMessage.type();
         this.wrappedMessage = wrappedMessage;
+        this.cacheEncoded = cacheEncoded;
     }
 
     @Override
@@ -63,6 +101,66 @@ public class OuterSocketMessage implements SocketMessage {
         return wrappedMessage;
     }
 
+    @Override
+    public boolean isCacheEncodedPayload() {
+        return cacheEncoded && encodedPayload == null;
+    }
+
+    @Override
+    public boolean cacheEncodedPayload(ByteBuf payload) {
+        // 如果消息已被确认(已释放)，则会失败
+        return cacheEncoded && ENCODED_PAYLOAD.compareAndSet(this, null, payload);
+    }
+
+    /**
+     * 创建一个用于发送原始消息的对象 - 只能在NetEventLoop线程调用。
+     * 队列仍然持有消息，因此会为编码器增加一个引用。
+     *
+     * @return 开启编码结果缓存时返回一个持有原始消息引用的对象，否则返回该对象自身
+     */
+    SocketMessage newWriteMessage() {
+        SerializedBody.retainBody(wrappedMessage);
+        return cacheEncoded ? new PendingWrite(this, wrappedMessage) : this;
+    }
+
+    /**
+     * 创建一个用于重传的已编码消息 - 只能在NetEventLoop线程调用。
+     *
+     * @return 如果尚未缓存编码结果，则返回null
+     */
+    @Nullable
+    EncodedSocketMessage newEncodedMessage() {
+        final ByteBuf payload = encodedPayload;
+        if (payload == null || payload == RELEASED) {
+            return null;
+        }
+        // 为编码器增加一个引用
+        return new EncodedSocketMessage(sequence, messageType, payload.retainedDuplicate());
+    }
+
+    /**
+     * 如果编码结果已缓存，则释放原始消息，只保留字节内容 - 只能在NetEventLoop线程调用。
+     * 尚未编码的发送持有原始消息的引用({@link PendingWrite})，因此释放是安全的。
+     */
+    void releaseWrappedMessageIfEncoded() {
+        final ByteBuf payload = encodedPayload;
+        if (payload != null && payload != RELEASED) {
+            // 已缓存编码结果的消息内容一定不是SerializedBody，直接释放即可
+            wrappedMessage = null;
+        }
+    }
+
+    /**
+     * 释放消息持有的资源 - 消息被确认或session关闭时调用，只能在NetEventLoop线程调用。
+     */
+    public void release() {
+        SerializedBody.releaseBody(wrappedMessage);
+        final ByteBuf payload = (ByteBuf) ENCODED_PAYLOAD.getAndSet(this, RELEASED);
+        if (payload != null && payload != RELEASED) {
+            payload.release();
+        }
+    }
+
     public long getAckDeadline() {
         return ackDeadline;
     }
@@ -70,4 +168,65 @@ public class OuterSocketMessage implements SocketMessage {
     public void setAckDeadline(long ackDeadline) {
         this.ackDeadline = ackDeadline;
     }
+
+    public long getSendTimeMs() {
+        return sendTimeMs;
+    }
+
+    public void setSendTimeMs(long sendTimeMs) {
+        this.sendTimeMs = sendTimeMs;
+    }
+
+    public boolean isResent() {
+        return resent;
+    }
+
+    public void setResent(boolean resent) {
+        this.resent = resent;
+    }
+
+    /**
+     * 一次尚未编码的原始消息发送 - 持有原始消息的引用，编码结果仍然缓存到所属的{@link OuterSocketMessage}
+     */
+    private static class PendingWrite implements SocketMessage {
+
+        private final OuterSocketMessage owner;
+        private final NetMessage wrappedMessage;
+
+        PendingWrite(OuterSocketMessage owner, NetMessage wrappedMessage) {
+            this.owner = owner;
+            this.wrappedMessage = wrappedMessage;
+        }
+
+        @Override
+        public long getSequence() {
+            return owner.sequence;
+        }
+
+        @Override
+        public NetMessage getWrappedMessage() {
+            return wrappedMessage;
+        }
+
+        @Override
+        public boolean isCacheEncodedPayload() {
+            return owner.isCacheEncodedPayload();
+        }
+
+        @Override
+        public boolean cacheEncodedPayload(ByteBuf payload) {
+            return owner.cacheEncodedPayload(payload);
+        }
+    }
+
+    private static final VarHandle ENCODED_PAYLOAD;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            ENCODED_PAYLOAD = l.findVarHandle(OuterSocketMessage.class, "encodedPayload", ByteBuf.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 }
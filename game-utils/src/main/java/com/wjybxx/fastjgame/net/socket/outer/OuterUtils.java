@@ -18,6 +18,7 @@ package com.wjybxx.fastjgame.net.socket.outer;
 
 import com.wjybxx.fastjgame.net.rpc.NetMessage;
 import com.wjybxx.fastjgame.net.rpc.PingPongMessage;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
 import com.wjybxx.fastjgame.net.session.SessionHandlerContext;
 import com.wjybxx.fastjgame.net.socket.*;
 import io.netty.channel.Channel;
@@ -43,11 +44,19 @@ class OuterUtils {
      * @param channel            socket对应的channel
      * @param messageQueue       消息队列
      * @param maxPendingMessages 最大填充消息数
-     * @param ackDeadline        ack超时时间
+     * @param curTimeMillis      当前时间，用于计算ack超时时间
      */
     private static void emit(final Channel channel, final MessageQueue messageQueue,
                              final int maxPendingMessages,
-                             final long ackDeadline) {
+                             final long curTimeMillis) {
+        if (messageQueue.getResendMessages() > 0) {
+            // 重传尚未完成，完成之前不发送新消息
+            if (channel.isWritable()) {
+                emitResendMessages(channel, messageQueue, curTimeMillis);
+            }
+            return;
+        }
+
         // 计算本批次发送的消息数
         final int emitNum = Math.min(messageQueue.getCacheMessages(), maxPendingMessages - messageQueue.getPendingMessages());
         if (emitNum <= 0) {
@@ -60,32 +69,33 @@ class OuterUtils {
             return;
         }
 
+        final long ackDeadline = curTimeMillis + messageQueue.getAckTimeoutMs();
         if (emitNum == 1) {
             // 添加到已发送队列
-            final OuterSocketMessage outerSocketMessage = messageQueue.getCacheQueue().pollFirst();
+            final OuterSocketMessage outerSocketMessage = messageQueue.emitCacheMessage();
             assert null != outerSocketMessage;
-            messageQueue.getPendingQueue().add(outerSocketMessage);
 
             // 设置ack超时时间
             outerSocketMessage.setAckDeadline(ackDeadline);
+            outerSocketMessage.setSendTimeMs(curTimeMillis);
 
-            // 真正发送
-            final OuterSocketMessageTO outerSocketMessageTO = new OuterSocketMessageTO(messageQueue.getAck(), outerSocketMessage);
+            // 真正发送 - 队列仍然持有消息，因此需要为codec增加一个引用
+            final OuterSocketMessageTO outerSocketMessageTO = new OuterSocketMessageTO(messageQueue.getAck(), outerSocketMessage.newWriteMessage());
             channel.writeAndFlush(outerSocketMessageTO, channel.voidPromise());
         } else {
             // 可发送多个消息，批量传输
             final List<SocketMessage> messageList = new ArrayList<>(emitNum);
             for (int index = 0; index < emitNum; index++) {
                 // 添加到已发送队列
-                final OuterSocketMessage outerSocketMessage = messageQueue.getCacheQueue().pollFirst();
+                final OuterSocketMessage outerSocketMessage = messageQueue.emitCacheMessage();
                 assert null != outerSocketMessage;
-                messageQueue.getPendingQueue().add(outerSocketMessage);
 
                 // 设置ack超时时间
                 outerSocketMessage.setAckDeadline(ackDeadline);
+                outerSocketMessage.setSendTimeMs(curTimeMillis);
 
                 // 添加到传输列表
-                messageList.add(outerSocketMessage);
+                messageList.add(outerSocketMessage.newWriteMessage());
             }
             // 真正发送
             final OuterBatchSocketMessageTO batchSocketMessageTO = new OuterBatchSocketMessageTO(messageQueue.getAck(), messageList);
@@ -102,15 +112,16 @@ class OuterUtils {
      * @param maxCacheMessages   最大允许缓存的消息数
      * @param msg                要发送的消息
      * @param maxPendingMessages 最大填充消息数
-     * @param ackDeadline        ack超时时间
+     * @param curTimeMillis      当前时间，用于计算ack超时时间
      */
     static void write(final SessionHandlerContext ctx, final Channel channel,
                       final MessageQueue messageQueue, final int maxCacheMessages,
                       final NetMessage msg,
-                      int maxPendingMessages, long ackDeadline) {
+                      int maxPendingMessages, long curTimeMillis) {
 
         if (ctx.session().isClosed()) {
             // session已关闭，丢弃消息
+            SerializedBody.releaseBody(msg);
             return;
         }
 
@@ -123,18 +134,20 @@ class OuterUtils {
 
         if (messageQueue.getCacheMessages() >= maxCacheMessages) {
             // 超出缓存上限，关闭session
+            SerializedBody.releaseBody(msg);
             ctx.session().close();
             return;
         }
 
         // 压入缓存队列稍后发送
-        final OuterSocketMessage outerSocketMessage = new OuterSocketMessage(messageQueue.nextSequence(), msg);
-        messageQueue.getCacheQueue().addLast(outerSocketMessage);
+        final OuterSocketMessage outerSocketMessage = new OuterSocketMessage(messageQueue.nextSequence(), msg,
+                messageQueue.isCacheEncodedMessages());
+        messageQueue.addCacheMessage(outerSocketMessage);
 
         if (messageQueue.getCacheMessages() >= maxPendingMessages / 2
                 && messageQueue.getPendingMessages() <= maxPendingMessages / 2) {
             // 缓存的足够多了，尝试发送（如果待确认的消息超过限制的半数，那么不发送）
-            emit(channel, messageQueue, maxPendingMessages, ackDeadline);
+            emit(channel, messageQueue, maxPendingMessages, curTimeMillis);
         }
     }
 
@@ -145,39 +158,64 @@ class OuterUtils {
      * @param channel            socket对应的channel
      * @param messageQueue       消息队列
      * @param maxPendingMessages 最大填充消息数
-     * @param ackDeadline        ack超时时间
+     * @param curTimeMillis      当前时间，用于计算ack超时时间
      */
     static void flush(SessionHandlerContext ctx, final Channel channel,
                       final MessageQueue messageQueue, final int maxPendingMessages,
-                      final long ackDeadline) {
+                      final long curTimeMillis) {
         if (ctx.session().isClosed()) {
             // session已关闭，丢弃消息
             return;
         }
-        emit(channel, messageQueue, maxPendingMessages, ackDeadline);
+        emit(channel, messageQueue, maxPendingMessages, curTimeMillis);
     }
 
     /**
-     * 重发填充队列中的消息
+     * 重发填充队列中的消息，如果配置了重传窗口，则只重发窗口内的消息，其余的消息在收到确认之后继续重发。
      *
-     * @param channel      socket对应的channel
-     * @param messageQueue 消息队列
-     * @param ackDeadline  ack超时时间
+     * @param channel       socket对应的channel
+     * @param messageQueue  消息队列
+     * @param curTimeMillis 当前时间，用于计算ack超时时间
      */
-    static void resend(final Channel channel, final MessageQueue messageQueue, final long ackDeadline) {
-        final int pendingMessages = messageQueue.getPendingMessages();
-        if (pendingMessages == 0) {
+    static void resend(final Channel channel, final MessageQueue messageQueue, final long curTimeMillis) {
+        if (messageQueue.getPendingMessages() == 0) {
             // 没有消息待发送
             return;
         }
+        // 必须要发送出去，因此不判断channel的可写状态
+        messageQueue.resetResendIndex();
+        emitResendMessages(channel, messageQueue, curTimeMillis);
+    }
+
+    /**
+     * 发送重传窗口内等待重传的消息
+     */
+    private static void emitResendMessages(final Channel channel, final MessageQueue messageQueue, final long curTimeMillis) {
+        final int resendNum = messageQueue.getResendableMessages();
+        if (resendNum <= 0) {
+            // 窗口已满，等待确认
+            return;
+        }
         // 注意：
         // 1. 必须进行拷贝，因为原列表可能在发出之后被修改，不可共享
         // 2. 每次真正发送的时候都需要更新ack超时时间
-        // 3. 必须要发送出去，因此不判断channel的可写状态
-        final ArrayList<SocketMessage> socketMessageList = new ArrayList<>(pendingMessages);
-        for (OuterSocketMessage socketMessage : messageQueue.getPendingQueue()) {
+        final long ackDeadline = curTimeMillis + messageQueue.getAckTimeoutMs();
+        final ArrayList<SocketMessage> socketMessageList = new ArrayList<>(resendNum);
+        for (int index = 0; index < resendNum; index++) {
+            final OuterSocketMessage socketMessage = messageQueue.nextResendMessage();
+            assert null != socketMessage;
             socketMessage.setAckDeadline(ackDeadline);
-            socketMessageList.add(socketMessage);
+            socketMessage.setSendTimeMs(curTimeMillis);
+            socketMessage.setResent(true);
+
+            // 如果已缓存编码结果，则直接重传字节内容，不再序列化
+            final EncodedSocketMessage encodedSocketMessage = socketMessage.newEncodedMessage();
+            if (encodedSocketMessage != null) {
+                socketMessageList.add(encodedSocketMessage);
+                socketMessage.releaseWrappedMessageIfEncoded();
+            } else {
+                socketMessageList.add(socketMessage.newWriteMessage());
+            }
         }
 
         // 执行发送，使用voidPromise，不追踪操作结果(可减少消耗)
@@ -193,13 +231,13 @@ class OuterUtils {
      * @param messageQueue       消息队列 - 需要校验sequence、ack，以及发送消息
      * @param channel            socket对应的channel
      * @param maxPendingMessages 最大可填充的消息数
-     * @param ackDeadline        ack超时时间
+     * @param curTimeMillis      当前时间，用于计算ack超时时间
      */
     static void readMessage(final SessionHandlerContext ctx, final SocketMessageEvent event,
                             final MessageQueue messageQueue,
                             final Channel channel,
                             final int maxPendingMessages,
-                            final long ackDeadline) {
+                            final long curTimeMillis) {
 
         // 1. 先尝试更新ack
         if (event.getSequence() == messageQueue.getAck()) {
@@ -220,11 +258,14 @@ class OuterUtils {
         // 3. 更新发送队列
         if (messageQueue.isAckOK(event.getAck())) {
             // 更新消息队列
-            messageQueue.updatePendingQueue(event.getAck());
+            messageQueue.updatePendingQueue(event.getAck(), curTimeMillis);
 
             // 继续发送消息
-            emit(channel, messageQueue, maxPendingMessages, ackDeadline);
+            emit(channel, messageQueue, maxPendingMessages, curTimeMillis);
         }
+
+        // 事件已处理完毕
+        event.recycle();
     }
 
     /**
@@ -235,13 +276,13 @@ class OuterUtils {
      * @param messageQueue       消息队列 - 需要校验sequence、ack，以及发送消息
      * @param channel            socket对应的channel
      * @param maxPendingMessages 最大可填充的消息数
-     * @param ackDeadline        ack超时时间
+     * @param curTimeMillis      当前时间，用于计算ack超时时间
      */
     static void readPingPong(final SessionHandlerContext ctx, final SocketPingPongEvent event,
                              final MessageQueue messageQueue,
                              final Channel channel,
                              final int maxPendingMessages,
-                             final long ackDeadline) {
+                             final long curTimeMillis) {
 
         // 1. 立即响应心跳 - 附带捎带确认
         ctx.fireRead(event.getPingOrPong());
@@ -249,10 +290,10 @@ class OuterUtils {
         // 2. 更新发送队列
         if (messageQueue.isAckOK(event.getAck())) {
             // 更新消息队列
-            messageQueue.updatePendingQueue(event.getAck());
+            messageQueue.updatePendingQueue(event.getAck(), curTimeMillis);
 
             // 继续发送消息
-            emit(channel, messageQueue, maxPendingMessages, ackDeadline);
+            emit(channel, messageQueue, maxPendingMessages, curTimeMillis);
         }
     }
 }
@@ -85,7 +85,9 @@ public class NetUtils {
      * @return 对于同一个sessionId，它计算得到的key是不变的
      */
     public static int fixedKey(String sessionId) {
-        return sessionId.hashCode();
+        // 扰动高位，使得按位与选择EventLoop时更加均匀（sessionId通常只有末尾几个字符不同）
+        final int h = sessionId.hashCode();
+        return h ^ (h >>> 16);
     }
 
     /**
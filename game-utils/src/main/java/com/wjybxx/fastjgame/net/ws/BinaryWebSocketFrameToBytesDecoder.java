@@ -21,7 +21,8 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 
 /**
- * websocket二进制帧 -> ByteBuf 解码器，取出内容传递给下一个handler {@link io.netty.handler.codec.LengthFieldBasedFrameDecoder}
+ * websocket二进制帧 -> ByteBuf 解码器，取出内容传递给下一个handler {@link io.netty.handler.codec.LengthFieldBasedFrameDecoder}。
+ * 如果开启了{@link com.wjybxx.fastjgame.net.socket.SocketSessionConfig#isWsNativeFraming()}，则直接传递给codec，一个websocket帧就是一个完整的包。
  *
  * @author wjybxx
  * @version 1.0
@@ -33,9 +33,31 @@ import java.util.List;
  */
 public class BytesToBinaryWebSocketFrameEncoder extends MessageToMessageEncoder<ByteBuf> {
 
+    /**
+     * 是否去掉自定义协议的长度字段
+     */
+    private final boolean stripLengthField;
+
+    public BytesToBinaryWebSocketFrameEncoder() {
+        this(false);
+    }
+
+    /**
+     * @param stripLengthField 是否去掉自定义协议的长度字段(4字节)。websocket帧本身就有长度，
+     *                         一个websocket帧就是一个完整的包时，不需要再次分帧。
+     */
+    public BytesToBinaryWebSocketFrameEncoder(boolean stripLengthField) {
+        this.stripLengthField = stripLengthField;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
         // 超类强制性的调用了release，因此需要引用计数+1
-        out.add(new BinaryWebSocketFrame(msg.retain()));
+        if (stripLengthField) {
+            // 共享内存，不拷贝
+            out.add(new BinaryWebSocketFrame(msg.retainedSlice(msg.readerIndex() + 4, msg.readableBytes() - 4)));
+        } else {
+            out.add(new BinaryWebSocketFrame(msg.retain()));
+        }
     }
 }
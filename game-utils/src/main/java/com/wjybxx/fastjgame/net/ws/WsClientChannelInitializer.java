@@ -29,7 +29,9 @@ import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -89,25 +91,38 @@ public class WsClientChannelInitializer extends ChannelInitializer<SocketChannel
      * websocket协议支持
      */
     private void appendWebsocketCodec(ChannelPipeline pipeline) throws URISyntaxException {
+        if (sessionConfig.isWsPerMessageDeflate()) {
+            // permessage-deflate扩展，握手时协商
+            pipeline.addLast(WebSocketClientCompressionHandler.INSTANCE);
+        }
         // websocket 解码流程
         URI uri = new URI(websocketUrl);
         pipeline.addLast(new WebSocketClientProtocolHandler(uri, WebSocketVersion.V13,
                 null, true, new DefaultHttpHeaders(), sessionConfig.maxFrameLength()));
+        if (sessionConfig.isWsNativeFraming()) {
+            // 一个websocket消息就是一个完整的包，需要合并分片的消息
+            pipeline.addLast(new WebSocketFrameAggregator(sessionConfig.maxFrameLength()));
+        }
         pipeline.addLast(new BinaryWebSocketFrameToBytesDecoder());
 
         // websocket 编码流程
-        // Web socket clients must set this to true to mask payload.
-        // Server implementations must set this to false.
-        pipeline.addLast(new WebSocket13FrameEncoder(true));
+        if (!sessionConfig.isWsPerMessageDeflate()) {
+            // Web socket clients must set this to true to mask payload.
+            // Server implementations must set this to false.
+            // 握手成功后会添加编码器，如果这里提前编码，扩展的编码器将收不到websocket帧，从而无法压缩
+            pipeline.addLast(new WebSocket13FrameEncoder(true));
+        }
         // 将ByteBuf转换为websocket二进制帧
-        pipeline.addLast(new BytesToBinaryWebSocketFrameEncoder());
+        pipeline.addLast(new BytesToBinaryWebSocketFrameEncoder(sessionConfig.isWsNativeFraming()));
     }
 
     /**
      * 自定义二进制协议支持
      */
     private void appendCustomProtocolCodec(ChannelPipeline pipeline) {
-        pipeline.addLast(new LengthFieldBasedFrameDecoder(sessionConfig.maxFrameLength(), 0, 4, 0, 4));
-        pipeline.addLast(new ClientSocketCodec(sessionConfig.serializer(), sessionId, netEventLoop));
+        if (!sessionConfig.isWsNativeFraming()) {
+            pipeline.addLast(new LengthFieldBasedFrameDecoder(sessionConfig.maxFrameLength(), 0, 4, 0, 4));
+        }
+        pipeline.addLast(new ClientSocketCodec(sessionConfig, sessionId, netEventLoop));
     }
 }
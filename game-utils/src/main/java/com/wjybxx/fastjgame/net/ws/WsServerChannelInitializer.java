@@ -18,6 +18,7 @@ package com.wjybxx.fastjgame.net.ws;
 
 import com.wjybxx.fastjgame.net.socket.ServerSocketCodec;
 import com.wjybxx.fastjgame.net.socket.SocketPortContext;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
 import com.wjybxx.fastjgame.net.utils.NetUtils;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
@@ -26,7 +27,9 @@ import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 
 /**
@@ -74,21 +77,35 @@ public class WsServerChannelInitializer extends ChannelInitializer<SocketChannel
     }
 
     private void appendWebsocketCodec(ChannelPipeline pipeline) {
+        final SocketSessionConfig config = portExtraInfo.getSessionConfig();
+        if (config.isWsPerMessageDeflate()) {
+            // permessage-deflate扩展，握手时协商
+            pipeline.addLast(new WebSocketServerCompressionHandler());
+        }
         // websocket 解码流程
         // websocket协议处理器(握手、心跳等)
-        pipeline.addLast(new WebSocketServerProtocolHandler(websocketPath));
+        pipeline.addLast(new WebSocketServerProtocolHandler(websocketPath, null, config.isWsPerMessageDeflate(), config.maxFrameLength()));
+        if (config.isWsNativeFraming()) {
+            // 一个websocket消息就是一个完整的包，需要合并分片的消息
+            pipeline.addLast(new WebSocketFrameAggregator(config.maxFrameLength()));
+        }
         pipeline.addLast(new BinaryWebSocketFrameToBytesDecoder());
 
         // websocket 编码流程
-        // Web socket clients must set this to true to mask payload.
-        // Server implementations must set this to false.
-        pipeline.addLast(new WebSocket13FrameEncoder(false));
+        if (!config.isWsPerMessageDeflate()) {
+            // Web socket clients must set this to true to mask payload.
+            // Server implementations must set this to false.
+            // 握手成功后会添加编码器，如果这里提前编码，扩展的编码器将收不到websocket帧，从而无法压缩
+            pipeline.addLast(new WebSocket13FrameEncoder(false));
+        }
         // 将ByteBuf转换为websocket二进制帧
-        pipeline.addLast(new BytesToBinaryWebSocketFrameEncoder());
+        pipeline.addLast(new BytesToBinaryWebSocketFrameEncoder(config.isWsNativeFraming()));
     }
 
     private void appendCustomProtocolCodec(ChannelPipeline pipeline) {
-        pipeline.addLast(new LengthFieldBasedFrameDecoder(portExtraInfo.getSessionConfig().maxFrameLength(), 0, 4, 0, 4));
-        pipeline.addLast(new ServerSocketCodec(portExtraInfo.getSessionConfig().serializer(), portExtraInfo));
+        if (!portExtraInfo.getSessionConfig().isWsNativeFraming()) {
+            pipeline.addLast(new LengthFieldBasedFrameDecoder(portExtraInfo.getSessionConfig().maxFrameLength(), 0, 4, 0, 4));
+        }
+        pipeline.addLast(new ServerSocketCodec(portExtraInfo));
     }
 }
@@ -49,4 +49,8 @@ public class DefaultEventLoop extends TemplateEventLoop {
     public DefaultEventLoop(@Nullable EventLoopGroup parent, @Nonnull ThreadFactory threadFactory, @Nonnull RejectedExecutionHandler rejectedExecutionHandler, @Nonnull WaitStrategyFactory waitStrategyFactory, @Nullable TaskQueueFactory taskQueueFactory, int taskBatchSize) {
         super(parent, threadFactory, rejectedExecutionHandler, waitStrategyFactory, taskQueueFactory, taskBatchSize);
     }
+
+    public DefaultEventLoop(@Nullable EventLoopGroup parent, @Nonnull ThreadFactory threadFactory, @Nonnull RejectedExecutionHandler rejectedExecutionHandler, @Nonnull WaitStrategyFactory waitStrategyFactory, @Nullable TaskQueueFactory taskQueueFactory, int taskBatchSize, long taskBatchTimeBudgetNanos) {
+        super(parent, threadFactory, rejectedExecutionHandler, waitStrategyFactory, taskQueueFactory, taskBatchSize, taskBatchTimeBudgetNanos);
+    }
 }
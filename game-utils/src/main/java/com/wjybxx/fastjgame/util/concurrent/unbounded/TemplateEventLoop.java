@@ -54,6 +54,10 @@ public class TemplateEventLoop extends AbstractEventLoop {
      * 批量拉取(执行)任务数 - 该值越小{@link #loopOnce()}执行越频繁，响应关闭请求越快。
      */
     private static final int DEFAULT_BATCH_EVENT_SIZE = 1024;
+    /**
+     * 启用时间预算时，每执行多少个任务检查一次是否超时(2的整次幂-1)，避免每个任务都调用{@link System#nanoTime()}。
+     */
+    private static final int TIME_CHECK_MASK = 63;
 
     // 线程的状态
     /**
@@ -114,6 +118,15 @@ public class TemplateEventLoop extends AbstractEventLoop {
      * 批量执行任务的大小
      */
     private final int taskBatchSize;
+    /**
+     * 批量执行任务的时间预算(纳秒)，小于等于0表示不限制时间，只限制数量。
+     * 在突发流量下，该值保证两次{@link #loopOnce()}之间的间隔不会因为任务堆积而过长(定时器、超时检测等不会被饿死)。
+     */
+    private final long taskBatchTimeBudgetNanos;
+    /**
+     * 事件循环的统计信息，只在事件循环线程中读写
+     */
+    private final LoopMetrics loopMetrics = new LoopMetrics();
     /**
      * 当没有可执行任务时的等待策略
      */
@@ -152,6 +165,23 @@ public class TemplateEventLoop extends AbstractEventLoop {
                 null, taskBatchSize);
     }
 
+    public TemplateEventLoop(@Nullable EventLoopGroup parent,
+                             @Nonnull ThreadFactory threadFactory,
+                             @Nonnull RejectedExecutionHandler rejectedExecutionHandler,
+                             int taskBatchSize, long taskBatchTimeBudgetNanos) {
+        this(parent, threadFactory, rejectedExecutionHandler, new SleepWaitStrategyFactory(),
+                null, taskBatchSize, taskBatchTimeBudgetNanos);
+    }
+
+    public TemplateEventLoop(@Nullable EventLoopGroup parent,
+                             @Nonnull ThreadFactory threadFactory,
+                             @Nonnull RejectedExecutionHandler rejectedExecutionHandler,
+                             @Nonnull WaitStrategyFactory waitStrategyFactory,
+                             @Nullable TaskQueueFactory taskQueueFactory, int taskBatchSize) {
+        this(parent, threadFactory, rejectedExecutionHandler, waitStrategyFactory,
+                taskQueueFactory, taskBatchSize, 0);
+    }
+
     /**
      * @param parent                   EventLoop所属的容器，nullable
      * @param threadFactory            线程工厂，创建的线程不要直接启动，建议调用
@@ -159,12 +189,14 @@ public class TemplateEventLoop extends AbstractEventLoop {
      * @param rejectedExecutionHandler 拒绝任务的策略
      * @param waitStrategyFactory      没有任务时的等待策略
      * @param taskBatchSize            批量执行任务数，设定合理的任务数可避免执行任务耗费太多时间。
+     * @param taskBatchTimeBudgetNanos 批量执行任务的时间预算(纳秒)，超过预算后立即执行一次{@link #loopOnce()}，小于等于0表示不限制。
      */
     public TemplateEventLoop(@Nullable EventLoopGroup parent,
                              @Nonnull ThreadFactory threadFactory,
                              @Nonnull RejectedExecutionHandler rejectedExecutionHandler,
                              @Nonnull WaitStrategyFactory waitStrategyFactory,
-                             @Nullable TaskQueueFactory taskQueueFactory, int taskBatchSize) {
+                             @Nullable TaskQueueFactory taskQueueFactory, int taskBatchSize,
+                             long taskBatchTimeBudgetNanos) {
         super(parent);
 
         if (taskBatchSize <= 0) {
@@ -184,6 +216,7 @@ public class TemplateEventLoop extends AbstractEventLoop {
             this.taskQueue = new MpscUnboundedXaddArrayQueue<>(8192, 4);
         }
         this.taskBatchSize = taskBatchSize;
+        this.taskBatchTimeBudgetNanos = taskBatchTimeBudgetNanos;
     }
 
     @Override
@@ -398,6 +431,7 @@ public class TemplateEventLoop extends AbstractEventLoop {
      */
     final void safeLoopOnce() {
         assert inEventLoop();
+        final long startNanos = System.nanoTime();
         try {
             loopOnce();
         } catch (Throwable t) {
@@ -406,9 +440,29 @@ public class TemplateEventLoop extends AbstractEventLoop {
             } else {
                 logger.warn("loopOnce caught exception", t);
             }
+        } finally {
+            loopMetrics.recordLoopOnce(System.nanoTime() - startNanos);
         }
     }
 
+    /**
+     * 获取事件循环的统计信息快照，必须在事件循环线程中调用，其它线程可以通过{@link #submit(java.util.concurrent.Callable)}获取。
+     *
+     * @return 统计信息快照
+     */
+    public final LoopStats loopStats() {
+        EventLoopUtils.ensureInEventLoop(this);
+        return loopMetrics.stats(taskQueue.size());
+    }
+
+    /**
+     * 重置事件循环的统计信息，必须在事件循环线程中调用
+     */
+    public final void resetLoopStats() {
+        EventLoopUtils.ensureInEventLoop(this);
+        loopMetrics.reset();
+    }
+
     /**
      * 确保运行状态至少已到指定状态。
      * 参考自{@code ThreadPoolExecutor#advanceRunState}
@@ -482,7 +536,7 @@ public class TemplateEventLoop extends AbstractEventLoop {
                     waitStrategy.waitFor(TemplateEventLoop.this);
 
                     // 批量消费可用数据 DisruptorEventLoop其实也是批量拉取消费的
-                    taskQueue.drain(this, taskBatchSize);
+                    drainTasks();
 
                     // 每处理一批任务，执行一次循环
                     safeLoopOnce();
@@ -505,6 +559,33 @@ public class TemplateEventLoop extends AbstractEventLoop {
             }
         }
 
+        /**
+         * 批量执行任务，任务数达到{@link #taskBatchSize}或耗时超过{@link #taskBatchTimeBudgetNanos}时停止。
+         */
+        private void drainTasks() {
+            final int queueDepth = taskQueue.size();
+            final long startNanos = System.nanoTime();
+            final int taskCount;
+            boolean budgetExhausted = false;
+            if (taskBatchTimeBudgetNanos <= 0) {
+                taskCount = taskQueue.drain(this, taskBatchSize);
+            } else {
+                final long deadline = startNanos + taskBatchTimeBudgetNanos;
+                int count = 0;
+                Runnable task;
+                while (count < taskBatchSize && (task = taskQueue.relaxedPoll()) != null) {
+                    task.run();
+                    if ((++count & TIME_CHECK_MASK) == 0 && System.nanoTime() - deadline >= 0) {
+                        budgetExhausted = true;
+                        break;
+                    }
+                }
+                taskCount = count;
+            }
+            loopMetrics.recordDrain(queueDepth, taskCount, System.nanoTime() - startNanos,
+                    budgetExhausted, taskCount >= taskBatchSize);
+        }
+
         @Override
         public void accept(Runnable runnable) {
             runnable.run();
@@ -555,6 +636,212 @@ public class TemplateEventLoop extends AbstractEventLoop {
         }
     }
 
+    /**
+     * 事件循环的统计数据累加器，只在事件循环线程中读写，因此不需要同步。
+     */
+    private static class LoopMetrics {
+
+        private long drainCount;
+        private long taskCount;
+        private int maxBatchTaskCount;
+        private long budgetExhaustedCount;
+        private long batchFullCount;
+        private int maxQueueDepth;
+        private long drainNanos;
+        private long maxDrainNanos;
+
+        private long loopOnceCount;
+        private long loopOnceNanos;
+        private long maxLoopOnceNanos;
+
+        void recordDrain(int queueDepth, int batchTaskCount, long costNanos, boolean budgetExhausted, boolean batchFull) {
+            drainCount++;
+            taskCount += batchTaskCount;
+            drainNanos += costNanos;
+            if (batchTaskCount > maxBatchTaskCount) {
+                maxBatchTaskCount = batchTaskCount;
+            }
+            if (queueDepth > maxQueueDepth) {
+                maxQueueDepth = queueDepth;
+            }
+            if (costNanos > maxDrainNanos) {
+                maxDrainNanos = costNanos;
+            }
+            if (budgetExhausted) {
+                budgetExhaustedCount++;
+            }
+            if (batchFull) {
+                batchFullCount++;
+            }
+        }
+
+        void recordLoopOnce(long costNanos) {
+            loopOnceCount++;
+            loopOnceNanos += costNanos;
+            if (costNanos > maxLoopOnceNanos) {
+                maxLoopOnceNanos = costNanos;
+            }
+        }
+
+        void reset() {
+            drainCount = 0;
+            taskCount = 0;
+            maxBatchTaskCount = 0;
+            budgetExhaustedCount = 0;
+            batchFullCount = 0;
+            maxQueueDepth = 0;
+            drainNanos = 0;
+            maxDrainNanos = 0;
+            loopOnceCount = 0;
+            loopOnceNanos = 0;
+            maxLoopOnceNanos = 0;
+        }
+
+        LoopStats stats(int queueDepth) {
+            return new LoopStats(drainCount, taskCount, maxBatchTaskCount, budgetExhaustedCount, batchFullCount,
+                    queueDepth, maxQueueDepth, drainNanos, maxDrainNanos,
+                    loopOnceCount, loopOnceNanos, maxLoopOnceNanos);
+        }
+    }
+
+    /**
+     * 事件循环统计信息快照
+     */
+    public static class LoopStats {
+
+        private final long drainCount;
+        private final long taskCount;
+        private final int maxBatchTaskCount;
+        private final long budgetExhaustedCount;
+        private final long batchFullCount;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long drainNanos;
+        private final long maxDrainNanos;
+        private final long loopOnceCount;
+        private final long loopOnceNanos;
+        private final long maxLoopOnceNanos;
+
+        LoopStats(long drainCount, long taskCount, int maxBatchTaskCount, long budgetExhaustedCount, long batchFullCount,
+                  int queueDepth, int maxQueueDepth, long drainNanos, long maxDrainNanos,
+                  long loopOnceCount, long loopOnceNanos, long maxLoopOnceNanos) {
+            this.drainCount = drainCount;
+            this.taskCount = taskCount;
+            this.maxBatchTaskCount = maxBatchTaskCount;
+            this.budgetExhaustedCount = budgetExhaustedCount;
+            this.batchFullCount = batchFullCount;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.drainNanos = drainNanos;
+            this.maxDrainNanos = maxDrainNanos;
+            this.loopOnceCount = loopOnceCount;
+            this.loopOnceNanos = loopOnceNanos;
+            this.maxLoopOnceNanos = maxLoopOnceNanos;
+        }
+
+        /**
+         * @return 批量执行任务的次数
+         */
+        public long getDrainCount() {
+            return drainCount;
+        }
+
+        /**
+         * @return 执行的任务总数
+         */
+        public long getTaskCount() {
+            return taskCount;
+        }
+
+        /**
+         * @return 单批次执行的最大任务数
+         */
+        public int getMaxBatchTaskCount() {
+            return maxBatchTaskCount;
+        }
+
+        /**
+         * @return 因时间预算耗尽而提前结束的批次数
+         */
+        public long getBudgetExhaustedCount() {
+            return budgetExhaustedCount;
+        }
+
+        /**
+         * @return 因达到批量任务数上限而结束的批次数
+         */
+        public long getBatchFullCount() {
+            return batchFullCount;
+        }
+
+        /**
+         * @return 获取快照时的队列长度(估算值)
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return 开始批量执行时观测到的最大队列长度(估算值)
+         */
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        /**
+         * @return 批量执行任务的总耗时(纳秒)
+         */
+        public long getDrainNanos() {
+            return drainNanos;
+        }
+
+        /**
+         * @return 单批次执行任务的最大耗时(纳秒)
+         */
+        public long getMaxDrainNanos() {
+            return maxDrainNanos;
+        }
+
+        /**
+         * @return {@link TemplateEventLoop#loopOnce()}的执行次数
+         */
+        public long getLoopOnceCount() {
+            return loopOnceCount;
+        }
+
+        /**
+         * @return {@link TemplateEventLoop#loopOnce()}的总耗时(纳秒)
+         */
+        public long getLoopOnceNanos() {
+            return loopOnceNanos;
+        }
+
+        /**
+         * @return {@link TemplateEventLoop#loopOnce()}的最大耗时(纳秒)
+         */
+        public long getMaxLoopOnceNanos() {
+            return maxLoopOnceNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "LoopStats{" +
+                    "drainCount=" + drainCount +
+                    ", taskCount=" + taskCount +
+                    ", maxBatchTaskCount=" + maxBatchTaskCount +
+                    ", budgetExhaustedCount=" + budgetExhaustedCount +
+                    ", batchFullCount=" + batchFullCount +
+                    ", queueDepth=" + queueDepth +
+                    ", maxQueueDepth=" + maxQueueDepth +
+                    ", drainNanos=" + drainNanos +
+                    ", maxDrainNanos=" + maxDrainNanos +
+                    ", loopOnceCount=" + loopOnceCount +
+                    ", loopOnceNanos=" + loopOnceNanos +
+                    ", maxLoopOnceNanos=" + maxLoopOnceNanos +
+                    '}';
+        }
+    }
+
     private static final VarHandle STATE;
     private static final VarHandle TASK;
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.util.example;
+
+import com.wjybxx.fastjgame.util.time.CachedTimeProvider;
+import com.wjybxx.fastjgame.util.time.TimeProviders;
+import com.wjybxx.fastjgame.util.timer.DefaultTimerSystem;
+import com.wjybxx.fastjgame.util.timer.TimerHandle;
+import com.wjybxx.fastjgame.util.timer.TimerSystem;
+import com.wjybxx.fastjgame.util.timer.TimingWheelTimerSystem;
+
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 一个不太靠谱的定时器系统性能测试，对比{@link DefaultTimerSystem}和{@link TimingWheelTimerSystem}。
+ * 模拟的是游戏中常见的情况：大量的timer被添加，其中大多数在执行前被取消(比如技能、buff、超时检测)，时间按帧推进。
+ * 分别统计添加、取消、推进时间三个阶段的耗时。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class TimerSystemPerformanceTest {
+
+    private static final int TIMER_COUNT = 500_000;
+    private static final int FRAME_INTERVAL = 50;
+    private static final int MAX_TIMEOUT = 60_000;
+
+    public static void main(String[] args) {
+        // 预热
+        for (int index = 0; index < 5; index++) {
+            runTest(DefaultTimerSystem::new, TIMER_COUNT / 10, false);
+            runTest(TimingWheelTimerSystem::new, TIMER_COUNT / 10, false);
+        }
+
+        // 开搞
+        for (int index = 0; index < 3; index++) {
+            runTest(DefaultTimerSystem::new, TIMER_COUNT, true);
+            runTest(TimingWheelTimerSystem::new, TIMER_COUNT, true);
+        }
+    }
+
+    private static void runTest(Function<CachedTimeProvider, TimerSystem> factory, int timerCount, boolean print) {
+        final Random random = new Random(0);
+        final CachedTimeProvider timeProvider = TimeProviders.newCachedTimeProvider(System.currentTimeMillis());
+        final TimerSystem timerSystem = factory.apply(timeProvider);
+        final TimerHandle[] handles = new TimerHandle[timerCount];
+        final int[] executedCount = new int[1];
+
+        final long addStart = System.nanoTime();
+        for (int index = 0; index < timerCount; index++) {
+            handles[index] = timerSystem.newTimeout(1 + random.nextInt(MAX_TIMEOUT), handle -> executedCount[0]++);
+        }
+        final long addCost = System.nanoTime() - addStart;
+
+        // 90%的timer在执行前被取消
+        final long cancelStart = System.nanoTime();
+        for (int index = 0; index < timerCount; index++) {
+            if (index % 10 != 0) {
+                handles[index].close();
+            }
+        }
+        final long cancelCost = System.nanoTime() - cancelStart;
+
+        final long tickStart = System.nanoTime();
+        for (int frame = 0; frame <= MAX_TIMEOUT / FRAME_INTERVAL; frame++) {
+            timeProvider.update(timeProvider.curTimeMillis() + FRAME_INTERVAL);
+            timerSystem.tick();
+        }
+        final long tickCost = System.nanoTime() - tickStart;
+        timerSystem.close();
+
+        if (print) {
+            System.out.println(String.format("%-22s timers %d, add %d ms, cancel %d ms, tick %d ms, executed %d",
+                    timerSystem.getClass().getSimpleName(), timerCount,
+                    addCost / 1000_000, cancelCost / 1000_000, tickCost / 1000_000, executedCount[0]));
+        }
+    }
+}
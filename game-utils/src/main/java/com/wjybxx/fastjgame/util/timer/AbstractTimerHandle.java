@@ -17,7 +17,6 @@
 package com.wjybxx.fastjgame.util.timer;
 
 import javax.annotation.Nullable;
-import java.util.Comparator;
 import java.util.Objects;
 
 /**
@@ -30,16 +29,10 @@ import java.util.Objects;
  */
 abstract class AbstractTimerHandle implements TimerHandle {
 
-    /**
-     * 执行时间越小越靠前，执行时间相同的，timerId越小越靠前(越先添加timerId越小)
-     */
-    static final Comparator<AbstractTimerHandle> timerComparator = Comparator.comparingLong(AbstractTimerHandle::getNextExecuteTimeMs)
-            .thenComparingLong(AbstractTimerHandle::getTimerId);
-
     /**
      * 绑定的timer系统
      */
-    private final DefaultTimerSystem timerSystem;
+    private final AbstractTimerSystem timerSystem;
     /**
      * 定时器id，先添加的必定更小...
      */
@@ -73,7 +66,21 @@ abstract class AbstractTimerHandle implements TimerHandle {
      */
     private int nextExecuteFrameThreshold;
 
-    AbstractTimerHandle(DefaultTimerSystem timerSystem, TimerTask timerTask) {
+    /**
+     * 在堆中的下标，使得删除为O(log n)。
+     * 仅{@link DefaultTimerSystem}使用。
+     */
+    int heapIndex = TimerHeap.INDEX_NOT_IN_HEAP;
+
+    /**
+     * 所在的时间轮槽位，以及槽位中的前后节点（侵入式链表，使得删除为O(1)）。
+     * 仅{@link TimingWheelTimerSystem}使用。
+     */
+    TimerBucket bucket;
+    AbstractTimerHandle prev;
+    AbstractTimerHandle next;
+
+    AbstractTimerHandle(AbstractTimerSystem timerSystem, TimerTask timerTask) {
         Objects.requireNonNull(timerSystem, "timerSystem");
         Objects.requireNonNull(timerTask, "timerTask");
 
@@ -83,8 +90,12 @@ abstract class AbstractTimerHandle implements TimerHandle {
         this.timerTask = timerTask;
     }
 
+    /**
+     * 句柄由{@link DefaultTimerSystem}和{@link TimingWheelTimerSystem}共用，因此返回二者的父类，而不再是{@link DefaultTimerSystem}。
+     * 句柄的实现类都是包级私有的，外部代码通过{@link TimerHandle#timerSystem()}获得的一直是{@link TimerSystem}，不受影响。
+     */
     @Override
-    public final DefaultTimerSystem timerSystem() {
+    public final AbstractTimerSystem timerSystem() {
         return timerSystem;
     }
 
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.util.timer;
+
+import com.wjybxx.fastjgame.util.ThreadUtils;
+import com.wjybxx.fastjgame.util.exception.InfiniteLoopException;
+import com.wjybxx.fastjgame.util.time.TimeProvider;
+import com.wjybxx.fastjgame.util.time.TimeProviders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Objects;
+
+/**
+ * 定时器系统的模板实现，负责timer的创建、帧数检查(避免死循环)以及回调的安全执行。
+ * 子类只负责timer的存储结构。
+ * <p>
+ * 由于timer句柄的实现是包级私有的，因此该类也只能在本包内扩展。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/13
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+public abstract class AbstractTimerSystem implements TimerSystem {
+
+    static final Logger logger = LoggerFactory.getLogger(AbstractTimerSystem.class);
+
+    /**
+     * 默认的时间提供器（它是线程安全的，不可以使用非线程安全的作为静态变量）
+     */
+    static final TimeProvider DEFAULT_TIME_PROVIDER = TimeProviders.realtimeProvider();
+
+    /**
+     * 用于获取当前时间
+     */
+    private final TimeProvider timeProvider;
+
+    /**
+     * 用于分配timerId。
+     * 如果是静态的将存在线程安全问题(或使用AtomicLong) - 不想产生不必要的竞争，因此每个timerSystem一个。
+     */
+    private long timerIdSequencer = 0;
+
+    /**
+     * 正在执行回调的timer
+     */
+    AbstractTimerHandle runningTimer = null;
+    /**
+     * 当前帧的时间戳
+     */
+    private long curTickTimeMillis;
+    /**
+     * 当前帧数（int足够）
+     */
+    private int curTickFrame = 0;
+
+    AbstractTimerSystem(TimeProvider timeProvider) {
+        this.timeProvider = Objects.requireNonNull(timeProvider, "timeProvider");
+    }
+
+    @Nonnull
+    @Override
+    public final TimeoutHandle newTimeout(long timeout, @Nonnull TimerTask task) {
+        TimeoutHandleImp timeoutHandleImp = new TimeoutHandleImp(this, task, timeout);
+        return tryAddTimerAndInit(timeoutHandleImp);
+    }
+
+    @Nonnull
+    @Override
+    public final FixedDelayHandle newFixedDelay(long initialDelay, long delay, @Nonnull TimerTask task) {
+        FixedDelayHandleImp.ensureDelay(delay);
+        FixedDelayHandleImp fixedDelayHandleImp = new FixedDelayHandleImp(this, task, initialDelay, delay);
+        return tryAddTimerAndInit(fixedDelayHandleImp);
+    }
+
+    @Nonnull
+    @Override
+    public final FixedRateHandle newFixRate(long initialDelay, long period, @Nonnull TimerTask task) {
+        FixedRateHandleImp.ensurePeriod(period);
+        FixedRateHandleImp fixedRateHandleImp = new FixedRateHandleImp(this, task, initialDelay, period);
+        return tryAddTimerAndInit(fixedRateHandleImp);
+    }
+
+    /**
+     * 将timer压入队列，并进行适当的初始化。
+     */
+    private <T extends AbstractTimerHandle> T tryAddTimerAndInit(T timerHandle) {
+        if (isClosed()) {
+            timerHandle.closeWithoutRemove();
+            throw new IllegalStateException("closed");
+        } else {
+            timerHandle.adjustNextExecuteTime();
+            addTimer(timerHandle);
+            checkInterruptTick(timerHandle);
+            return timerHandle;
+        }
+    }
+
+    private <T extends AbstractTimerHandle> void checkInterruptTick(T timerHandle) {
+        if (runningTimer == null) {
+            return;
+        }
+
+        if (timerHandle.getNextExecuteTimeMs() > curTickTimeMillis) {
+            return;
+        }
+
+        // tick过程中创建了一个要立即执行的timer，那么tick到这个timer的时候，强制中断，进入下一帧的时候继续。
+        // 如果插在既有要执行的timer的后面，那么理论上是没有破坏性的，因为它并没有影响当前帧要执行的timer
+        // 而尝试插在既有要执行的timer的前面，则是个危险的操作，因为它影响了当前帧要执行的timer
+        timerHandle.setNextExecuteFrameThreshold(curTickFrame + 1);
+
+        if (timerHandle.getNextExecuteTimeMs() < curTickTimeMillis) {
+            // 尝试插到既有要执行的timer的前面，记录调用方信息
+            logger.error("Added a timer for immediate execution, tick will be interrupted, caller info:\n" +
+                    ThreadUtils.getCallerInfo(AbstractTimerSystem::isOtherClass));
+        }
+    }
+
+    private static boolean isOtherClass(StackWalker.StackFrame stackFrame) {
+        // 需要处理超类或子类调用(如nextTick调用newTimeout)
+        return !TimerSystem.class.isAssignableFrom(stackFrame.getDeclaringClass());
+    }
+
+    @Override
+    public final void tick() {
+        if (isClosed()) {
+            return;
+        }
+
+        if (runningTimer != null) {
+            throw new InfiniteLoopException("may caused by timer call tick, runningTimer " + runningTimer);
+        }
+
+        // 由于该timerSystem是基于缓存时间戳tick的，因此需要缓存该时间戳用于别处判断
+        final long curTimeMillis = timeProvider.curTimeMillis();
+
+        curTickTimeMillis = curTimeMillis;
+        curTickFrame++;
+
+        try {
+            tickTimer(curTimeMillis, curTickFrame);
+        } finally {
+            runningTimer = null;
+        }
+    }
+
+    /**
+     * 执行一个已到期的timer，调用前timer必须已从存储结构中删除。
+     * 执行完毕后，如果timer未关闭，子类需要将其重新压入存储结构。
+     *
+     * @param timerHandle   timer
+     * @param curTimeMillis 当前帧的时间戳
+     */
+    final void runTimer(AbstractTimerHandle timerHandle, long curTimeMillis) {
+        runningTimer = timerHandle;
+        do {
+            callbackSafely(timerHandle, curTimeMillis);
+            // 可能由于延迟导致需要执行多次(可以避免在当前轮反复压入弹出)，也可能在执行回调之后被取消了。
+        } while (!timerHandle.isClosed() && curTimeMillis >= timerHandle.getNextExecuteTimeMs());
+    }
+
+    /**
+     * 安全的执行timer的回调。
+     *
+     * @param timerHandle   timer
+     * @param curTimeMillis 当前时间戳
+     */
+    private static void callbackSafely(AbstractTimerHandle timerHandle, long curTimeMillis) {
+        try {
+            timerHandle.run();
+        } catch (final Throwable cause) {
+            if (timerHandle.isAutoCloseOnExceptionCaught()) {
+                // 出现异常时关闭timer
+                timerHandle.closeWithoutRemove();
+            }
+            logger.warn("timerHandle.run caught exception!", cause);
+        }
+
+        if (!timerHandle.isClosed()) {
+            timerHandle.afterExecuteOnce(curTimeMillis);
+        }
+    }
+
+    /**
+     * 调整handle在timerSystem中的优先级
+     *
+     * @param <T>         定时器句柄类型
+     * @param timerHandle 定时器句柄
+     */
+    final <T extends AbstractTimerHandle> void adjust(T timerHandle) {
+        if (runningTimer == timerHandle) {
+            // 正在执行的时候调整间隔
+            timerHandle.adjustNextExecuteTime();
+        } else {
+            // 其它时候调整间隔(必须先删除才可以修改优先级)
+            removeTimer(timerHandle);
+            timerHandle.adjustNextExecuteTime();
+            addTimer(timerHandle);
+        }
+    }
+
+    /**
+     * 删除一个已关闭的timer
+     */
+    final void removeClosedTimer(AbstractTimerHandle timerHandle) {
+        if (timerHandle != runningTimer && !isClosed()) {
+            removeTimer(timerHandle);
+        }
+    }
+
+    final long nextTimerId() {
+        return ++timerIdSequencer;
+    }
+
+    @Override
+    public long curTimeMillis() {
+        return timeProvider.curTimeMillis();
+    }
+
+    @Override
+    public int curTimeSeconds() {
+        return timeProvider.curTimeSeconds();
+    }
+
+    // ------------------------------------------- 子类实现 --------------------------------------------
+
+    /**
+     * 检查并执行到期的timer
+     *
+     * @param curTimeMillis 当前帧的时间戳
+     * @param curTickFrame  当前帧数，下次执行的最小帧数大于该值的timer必须中断本帧的执行
+     */
+    abstract void tickTimer(long curTimeMillis, int curTickFrame);
+
+    /**
+     * 将timer压入存储结构，调用时下次执行时间已计算好
+     */
+    abstract void addTimer(AbstractTimerHandle timerHandle);
+
+    /**
+     * 将timer从存储结构中删除，timer可能已不在存储结构中。
+     */
+    abstract void removeTimer(AbstractTimerHandle timerHandle);
+
+}
@@ -41,7 +41,7 @@ class FixedDelayHandleImp extends AbstractTimerHandle implements FixedDelayHandl
      */
     private long lastExecuteTimeMs;
 
-    FixedDelayHandleImp(DefaultTimerSystem timerSystem, TimerTask timerTask,
+    FixedDelayHandleImp(AbstractTimerSystem timerSystem, TimerTask timerTask,
                         long initialDelay, long delay) {
         super(timerSystem, timerTask);
         this.initialDelay = initialDelay;
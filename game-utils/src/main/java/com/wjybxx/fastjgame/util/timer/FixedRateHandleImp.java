@@ -40,7 +40,7 @@ class FixedRateHandleImp extends AbstractTimerHandle implements FixedRateHandle
      */
     private long lastExecuteTimeMs;
 
-    FixedRateHandleImp(DefaultTimerSystem timerSystem, TimerTask timerTask,
+    FixedRateHandleImp(AbstractTimerSystem timerSystem, TimerTask timerTask,
                        long initialDelay, long period) {
         super(timerSystem, timerTask);
         this.initialDelay = initialDelay;
@@ -28,7 +28,7 @@ class TimeoutHandleImp extends AbstractTimerHandle implements TimeoutHandle {
 
     private long timeout;
 
-    TimeoutHandleImp(DefaultTimerSystem timerSystem, TimerTask timerTask,
+    TimeoutHandleImp(AbstractTimerSystem timerSystem, TimerTask timerTask,
                      long timeout) {
         super(timerSystem, timerTask);
         this.timeout = timeout;
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.util.timer;
+
+/**
+ * 时间轮的一个槽位，以侵入式双向链表存储timer，添加和删除都是O(1)的。
+ * 链表中的timer按照压入顺序排列。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/13
+ * github - https://github.com/hl845740757
+ */
+final class TimerBucket {
+
+    /**
+     * 槽位所在的层级
+     */
+    final int level;
+
+    private AbstractTimerHandle head;
+    private AbstractTimerHandle tail;
+
+    TimerBucket(int level) {
+        this.level = level;
+    }
+
+    AbstractTimerHandle peekFirst() {
+        return head;
+    }
+
+    void addLast(AbstractTimerHandle timerHandle) {
+        assert timerHandle.bucket == null;
+        timerHandle.bucket = this;
+        if (tail == null) {
+            head = tail = timerHandle;
+        } else {
+            tail.next = timerHandle;
+            timerHandle.prev = tail;
+            tail = timerHandle;
+        }
+    }
+
+    void remove(AbstractTimerHandle timerHandle) {
+        assert timerHandle.bucket == this;
+        final AbstractTimerHandle prev = timerHandle.prev;
+        final AbstractTimerHandle next = timerHandle.next;
+
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.next = next;
+        }
+
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.prev = prev;
+        }
+
+        timerHandle.bucket = null;
+        timerHandle.prev = null;
+        timerHandle.next = null;
+    }
+
+    /**
+     * 清空槽位，并返回链表头，链表中节点的{@code bucket}属性已清除，但是前后节点关系保留，以便调用者遍历。
+     * 调用者在遍历时必须先保存{@code next}再处理节点。
+     */
+    AbstractTimerHandle detachAll() {
+        final AbstractTimerHandle first = head;
+        for (AbstractTimerHandle timerHandle = first; timerHandle != null; timerHandle = timerHandle.next) {
+            timerHandle.bucket = null;
+        }
+        head = tail = null;
+        return first;
+    }
+
+}
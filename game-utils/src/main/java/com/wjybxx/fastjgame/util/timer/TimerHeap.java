@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.util.timer;
+
+import java.util.Arrays;
+
+/**
+ * timer的小顶堆，每个timer记录自己在堆中的下标（侵入式），因此删除任意timer是O(log n)的，而不是{@link java.util.PriorityQueue#remove(Object)}的O(n)。
+ * <p>
+ * 执行时间越小越靠前，执行时间相同的，timerId越小越靠前(越先添加timerId越小)。
+ * 比较直接读取字段，不经过{@link java.util.Comparator}。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/14
+ * github - https://github.com/hl845740757
+ */
+final class TimerHeap {
+
+    /**
+     * 不在堆中的timer的下标
+     */
+    static final int INDEX_NOT_IN_HEAP = -1;
+
+    private AbstractTimerHandle[] queue;
+    private int size;
+
+    TimerHeap(int initCapacity) {
+        this.queue = new AbstractTimerHandle[Math.max(1, initCapacity)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    AbstractTimerHandle peek() {
+        return size == 0 ? null : queue[0];
+    }
+
+    void add(AbstractTimerHandle timerHandle) {
+        assert timerHandle.heapIndex == INDEX_NOT_IN_HEAP;
+        final int index = size;
+        if (index >= queue.length) {
+            grow();
+        }
+        size = index + 1;
+        siftUp(index, timerHandle);
+    }
+
+    private void grow() {
+        final int oldCapacity = queue.length;
+        // 与PriorityQueue相同：小的时候翻倍，大的时候增加50%
+        final int newCapacity = oldCapacity + ((oldCapacity < 64) ? (oldCapacity + 2) : (oldCapacity >> 1));
+        queue = Arrays.copyOf(queue, newCapacity);
+    }
+
+    AbstractTimerHandle poll() {
+        if (size == 0) {
+            return null;
+        }
+        final AbstractTimerHandle result = queue[0];
+        removeAt(0);
+        return result;
+    }
+
+    /**
+     * 删除指定timer
+     *
+     * @return 如果timer在堆中，则返回true
+     */
+    boolean remove(AbstractTimerHandle timerHandle) {
+        final int index = timerHandle.heapIndex;
+        if (index < 0 || index >= size || queue[index] != timerHandle) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        final AbstractTimerHandle[] queue = this.queue;
+        queue[index].heapIndex = INDEX_NOT_IN_HEAP;
+
+        final int last = --size;
+        if (last == index) {
+            queue[last] = null;
+            return;
+        }
+
+        final AbstractTimerHandle moved = queue[last];
+        queue[last] = null;
+        siftDown(index, moved);
+        if (queue[index] == moved) {
+            // 没有下沉，则可能需要上浮
+            siftUp(index, moved);
+        }
+    }
+
+    /**
+     * 清空堆，并返回堆中的全部timer（无序）
+     */
+    AbstractTimerHandle[] clear() {
+        final AbstractTimerHandle[] result = Arrays.copyOf(queue, size);
+        for (AbstractTimerHandle timerHandle : result) {
+            timerHandle.heapIndex = INDEX_NOT_IN_HEAP;
+        }
+        Arrays.fill(queue, 0, size, null);
+        size = 0;
+        return result;
+    }
+
+    private void siftUp(int index, AbstractTimerHandle timerHandle) {
+        final AbstractTimerHandle[] queue = this.queue;
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            final AbstractTimerHandle e = queue[parent];
+            if (!isBefore(timerHandle, e)) {
+                break;
+            }
+            queue[index] = e;
+            e.heapIndex = index;
+            index = parent;
+        }
+        queue[index] = timerHandle;
+        timerHandle.heapIndex = index;
+    }
+
+    private void siftDown(int index, AbstractTimerHandle timerHandle) {
+        final AbstractTimerHandle[] queue = this.queue;
+        final int size = this.size;
+        final int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            AbstractTimerHandle c = queue[child];
+            final int right = child + 1;
+            if (right < size && isBefore(queue[right], c)) {
+                c = queue[child = right];
+            }
+            if (!isBefore(c, timerHandle)) {
+                break;
+            }
+            queue[index] = c;
+            c.heapIndex = index;
+            index = child;
+        }
+        queue[index] = timerHandle;
+        timerHandle.heapIndex = index;
+    }
+
+    /**
+     * @return 如果a应该在b之前执行，则返回true
+     */
+    private static boolean isBefore(AbstractTimerHandle a, AbstractTimerHandle b) {
+        final long aTime = a.getNextExecuteTimeMs();
+        final long bTime = b.getNextExecuteTimeMs();
+        return aTime < bTime || (aTime == bTime && a.getTimerId() < b.getTimerId());
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.util.timer;
+
+import com.wjybxx.fastjgame.util.time.TimeProvider;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 基于分层时间轮的定时器系统，添加和删除timer都是O(1)的，适合timer数量巨大且大多数会被提前取消的场景（如场景中的buff、技能、AI）。
+ *
+ * <h3>结构</h3>
+ * 时间轮的刻度为1毫秒，共5层：第一层256个槽位，其余每层64个槽位，共可以表示 2^32 毫秒（约49天）。
+ * 超出范围的timer会放在最高层，级联时重新计算位置。
+ * timer总是放在与当前刻度"高位相同"的最低层，因此级联时同一时刻的timer仍然保持压入顺序。
+ *
+ * <h3>时序保证</h3>
+ * 与{@link DefaultTimerSystem}相同：{@link #newTimeout(long, TimerTask)}类型的任务，执行时间相同时，先提交的先执行。
+ * 不同的是：通过{@link TimeoutHandle#setTimeout(long)}调整后的timer，在同一毫秒内的timer中视为新提交的timer。
+ *
+ * <h3>帧数限制</h3>
+ * 与{@link DefaultTimerSystem}相同，tick过程中添加的需要立即执行的timer，会中断本帧的执行，下一帧时从中断的位置继续。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/13
+ * github - https://github.com/hl845740757
+ */
+@NotThreadSafe
+public class TimingWheelTimerSystem extends AbstractTimerSystem {
+
+    /**
+     * 第一层时间轮的槽位数，每个槽位1毫秒
+     */
+    private static final int ROOT_WHEEL_BITS = 8;
+    private static final int ROOT_WHEEL_SIZE = 1 << ROOT_WHEEL_BITS;
+    private static final int ROOT_WHEEL_MASK = ROOT_WHEEL_SIZE - 1;
+    /**
+     * 上层时间轮的槽位数
+     */
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    /**
+     * 时间轮层数
+     */
+    private static final int WHEEL_LEVELS = 5;
+    /**
+     * 时间轮能表示的最大跨度
+     */
+    private static final long MAX_SPAN = (1L << (ROOT_WHEEL_BITS + WHEEL_BITS * (WHEEL_LEVELS - 1))) - 1;
+
+    /**
+     * 各层时间轮，关闭后为null
+     */
+    private TimerBucket[][] wheels;
+    /**
+     * 下一个需要处理的刻度(毫秒)
+     */
+    private long currentTick;
+    /**
+     * timer总数
+     */
+    private int timerCount;
+    /**
+     * 第一层时间轮中的timer数，为0时可以直接跳到下一个级联点
+     */
+    private int rootTimerCount;
+
+    public TimingWheelTimerSystem() {
+        this(DEFAULT_TIME_PROVIDER);
+    }
+
+    /**
+     * @param timeProvider 时间提供函数
+     */
+    public TimingWheelTimerSystem(TimeProvider timeProvider) {
+        super(timeProvider);
+        wheels = newWheels();
+        currentTick = timeProvider.curTimeMillis();
+    }
+
+    private static TimerBucket[][] newWheels() {
+        final TimerBucket[][] wheels = new TimerBucket[WHEEL_LEVELS][];
+        for (int level = 0; level < WHEEL_LEVELS; level++) {
+            final TimerBucket[] wheel = new TimerBucket[level == 0 ? ROOT_WHEEL_SIZE : WHEEL_SIZE];
+            for (int index = 0; index < wheel.length; index++) {
+                wheel[index] = new TimerBucket(level);
+            }
+            wheels[level] = wheel;
+        }
+        return wheels;
+    }
+
+    /**
+     * @return 指定层级的时间轮的最低位
+     */
+    private static int shift(int level) {
+        return level == 0 ? 0 : ROOT_WHEEL_BITS + WHEEL_BITS * (level - 1);
+    }
+
+    private static int mask(int level) {
+        return level == 0 ? ROOT_WHEEL_MASK : WHEEL_MASK;
+    }
+
+    @Override
+    void tickTimer(final long curTimeMillis, final int curTickFrame) {
+        TimerBucket[][] wheels;
+        AbstractTimerHandle timerHandle;
+
+        while ((wheels = this.wheels) != null && currentTick <= curTimeMillis) {
+            if (timerCount == 0) {
+                // 没有timer，不需要级联，直接跳到当前时间
+                currentTick = curTimeMillis + 1;
+                return;
+            }
+
+            if (rootTimerCount == 0) {
+                // 第一层没有timer，直接跳到下一个级联点
+                advanceTo(Math.min((currentTick | ROOT_WHEEL_MASK) + 1, curTimeMillis + 1));
+                continue;
+            }
+
+            final TimerBucket bucket = wheels[0][(int) (currentTick & ROOT_WHEEL_MASK)];
+            while ((timerHandle = bucket.peekFirst()) != null) {
+                // timer对帧数有要求（避免无限循环），中断本帧，下一帧从当前刻度继续
+                if (curTickFrame < timerHandle.getNextExecuteFrameThreshold()) {
+                    return;
+                }
+
+                // 先弹出队列，并记录正在执行
+                removeTimer(timerHandle);
+                runTimer(timerHandle, curTimeMillis);
+
+                if (this.wheels == null) {
+                    // 回调中关闭了timer系统
+                    return;
+                }
+
+                if (!timerHandle.isClosed()) {
+                    // 如果未取消的话，压入时间轮稍后执行
+                    addTimer(timerHandle);
+                }
+            }
+
+            advanceTo(currentTick + 1);
+        }
+    }
+
+    /**
+     * 推进刻度，如果到达第一层时间轮的边界，则将上层时间轮对应槽位的timer级联到下层。
+     * 需要从高层向低层级联，以保证同一时刻的timer的压入顺序。
+     */
+    private void advanceTo(long tick) {
+        currentTick = tick;
+        if ((tick & ROOT_WHEEL_MASK) != 0) {
+            return;
+        }
+
+        int highestLevel = 1;
+        while (highestLevel < WHEEL_LEVELS - 1 && ((tick >>> shift(highestLevel)) & WHEEL_MASK) == 0) {
+            highestLevel++;
+        }
+
+        for (int level = highestLevel; level >= 1; level--) {
+            cascade(wheels[level][(int) ((tick >>> shift(level)) & WHEEL_MASK)]);
+        }
+    }
+
+    private void cascade(TimerBucket bucket) {
+        AbstractTimerHandle timerHandle = bucket.detachAll();
+        AbstractTimerHandle next;
+        while (timerHandle != null) {
+            next = timerHandle.next;
+            timerHandle.prev = null;
+            timerHandle.next = null;
+            timerCount--;
+
+            addTimer(timerHandle);
+            timerHandle = next;
+        }
+    }
+
+    @Override
+    void addTimer(AbstractTimerHandle timerHandle) {
+        final long currentTick = this.currentTick;
+        // 已过期的timer放在当前刻度，超出范围的放在最远的刻度
+        long expireTick = Math.max(timerHandle.getNextExecuteTimeMs(), currentTick);
+        if (expireTick - currentTick > MAX_SPAN) {
+            expireTick = currentTick + MAX_SPAN;
+        }
+
+        // 放在与当前刻度高位相同的最低层
+        int level = 0;
+        while (level < WHEEL_LEVELS - 1 && (expireTick >>> shift(level + 1)) != (currentTick >>> shift(level + 1))) {
+            level++;
+        }
+
+        wheels[level][(int) ((expireTick >>> shift(level)) & mask(level))].addLast(timerHandle);
+        timerCount++;
+        if (level == 0) {
+            rootTimerCount++;
+        }
+    }
+
+    @Override
+    void removeTimer(AbstractTimerHandle timerHandle) {
+        final TimerBucket bucket = timerHandle.bucket;
+        if (bucket == null) {
+            return;
+        }
+
+        bucket.remove(timerHandle);
+        timerCount--;
+        if (bucket.level == 0) {
+            rootTimerCount--;
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return wheels == null;
+    }
+
+    @Override
+    public void close() {
+        if (wheels == null) {
+            return;
+        }
+
+        // 某个回调尝试关闭整个timer系统，不是个好的实践
+        if (runningTimer != null) {
+            runningTimer.closeWithoutRemove();
+        }
+
+        final TimerBucket[][] wheels = this.wheels;
+        this.wheels = null;
+
+        for (TimerBucket[] wheel : wheels) {
+            for (TimerBucket bucket : wheel) {
+                closeBucket(bucket);
+            }
+        }
+        timerCount = 0;
+        rootTimerCount = 0;
+    }
+
+    /**
+     * 关闭一个槽位的全部timer
+     *
+     * @param bucket timer所在的槽位
+     */
+    private static void closeBucket(TimerBucket bucket) {
+        AbstractTimerHandle timerHandle = bucket.detachAll();
+        AbstractTimerHandle next;
+        while (timerHandle != null) {
+            next = timerHandle.next;
+            timerHandle.prev = null;
+            timerHandle.next = null;
+            timerHandle.closeWithoutRemove();
+            timerHandle = next;
+        }
+    }
+}
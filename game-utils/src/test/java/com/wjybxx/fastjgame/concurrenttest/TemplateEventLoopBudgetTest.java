@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.concurrenttest;
+
+import com.wjybxx.fastjgame.util.concurrent.DefaultThreadFactory;
+import com.wjybxx.fastjgame.util.concurrent.RejectedExecutionHandlers;
+import com.wjybxx.fastjgame.util.concurrent.unbounded.TemplateEventLoop;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TemplateEventLoop}批量执行任务的时间预算测试：
+ * 预算耗尽后先执行一次{@code loopOnce}，剩余的任务在下一次循环中执行。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class TemplateEventLoopBudgetTest {
+
+    /**
+     * 每执行64个任务检查一次时间预算
+     */
+    private static final int TIME_CHECK_INTERVAL = 64;
+    /**
+     * 总任务数：第一次检查时预算已耗尽，剩余的任务不足一个检查周期
+     */
+    private static final int TASK_COUNT = TIME_CHECK_INTERVAL + 20;
+    /**
+     * 每个任务的耗时，一个检查周期的耗时远大于预算
+     */
+    private static final long TASK_COST_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long TIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testYieldOnBudgetExhausted() throws InterruptedException {
+        final RecordingEventLoop eventLoop = new RecordingEventLoop(TIME_BUDGET_NANOS);
+        runTasks(eventLoop);
+
+        // 第一批只执行了一个检查周期的任务就让出，执行了loopOnce，剩余的任务在下一批中执行完
+        Assertions.assertEquals(List.of(TIME_CHECK_INTERVAL, TASK_COUNT), eventLoop.executedCounts);
+        Assertions.assertEquals(List.of(1L, 1L), eventLoop.budgetExhaustedCounts);
+    }
+
+    @Test
+    void testNoBudget() throws InterruptedException {
+        final RecordingEventLoop eventLoop = new RecordingEventLoop(0);
+        runTasks(eventLoop);
+
+        // 不限制时间时，一批执行完所有任务
+        Assertions.assertEquals(List.of(TASK_COUNT), eventLoop.executedCounts);
+        Assertions.assertEquals(List.of(0L), eventLoop.budgetExhaustedCounts);
+    }
+
+    private static void runTasks(RecordingEventLoop eventLoop) throws InterruptedException {
+        // 第一个任务阻塞事件循环，保证所有任务都在同一次拉取之前入队
+        final CountDownLatch gate = new CountDownLatch(1);
+        eventLoop.execute(() -> {
+            awaitUninterruptibly(gate);
+            eventLoop.executedCount++;
+        });
+        for (int index = 1; index < TASK_COUNT; index++) {
+            eventLoop.execute(() -> {
+                busyWait(TASK_COST_NANOS);
+                eventLoop.executedCount++;
+            });
+        }
+        gate.countDown();
+
+        // 等待所有任务在事件循环中执行完再关闭，关闭时剩余的任务不会经过正常的循环
+        Assertions.assertTrue(eventLoop.finished.await(10, TimeUnit.SECONDS));
+        eventLoop.shutdown();
+        Assertions.assertTrue(eventLoop.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void busyWait(long nanos) {
+        final long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class RecordingEventLoop extends TemplateEventLoop {
+
+        /**
+         * 只在事件循环线程中读写，测试线程在事件循环终止后读取
+         */
+        int executedCount;
+        final CountDownLatch finished = new CountDownLatch(1);
+        /**
+         * 每次执行任务之后的loopOnce中记录的已执行任务数和预算耗尽次数
+         */
+        final List<Integer> executedCounts = new ArrayList<>();
+        final List<Long> budgetExhaustedCounts = new ArrayList<>();
+
+        RecordingEventLoop(long taskBatchTimeBudgetNanos) {
+            super(null, new DefaultThreadFactory("TEMPLATE_EVENT_LOOP"), RejectedExecutionHandlers.abort(),
+                    1024, taskBatchTimeBudgetNanos);
+        }
+
+        @Override
+        protected void loopOnce() {
+            // 等待期间也会执行loopOnce，只记录执行过任务之后的状态
+            if (executedCount > 0 && (executedCounts.isEmpty() || executedCounts.get(executedCounts.size() - 1) != executedCount)) {
+                executedCounts.add(executedCount);
+                budgetExhaustedCounts.add(loopStats().getBudgetExhaustedCount());
+            }
+            if (executedCount == TASK_COUNT) {
+                finished.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.example;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.rpc.AbstractRpcMethodSpec;
+import com.wjybxx.fastjgame.net.rpc.RpcMethodSpec;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+
+/**
+ * RpcServiceProcessor为每个方法生成的{@code *Spec_N}类及其{@code Codec}的测试：
+ * 通过{@link BinarySerializer}编解码之后，类型和所有参数都不变。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class RpcSpecCodecTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testNoArgSpec() throws Exception {
+        final RpcMethodSpec<?> spec = ExampleRpcServiceRpcProxy.sync();
+        Assertions.assertSame(ExampleRpcServiceRpcProxy.SyncSpec_0.INSTANCE, spec);
+        // 无参数的方法使用单例，解码时也不创建新对象
+        Assertions.assertSame(spec, serializer.fromBytes(serializer.toBytes(spec)));
+        Assertions.assertSame(spec, serializer.cloneObject(spec));
+    }
+
+    @Test
+    void testSpecs() throws Exception {
+        checkRoundTrip(ExampleRpcServiceRpcProxy.hello("wjybxx"));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.queryId("wjybxx"));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.inc(-5));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.incWithContext(Integer.MAX_VALUE));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.incAsync(0));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.incWithContextAsync(Integer.MIN_VALUE));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.notifySuccess(Long.MAX_VALUE));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.combine("prefix", "content"));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.combine(null, ""));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.echo(BinaryProtoCodecTest.newFullMessage()));
+        checkRoundTrip(ExampleRpcServiceRpcProxy.newException("error"));
+    }
+
+    @Test
+    void testVarargsSpec() throws Exception {
+        final RpcMethodSpec<String> spec = ExampleRpcServiceRpcProxy.join("a", "b", "c");
+        Assertions.assertTrue(spec instanceof ExampleRpcServiceRpcProxy.JoinSpec_12);
+        checkRoundTrip(spec);
+
+        checkRoundTrip(ExampleRpcServiceRpcProxy.join());
+        checkRoundTrip(ExampleRpcServiceRpcProxy.join("a", null, ""));
+
+        final ExampleRpcServiceRpcProxy.JoinSpec_12<?> decoded = (ExampleRpcServiceRpcProxy.JoinSpec_12<?>) serializer.fromBytes(serializer.toBytes(spec));
+        Assertions.assertArrayEquals(new String[]{"a", "b", "c"}, decoded.params);
+    }
+
+    @Test
+    void testLazySerializeSpec() throws Exception {
+        // 调用方传入的对象在编码时序列化为字节数组，服务端收到的是字节数组
+        final ExampleMessages.Hello hello = new ExampleMessages.Hello(1, "hello");
+        final ExampleRpcServiceRpcProxy.SendToPlayerSpec_10<?> decoded = (ExampleRpcServiceRpcProxy.SendToPlayerSpec_10<?>)
+                serializer.fromBytes(serializer.toBytes(ExampleRpcServiceRpcProxy.sendToPlayer(1, hello)));
+        Assertions.assertEquals(1, decoded.playerGuid);
+        Assertions.assertEquals(hello, serializer.fromBytes((byte[]) decoded.proto));
+
+        // 已经是字节数组的参数不再序列化
+        final byte[] bytes = serializer.toBytes(hello);
+        checkRoundTrip(ExampleRpcServiceRpcProxy.sendToPlayer(2, bytes));
+    }
+
+    @Test
+    void testPreDeserializeSpec() throws Exception {
+        // 调用方传入的字节数组在解码时反序列化，服务端收到的是对象
+        final ExampleRpcServiceRpcProxy.SendToSceneSpec_11<?> decoded = (ExampleRpcServiceRpcProxy.SendToSceneSpec_11<?>)
+                serializer.fromBytes(serializer.toBytes(ExampleRpcServiceRpcProxy.sendToScene(1, serializer.toBytes("scene"))));
+        Assertions.assertEquals(1, decoded.playerGuid);
+        Assertions.assertEquals("scene", decoded.msg);
+    }
+
+    private static void checkRoundTrip(RpcMethodSpec<?> spec) throws Exception {
+        assertSpecEquals(spec, serializer.fromBytes(serializer.toBytes(spec)));
+        assertSpecEquals(spec, serializer.cloneObject(spec));
+    }
+
+    private static void assertSpecEquals(RpcMethodSpec<?> expected, Object actual) throws IllegalAccessException {
+        Assertions.assertNotSame(expected, actual);
+        Assertions.assertSame(expected.getClass(), actual.getClass());
+
+        final AbstractRpcMethodSpec<?> expectedSpec = (AbstractRpcMethodSpec<?>) expected;
+        final AbstractRpcMethodSpec<?> actualSpec = (AbstractRpcMethodSpec<?>) actual;
+        Assertions.assertEquals(expectedSpec.getServiceId(), actualSpec.getServiceId());
+        Assertions.assertEquals(expectedSpec.getMethodId(), actualSpec.getMethodId());
+
+        // 生成的类没有实现equals，逐个比较参数字段
+        for (Field field : expected.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            Assertions.assertTrue(Objects.deepEquals(field.get(expected), field.get(actual)), field.getName());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.manager;
+
+import com.wjybxx.fastjgame.net.serialization.Serializer;
+import com.wjybxx.fastjgame.net.session.SessionLifecycleAware;
+import com.wjybxx.fastjgame.net.socket.DefaultSocketPort;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NettyThreadManager}测试：旧的初始化方法使用nio，epoll下使用SO_REUSEPORT在同一端口上创建多个监听socket。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class NettyThreadManagerTest {
+
+    private static final String HOST = "127.0.0.1";
+
+    @Test
+    void testLegacyInit() throws Exception {
+        final NettyThreadManager nettyThreadManager = new NettyThreadManager();
+        nettyThreadManager.init(1, 1);
+        try {
+            Assertions.assertFalse(nettyThreadManager.isEpoll());
+
+            // nio不支持SO_REUSEPORT，退化为单个监听socket
+            final DefaultSocketPort socketPort = nettyThreadManager.bind(HOST, findFreePort(), newConfig(2), newInitializer(null));
+            Assertions.assertEquals(1, socketPort.channels().size());
+            socketPort.close();
+            awaitClosed(socketPort.channels());
+        } finally {
+            nettyThreadManager.shutdown();
+        }
+    }
+
+    @Test
+    void testReusePortBind() throws Exception {
+        Assumptions.assumeTrue(Epoll.isAvailable());
+
+        final NettyThreadManager nettyThreadManager = new NettyThreadManager();
+        nettyThreadManager.init(2, 1, true);
+        try {
+            Assertions.assertTrue(nettyThreadManager.isEpoll());
+
+            final int port = findFreePort();
+            final CountDownLatch acceptedLatch = new CountDownLatch(1);
+            final DefaultSocketPort socketPort = nettyThreadManager.bind(HOST, port, newConfig(2), newInitializer(acceptedLatch));
+            Assertions.assertEquals(2, socketPort.channels().size());
+            for (Channel channel : socketPort.channels()) {
+                Assertions.assertTrue(channel instanceof EpollServerSocketChannel);
+                Assertions.assertTrue(channel.isActive());
+            }
+
+            // 两个监听socket共同对外提供服务
+            try (Socket socket = new Socket(HOST, port)) {
+                Assertions.assertTrue(socket.isConnected());
+                Assertions.assertTrue(acceptedLatch.await(5, TimeUnit.SECONDS));
+            }
+
+            socketPort.close();
+            awaitClosed(socketPort.channels());
+            assertPortFree(port);
+        } finally {
+            nettyThreadManager.shutdown();
+        }
+    }
+
+    @Test
+    void testPartialBindFailure() throws Exception {
+        Assumptions.assumeTrue(Epoll.isAvailable());
+
+        final EventLoopGroup eventLoopGroup = new EpollEventLoopGroup(2);
+        try (ServerSocket occupied = new ServerSocket(0, 50, InetAddress.getByName(HOST))) {
+            // 第一个监听socket成功，第二个绑定到一个被占用（且未开启SO_REUSEPORT）的端口
+            final PartialFailureBootstrap serverBootstrap = new PartialFailureBootstrap(occupied.getLocalPort());
+            serverBootstrap.group(eventLoopGroup, eventLoopGroup)
+                    .channel(EpollServerSocketChannel.class)
+                    .option(EpollChannelOption.SO_REUSEPORT, true)
+                    .childHandler(newInitializer(null));
+
+            final int port = findFreePort();
+            Assertions.assertThrows(BindException.class, () -> NettyThreadManager.bindListeners(serverBootstrap, HOST, port, 2));
+            Assertions.assertEquals(2, serverBootstrap.bindCount);
+
+            // 已成功的监听socket需要被关闭
+            awaitClosed(List.of(serverBootstrap.firstChannel));
+            assertPortFree(port);
+        } finally {
+            eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static void assertPortFree(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(HOST, port));
+        }
+    }
+
+    private static void awaitClosed(List<Channel> channels) {
+        for (Channel channel : channels) {
+            Assertions.assertTrue(channel.closeFuture().awaitUninterruptibly(5, TimeUnit.SECONDS));
+            Assertions.assertFalse(channel.isOpen());
+        }
+    }
+
+    private static ChannelInitializer<SocketChannel> newInitializer(CountDownLatch acceptedLatch) {
+        return new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                if (acceptedLatch != null) {
+                    acceptedLatch.countDown();
+                }
+            }
+        };
+    }
+
+    private static SocketSessionConfig newConfig(int reusePortListeners) {
+        return SocketSessionConfig.newBuilder()
+                .setSerializer(newStub(Serializer.class))
+                .setLifecycleAware(newStub(SessionLifecycleAware.class))
+                .setRpcProcessor((context, request) -> null)
+                .setReusePortListeners(reusePortListeners)
+                .build();
+    }
+
+    private static <T> T newStub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(NettyThreadManagerTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> null));
+    }
+
+    /**
+     * 第二次bind时绑定到指定的（被占用的）端口，模拟部分监听socket创建失败
+     */
+    private static class PartialFailureBootstrap extends ServerBootstrap {
+
+        private final int occupiedPort;
+        private int bindCount;
+        private Channel firstChannel;
+
+        PartialFailureBootstrap(int occupiedPort) {
+            this.occupiedPort = occupiedPort;
+        }
+
+        @Override
+        public ChannelFuture bind(String inetHost, int inetPort) {
+            if (bindCount++ == 0) {
+                final ChannelFuture channelFuture = super.bind(inetHost, inetPort);
+                firstChannel = channelFuture.channel();
+                return channelFuture;
+            }
+            return super.bind(inetHost, occupiedPort);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.misc;
+
+import io.netty.util.Recycler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link NetRecyclers}在开启和关闭两种状态下的测试。
+ * 开关是在类加载时读取的系统属性，无法在一个进程内切换，因此直接通过容量创建对象池：容量为0即关闭状态。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class NetRecyclersTest {
+
+    @Test
+    void testEnabled() {
+        final AtomicInteger createCount = new AtomicInteger();
+        final Recycler<PooledObject> recycler = NetRecyclers.newRecycler(16, handle -> {
+            createCount.incrementAndGet();
+            return new PooledObject(handle);
+        });
+
+        final PooledObject first = PooledObject.newInstance(recycler, "first");
+        first.recycle();
+        Assertions.assertNull(first.value, "recycle should clear fields");
+
+        final PooledObject second = PooledObject.newInstance(recycler, "second");
+        Assertions.assertSame(first, second, "recycled object should be reused");
+        Assertions.assertEquals("second", second.value);
+        Assertions.assertEquals(1, createCount.get());
+    }
+
+    @Test
+    void testDisabled() {
+        final AtomicInteger createCount = new AtomicInteger();
+        final Recycler<PooledObject> recycler = NetRecyclers.newRecycler(0, handle -> {
+            createCount.incrementAndGet();
+            return new PooledObject(handle);
+        });
+
+        final PooledObject first = PooledObject.newInstance(recycler, "first");
+        Assertions.assertEquals("first", first.value);
+        // 关闭时回收是安全的空操作（字段仍会被清理），不会抛出异常
+        first.recycle();
+        Assertions.assertNull(first.value);
+
+        final PooledObject second = PooledObject.newInstance(recycler, "second");
+        Assertions.assertNotSame(first, second, "disabled recycler should always create new object");
+        Assertions.assertEquals("second", second.value);
+        // 重复回收同一个对象也不会出错
+        first.recycle();
+        Assertions.assertEquals(2, createCount.get());
+    }
+
+    @Test
+    void testDefaultRecycler() {
+        final Recycler<PooledObject> recycler = NetRecyclers.newRecycler(PooledObject::new);
+        final PooledObject first = PooledObject.newInstance(recycler, "first");
+        first.recycle();
+
+        final PooledObject second = PooledObject.newInstance(recycler, "second");
+        Assertions.assertEquals("second", second.value);
+        if (!NetRecyclers.isEnabled()) {
+            Assertions.assertNotSame(first, second);
+        }
+    }
+
+    private static class PooledObject {
+
+        private final Recycler.Handle<PooledObject> handle;
+        private Object value;
+
+        PooledObject(Recycler.Handle<PooledObject> handle) {
+            this.handle = handle;
+        }
+
+        static PooledObject newInstance(Recycler<PooledObject> recycler, Object value) {
+            final PooledObject object = recycler.get();
+            object.value = value;
+            return object;
+        }
+
+        void recycle() {
+            value = null;
+            handle.recycle(this);
+        }
+    }
+}
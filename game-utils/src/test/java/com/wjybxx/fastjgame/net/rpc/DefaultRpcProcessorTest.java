@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.session.Session;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link DefaultRpcProcessor}的分发表和{@link RpcMethodStats}的测试。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class DefaultRpcProcessorTest {
+
+    private final RpcProcessContext context = new TestProcessContext();
+
+    @Test
+    void testLookup() throws Exception {
+        final DefaultRpcProcessor processor = new DefaultRpcProcessor();
+        // 稀疏的id，分发表需要正确扩容
+        final short[][] ids = {{0, 0}, {0, 5}, {3, 1}, {3, 0}, {32700, 12}, {1, 2}};
+        for (short[] id : ids) {
+            processor.register(id[0], id[1], (context, methodSpec) -> id[0] + ":" + id[1] + ":" + ((DefaultRpcMethodSpec<?>) methodSpec).getMethodParams().get(0));
+        }
+
+        for (short[] id : ids) {
+            Assertions.assertEquals(id[0] + ":" + id[1] + ":param", processor.process(context, newSpec(id[0], id[1])));
+        }
+    }
+
+    @Test
+    void testUnknownMethod() throws Exception {
+        final DefaultRpcProcessor processor = new DefaultRpcProcessor();
+        processor.register((short) 1, (short) 1, (context, methodSpec) -> "result");
+        processor.register((short) 1, (short) 3, (context, methodSpec) -> "result");
+
+        // 未注册的service，包括小于和大于已注册的serviceId
+        assertUnknown(processor, 0, 1);
+        assertUnknown(processor, 2, 1);
+        assertUnknown(processor, 32700, 1);
+        // 已注册的service中未注册的方法，包括中间的空位和越界的methodId
+        assertUnknown(processor, 1, 0);
+        assertUnknown(processor, 1, 2);
+        assertUnknown(processor, 1, 4);
+        assertUnknown(processor, 1, 32700);
+        assertUnknown(processor, -1, 1);
+        assertUnknown(processor, 1, -1);
+
+        Assertions.assertEquals("result", processor.process(context, newSpec(1, 3)));
+
+        // 释放之后所有方法都不存在
+        processor.release();
+        assertUnknown(processor, 1, 1);
+    }
+
+    @Test
+    void testRegisterIllegalId() {
+        final DefaultRpcProcessor processor = new DefaultRpcProcessor();
+        processor.register((short) 1, (short) 1, (context, methodSpec) -> null);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> processor.register((short) 1, (short) 1, (context, methodSpec) -> null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> processor.register((short) -1, (short) 1, (context, methodSpec) -> null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> processor.register((short) 1, (short) -1, (context, methodSpec) -> null));
+    }
+
+    @Test
+    void testStats() throws Exception {
+        final DefaultRpcProcessor processor = new DefaultRpcProcessor();
+        processor.register((short) 1, (short) 1, (context, methodSpec) -> "result");
+        processor.register((short) 1, (short) 2, (context, methodSpec) -> {
+            throw new IllegalStateException("failure");
+        });
+        processor.register((short) 2, (short) 1, (context, methodSpec) -> "unused");
+
+        for (int index = 0; index < 5; index++) {
+            processor.process(context, newSpec(1, 1));
+        }
+        for (int index = 0; index < 3; index++) {
+            Assertions.assertThrows(RuntimeException.class, () -> processor.process(context, newSpec(1, 2)));
+        }
+        // 未知方法不计入统计
+        Assertions.assertThrows(IllegalArgumentException.class, () -> processor.process(context, newSpec(1, 3)));
+
+        final List<RpcMethodStats> snapshot = processor.statsSnapshot();
+        Assertions.assertEquals(3, snapshot.size());
+        checkStats(findStats(snapshot, 1, 1), 5, 0);
+        checkStats(findStats(snapshot, 1, 2), 3, 3);
+        checkStats(findStats(snapshot, 2, 1), 0, 0);
+
+        // 快照不受之后的调用和重置影响
+        processor.process(context, newSpec(1, 1));
+        processor.resetStats();
+        Assertions.assertEquals(5, findStats(snapshot, 1, 1).getInvokeCount());
+
+        for (RpcMethodStats stats : processor.statsSnapshot()) {
+            checkStats(stats, 0, 0);
+            Assertions.assertEquals(0, stats.getTotalCostNanos());
+            Assertions.assertEquals(0, stats.getMaxCostNanos());
+        }
+    }
+
+    @Test
+    void testStatsDisabled() throws Exception {
+        final DefaultRpcProcessor processor = new DefaultRpcProcessor(false);
+        processor.register((short) 1, (short) 1, (context, methodSpec) -> "result");
+
+        Assertions.assertEquals("result", processor.process(context, newSpec(1, 1)));
+        checkStats(findStats(processor.statsSnapshot(), 1, 1), 0, 0);
+    }
+
+    @Test
+    void testLatencyBuckets() {
+        final RpcMethodStats stats = new RpcMethodStats((short) 1, (short) 1);
+        Assertions.assertEquals(0, stats.percentileMicros(99));
+
+        // 0.5微秒、3微秒、3微秒、1000微秒
+        stats.record(500, true);
+        stats.record(3_000, true);
+        stats.record(3_999, false);
+        stats.record(1_000_000, true);
+
+        final long[] buckets = stats.getLatencyBuckets();
+        Assertions.assertEquals(1, buckets[0]);
+        Assertions.assertEquals(2, buckets[2]);
+        Assertions.assertEquals(1, buckets[10]);
+
+        Assertions.assertEquals(4, stats.getInvokeCount());
+        Assertions.assertEquals(1, stats.getFailureCount());
+        Assertions.assertEquals(1_000_000, stats.getMaxCostNanos());
+        Assertions.assertEquals((500 + 3_000 + 3_999 + 1_000_000) / 4, stats.getAvgCostNanos());
+
+        Assertions.assertEquals(1, stats.percentileMicros(25));
+        Assertions.assertEquals(4, stats.percentileMicros(50));
+        Assertions.assertEquals(4, stats.percentileMicros(75));
+        Assertions.assertEquals(1024, stats.percentileMicros(100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> stats.percentileMicros(0));
+
+        // 超大的耗时落在最后一个桶
+        stats.record(Long.MAX_VALUE, true);
+        Assertions.assertEquals(1, stats.getLatencyBuckets()[RpcMethodStats.LATENCY_BUCKET_COUNT - 1]);
+        Assertions.assertEquals(Long.MAX_VALUE, stats.percentileMicros(100));
+    }
+
+    private void assertUnknown(DefaultRpcProcessor processor, int serviceId, int methodId) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> processor.process(context, newSpec(serviceId, methodId)),
+                "serviceId " + serviceId + ", methodId " + methodId);
+    }
+
+    private static void checkStats(RpcMethodStats stats, long invokeCount, long failureCount) {
+        Assertions.assertEquals(invokeCount, stats.getInvokeCount());
+        Assertions.assertEquals(failureCount, stats.getFailureCount());
+
+        long bucketCount = 0;
+        for (long count : stats.getLatencyBuckets()) {
+            bucketCount += count;
+        }
+        Assertions.assertEquals(invokeCount, bucketCount);
+    }
+
+    private static RpcMethodStats findStats(List<RpcMethodStats> snapshot, int serviceId, int methodId) {
+        for (RpcMethodStats stats : snapshot) {
+            if (stats.getServiceId() == serviceId && stats.getMethodId() == methodId) {
+                return stats;
+            }
+        }
+        throw new AssertionError("serviceId " + serviceId + ", methodId " + methodId);
+    }
+
+    private static DefaultRpcMethodSpec<?> newSpec(int serviceId, int methodId) {
+        final List<Object> methodParams = new ArrayList<>();
+        methodParams.add("param");
+        return new DefaultRpcMethodSpec<>((short) serviceId, (short) methodId, methodParams, 0, 0);
+    }
+
+    private static class TestProcessContext implements RpcProcessContext {
+
+        private final Session session = RpcHandlerTestSupport.newStub(Session.class, (proxy, method, args) -> {
+            if (method.getName().equals("sessionId")) {
+                return "session";
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+
+        @Nonnull
+        @Override
+        public Session session() {
+            return session;
+        }
+
+        @Override
+        public boolean isRpc() {
+            return true;
+        }
+
+        @Override
+        public long requestGuid() {
+            return 1;
+        }
+
+        @Override
+        public boolean isSyncRpc() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.misc.NetRecyclers;
+import com.wjybxx.fastjgame.util.concurrent.FutureUtils;
+import com.wjybxx.fastjgame.util.concurrent.Promise;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RpcSupportHandler}和{@link OneWaySupportHandler}的回收路径测试。
+ * 回收时会清理对象的字段，因此只要handler在回收之后还访问了任务或消息，产生的结果就会丢失内容。
+ * 无论{@link NetRecyclers#isEnabled()}是否开启，测试都应该通过：关闭时回收仍会清理字段，只是不会复用对象。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class RecyclePathTest {
+
+    private final List<RpcProcessContext> processContexts = new ArrayList<>();
+    private final List<RpcMethodSpec<?>> processRequests = new ArrayList<>();
+    private final RpcHandlerTestSupport support = new RpcHandlerTestSupport((context, request) -> {
+        processContexts.add(context);
+        processRequests.add(request);
+        return "result";
+    });
+
+    @Test
+    void testRpcRequestWrite() throws Exception {
+        final RpcSupportHandler handler = newRpcSupportHandler();
+        final List<Promise<Object>> promises = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            final Promise<Object> promise = FutureUtils.newPromise();
+            final RpcRequestInvocationTask task = RpcRequestInvocationTask.newInstance(support.session, "request" + index, index % 2 == 0, 1000, promise, false);
+            handler.write(support.ctx, task);
+            // 任务已回收
+            Assertions.assertNull(task.getRequest());
+            Assertions.assertNull(task.getPromise());
+            promises.add(promise);
+        }
+
+        Assertions.assertEquals(3, support.writes.size());
+        for (int index = 0; index < 3; index++) {
+            final RpcRequestMessage requestMessage = (RpcRequestMessage) support.writes.get(index);
+            Assertions.assertEquals("request" + index, requestMessage.getBody());
+            Assertions.assertEquals(index % 2 == 0, requestMessage.isSync());
+        }
+
+        // 对象池开启时任务对象会被复用，但每个请求都要关联到自己的promise
+        for (int index = 2; index >= 0; index--) {
+            final long requestGuid = ((RpcRequestMessage) support.writes.get(index)).getRequestGuid();
+            final RpcResponseMessage responseMessage = RpcResponseMessage.newInstance(requestGuid, false, RpcErrorCode.SUCCESS, "response" + index);
+            handler.read(support.ctx, responseMessage);
+            // 消息已回收
+            Assertions.assertNull(responseMessage.getBody());
+        }
+        for (int index = 0; index < 3; index++) {
+            Assertions.assertEquals("response" + index, promises.get(index).getNow());
+        }
+        Assertions.assertEquals(0, handler.pendingRpcCount());
+    }
+
+    @Test
+    void testRpcRequestRead() throws Exception {
+        final RpcSupportHandler handler = newRpcSupportHandler();
+        final List<RpcMethodSpec<?>> requests = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            final RpcMethodSpec<?> request = newRequest(index);
+            final RpcRequestMessage requestMessage = RpcRequestMessage.newInstance(index + 1, index % 2 == 0, request);
+            handler.read(support.ctx, requestMessage);
+            // 消息已回收
+            Assertions.assertNull(requestMessage.getBody());
+            requests.add(request);
+        }
+
+        Assertions.assertEquals(requests, processRequests);
+        for (int index = 0; index < 3; index++) {
+            final RpcProcessContext context = processContexts.get(index);
+            Assertions.assertTrue(context.isRpc());
+            Assertions.assertEquals(index + 1, context.requestGuid());
+            Assertions.assertEquals(index % 2 == 0, context.isSyncRpc());
+        }
+        // 每个请求都提交了响应
+        Assertions.assertEquals(3, support.netTasks.size());
+        for (Runnable task : support.netTasks) {
+            Assertions.assertTrue(task instanceof RpcResponseInvocationTask);
+        }
+    }
+
+    @Test
+    void testOneWayWrite() throws Exception {
+        final OneWaySupportHandler handler = new OneWaySupportHandler();
+        for (int index = 0; index < 3; index++) {
+            final OneWayInvocationTask task = OneWayInvocationTask.newInstance(support.session, "message" + index, false);
+            handler.write(support.ctx, task);
+            // 任务已回收
+            Assertions.assertNull(task.getMessage());
+        }
+
+        Assertions.assertEquals(3, support.writes.size());
+        for (int index = 0; index < 3; index++) {
+            Assertions.assertEquals("message" + index, ((OneWayMessage) support.writes.get(index)).getBody());
+        }
+    }
+
+    @Test
+    void testOneWayRead() {
+        final OneWaySupportHandler handler = new OneWaySupportHandler();
+        final List<RpcMethodSpec<?>> requests = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            final RpcMethodSpec<?> request = newRequest(index);
+            final OneWayMessage oneWayMessage = OneWayMessage.newInstance(request);
+            handler.read(support.ctx, oneWayMessage);
+            // 消息已回收
+            Assertions.assertNull(oneWayMessage.getBody());
+            requests.add(request);
+        }
+
+        Assertions.assertEquals(requests, processRequests);
+        for (RpcProcessContext context : processContexts) {
+            Assertions.assertFalse(context.isRpc());
+        }
+        // 单向消息没有响应
+        Assertions.assertTrue(support.netTasks.isEmpty());
+    }
+
+    private RpcSupportHandler newRpcSupportHandler() throws Exception {
+        final RpcSupportHandler handler = new RpcSupportHandler();
+        handler.handlerAdded(support.ctx);
+        return handler;
+    }
+
+    private static RpcMethodSpec<?> newRequest(int index) {
+        final List<Object> methodParams = new ArrayList<>();
+        methodParams.add(index);
+        return new DefaultRpcMethodSpec<>((short) 1, (short) 2, methodParams, 0, 0);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
+import com.wjybxx.fastjgame.net.manager.*;
+import com.wjybxx.fastjgame.net.serialization.Serializer;
+import com.wjybxx.fastjgame.net.session.*;
+import com.wjybxx.fastjgame.util.concurrent.EventLoop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * rpc相关handler测试的公共部分：不依赖网络层和线程模型，直接调用handler的方法。
+ * 时间由测试推进，应用线程的任务直接在当前线程执行。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+final class RpcHandlerTestSupport {
+
+    final NetTimeManager netTimeManager = new NetTimeManager();
+    final RpcTimeoutManager rpcTimeoutManager;
+    final AbstractSession session;
+    /**
+     * handler向下传递的消息
+     */
+    final List<Object> writes = new ArrayList<>();
+    /**
+     * handler向上传递的消息
+     */
+    final List<Object> reads = new ArrayList<>();
+    /**
+     * 提交到网络线程的任务
+     */
+    final List<Runnable> netTasks = new ArrayList<>();
+    final SessionHandlerContext ctx;
+
+    RpcHandlerTestSupport() {
+        this((context, request) -> null);
+    }
+
+    RpcHandlerTestSupport(RpcProcessor processor) {
+        netTimeManager.changeToCacheStrategy();
+        rpcTimeoutManager = new RpcTimeoutManager(netTimeManager);
+        final NetTimerManager netTimerManager = new NetTimerManager(netTimeManager);
+
+        final NetEventLoopManager netEventLoopManager = new NetEventLoopManager();
+        netEventLoopManager.publish(newStub(NetEventLoop.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "inEventLoop":
+                    return true;
+                case "execute":
+                    netTasks.add((Runnable) args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }));
+        final NetManagerWrapper managerWrapper = new NetManagerWrapper(netEventLoopManager, null, null, netTimeManager, netTimerManager,
+                new SessionTickManager(netTimerManager), null, rpcTimeoutManager, null, null, null);
+
+        final SessionConfig config = SessionConfig.newBuilder()
+                .setSerializer(newStub(Serializer.class, (proxy, method, args) -> null))
+                .setLifecycleAware(newStub(SessionLifecycleAware.class, (proxy, method, args) -> null))
+                .setRpcProcessor(processor)
+                .build();
+        session = new AbstractSession(null, "session", config, managerWrapper,
+                newStub(SessionRegistry.class, (proxy, method, args) -> null)) {
+        };
+
+        final EventLoop appEventLoop = newStub(EventLoop.class, (proxy, method, args) -> {
+            if (method.getName().equals("execute")) {
+                ((Runnable) args[0]).run();
+                return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        ctx = newStub(SessionHandlerContext.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "session":
+                    return session;
+                case "appEventLoop":
+                    return appEventLoop;
+                case "fireWrite":
+                    writes.add(args[0]);
+                    return null;
+                case "fireRead":
+                    reads.add(args[0]);
+                    return null;
+                case "fireSessionInactive":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * 推进时间并检查rpc超时
+     */
+    void advanceTime(long timeMs) {
+        netTimeManager.update(netTimeManager.curTimeMillis() + timeMs);
+        rpcTimeoutManager.tick();
+    }
+
+    static <T> T newStub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(RpcHandlerTestSupport.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.rpc;
+
+import com.wjybxx.fastjgame.net.exception.DefaultRpcServerException;
+import com.wjybxx.fastjgame.net.exception.RpcSessionClosedException;
+import com.wjybxx.fastjgame.net.exception.RpcTimeoutException;
+import com.wjybxx.fastjgame.net.manager.RpcTimeoutManager;
+import com.wjybxx.fastjgame.util.concurrent.FutureUtils;
+import com.wjybxx.fastjgame.util.concurrent.Promise;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RpcSupportHandler}与{@link RpcTimeoutManager}测试：超时的顺序、收到响应时取消超时、session关闭时清理所有请求。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class RpcSupportHandlerTest {
+
+    private final RpcHandlerTestSupport support = new RpcHandlerTestSupport();
+    private final RpcSupportHandler handler = new RpcSupportHandler();
+
+    public RpcSupportHandlerTest() throws Exception {
+        handler.handlerAdded(support.ctx);
+    }
+
+    @Test
+    void testTimeoutOrder() throws Exception {
+        // 不同超时时间的请求按照截止时间超时，截止时间相同的按照发送顺序超时
+        final long[] timeouts = {3000, 1000, 5000, 1000, 2000};
+        final List<Integer> timeoutOrder = new ArrayList<>();
+        for (int index = 0; index < timeouts.length; index++) {
+            final int requestIndex = index;
+            final Promise<Object> promise = sendRequest(timeouts[index]);
+            promise.addFailedListener(cause -> {
+                Assertions.assertSame(RpcTimeoutException.INSTANCE, cause);
+                timeoutOrder.add(requestIndex);
+            });
+        }
+        Assertions.assertEquals(timeouts.length, handler.pendingRpcCount());
+
+        support.advanceTime(999);
+        Assertions.assertTrue(timeoutOrder.isEmpty());
+
+        for (int step = 0; step < 5; step++) {
+            support.advanceTime(1000);
+        }
+        Assertions.assertEquals(List.of(1, 3, 4, 0, 2), timeoutOrder);
+        Assertions.assertEquals(0, handler.pendingRpcCount());
+    }
+
+    @Test
+    void testResponseCancelTimeout() throws Exception {
+        final Promise<Object> successPromise = sendRequest(1000);
+        final Promise<Object> failurePromise = sendRequest(1000);
+        final Promise<Object> timeoutPromise = sendRequest(1000);
+        Assertions.assertEquals(3, handler.pendingRpcCount());
+
+        handler.read(support.ctx, new RpcResponseMessage(requestGuid(0), false, RpcErrorCode.SUCCESS, "result"));
+        handler.read(support.ctx, new RpcResponseMessage(requestGuid(1), false, RpcErrorCode.SERVER_EXCEPTION, "error"));
+        Assertions.assertEquals("result", successPromise.getNow());
+        Assertions.assertTrue(failurePromise.cause() instanceof DefaultRpcServerException);
+        Assertions.assertEquals(1, handler.pendingRpcCount());
+
+        // 已完成的请求不会再超时
+        support.advanceTime(1000);
+        Assertions.assertEquals("result", successPromise.getNow());
+        Assertions.assertTrue(failurePromise.cause() instanceof DefaultRpcServerException);
+        Assertions.assertSame(RpcTimeoutException.INSTANCE, timeoutPromise.cause());
+        Assertions.assertEquals(0, handler.pendingRpcCount());
+
+        // 超时之后才收到的响应直接丢弃
+        handler.read(support.ctx, new RpcResponseMessage(requestGuid(2), false, RpcErrorCode.SUCCESS, "late"));
+        Assertions.assertSame(RpcTimeoutException.INSTANCE, timeoutPromise.cause());
+    }
+
+    @Test
+    void testSessionClosed() throws Exception {
+        final List<Promise<Object>> promises = new ArrayList<>();
+        for (int index = 0; index < 10; index++) {
+            promises.add(sendRequest(1000 + index * 100));
+        }
+        Assertions.assertEquals(10, handler.pendingRpcCount());
+
+        handler.onSessionInactive(support.ctx);
+        Assertions.assertEquals(0, handler.pendingRpcCount());
+        for (Promise<Object> promise : promises) {
+            Assertions.assertSame(RpcSessionClosedException.INSTANCE, promise.cause());
+        }
+
+        // 时间轮上的超时任务已取消
+        support.advanceTime(10_000);
+        for (Promise<Object> promise : promises) {
+            Assertions.assertSame(RpcSessionClosedException.INSTANCE, promise.cause());
+        }
+        Assertions.assertEquals(0, handler.pendingRpcCount());
+    }
+
+    private Promise<Object> sendRequest(long timeoutMs) throws Exception {
+        final Promise<Object> promise = FutureUtils.newPromise();
+        handler.write(support.ctx, new RpcRequestInvocationTask(support.session, "request", false, timeoutMs, promise, false));
+        return promise;
+    }
+
+    /**
+     * 第index个请求分配的requestGuid
+     */
+    private long requestGuid(int index) {
+        return ((RpcRequestMessage) support.writes.get(index)).getRequestGuid();
+    }
+}
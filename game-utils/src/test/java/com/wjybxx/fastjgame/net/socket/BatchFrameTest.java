@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.net.rpc.NetMessageType;
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.rpc.PingPongMessage;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestBatchSocketMessageTO;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestSocketCodec;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestSocketMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.*;
+
+/**
+ * 批量帧测试：多个消息编码到一个批量帧、超过最大长度时拆分为多个批量帧、过大的消息单独发送、编码失败时释放所有消息。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class BatchFrameTest {
+
+    private static final int MESSAGE_COUNT = 20;
+
+    @Test
+    void testRoundTrip() throws Exception {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final EmbeddedChannel clientChannel = new EmbeddedChannel(new TestSocketCodec(config));
+        final TestSocketCodec server = new TestSocketCodec(config);
+        final EmbeddedChannel serverChannel = new EmbeddedChannel(server);
+
+        final List<SerializedBody> serializedBodies = new ArrayList<>();
+        final ChannelPromise promise = clientChannel.newPromise();
+        clientChannel.writeAndFlush(new TestBatchSocketMessageTO(newMessages(serializedBodies), config.maxFrameLength()), promise);
+
+        // 所有消息在一个批量帧中
+        Assertions.assertEquals(1, transfer(clientChannel, serverChannel));
+        Assertions.assertTrue(promise.isSuccess());
+        assertReleased(serializedBodies);
+        assertEvents(server.events);
+
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testSplit() throws Exception {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final PromiseHolder promiseHolder = new PromiseHolder();
+        final EmbeddedChannel clientChannel = new EmbeddedChannel(promiseHolder, new TestSocketCodec(config));
+        final TestSocketCodec server = new TestSocketCodec(config);
+        final EmbeddedChannel serverChannel = new EmbeddedChannel(server);
+
+        final List<SerializedBody> serializedBodies = new ArrayList<>();
+        final ChannelPromise promise = clientChannel.newPromise();
+        // 每个批量帧只能容纳少量消息
+        clientChannel.writeAndFlush(new TestBatchSocketMessageTO(newMessages(serializedBodies), 100), promise);
+
+        final int frameCount = transfer(clientChannel, serverChannel);
+        Assertions.assertTrue(frameCount > 1);
+        Assertions.assertEquals(frameCount, promiseHolder.promises.size());
+        assertReleased(serializedBodies);
+        assertEvents(server.events);
+
+        // 所有帧都发送成功之后才通知
+        for (ChannelPromise framePromise : promiseHolder.promises) {
+            Assertions.assertFalse(promise.isDone());
+            framePromise.setSuccess();
+        }
+        Assertions.assertTrue(promise.isSuccess());
+
+        // 任意一个帧发送失败，则整体失败
+        promiseHolder.promises.clear();
+        final ChannelPromise failedPromise = clientChannel.newPromise();
+        clientChannel.writeAndFlush(new TestBatchSocketMessageTO(newMessages(serializedBodies), 100), failedPromise);
+        transfer(clientChannel, serverChannel);
+        final IOException cause = new IOException("test");
+        promiseHolder.promises.get(0).setFailure(cause);
+        for (int index = 1; index < promiseHolder.promises.size(); index++) {
+            promiseHolder.promises.get(index).setSuccess();
+        }
+        Assertions.assertSame(cause, failedPromise.cause());
+
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testOversizedMessage() throws Exception {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final int maxBatchFrameLength = 200;
+        final EmbeddedChannel clientChannel = new EmbeddedChannel(new TestSocketCodec(config));
+        final TestSocketCodec server = new TestSocketCodec(config);
+        final EmbeddedChannel serverChannel = new EmbeddedChannel(server);
+
+        // 单独发送时恰好等于最大帧长度的消息，以及远超最大帧长度的消息，加上批量帧头之后对方都无法解码
+        final String boundaryBody = newBody(maxBatchFrameLength - AbstractSocketCodec.MESSAGE_FRAME_HEADER_LENGTH);
+        final String largeBody = newBody(maxBatchFrameLength * 3);
+        final List<Object> bodies = new ArrayList<>();
+        bodies.add("first");
+        bodies.add(boundaryBody);
+        bodies.add(largeBody);
+        bodies.add("middle");
+        bodies.add(SerializedBody.newInstance(serializer, largeBody));
+        bodies.add("last");
+
+        final List<SocketMessage> socketMessageList = new ArrayList<>();
+        for (int index = 0; index < bodies.size(); index++) {
+            socketMessageList.add(new TestSocketMessage(index + 1, new OneWayMessage(bodies.get(index))));
+        }
+        final TestBatchSocketMessageTO batchSocketMessageTO = new TestBatchSocketMessageTO(socketMessageList, maxBatchFrameLength);
+        final ChannelPromise promise = clientChannel.newPromise();
+        clientChannel.writeAndFlush(batchSocketMessageTO, promise);
+        Assertions.assertTrue(promise.isSuccess());
+        Assertions.assertTrue(batchSocketMessageTO.recycled);
+
+        // 批量帧不超过最大长度，过大的消息按普通的消息帧单独发送
+        final List<NetMessageType> frameTypes = new ArrayList<>();
+        ByteBuf frame;
+        while ((frame = clientChannel.readOutbound()) != null) {
+            final NetMessageType frameType = NetMessageType.forNumber(frame.getByte(4));
+            frameTypes.add(frameType);
+            if (frameType == NetMessageType.BATCH_MESSAGE) {
+                Assertions.assertTrue(frame.readableBytes() <= maxBatchFrameLength);
+            }
+            Assertions.assertEquals(frame.readInt(), frame.readableBytes());
+            serverChannel.writeInbound(frame);
+        }
+        Assertions.assertEquals(List.of(NetMessageType.BATCH_MESSAGE, NetMessageType.ONE_WAY_MESSAGE, NetMessageType.ONE_WAY_MESSAGE,
+                NetMessageType.BATCH_MESSAGE, NetMessageType.ONE_WAY_MESSAGE, NetMessageType.BATCH_MESSAGE), frameTypes);
+
+        // 顺序不变
+        Assertions.assertEquals(bodies.size(), server.events.size());
+        for (int index = 0; index < bodies.size(); index++) {
+            final SocketMessageEvent event = (SocketMessageEvent) server.events.get(index);
+            Assertions.assertEquals(index + 1, event.getSequence());
+            Assertions.assertEquals(index == bodies.size() - 1, event.isEndOfBatch());
+            final Object body = bodies.get(index);
+            final Object expected = body instanceof SerializedBody ? largeBody : body;
+            Assertions.assertEquals(expected, ((OneWayMessage) event.getWrappedMessage()).getBody());
+        }
+        Assertions.assertEquals(0, ((SerializedBody) bodies.get(4)).refCnt());
+
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    /**
+     * 创建一个序列化后恰好为指定字节数的字符串
+     */
+    private static String newBody(int serializedSize) throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        while (serializer.toBytes(sb.toString()).length < serializedSize) {
+            sb.append('a');
+        }
+        final String body = sb.toString();
+        Assertions.assertEquals(serializedSize, serializer.toBytes(body).length);
+        return body;
+    }
+
+    @Test
+    void testReleasedOnFailure() throws Exception {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final EmbeddedChannel clientChannel = new EmbeddedChannel(new TestSocketCodec(config));
+
+        final SerializedBody first = SerializedBody.newInstance(serializer, "first");
+        final SerializedBody last = SerializedBody.newInstance(serializer, "last");
+        final ByteBuf encodedPayload = Unpooled.copiedBuffer("encoded", StandardCharsets.UTF_8);
+        final List<SocketMessage> socketMessageList = new ArrayList<>();
+        socketMessageList.add(new TestSocketMessage(1, new OneWayMessage(first)));
+        // 批量帧中不允许出现的消息类型，编码失败
+        socketMessageList.add(new TestSocketMessage(2, PingPongMessage.PING));
+        socketMessageList.add(new TestSocketMessage(3, new OneWayMessage(last)));
+        socketMessageList.add(new EncodedSocketMessage(4, NetMessageType.ONE_WAY_MESSAGE, encodedPayload));
+
+        final ChannelPromise promise = clientChannel.newPromise();
+        clientChannel.writeAndFlush(new TestBatchSocketMessageTO(socketMessageList, config.maxFrameLength()), promise);
+
+        Assertions.assertTrue(promise.cause() instanceof IOException);
+        Assertions.assertNull(clientChannel.readOutbound());
+        Assertions.assertEquals(0, first.refCnt());
+        Assertions.assertEquals(0, last.refCnt());
+        Assertions.assertEquals(0, encodedPayload.refCnt());
+        clientChannel.finishAndReleaseAll();
+    }
+
+    /**
+     * 交替使用预序列化和未序列化的消息内容
+     */
+    private static List<SocketMessage> newMessages(List<SerializedBody> serializedBodies) throws Exception {
+        final List<SocketMessage> socketMessageList = new ArrayList<>(MESSAGE_COUNT);
+        for (int index = 0; index < MESSAGE_COUNT; index++) {
+            final Object body;
+            if (index % 2 == 0) {
+                final SerializedBody serializedBody = SerializedBody.newInstance(serializer, "message-" + index);
+                serializedBodies.add(serializedBody);
+                body = serializedBody;
+            } else {
+                body = "message-" + index;
+            }
+            socketMessageList.add(new TestSocketMessage(index + 1, new OneWayMessage(body)));
+        }
+        return socketMessageList;
+    }
+
+    private static void assertReleased(List<SerializedBody> serializedBodies) {
+        for (SerializedBody serializedBody : serializedBodies) {
+            Assertions.assertEquals(0, serializedBody.refCnt());
+        }
+    }
+
+    private static void assertEvents(List<SocketEvent> events) {
+        Assertions.assertEquals(MESSAGE_COUNT, events.size());
+        for (int index = 0; index < MESSAGE_COUNT; index++) {
+            final SocketMessageEvent event = (SocketMessageEvent) events.get(index);
+            Assertions.assertEquals(index + 1, event.getSequence());
+            Assertions.assertEquals("message-" + index, ((OneWayMessage) event.getWrappedMessage()).getBody());
+            Assertions.assertEquals(index == MESSAGE_COUNT - 1, event.isEndOfBatch());
+        }
+        events.clear();
+    }
+
+    /**
+     * 记录每个帧的promise，由测试决定操作结果
+     */
+    private static class PromiseHolder extends ChannelOutboundHandlerAdapter {
+
+        final List<ChannelPromise> promises = new ArrayList<>();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            promises.add(promise);
+            ctx.write(msg);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.net.rpc.NetMessageType;
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestConnectRequestTO;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestConnectResponseTO;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestSocketCodec;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestSocketMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.newConfigBuilder;
+import static com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.transfer;
+
+/**
+ * {@link FrameCompressor}测试：压缩和解压缩、跳过不需要压缩的帧、解压缩长度限制、字典不一致，
+ * 以及未开启压缩时建立连接的协议与之前的版本一致。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class FrameCompressorTest {
+
+    private static final ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+    private static final byte[] DICTIONARY = newText(512).getBytes(StandardCharsets.UTF_8);
+    /**
+     * 未开启压缩时建立连接请求的长度(不含长度字段)：包类型 + verifyingTimes + verifiedTimes + initSequence + ack + close + sessionId
+     */
+    private static final int BASE_CONNECT_REQUEST_LENGTH = 1 + 4 + 4 + 8 + 8 + 1 + "session".length();
+    /**
+     * 未开启压缩时建立连接应答的长度(不含长度字段)：包类型 + success + verifyingTimes + verifiedTimes + initSequence + ack + close
+     */
+    private static final int BASE_CONNECT_RESPONSE_LENGTH = 1 + 1 + 4 + 4 + 8 + 8 + 1;
+
+    @Test
+    void testRoundTrip() throws Exception {
+        checkRoundTrip(builder -> builder);
+        // 双方字典一致时使用字典
+        checkRoundTrip(builder -> builder.setCompressionDictionary(DICTIONARY));
+    }
+
+    private static void checkRoundTrip(UnaryOperator<SocketSessionConfig.SocketSessionConfigBuilder> customizer) throws Exception {
+        final FrameCompressor client = newCompressor(true, customizer);
+        final FrameCompressor server = newCompressor(true, customizer);
+        negotiate(client, server);
+
+        final byte[] content = newText(4096).getBytes(StandardCharsets.UTF_8);
+        final ByteBuf frame = newFrame(NetMessageType.ONE_WAY_MESSAGE, content);
+        final ByteBuf compressedFrame = client.tryCompress(allocator, frame);
+        Assertions.assertNotSame(frame, compressedFrame);
+        Assertions.assertEquals(0, frame.refCnt());
+        Assertions.assertEquals(NetMessageType.COMPRESSED_MESSAGE.pkgType, compressedFrame.getByte(4));
+        Assertions.assertTrue(compressedFrame.readableBytes() < content.length);
+
+        final ByteBuf decompressed = decompress(server, compressedFrame, 8 * 1024);
+        try {
+            Assertions.assertEquals(NetMessageType.ONE_WAY_MESSAGE.pkgType, decompressed.readByte());
+            Assertions.assertArrayEquals(content, ByteBufUtil.getBytes(decompressed));
+        } finally {
+            decompressed.release();
+        }
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void testSkip() {
+        final FrameCompressor client = newCompressor(true, builder -> builder.setCompressionThreshold(1024));
+        final FrameCompressor server = newCompressor(true, builder -> builder);
+        negotiate(client, server);
+
+        // 小于阈值
+        assertSkipped(client, newFrame(NetMessageType.ONE_WAY_MESSAGE, new byte[1000]));
+        // 压缩后没有变小
+        final byte[] randomBytes = new byte[4096];
+        new Random(0).nextBytes(randomBytes);
+        assertSkipped(client, newFrame(NetMessageType.ONE_WAY_MESSAGE, randomBytes));
+        // 不是用户消息
+        assertSkipped(client, newFrame(NetMessageType.PING_PONG, new byte[4096]));
+
+        // 对方不支持压缩
+        final FrameCompressor disabledServer = newCompressor(false, builder -> builder);
+        final FrameCompressor rejectedClient = newCompressor(true, builder -> builder);
+        negotiate(rejectedClient, disabledServer);
+        assertSkipped(rejectedClient, newFrame(NetMessageType.ONE_WAY_MESSAGE, new byte[4096]));
+        assertSkipped(disabledServer, newFrame(NetMessageType.ONE_WAY_MESSAGE, new byte[4096]));
+        client.close();
+    }
+
+    private static void assertSkipped(FrameCompressor compressor, ByteBuf frame) {
+        Assertions.assertSame(frame, compressor.tryCompress(allocator, frame));
+        Assertions.assertEquals(1, frame.refCnt());
+        frame.release();
+    }
+
+    @Test
+    void testMaxFrameLength() {
+        final FrameCompressor client = newCompressor(true, builder -> builder);
+        final FrameCompressor server = newCompressor(true, builder -> builder);
+        negotiate(client, server);
+
+        // 压缩率很高的帧，解压缩后超过允许的最大长度
+        final byte[] content = new byte[64 * 1024];
+        final ByteBuf compressedFrame = client.tryCompress(allocator, newFrame(NetMessageType.ONE_WAY_MESSAGE, content));
+        Assertions.assertTrue(compressedFrame.readableBytes() < 1024);
+        Assertions.assertThrows(IOException.class, () -> decompress(server, compressedFrame, content.length));
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void testDictionaryMismatch() throws Exception {
+        final FrameCompressor client = newCompressor(true, builder -> builder.setCompressionDictionary(DICTIONARY));
+        final FrameCompressor server = newCompressor(true, builder -> builder.setCompressionDictionary(DICTIONARY));
+        negotiate(client, server);
+        final byte[] content = newText(4096).getBytes(StandardCharsets.UTF_8);
+
+        // 没有字典
+        final FrameCompressor noDictionary = newCompressor(true, builder -> builder);
+        final ByteBuf compressedFrame = client.tryCompress(allocator, newFrame(NetMessageType.ONE_WAY_MESSAGE, content));
+        Assertions.assertThrows(IOException.class, () -> decompress(noDictionary, compressedFrame.retainedDuplicate(), 8 * 1024));
+
+        // 字典不同
+        final byte[] otherDictionary = DICTIONARY.clone();
+        otherDictionary[0]++;
+        final FrameCompressor otherServer = newCompressor(true, builder -> builder.setCompressionDictionary(otherDictionary));
+        Assertions.assertThrows(IOException.class, () -> decompress(otherServer, compressedFrame, 8 * 1024));
+
+        // 协商时发现字典不同，则不使用字典
+        final FrameCompressor otherClient = newCompressor(true, builder -> builder.setCompressionDictionary(otherDictionary));
+        negotiate(otherClient, server);
+        final ByteBuf frame = otherClient.tryCompress(allocator, newFrame(NetMessageType.ONE_WAY_MESSAGE, content));
+        final ByteBuf decompressed = decompress(noDictionary, frame, 8 * 1024);
+        Assertions.assertEquals(1 + content.length, decompressed.readableBytes());
+        decompressed.release();
+    }
+
+    @Test
+    void testHandshakeCompatibility() {
+        // 双方都未开启压缩：协议与之前的版本一致
+        Assertions.assertFalse(handshake(false, false));
+        // 只有一方开启压缩：协商失败，不开启压缩的一方不会读写额外的内容
+        Assertions.assertFalse(handshake(true, false));
+        Assertions.assertFalse(handshake(false, true));
+        // 双方都开启压缩
+        Assertions.assertTrue(handshake(true, true));
+    }
+
+    /**
+     * @return 建立连接之后，客户端发送的消息是否被压缩
+     */
+    private static boolean handshake(boolean clientEnabled, boolean serverEnabled) {
+        final TestSocketCodec client = new TestSocketCodec(newConfigBuilder().setCompressionEnabled(clientEnabled).build());
+        final TestSocketCodec server = new TestSocketCodec(newConfigBuilder().setCompressionEnabled(serverEnabled).build());
+        final EmbeddedChannel clientChannel = new EmbeddedChannel(client);
+        final EmbeddedChannel serverChannel = new EmbeddedChannel(server);
+
+        clientChannel.writeAndFlush(new TestConnectRequestTO());
+        final ByteBuf request = (ByteBuf) clientChannel.outboundMessages().peek();
+        Assertions.assertEquals(BASE_CONNECT_REQUEST_LENGTH + (clientEnabled ? FrameCompressor.OFFER_LENGTH : 0), request.getInt(0));
+        Assertions.assertEquals(1, transfer(clientChannel, serverChannel));
+        final SocketConnectRequestEvent requestEvent = (SocketConnectRequestEvent) server.events.get(0);
+        Assertions.assertEquals("session", requestEvent.sessionId());
+        Assertions.assertFalse(requestEvent.isClose());
+
+        serverChannel.writeAndFlush(new TestConnectResponseTO());
+        final ByteBuf response = (ByteBuf) serverChannel.outboundMessages().peek();
+        Assertions.assertEquals(BASE_CONNECT_RESPONSE_LENGTH + (clientEnabled ? FrameCompressor.ANSWER_LENGTH : 0), response.getInt(0));
+        Assertions.assertEquals(1, transfer(serverChannel, clientChannel));
+        final SocketConnectResponseEvent responseEvent = (SocketConnectResponseEvent) client.events.get(0);
+        Assertions.assertTrue(responseEvent.getConnectResponse().isSuccess());
+        Assertions.assertFalse(responseEvent.isClose());
+
+        clientChannel.writeAndFlush(new TestSocketMessage(1, new OneWayMessage(newText(4096))));
+        final ByteBuf frame = (ByteBuf) clientChannel.outboundMessages().peek();
+        final boolean compressed = frame.getByte(4) == NetMessageType.COMPRESSED_MESSAGE.pkgType;
+        Assertions.assertEquals(1, transfer(clientChannel, serverChannel));
+        Assertions.assertEquals(newText(4096), ((OneWayMessage) ((SocketMessageEvent) server.events.get(1)).getWrappedMessage()).getBody());
+
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+        return compressed;
+    }
+
+    private static void negotiate(FrameCompressor client, FrameCompressor server) {
+        final ByteBuf request = Unpooled.buffer();
+        final boolean offer = client.hasOffer();
+        if (offer) {
+            client.writeOffer(request);
+        }
+        server.readOffer(request, offer);
+        Assertions.assertEquals(0, request.readableBytes());
+
+        final ByteBuf response = Unpooled.buffer();
+        final boolean answer = server.hasAnswer();
+        server.writeAnswer(response);
+        client.readAnswer(response, answer);
+        Assertions.assertEquals(0, response.readableBytes());
+    }
+
+    private static FrameCompressor newCompressor(boolean enabled, UnaryOperator<SocketSessionConfig.SocketSessionConfigBuilder> customizer) {
+        return new FrameCompressor(customizer.apply(newConfigBuilder().setCompressionEnabled(enabled)).build());
+    }
+
+    /**
+     * @return 长度字段尚未设置的消息帧
+     */
+    private static ByteBuf newFrame(NetMessageType messageType, byte[] content) {
+        final ByteBuf frame = allocator.buffer(4 + 1 + content.length);
+        frame.writeInt(0);
+        frame.writeByte(messageType.pkgType);
+        frame.writeBytes(content);
+        return frame;
+    }
+
+    /**
+     * 跳过长度字段和包类型，解压缩，并释放压缩帧
+     */
+    private static ByteBuf decompress(FrameCompressor compressor, ByteBuf compressedFrame, int maxFrameLength) throws IOException {
+        try {
+            compressedFrame.skipBytes(4 + 1);
+            return compressor.decompress(allocator, compressedFrame, maxFrameLength);
+        } finally {
+            compressedFrame.release();
+        }
+    }
+
+    private static String newText(int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for (int index = 0; sb.length() < length; index++) {
+            sb.append("message-").append(index % 16).append(';');
+        }
+        return sb.substring(0, length);
+    }
+}
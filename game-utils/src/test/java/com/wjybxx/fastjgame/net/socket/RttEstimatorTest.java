@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link RttEstimator}测试，期望值按照 RFC 6298 的整数运算计算
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class RttEstimatorTest {
+
+    @Test
+    void testSample() {
+        final RttEstimator estimator = new RttEstimator(10, 10_000);
+        // 采样之前使用最大值
+        Assertions.assertEquals(-1, estimator.srttMs());
+        Assertions.assertEquals(10_000, estimator.rtoMs());
+
+        // 首次采样：srtt = 100, rttVar = 50, rto = 100 + 4 * 50
+        estimator.onSample(100);
+        Assertions.assertEquals(100, estimator.srttMs());
+        Assertions.assertEquals(300, estimator.rtoMs());
+
+        // rttVar = 50 - 50/4 + |100 - 200|/4 = 63, srtt = 100 - 100/8 + 200/8 = 113
+        estimator.onSample(200);
+        Assertions.assertEquals(113, estimator.srttMs());
+        Assertions.assertEquals(113 + 4 * 63, estimator.rtoMs());
+
+        // 无效的采样被忽略
+        estimator.onSample(-1);
+        Assertions.assertEquals(113, estimator.srttMs());
+
+        // 稳定的rtt会使srtt收敛，rttVar减小，rto收敛到srtt附近(整数运算存在截断误差)
+        for (int index = 0; index < 100; index++) {
+            estimator.onSample(50);
+        }
+        Assertions.assertTrue(Math.abs(estimator.srttMs() - 50) <= 8, "srtt " + estimator.srttMs());
+        Assertions.assertTrue(estimator.rtoMs() < 100, "rto " + estimator.rtoMs());
+    }
+
+    @Test
+    void testClamp() {
+        final RttEstimator estimator = new RttEstimator(200, 3000);
+        estimator.onSample(1);
+        Assertions.assertEquals(200, estimator.rtoMs());
+
+        estimator.onSample(5000);
+        Assertions.assertEquals(3000, estimator.rtoMs());
+    }
+
+    @Test
+    void testBackoff() {
+        final RttEstimator estimator = new RttEstimator(10, 1000);
+        estimator.onSample(100);
+        Assertions.assertEquals(300, estimator.rtoMs());
+
+        estimator.backoff();
+        Assertions.assertEquals(600, estimator.rtoMs());
+        estimator.backoff();
+        Assertions.assertEquals(1000, estimator.rtoMs());
+        estimator.backoff();
+        Assertions.assertEquals(1000, estimator.rtoMs());
+
+        // 下一次有效采样恢复根据rtt计算
+        estimator.onSample(100);
+        Assertions.assertTrue(estimator.rtoMs() < 1000);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestSocketCodec;
+import com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.TestSocketMessage;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.ClosedChannelException;
+
+import static com.wjybxx.fastjgame.net.socket.SocketCodecTestSupport.*;
+
+/**
+ * {@link AbstractSocketCodec}编解码测试
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class SocketCodecTest {
+
+    @Test
+    void testSerializedBodyRoundTrip() throws Exception {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final TestSocketCodec client = new TestSocketCodec(config);
+        final TestSocketCodec server = new TestSocketCodec(config);
+        final EmbeddedChannel clientChannel = new EmbeddedChannel(client);
+        final EmbeddedChannel serverChannel = new EmbeddedChannel(server);
+
+        final SerializedBody serializedBody = SerializedBody.newInstance(serializer, "hello");
+        clientChannel.writeAndFlush(new TestSocketMessage(1, new OneWayMessage(serializedBody)));
+        Assertions.assertEquals(1, transfer(clientChannel, serverChannel));
+        Assertions.assertEquals(0, serializedBody.refCnt());
+
+        final SocketMessageEvent event = (SocketMessageEvent) server.events.get(0);
+        Assertions.assertEquals("hello", ((OneWayMessage) event.getWrappedMessage()).getBody());
+
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testSerializedBodyReleasedOnFailedWrite() throws Exception {
+        final TestSocketCodec codec = new TestSocketCodec(newConfigBuilder().build());
+        final EmbeddedChannel channel = new EmbeddedChannel(new ClosedChannelHandler(), codec);
+
+        final SerializedBody serializedBody = SerializedBody.newInstance(serializer, "hello");
+        final ChannelPromise promise = channel.newPromise();
+        channel.writeAndFlush(new TestSocketMessage(1, new OneWayMessage(serializedBody)), promise);
+
+        Assertions.assertTrue(promise.cause() instanceof ClosedChannelException);
+        Assertions.assertEquals(0, serializedBody.refCnt());
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * 模拟向已关闭的channel写入数据：释放消息并使操作失败
+     */
+    private static class ClosedChannelHandler extends ChannelOutboundHandlerAdapter {
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ReferenceCountUtil.release(msg);
+            promise.setFailure(new ClosedChannelException());
+        }
+    }
+}
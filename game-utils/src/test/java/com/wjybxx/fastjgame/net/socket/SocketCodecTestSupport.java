@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.rpc.NetMessage;
+import com.wjybxx.fastjgame.net.rpc.NetMessageType;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.net.session.SessionLifecycleAware;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * socket编解码测试的公共部分：不依赖session和线程模型，直接在{@link EmbeddedChannel}上测试{@link AbstractSocketCodec}。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+final class SocketCodecTestSupport {
+
+    static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    private SocketCodecTestSupport() {
+
+    }
+
+    static SocketSessionConfig.SocketSessionConfigBuilder newConfigBuilder() {
+        return SocketSessionConfig.newBuilder()
+                .setSerializer(serializer)
+                .setLifecycleAware(new SessionLifecycleAware() {
+                    @Override
+                    public void onSessionConnected(Session session) {
+
+                    }
+
+                    @Override
+                    public void onSessionDisconnected(Session session) {
+
+                    }
+                })
+                .setRpcProcessor((context, request) -> null);
+    }
+
+    /**
+     * 将一端写出的帧交给另一端读取，去掉长度字段(由{@code LengthFieldBasedFrameDecoder}完成的工作)
+     *
+     * @return 传输的帧数
+     */
+    static int transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        int frameCount = 0;
+        ByteBuf frame;
+        while ((frame = from.readOutbound()) != null) {
+            final int length = frame.readInt();
+            Assertions.assertEquals(length, frame.readableBytes());
+            to.writeInbound(frame);
+            frameCount++;
+        }
+        return frameCount;
+    }
+
+    /**
+     * 记录读取到的所有事件
+     */
+    static class TestSocketCodec extends AbstractSocketCodec {
+
+        final List<SocketEvent> events = new ArrayList<>();
+
+        TestSocketCodec(SocketSessionConfig config) {
+            super(config);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msgTO, ChannelPromise promise) throws Exception {
+            if (msgTO instanceof SocketMessageTO) {
+                writeSingleMsg(ctx, (SocketMessageTO) msgTO, promise);
+            } else if (msgTO instanceof BatchSocketMessageTO) {
+                writeBatchMessage(ctx, (BatchSocketMessageTO) msgTO, promise);
+            } else if (msgTO instanceof SocketConnectRequestTO) {
+                writeConnectRequest(ctx, "session", (SocketConnectRequestTO) msgTO, promise);
+            } else if (msgTO instanceof SocketConnectResponseTO) {
+                writeConnectResponse(ctx, (SocketConnectResponseTO) msgTO, promise);
+            } else {
+                super.write(ctx, msgTO, promise);
+            }
+        }
+
+        @Override
+        protected void readMsg(ChannelHandlerContext ctx, NetMessageType netMessageType, ByteBuf msg) {
+            switch (netMessageType) {
+                case CONNECT_REQUEST:
+                    events.add(readConnectRequest(ctx.channel(), msg, null));
+                    break;
+                case CONNECT_RESPONSE:
+                    events.add(readConnectResponse(ctx.channel(), "session", msg));
+                    break;
+                case RPC_REQUEST:
+                    events.add(readRpcRequestMessage(ctx.channel(), "session", msg));
+                    break;
+                case RPC_RESPONSE:
+                    events.add(readRpcResponseMessage(ctx.channel(), "session", msg));
+                    break;
+                case ONE_WAY_MESSAGE:
+                    events.add(readOneWayMessage(ctx.channel(), "session", msg));
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected netMessageType " + netMessageType);
+            }
+        }
+    }
+
+    static class TestSocketMessage implements SocketMessage, SocketMessageTO {
+
+        private final long sequence;
+        private final NetMessage wrappedMessage;
+
+        TestSocketMessage(long sequence, NetMessage wrappedMessage) {
+            this.sequence = sequence;
+            this.wrappedMessage = wrappedMessage;
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public NetMessage getWrappedMessage() {
+            return wrappedMessage;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public SocketMessage getSocketMessage() {
+            return this;
+        }
+    }
+
+    static class TestBatchSocketMessageTO implements BatchSocketMessageTO {
+
+        private final List<SocketMessage> socketMessageList;
+        private final int maxBatchFrameLength;
+        boolean recycled;
+
+        TestBatchSocketMessageTO(List<SocketMessage> socketMessageList, int maxBatchFrameLength) {
+            this.socketMessageList = socketMessageList;
+            this.maxBatchFrameLength = maxBatchFrameLength;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public List<SocketMessage> getSocketMessageList() {
+            return socketMessageList;
+        }
+
+        @Override
+        public int maxBatchFrameLength() {
+            return maxBatchFrameLength;
+        }
+
+        @Override
+        public void recycle() {
+            recycled = true;
+        }
+    }
+
+    static class TestConnectRequestTO implements SocketConnectRequestTO {
+
+        @Override
+        public long getInitSequence() {
+            return 0;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClose() {
+            return false;
+        }
+
+        @Override
+        public SocketConnectRequest getConnectRequest() {
+            return new SocketConnectRequest(1, 0);
+        }
+    }
+
+    static class TestConnectResponseTO implements SocketConnectResponseTO {
+
+        @Override
+        public long getInitSequence() {
+            return 0;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClose() {
+            return false;
+        }
+
+        @Override
+        public SocketConnectResponse getConnectResponse() {
+            return new SocketConnectResponse(true, 1, 0);
+        }
+    }
+}
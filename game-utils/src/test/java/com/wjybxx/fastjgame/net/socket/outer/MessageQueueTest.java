@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket.outer;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.net.session.SessionLifecycleAware;
+import com.wjybxx.fastjgame.net.socket.MessageQueue;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link MessageQueue}环形数组测试：索引回绕、根据ack删除消息、容量限制、资源释放、重传窗口以及rtt采样。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class MessageQueueTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testWrapAround() {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final int maxPendingMessages = config.maxPendingMessages();
+        final int maxCacheMessages = config.maxCacheMessages();
+        final MessageQueue messageQueue = new MessageQueue(config);
+        long nextAckSequence = messageQueue.getInitSequence() + 1;
+
+        // 每轮压入一批消息，发送到上限，确认一部分，索引会多次越过数组容量
+        for (int round = 0; round < 100; round++) {
+            for (int index = 0; index < maxPendingMessages && messageQueue.getCacheMessages() < maxCacheMessages; index++) {
+                messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), round));
+            }
+            while (messageQueue.getPendingMessages() < maxPendingMessages && messageQueue.emitCacheMessage() != null) {
+                Assertions.assertEquals(0, messageQueue.getResendMessages());
+            }
+
+            final int pendingMessages = messageQueue.getPendingMessages();
+            for (int index = 0; index < pendingMessages; index++) {
+                // 待确认的消息按照sequence连续升序
+                Assertions.assertEquals(nextAckSequence + index, messageQueue.getPendingMessage(index).getSequence());
+            }
+
+            final int ackMessages = Math.min(pendingMessages, maxPendingMessages * 3 / 4);
+            final long ack = nextAckSequence + ackMessages;
+            Assertions.assertTrue(messageQueue.isAckOK(ack));
+            messageQueue.updatePendingQueue(ack);
+            nextAckSequence = ack;
+            Assertions.assertEquals(pendingMessages - ackMessages, messageQueue.getPendingMessages());
+        }
+        // 确保确实发生了回绕
+        Assertions.assertTrue(nextAckSequence - messageQueue.getInitSequence() > 2 * (maxPendingMessages + maxCacheMessages));
+
+        // 重传索引同样会回绕
+        messageQueue.resetResendIndex();
+        Assertions.assertEquals(messageQueue.getPendingMessages(), messageQueue.getResendMessages());
+        for (int index = 0; index < messageQueue.getPendingMessages(); index++) {
+            Assertions.assertEquals(nextAckSequence + index, messageQueue.nextResendMessage().getSequence());
+        }
+        Assertions.assertNull(messageQueue.nextResendMessage());
+        messageQueue.cleanMessageQueue();
+    }
+
+    @Test
+    void testAck() {
+        final MessageQueue messageQueue = new MessageQueue(newConfigBuilder().build());
+        final long firstSequence = messageQueue.getInitSequence() + 1;
+        for (int index = 0; index < 5; index++) {
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), index));
+            messageQueue.emitCacheMessage();
+        }
+        messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), 5));
+
+        // 确认前3个消息
+        final OuterSocketMessage lastAckMessage = messageQueue.updatePendingQueue(firstSequence + 3);
+        Assertions.assertEquals(firstSequence + 2, lastAckMessage.getSequence());
+        Assertions.assertEquals(2, messageQueue.getPendingMessages());
+        Assertions.assertEquals(firstSequence + 3, messageQueue.getFirstPendingMessage().getSequence());
+
+        // 重复的ack不删除任何消息
+        Assertions.assertTrue(messageQueue.isAckOK(firstSequence + 3));
+        Assertions.assertNull(messageQueue.updatePendingQueue(firstSequence + 3));
+        Assertions.assertEquals(2, messageQueue.getPendingMessages());
+
+        // 过期的ack和超出已分配sequence的ack都是无效的
+        Assertions.assertFalse(messageQueue.isAckOK(firstSequence + 2));
+        Assertions.assertFalse(messageQueue.isAckOK(firstSequence + 7));
+
+        // 确认未发送的消息时，只删除已发送的消息
+        Assertions.assertTrue(messageQueue.isAckOK(firstSequence + 6));
+        messageQueue.updatePendingQueue(firstSequence + 6);
+        Assertions.assertEquals(0, messageQueue.getPendingMessages());
+        Assertions.assertEquals(1, messageQueue.getCacheMessages());
+        Assertions.assertNull(messageQueue.getFirstPendingMessage());
+        messageQueue.cleanMessageQueue();
+    }
+
+    @Test
+    void testCapacity() {
+        // 容量恰好为2的整次幂
+        checkCapacity(28, 100);
+        // 容量会向上取整，但至少能容纳 maxPending + maxCache 个消息
+        checkCapacity(20, 100);
+        checkCapacity(50, 500);
+    }
+
+    private static void checkCapacity(int maxPendingMessages, int maxCacheMessages) {
+        final SocketSessionConfig config = newConfigBuilder()
+                .setMaxPendingMessages(maxPendingMessages)
+                .setMaxCacheMessages(maxCacheMessages)
+                .build();
+        Assertions.assertEquals(maxPendingMessages, config.maxPendingMessages());
+        Assertions.assertEquals(maxCacheMessages, config.maxCacheMessages());
+
+        final MessageQueue messageQueue = new MessageQueue(config);
+        for (int index = 0; index < maxPendingMessages; index++) {
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), index));
+            messageQueue.emitCacheMessage();
+        }
+        for (int index = 0; index < maxCacheMessages; index++) {
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), index));
+        }
+        Assertions.assertEquals(maxPendingMessages, messageQueue.getPendingMessages());
+        Assertions.assertEquals(maxCacheMessages, messageQueue.getCacheMessages());
+
+        // 超出数组容量时拒绝压入
+        final int capacity = Integer.highestOneBit(maxPendingMessages + maxCacheMessages - 1) << 1;
+        for (int index = maxPendingMessages + maxCacheMessages; index < capacity; index++) {
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), index));
+        }
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), "overflow")));
+        messageQueue.cleanMessageQueue();
+    }
+
+    @Test
+    void testRelease() throws Exception {
+        final MessageQueue messageQueue = new MessageQueue(newConfigBuilder().build());
+        final List<SerializedBody> bodies = new ArrayList<>();
+        for (int index = 0; index < 6; index++) {
+            final SerializedBody body = SerializedBody.newInstance(serializer, index);
+            bodies.add(body);
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), body));
+        }
+        for (int index = 0; index < 4; index++) {
+            messageQueue.emitCacheMessage();
+        }
+
+        // 确认的消息立即释放
+        messageQueue.updatePendingQueue(messageQueue.getInitSequence() + 3);
+        Assertions.assertEquals(0, bodies.get(0).refCnt());
+        Assertions.assertEquals(0, bodies.get(1).refCnt());
+        Assertions.assertEquals(1, bodies.get(2).refCnt());
+
+        // 关闭时释放所有待确认和未发送的消息
+        messageQueue.cleanMessageQueue();
+        for (SerializedBody body : bodies) {
+            Assertions.assertEquals(0, body.refCnt());
+        }
+        // 重复调用是安全的
+        messageQueue.cleanMessageQueue();
+    }
+
+    @Test
+    void testResendWindow() {
+        final MessageQueue messageQueue = new MessageQueue(newConfigBuilder().setResendWindow(3).build());
+        final long firstSequence = messageQueue.getInitSequence() + 1;
+        for (int index = 0; index < 10; index++) {
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), index));
+            messageQueue.emitCacheMessage();
+        }
+
+        // 每次最多重传窗口大小的消息
+        messageQueue.resetResendIndex();
+        Assertions.assertEquals(10, messageQueue.getResendMessages());
+        Assertions.assertEquals(3, messageQueue.getResendableMessages());
+        for (int index = 0; index < 3; index++) {
+            Assertions.assertEquals(firstSequence + index, messageQueue.nextResendMessage().getSequence());
+        }
+        Assertions.assertEquals(0, messageQueue.getResendableMessages());
+
+        // 收到确认之后继续重传
+        messageQueue.updatePendingQueue(firstSequence + 2);
+        Assertions.assertEquals(2, messageQueue.getResendableMessages());
+
+        // 确认超过已重传的消息时，重传索引跟随移动
+        messageQueue.updatePendingQueue(firstSequence + 5);
+        Assertions.assertEquals(5, messageQueue.getResendMessages());
+        Assertions.assertEquals(3, messageQueue.getResendableMessages());
+        Assertions.assertEquals(firstSequence + 5, messageQueue.nextResendMessage().getSequence());
+        messageQueue.cleanMessageQueue();
+
+        // 未开启重传窗口时一次性重传全部
+        final MessageQueue unlimitedQueue = new MessageQueue(newConfigBuilder().build());
+        for (int index = 0; index < 10; index++) {
+            unlimitedQueue.addCacheMessage(newMessage(unlimitedQueue.nextSequence(), index));
+            unlimitedQueue.emitCacheMessage();
+        }
+        unlimitedQueue.resetResendIndex();
+        Assertions.assertEquals(10, unlimitedQueue.getResendableMessages());
+        unlimitedQueue.cleanMessageQueue();
+    }
+
+    @Test
+    void testRttSample() {
+        final MessageQueue messageQueue = new MessageQueue(newConfigBuilder()
+                .setAdaptiveAckTimeout(true)
+                .setMinAckTimeoutMs(10)
+                .setAckTimeoutMs(5000)
+                .build());
+        final long firstSequence = messageQueue.getInitSequence() + 1;
+        // 采样之前使用最大超时时间
+        Assertions.assertEquals(5000, messageQueue.getAckTimeoutMs());
+
+        for (int index = 0; index < 3; index++) {
+            messageQueue.addCacheMessage(newMessage(messageQueue.nextSequence(), index));
+            messageQueue.emitCacheMessage().setSendTimeMs(1000);
+        }
+
+        // 重传过的消息不采样(Karn算法)
+        messageQueue.getPendingMessage(0).setResent(true);
+        messageQueue.updatePendingQueue(firstSequence + 1, 3000);
+        Assertions.assertEquals(5000, messageQueue.getAckTimeoutMs());
+
+        // 只使用本次确认的最后一个消息采样：rtt = 100, rto = 100 + 4 * 50
+        messageQueue.updatePendingQueue(firstSequence + 3, 1100);
+        Assertions.assertEquals(300, messageQueue.getAckTimeoutMs());
+
+        // 超时退避
+        messageQueue.onAckTimeout();
+        Assertions.assertEquals(600, messageQueue.getAckTimeoutMs());
+        messageQueue.cleanMessageQueue();
+    }
+
+    static OuterSocketMessage newMessage(long sequence, Object body) {
+        return new OuterSocketMessage(sequence, new OneWayMessage(body), false);
+    }
+
+    static SocketSessionConfig.SocketSessionConfigBuilder newConfigBuilder() {
+        return SocketSessionConfig.newBuilder()
+                .setSerializer(serializer)
+                .setLifecycleAware(new SessionLifecycleAware() {
+                    @Override
+                    public void onSessionConnected(Session session) {
+
+                    }
+
+                    @Override
+                    public void onSessionDisconnected(Session session) {
+
+                    }
+                })
+                .setRpcProcessor((context, request) -> null);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.socket.outer;
+
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.socket.ClientSocketCodec;
+import com.wjybxx.fastjgame.net.socket.EncodedSocketMessage;
+import com.wjybxx.fastjgame.net.socket.SocketMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * {@link OuterSocketMessage}编码结果缓存测试：首次编码之后，重传使用缓存的字节内容，且释放原始消息不影响尚未编码的发送。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class OuterSocketMessageTest {
+
+    private static final long ACK = 5;
+
+    @Test
+    void testResendAfterEncode() {
+        final EmbeddedChannel channel = newChannel();
+        final OuterSocketMessage socketMessage = new OuterSocketMessage(1, new OneWayMessage("hello"), true);
+
+        // 首次发送，以及编码之前就已排队的一次原始重传
+        final SocketMessage firstWrite = socketMessage.newWriteMessage();
+        final SocketMessage queuedResend = socketMessage.newWriteMessage();
+        Assertions.assertNull(socketMessage.newEncodedMessage());
+
+        final byte[] expected = writeAndRead(channel, firstWrite);
+
+        // 编码之后，重传使用缓存的字节内容，并释放原始消息
+        final EncodedSocketMessage encodedMessage = socketMessage.newEncodedMessage();
+        Assertions.assertNotNull(encodedMessage);
+        Assertions.assertEquals(socketMessage.getSequence(), encodedMessage.getSequence());
+        socketMessage.releaseWrappedMessageIfEncoded();
+        Assertions.assertNull(socketMessage.getWrappedMessage());
+
+        // 已排队的原始重传持有原始消息的引用，仍然可以正常编码
+        Assertions.assertArrayEquals(expected, writeAndRead(channel, queuedResend));
+        // 重放缓存的字节内容，与首次编码的结果一致
+        Assertions.assertArrayEquals(expected, writeAndRead(channel, encodedMessage));
+        Assertions.assertArrayEquals(expected, writeAndRead(channel, socketMessage.newEncodedMessage()));
+
+        // 确认之后不再可以重传，且缓存被释放
+        socketMessage.release();
+        Assertions.assertNull(socketMessage.newEncodedMessage());
+        Assertions.assertFalse(channel.finish());
+    }
+
+    @Test
+    void testCacheDisabled() {
+        final EmbeddedChannel channel = newChannel();
+        final OuterSocketMessage socketMessage = new OuterSocketMessage(1, new OneWayMessage("hello"), false);
+
+        // 未开启缓存时直接发送消息自身，也不会释放原始消息
+        Assertions.assertSame(socketMessage, socketMessage.newWriteMessage());
+        writeAndRead(channel, socketMessage);
+        Assertions.assertNull(socketMessage.newEncodedMessage());
+        socketMessage.releaseWrappedMessageIfEncoded();
+        Assertions.assertNotNull(socketMessage.getWrappedMessage());
+        socketMessage.release();
+        Assertions.assertFalse(channel.finish());
+    }
+
+    private static EmbeddedChannel newChannel() {
+        // 只测试编码，忽略channel关闭等事件
+        final NetEventLoop netEventLoop = (NetEventLoop) Proxy.newProxyInstance(OuterSocketMessageTest.class.getClassLoader(),
+                new Class<?>[]{NetEventLoop.class}, (proxy, method, args) -> null);
+        return new EmbeddedChannel(new ClientSocketCodec(MessageQueueTest.newConfigBuilder().build(), "session", netEventLoop));
+    }
+
+    private static byte[] writeAndRead(EmbeddedChannel channel, SocketMessage socketMessage) {
+        Assertions.assertTrue(channel.writeOutbound(new OuterSocketMessageTO(ACK, socketMessage)));
+        final ByteBuf frame = channel.readOutbound();
+        try {
+            return ByteBufUtil.getBytes(frame);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
+import com.wjybxx.fastjgame.net.rpc.DefaultRpcInvoker;
+import com.wjybxx.fastjgame.net.rpc.DefaultRpcMethodSpec;
+import com.wjybxx.fastjgame.net.rpc.OneWayInvocationTask;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.net.session.SessionLifecycleAware;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 广播测试：所有session共享同一份序列化结果，每个session持有独立的引用。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class BroadcastTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+    private static final int SESSION_COUNT = 5;
+
+    @Test
+    void testSharedBody() throws Exception {
+        for (SocketSessionConfig config : Arrays.asList(newConfigBuilder().build(), newConfigBuilder().setPreSerializeInCallerThread().build())) {
+            final List<OneWayInvocationTask> written = new ArrayList<>();
+            final List<Session> sessions = new ArrayList<>();
+            for (int index = 0; index < SESSION_COUNT; index++) {
+                sessions.add(newSession(config, written, false));
+            }
+
+            new DefaultRpcInvoker().broadcast(sessions, newMessage(), true);
+            Assertions.assertEquals(SESSION_COUNT, written.size());
+
+            // 复制的byteBuf可能有独立的引用计数，因此检查底层的byteBuf
+            final ByteBuf shared = ((SerializedBody) written.get(0).getMessage()).content().unwrap();
+            Assertions.assertEquals(SESSION_COUNT, shared.refCnt());
+            for (OneWayInvocationTask task : written) {
+                final SerializedBody body = (SerializedBody) task.getMessage();
+                // 共享内存，但持有独立的读写索引
+                Assertions.assertSame(shared, body.content().unwrap());
+                final DefaultRpcMethodSpec<?> decoded = (DefaultRpcMethodSpec<?>) serializer.readObject(body.content());
+                Assertions.assertEquals(newMessage().getMethodParams(), decoded.getMethodParams());
+            }
+
+            for (OneWayInvocationTask task : written) {
+                ((SerializedBody) task.getMessage()).release();
+            }
+            Assertions.assertEquals(0, shared.refCnt());
+        }
+    }
+
+    @Test
+    void testRejected() {
+        final SocketSessionConfig config = newConfigBuilder().build();
+        final List<OneWayInvocationTask> written = new ArrayList<>();
+        final List<Session> sessions = new ArrayList<>();
+        for (int index = 0; index < SESSION_COUNT - 1; index++) {
+            sessions.add(newSession(config, written, false));
+        }
+        sessions.add(newSession(config, written, true));
+
+        Assertions.assertThrows(RejectedExecutionException.class, () -> new DefaultRpcInvoker().broadcast(sessions, newMessage(), true));
+        Assertions.assertEquals(SESSION_COUNT - 1, written.size());
+
+        // 被拒绝的session的引用已被释放，只剩下成功提交的引用
+        final ByteBuf shared = ((SerializedBody) written.get(0).getMessage()).content().unwrap();
+        Assertions.assertEquals(SESSION_COUNT - 1, shared.refCnt());
+        for (OneWayInvocationTask task : written) {
+            ((SerializedBody) task.getMessage()).release();
+        }
+        Assertions.assertEquals(0, shared.refCnt());
+    }
+
+    private static DefaultRpcMethodSpec<Object> newMessage() {
+        return new DefaultRpcMethodSpec<>((short) 1, (short) 2, new ArrayList<>(Arrays.asList("broadcast", 100)), 0, 0);
+    }
+
+    private static SocketSessionConfig.SocketSessionConfigBuilder newConfigBuilder() {
+        return SocketSessionConfig.newBuilder()
+                .setSerializer(serializer)
+                .setLifecycleAware(newStub(SessionLifecycleAware.class, (proxy, method, args) -> null))
+                .setRpcProcessor((context, request) -> null);
+    }
+
+    /**
+     * 创建一个session，网络线程直接执行提交的任务，写出的消息保存到指定列表
+     *
+     * @param rejected 网络线程是否拒绝任务
+     */
+    private static Session newSession(SocketSessionConfig config, List<OneWayInvocationTask> written, boolean rejected) {
+        final NetEventLoop netEventLoop = newStub(NetEventLoop.class, (proxy, method, args) -> {
+            if (!method.getName().equals("execute")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            if (rejected) {
+                throw new RejectedExecutionException();
+            }
+            ((Runnable) args[0]).run();
+            return null;
+        });
+        return newStub(Session.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "config":
+                    return config;
+                case "isClosed":
+                    return false;
+                case "sessionId":
+                    return "session";
+                case "netEventLoop":
+                    return netEventLoop;
+                case "fireWrite":
+                case "fireWriteAndFlush":
+                    written.add((OneWayInvocationTask) args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static <T> T newStub(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(BroadcastTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
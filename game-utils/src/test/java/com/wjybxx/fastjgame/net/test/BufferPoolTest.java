@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.misc.BufferPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 分级缓存池测试
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/15
+ * github - https://github.com/hl845740757
+ */
+public class BufferPoolTest {
+
+    @Test
+    void testSizeClass() {
+        Assertions.assertEquals(BufferPool.MIN_BUFFER_SIZE, BufferPool.allocateBuffer(0).length);
+        Assertions.assertEquals(BufferPool.MIN_BUFFER_SIZE, BufferPool.allocateBuffer(30).length);
+        Assertions.assertEquals(512, BufferPool.allocateBuffer(257).length);
+        Assertions.assertEquals(BufferPool.MAX_BUFFER_SIZE, BufferPool.allocateBuffer(BufferPool.MAX_BUFFER_SIZE).length);
+        // 超过最大一级，精确分配
+        Assertions.assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, BufferPool.allocateBuffer(BufferPool.MAX_BUFFER_SIZE + 1).length);
+    }
+
+    @Test
+    void testReuse() {
+        final byte[] buffer = BufferPool.allocateBuffer(1000);
+        BufferPool.releaseBuffer(buffer);
+        Assertions.assertSame(buffer, BufferPool.allocateBuffer(1000));
+        BufferPool.releaseBuffer(buffer);
+    }
+
+    @Test
+    void testGrow() {
+        final byte[] buffer = BufferPool.allocateBuffer(256);
+        for (int index = 0; index < buffer.length; index++) {
+            buffer[index] = (byte) index;
+        }
+
+        final byte[] newBuffer = BufferPool.growBuffer(buffer, buffer.length, 100_000);
+        Assertions.assertEquals(128 * 1024, newBuffer.length);
+        for (int index = 0; index < buffer.length; index++) {
+            Assertions.assertEquals((byte) index, newBuffer[index]);
+        }
+        BufferPool.releaseBuffer(newBuffer);
+    }
+
+    @Test
+    void testTrim() {
+        final long inUseBytes = BufferPool.localStats().getInUseBytes();
+        final byte[][] buffers = new byte[8][];
+        for (int index = 0; index < buffers.length; index++) {
+            buffers[index] = BufferPool.allocateBuffer(200 * 1024);
+        }
+        for (byte[] buffer : buffers) {
+            BufferPool.releaseBuffer(buffer);
+        }
+        final long cachedBytes = BufferPool.localStats().getCachedBytes();
+
+        // 之后只使用小缓冲区，大缓冲区的缓存会被逐渐收缩
+        for (int index = 0; index < 100_000; index++) {
+            BufferPool.releaseBuffer(BufferPool.allocateBuffer(30));
+        }
+        final BufferPool.Stats stats = BufferPool.localStats();
+        Assertions.assertTrue(stats.getTrimCount() > 0, "trimCount");
+        Assertions.assertTrue(stats.getCachedBytes() < cachedBytes, "cachedBytes");
+        Assertions.assertEquals(inUseBytes, stats.getInUseBytes(), "inUseBytes");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CodecRegistries;
+import com.wjybxx.fastjgame.net.serialization.DefaultTypeIdMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 测试{@link BinarySerializer#readObject(ByteBuf)}直接读取{@link CompositeByteBuf}（不拷贝）
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/15
+ * github - https://github.com/hl845740757
+ */
+public class CompositeByteBufDecodeTest {
+
+    private static final BinarySerializer serializer = new BinarySerializer(DefaultTypeIdMapper.newInstance(Collections.emptyMap()),
+            CodecRegistries.fromPojoCodecs(Collections.emptyMap()),
+            Collections.emptyMap(), Collections.emptyMap(),
+            Collections.emptyMap(), Collections.emptyMap(),
+            256);
+
+    @Test
+    void testDirectComponents() throws Exception {
+        testComposite(true);
+    }
+
+    @Test
+    void testHeapComponents() throws Exception {
+        testComposite(false);
+    }
+
+    private static void testComposite(boolean direct) throws Exception {
+        final List<Object> value = new ArrayList<>();
+        for (int index = 0; index < 10_000; index++) {
+            value.add("element" + index);
+            value.add(index * 31L);
+        }
+        final byte[] bytes = serializer.toBytes(value);
+
+        // 模拟跨越多个TCP包的帧，切分的位置是任意的
+        final CompositeByteBuf compositeByteBuf = PooledByteBufAllocator.DEFAULT.compositeBuffer(Integer.MAX_VALUE);
+        for (int offset = 0, chunkSize = 1; offset < bytes.length; offset += chunkSize, chunkSize = chunkSize * 3 + 7) {
+            final int length = Math.min(chunkSize, bytes.length - offset);
+            final ByteBuf component = direct ? PooledByteBufAllocator.DEFAULT.directBuffer(length) : PooledByteBufAllocator.DEFAULT.heapBuffer(length);
+            component.writeBytes(bytes, offset, length);
+            compositeByteBuf.addComponent(true, component);
+        }
+
+        try {
+            Assertions.assertTrue(compositeByteBuf.nioBufferCount() > 1);
+            Assertions.assertEquals(value, serializer.readObject(compositeByteBuf));
+        } finally {
+            compositeByteBuf.release();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.example.BinaryProtoCodecTest;
+import com.wjybxx.fastjgame.net.example.ExampleMessages;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 生成的编解码器测试：没有setter的private字段通过反射赋值，其中final字段不能使用VarHandle。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class GeneratedCodecTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testFinalField() throws Exception {
+        final ExampleMessages.Hello hello = new ExampleMessages.Hello(5, "hi");
+
+        Assertions.assertEquals(hello, serializer.fromBytes(serializer.toBytes(hello)));
+        Assertions.assertEquals(hello, serializer.cloneObject(hello));
+
+        final ByteBuf byteBuf = Unpooled.buffer();
+        try {
+            serializer.writeObject(byteBuf, hello);
+            final ExampleMessages.Hello decoded = (ExampleMessages.Hello) serializer.readObject(byteBuf);
+            Assertions.assertEquals(5, decoded.getId());
+            Assertions.assertEquals("hi", decoded.getMessage());
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @Test
+    void testNestedFinalField() throws Exception {
+        final ExampleMessages.FullMessage fullMessage = BinaryProtoCodecTest.newFullMessage();
+        Assertions.assertEquals(fullMessage, serializer.cloneObject(fullMessage));
+    }
+}
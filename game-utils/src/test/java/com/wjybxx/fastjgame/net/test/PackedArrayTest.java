@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基本类型数组及基本类型集合的紧凑编码测试
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class PackedArrayTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testPrimitiveArray() throws Exception {
+        Assertions.assertArrayEquals(new int[]{0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}, clone(new int[]{0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}));
+        Assertions.assertArrayEquals(new long[]{0, -1, Long.MIN_VALUE, Long.MAX_VALUE}, clone(new long[]{0, -1, Long.MIN_VALUE, Long.MAX_VALUE}));
+        Assertions.assertArrayEquals(new float[]{0, -1.5f, Float.NaN, Float.MAX_VALUE}, clone(new float[]{0, -1.5f, Float.NaN, Float.MAX_VALUE}));
+        Assertions.assertArrayEquals(new double[]{0, -1.5d, Double.MIN_VALUE}, clone(new double[]{0, -1.5d, Double.MIN_VALUE}));
+        Assertions.assertArrayEquals(new short[]{0, -300, Short.MIN_VALUE}, clone(new short[]{0, -300, Short.MIN_VALUE}));
+        Assertions.assertArrayEquals(new char[]{'a', '中', Character.MAX_VALUE}, clone(new char[]{'a', '中', Character.MAX_VALUE}));
+        Assertions.assertArrayEquals(new boolean[]{true, false, true}, clone(new boolean[]{true, false, true}));
+        Assertions.assertArrayEquals(new int[0], clone(new int[0]));
+
+        final int[][] nested = {{1, 2}, null, {-3}};
+        Assertions.assertTrue(Arrays.deepEquals(nested, clone(nested)));
+    }
+
+    @Test
+    void testPrimitiveList() throws Exception {
+        final IntArrayList intList = IntArrayList.wrap(new int[]{1, -2, 3});
+        final Object intListClone = serializer.cloneObject(intList);
+        Assertions.assertEquals(IntArrayList.class, intListClone.getClass());
+        Assertions.assertEquals(intList, intListClone);
+
+        final LongArrayList longList = LongArrayList.wrap(new long[]{1, -2, Long.MAX_VALUE});
+        final Object longListClone = serializer.cloneObject(longList);
+        Assertions.assertEquals(LongArrayList.class, longListClone.getClass());
+        Assertions.assertEquals(longList, longListClone);
+    }
+
+    @Test
+    void testSize() throws Exception {
+        final int[] ints = new int[1000];
+        Arrays.fill(ints, -1);
+        // 每个元素1字节
+        Assertions.assertTrue(serializer.toBytes(ints).length < 1010);
+
+        final Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("ints", ints);
+        map.put("doubles", new double[]{1, 2, 3});
+        map.put("chars", "hello".toCharArray());
+        map.put("intList", IntArrayList.wrap(new int[]{1, -2, 3}));
+        map.put("longList", LongArrayList.wrap(new long[]{Long.MIN_VALUE}));
+        Assertions.assertEquals(serializer.toBytes(map).length, serializer.computeSerializedSize(map));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T clone(T value) throws Exception {
+        return (T) serializer.cloneObject(value);
+    }
+}
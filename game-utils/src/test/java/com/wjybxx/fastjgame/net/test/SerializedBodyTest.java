@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.rpc.SerializedBody;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 预序列化内容测试：
+ * 1. 预序列化的内容与直接序列化的内容一致。
+ * 2. 引用计数的增减。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class SerializedBodyTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testContent() throws Exception {
+        final List<Object> body = Arrays.asList(1, "hello", 2.5d, null);
+        final SerializedBody serializedBody = SerializedBody.newInstance(serializer, body);
+        try {
+            Assertions.assertArrayEquals(serializer.toBytes(body), getBytes(serializedBody));
+            Assertions.assertEquals(body, serializer.readObject(serializedBody.content().duplicate()));
+        } finally {
+            serializedBody.release();
+        }
+    }
+
+    @Test
+    void testRefCnt() throws Exception {
+        final SerializedBody serializedBody = SerializedBody.newInstance(serializer, "hello");
+        final OneWayMessage message = new OneWayMessage(serializedBody);
+
+        SerializedBody.retainBody(message);
+        Assertions.assertEquals(2, serializedBody.refCnt());
+
+        SerializedBody.releaseBody(message);
+        SerializedBody.releaseBody(message);
+        Assertions.assertEquals(0, serializedBody.refCnt());
+
+        // 未预序列化的消息不受影响
+        SerializedBody.releaseBody(new OneWayMessage("hello"));
+    }
+
+    private static byte[] getBytes(SerializedBody serializedBody) {
+        final byte[] result = new byte[serializedBody.serializedSize()];
+        serializedBody.content().getBytes(serializedBody.content().readerIndex(), result);
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.example.BinaryProtoCodecTest;
+import com.wjybxx.fastjgame.net.example.ExampleMessages;
+import com.wjybxx.fastjgame.net.rpc.DefaultRpcMethodSpec;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import com.wjybxx.fastjgame.util.misc.IntPair;
+import com.wjybxx.fastjgame.util.misc.Tuple2;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+/**
+ * 测试{@link BinarySerializer#computeSerializedSize(Object)}和{@link BinarySerializer#computeBufferSize(Object)}计算的大小与真正序列化的大小一致
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class SerializedSizeTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testBasicValue() throws Exception {
+        checkSize(null);
+        checkSize(0);
+        checkSize(-1);
+        checkSize(Integer.MAX_VALUE);
+        checkSize(Long.MIN_VALUE);
+        checkSize(1.5f);
+        checkSize(2.5d);
+        checkSize(true);
+        checkSize((short) -300);
+        checkSize((byte) 7);
+        checkSize('中');
+        checkSize("");
+        checkSize("hello 世界 😀");
+        checkSize(new byte[100]);
+    }
+
+    @Test
+    void testEstimate() {
+        // 估算值是O(1)的，只有能直接得出大小的对象才返回精确值
+        Assertions.assertEquals(1, serializer.estimateSerializedSize(null));
+        Assertions.assertEquals(1 + 4 + 100, serializer.estimateSerializedSize(new byte[100]));
+        Assertions.assertEquals(256, serializer.estimateSerializedSize(new IntPair(1, -1)));
+    }
+
+    @Test
+    void testComputeBufferSize() throws Exception {
+        // 生成的编解码器逐字段计算精确大小
+        final ExampleMessages.Hello hello = new ExampleMessages.Hello(5, "hello 世界");
+        Assertions.assertEquals(serializer.toBytes(hello).length, serializer.computeBufferSize(hello));
+
+        final ExampleMessages.FullMessage fullMessage = BinaryProtoCodecTest.newFullMessage();
+        Assertions.assertEquals(serializer.toBytes(fullMessage).length, serializer.computeBufferSize(fullMessage));
+
+        // 手写的编解码器及非pojo对象退化为估算值
+        Assertions.assertEquals(serializer.estimateSerializedSize(new IntPair(1, -1)), serializer.computeBufferSize(new IntPair(1, -1)));
+        Assertions.assertEquals(serializer.estimateSerializedSize("hello"), serializer.computeBufferSize("hello"));
+        Assertions.assertEquals(1, serializer.computeBufferSize(null));
+    }
+
+    @Test
+    void testLongString() throws Exception {
+        // 超过初始缓冲区的字符串，分别测试单字节和多字节字符下的扩容
+        final StringBuilder ascii = new StringBuilder();
+        final StringBuilder unicode = new StringBuilder();
+        for (int index = 0; index < 100_000; index++) {
+            ascii.append((char) ('a' + index % 26));
+            unicode.append(index % 2 == 0 ? '中' : 'a');
+        }
+        for (String value : Arrays.asList(ascii.toString(), unicode.toString())) {
+            checkSize(value);
+            Assertions.assertEquals(value, serializer.fromBytes(serializer.toBytes(value)));
+        }
+    }
+
+    @Test
+    void testContainer() throws Exception {
+        final Map<Object, Object> map = new LinkedHashMap<>();
+        map.put(1, "one");
+        map.put("list", Arrays.asList(1L, null, "two", new int[]{1, -2, 300}));
+        map.put("set", new HashSet<>(Arrays.asList("a", "b", "c")));
+        map.put("array", new String[]{"x", null, "z"});
+        checkSize(map);
+        checkSize(new ArrayList<>());
+    }
+
+    @Test
+    void testPojo() throws Exception {
+        // 手写的编解码器，使用默认的计算方式
+        checkSize(new IntPair(1, -1));
+        checkSize(new Tuple2<>("first", Collections.singletonList(new IntPair(3, 4))));
+
+        final List<Object> methodParams = new ArrayList<>(Arrays.asList("lazy", 100, new IntPair(5, 6)));
+        checkSize(new DefaultRpcMethodSpec<>((short) 1, (short) 2, methodParams, 1, 0));
+    }
+
+    private static void checkSize(Object value) throws Exception {
+        final int expected = serializer.toBytes(value).length;
+        Assertions.assertEquals(expected, serializer.computeSerializedSize(value), String.valueOf(value));
+    }
+}
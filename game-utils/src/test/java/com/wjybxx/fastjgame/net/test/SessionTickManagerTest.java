@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
+import com.wjybxx.fastjgame.net.manager.*;
+import com.wjybxx.fastjgame.net.serialization.Serializer;
+import com.wjybxx.fastjgame.net.session.AbstractSession;
+import com.wjybxx.fastjgame.net.session.SessionConfig;
+import com.wjybxx.fastjgame.net.session.SessionLifecycleAware;
+import com.wjybxx.fastjgame.net.session.SessionRegistry;
+import com.wjybxx.fastjgame.net.socket.SocketSessionConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SessionTickManager}测试：脏session在下一帧tick，空闲session在时间轮上每{@link SessionTickManager#IDLE_TICK_INTERVAL}毫秒tick一次，
+ * 心跳间隔或超时时间更短的session每帧tick。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class SessionTickManagerTest {
+
+    private static final int SESSION_COUNT = 200;
+    private static final int WHEEL_FRAMES = SessionTickManager.IDLE_TICK_INTERVAL / SessionTickManager.TICK_INTERVAL;
+
+    private final NetTimeManager netTimeManager = new NetTimeManager();
+    private final NetTimerManager netTimerManager;
+    private final SessionTickManager tickManager;
+    private final NetManagerWrapper managerWrapper;
+
+    public SessionTickManagerTest() {
+        netTimeManager.changeToCacheStrategy();
+        netTimerManager = new NetTimerManager(netTimeManager);
+        tickManager = new SessionTickManager(netTimerManager);
+
+        final NetEventLoopManager netEventLoopManager = new NetEventLoopManager();
+        netEventLoopManager.publish(newStub(NetEventLoop.class, (proxy, method, args) -> {
+            if (method.getName().equals("inEventLoop")) {
+                return true;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }));
+        managerWrapper = new NetManagerWrapper(netEventLoopManager, null, null, netTimeManager, netTimerManager,
+                tickManager, null, null, null, null, null);
+    }
+
+    @Test
+    void testIdleWheel() {
+        final List<TestSession> sessions = newSessions();
+
+        // 新注册的session在下一帧tick
+        nextFrame();
+        for (TestSession session : sessions) {
+            Assertions.assertEquals(1, session.tickCount);
+        }
+
+        // 空闲session均匀的分布在时间轮上，每转一圈tick一次
+        final int[] tickedPerFrame = new int[WHEEL_FRAMES];
+        for (int frame = 0; frame < WHEEL_FRAMES; frame++) {
+            final int before = totalTicks(sessions);
+            nextFrame();
+            tickedPerFrame[frame] = totalTicks(sessions) - before;
+        }
+        for (TestSession session : sessions) {
+            Assertions.assertEquals(2, session.tickCount);
+        }
+        for (int ticked : tickedPerFrame) {
+            Assertions.assertEquals(SESSION_COUNT / WHEEL_FRAMES, ticked);
+        }
+    }
+
+    @Test
+    void testDirtySession() {
+        final List<TestSession> sessions = newSessions();
+        nextFrame();
+
+        // 同一帧多次请求只tick一次
+        final TestSession dirtySession = sessions.get(1);
+        dirtySession.requestTick();
+        dirtySession.requestTick();
+        final int before = dirtySession.tickCount;
+        nextFrame();
+        Assertions.assertEquals(before + 1, dirtySession.tickCount);
+
+        // tick期间再次请求，在下一帧tick，而不是本帧重复tick
+        dirtySession.requestTickOnTick = true;
+        dirtySession.requestTick();
+        nextFrame();
+        Assertions.assertEquals(before + 2, dirtySession.tickCount);
+        dirtySession.requestTickOnTick = false;
+        nextFrame();
+        Assertions.assertEquals(before + 3, dirtySession.tickCount);
+        nextFrame();
+        Assertions.assertEquals(before + 3, dirtySession.tickCount);
+    }
+
+    @Test
+    void testShortInterval() {
+        // 心跳间隔或超时时间小于空闲tick间隔的session，空闲时也每帧tick
+        final List<TestSession> pingSessions = newSessions(newConfigBuilder()
+                .setPingIntervalMs(SessionTickManager.IDLE_TICK_INTERVAL / 2)
+                .build());
+        final List<TestSession> timeoutSessions = newSessions(newConfigBuilder()
+                .setSessionTimeoutMs(SessionTickManager.IDLE_TICK_INTERVAL - 1)
+                .build());
+        final List<TestSession> idleSessions = newSessions(newConfig());
+
+        final TestSession closedSession = pingSessions.get(0);
+        for (int frame = 1; frame <= WHEEL_FRAMES; frame++) {
+            nextFrame();
+            if (frame == 1) {
+                closedSession.closed = true;
+            }
+            for (int index = 1; index < SESSION_COUNT; index++) {
+                Assertions.assertEquals(frame, pingSessions.get(index).tickCount);
+                Assertions.assertEquals(frame, timeoutSessions.get(index).tickCount);
+            }
+        }
+        Assertions.assertEquals(1, closedSession.tickCount);
+        // 空闲session仍然每圈tick一次（第一帧转到的槽位与注册后的tick合并）
+        Assertions.assertEquals(2 * SESSION_COUNT - SESSION_COUNT / WHEEL_FRAMES, totalTicks(idleSessions));
+    }
+
+    @Test
+    void testTickException() {
+        final List<TestSession> sessions = newSessions();
+        final TestSession badSession = sessions.get(SESSION_COUNT / 2);
+        badSession.throwOnTick = true;
+
+        // 一个session抛出异常，不影响同一帧的其它session
+        nextFrame();
+        for (TestSession session : sessions) {
+            Assertions.assertEquals(1, session.tickCount);
+        }
+
+        // 抛出异常的session不会残留在待tick集合中，下一帧只tick时间轮转到的session
+        nextFrame();
+        Assertions.assertEquals(SESSION_COUNT + SESSION_COUNT / WHEEL_FRAMES, totalTicks(sessions));
+    }
+
+    @Test
+    void testClosedSession() {
+        final List<TestSession> sessions = newSessions();
+        final TestSession closedSession = sessions.get(0);
+        closedSession.closed = true;
+        closedSession.requestTick();
+
+        // 注册帧 + 时间轮一圈
+        for (int frame = 0; frame < WHEEL_FRAMES + 1; frame++) {
+            nextFrame();
+        }
+        Assertions.assertEquals(0, closedSession.tickCount);
+        for (int index = 1; index < SESSION_COUNT; index++) {
+            Assertions.assertEquals(2, sessions.get(index).tickCount);
+        }
+    }
+
+    private void nextFrame() {
+        netTimeManager.update(netTimeManager.curTimeMillis() + SessionTickManager.TICK_INTERVAL);
+        netTimerManager.tick();
+    }
+
+    private List<TestSession> newSessions() {
+        return newSessions(newConfig());
+    }
+
+    private List<TestSession> newSessions(SessionConfig config) {
+        final SessionRegistry sessionRegistry = newStub(SessionRegistry.class, (proxy, method, args) -> null);
+        final List<TestSession> sessions = new ArrayList<>(SESSION_COUNT);
+        for (int index = 0; index < SESSION_COUNT; index++) {
+            sessions.add(new TestSession("session-" + index, config, managerWrapper, sessionRegistry));
+        }
+        return sessions;
+    }
+
+    private static int totalTicks(List<TestSession> sessions) {
+        int total = 0;
+        for (TestSession session : sessions) {
+            total += session.tickCount;
+        }
+        return total;
+    }
+
+    private static SessionConfig newConfig() {
+        return newConfigBuilder().build();
+    }
+
+    private static SocketSessionConfig.SocketSessionConfigBuilder newConfigBuilder() {
+        return SocketSessionConfig.newBuilder()
+                .setSerializer(newStub(Serializer.class, (proxy, method, args) -> null))
+                .setLifecycleAware(newStub(SessionLifecycleAware.class, (proxy, method, args) -> null))
+                .setRpcProcessor((context, request) -> null);
+    }
+
+    private static <T> T newStub(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SessionTickManagerTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static class TestSession extends AbstractSession {
+
+        int tickCount;
+        boolean closed;
+        boolean requestTickOnTick;
+        boolean throwOnTick;
+
+        TestSession(String sessionId, SessionConfig config, NetManagerWrapper managerWrapper, SessionRegistry sessionRegistry) {
+            super(null, sessionId, config, managerWrapper, sessionRegistry);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void tick() {
+            tickCount++;
+            if (requestTickOnTick) {
+                requestTick();
+            }
+            if (throwOnTick) {
+                throw new IllegalStateException("tick " + sessionId());
+            }
+        }
+    }
+}
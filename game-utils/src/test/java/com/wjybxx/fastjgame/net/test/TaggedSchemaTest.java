@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.*;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+
+/**
+ * 带标签的字段布局测试。
+ * {@link TaggedBean}的编解码器按照注解处理器为{@code @SerializableClass(tagged = true)}生成的代码手写，
+ * 通过切换写入的版本模拟新旧版本的进程互通。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class TaggedSchemaTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+
+    @Test
+    void testSameSchema() throws Exception {
+        TaggedBeanCodec.writeV2 = false;
+        final TaggedBean bean = new TaggedBean(1, "one", null);
+        final TaggedBean clone = (TaggedBean) serializer.cloneObject(bean);
+        Assertions.assertEquals(bean, clone);
+        Assertions.assertEquals(serializer.toBytes(bean).length, serializer.computeSerializedSize(bean));
+    }
+
+    @Test
+    void testSchemaEvolution() throws Exception {
+        // 新版本：删除了字段2，增加了字段3，旧版本读取时跳过字段3，字段2保持默认值
+        TaggedBeanCodec.writeV2 = true;
+        try {
+            final TaggedBean bean = new TaggedBean(1, "one", new int[]{1, 2, 3});
+            final TaggedBean clone = (TaggedBean) serializer.cloneObject(bean);
+            Assertions.assertEquals(new TaggedBean(1, null, new int[]{1, 2, 3}), clone);
+            Assertions.assertEquals(serializer.toBytes(bean).length, serializer.computeSerializedSize(bean));
+        } finally {
+            TaggedBeanCodec.writeV2 = false;
+        }
+    }
+
+    @Test
+    void testSkipValue() throws Exception {
+        TaggedBeanCodec.writeV2 = true;
+        TaggedBeanCodec.v2Extra = Arrays.asList(1L, -1.5d, "str", new long[]{Long.MIN_VALUE}, new boolean[3], Collections.singletonMap("key", (short) 1));
+        try {
+            final TaggedBean bean = new TaggedBean(3, "three", null);
+            Assertions.assertEquals(new TaggedBean(3, null, null), serializer.cloneObject(bean));
+        } finally {
+            TaggedBeanCodec.writeV2 = false;
+            TaggedBeanCodec.v2Extra = null;
+        }
+    }
+
+    static class TaggedBean {
+
+        private int id;
+        private String name;
+        private int[] values;
+
+        TaggedBean() {
+        }
+
+        TaggedBean(int id, String name, int[] values) {
+            this.id = id;
+            this.name = name;
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TaggedBean that = (TaggedBean) o;
+            return id == that.id && Objects.equals(name, that.name) && Arrays.equals(values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return "TaggedBean{id=" + id + ", name=" + name + ", values=" + Arrays.toString(values) + '}';
+        }
+    }
+
+    /**
+     * 本地版本（v1）的字段：1-id，2-name，3-values；
+     * 模拟的新版本（v2）的字段：1-id，4-extra，3-values
+     */
+    public static class TaggedBeanCodec extends AbstractPojoCodecImpl<TaggedBean> {
+
+        private static final TaggedSchema SCHEMA = TaggedSchema.newInstance(1, 2, 3);
+        private static final TaggedSchema SCHEMA_V2 = TaggedSchema.newInstance(1, 4, 3);
+
+        static volatile boolean writeV2;
+        static volatile Object v2Extra;
+
+        @Override
+        public Class<TaggedBean> getEncoderClass() {
+            return TaggedBean.class;
+        }
+
+        @Override
+        public void writeObject(TaggedBean instance, ObjectWriter writer) throws Exception {
+            if (writeV2) {
+                writer.writeSchema(SCHEMA_V2);
+                writer.writeInt(instance.id);
+                writer.writeObject(v2Extra);
+                writer.writeArray(instance.values);
+            } else {
+                writer.writeSchema(SCHEMA);
+                writer.writeInt(instance.id);
+                writer.writeString(instance.name);
+                writer.writeArray(instance.values);
+            }
+        }
+
+        @Override
+        public int computeSize(TaggedBean instance, ObjectSizeCalculator calculator) throws Exception {
+            if (writeV2) {
+                return calculator.computeByWriting(this, instance);
+            }
+            int size = 0;
+            size += calculator.computeSchema(SCHEMA);
+            size += calculator.computeInt(instance.id);
+            size += calculator.computeString(instance.name);
+            size += calculator.computeArray(instance.values);
+            return size;
+        }
+
+        @Override
+        protected TaggedBean newInstance() {
+            return new TaggedBean();
+        }
+
+        @Override
+        public void readFields(TaggedBean instance, ObjectReader reader) throws Exception {
+            final int[] remoteFieldNumbers = reader.readSchema(SCHEMA);
+            if (remoteFieldNumbers == null) {
+                instance.id = reader.readInt();
+                instance.name = reader.readString();
+                instance.values = reader.readArray(int.class);
+                return;
+            }
+            for (int number : remoteFieldNumbers) {
+                switch (number) {
+                    case 1:
+                        instance.id = reader.readInt();
+                        break;
+                    case 2:
+                        instance.name = reader.readString();
+                        break;
+                    case 3:
+                        instance.values = reader.readArray(int.class);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wjybxx.fastjgame.net.test;
+
+import com.wjybxx.fastjgame.net.binary.BinarySerializer;
+import com.wjybxx.fastjgame.net.binary.CollectionScanner;
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoop;
+import com.wjybxx.fastjgame.net.eventloop.NetEventLoopGroup;
+import com.wjybxx.fastjgame.net.misc.NetContext;
+import com.wjybxx.fastjgame.net.rpc.NetMessage;
+import com.wjybxx.fastjgame.net.rpc.OneWayMessage;
+import com.wjybxx.fastjgame.net.serialization.HashTypeIdMappingStrategy;
+import com.wjybxx.fastjgame.net.session.Session;
+import com.wjybxx.fastjgame.net.session.SessionLifecycleAware;
+import com.wjybxx.fastjgame.net.socket.*;
+import com.wjybxx.fastjgame.net.ws.WsClientChannelInitializer;
+import com.wjybxx.fastjgame.net.ws.WsServerChannelInitializer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * websocket测试：通过真实的握手，测试websocket原生分帧(去掉长度字段)与permessage-deflate扩展的各种组合。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/16
+ * github - https://github.com/hl845740757
+ */
+public class WebSocketFramingTest {
+
+    private static final BinarySerializer serializer = BinarySerializer.newInstance(new HashTypeIdMappingStrategy(), CollectionScanner.scan());
+    private static final String SESSION_ID = "session";
+    private static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    @Test
+    void testFraming() throws Exception {
+        for (boolean nativeFraming : new boolean[]{false, true}) {
+            for (boolean perMessageDeflate : new boolean[]{false, true}) {
+                checkRoundTrip(nativeFraming, perMessageDeflate);
+            }
+        }
+    }
+
+    @Test
+    void testRejectDoubleCompression() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> newConfigBuilder()
+                .setWsPerMessageDeflate(true)
+                .setCompressionEnabled(true)
+                .build());
+    }
+
+    private static void checkRoundTrip(boolean nativeFraming, boolean perMessageDeflate) throws Exception {
+        final String desc = "nativeFraming " + nativeFraming + ", perMessageDeflate " + perMessageDeflate;
+        final SocketSessionConfig config = newConfigBuilder()
+                .setWsNativeFraming(nativeFraming)
+                .setWsPerMessageDeflate(perMessageDeflate)
+                .build();
+
+        final BlockingQueue<SocketEvent> serverEvents = new LinkedBlockingQueue<>();
+        final BlockingQueue<SocketEvent> clientEvents = new LinkedBlockingQueue<>();
+        final NetEventLoop serverEventLoop = newNetEventLoop(serverEvents);
+        final SocketPortContext portContext = new SocketPortContext(newNetContext(serverEventLoop), config);
+
+        final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(2);
+        try {
+            final Channel serverChannel = new ServerBootstrap()
+                    .group(eventLoopGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new WsServerChannelInitializer("/ws", portContext))
+                    .bind("127.0.0.1", 0).sync().channel();
+            final int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+
+            final Channel clientChannel = new Bootstrap()
+                    .group(eventLoopGroup)
+                    .channel(NioSocketChannel.class)
+                    .handler(new WsClientChannelInitializer(SESSION_ID, "ws://127.0.0.1:" + port + "/ws", config, newNetEventLoop(clientEvents)))
+                    .connect("127.0.0.1", port).sync().channel();
+            awaitHandshake(clientChannel);
+            Assertions.assertEquals(perMessageDeflate, hasPerMessageDeflate(clientChannel), desc);
+
+            // 客户端 -> 服务器：建立连接请求 + 一个较大的消息(会被分为多个websocket片段，或被压缩)
+            clientChannel.writeAndFlush(new ConnectRequestTO());
+            final SocketConnectRequestEvent requestEvent = (SocketConnectRequestEvent) poll(serverEvents, desc);
+            Assertions.assertEquals(SESSION_ID, requestEvent.sessionId(), desc);
+            Assertions.assertEquals(perMessageDeflate, hasPerMessageDeflate(requestEvent.channel()), desc);
+
+            final String body = newText(32 * 1024);
+            clientChannel.writeAndFlush(new OneWayMessageTO(1, new OneWayMessage(body)));
+            final SocketMessageEvent messageEvent = (SocketMessageEvent) poll(serverEvents, desc);
+            Assertions.assertEquals(1, messageEvent.getSequence(), desc);
+            Assertions.assertEquals(body, ((OneWayMessage) messageEvent.getWrappedMessage()).getBody(), desc);
+
+            // 服务器 -> 客户端
+            requestEvent.channel().writeAndFlush(new ConnectResponseTO());
+            final SocketConnectResponseEvent responseEvent = (SocketConnectResponseEvent) poll(clientEvents, desc);
+            Assertions.assertTrue(responseEvent.getConnectResponse().isSuccess(), desc);
+
+            clientChannel.close().sync();
+            serverChannel.close().sync();
+        } finally {
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    private static void awaitHandshake(Channel channel) throws InterruptedException {
+        final WebSocketClientProtocolHandler protocolHandler = channel.pipeline().get(WebSocketClientProtocolHandler.class);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!protocolHandler.handshaker().isHandshakeComplete()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "handshake timeout");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 握手时协商成功，扩展才会添加编解码器
+     */
+    private static boolean hasPerMessageDeflate(Channel channel) {
+        return channel.pipeline().names().stream().anyMatch(name -> name.contains("PerMessageDeflate"));
+    }
+
+    private static SocketEvent poll(BlockingQueue<SocketEvent> events, String desc) throws InterruptedException {
+        final SocketEvent event = events.poll(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(event, desc);
+        return event;
+    }
+
+    private static SocketSessionConfig.SocketSessionConfigBuilder newConfigBuilder() {
+        return SocketSessionConfig.newBuilder()
+                .setSerializer(serializer)
+                .setLifecycleAware(new SessionLifecycleAware() {
+                    @Override
+                    public void onSessionConnected(Session session) {
+
+                    }
+
+                    @Override
+                    public void onSessionDisconnected(Session session) {
+
+                    }
+                })
+                .setRpcProcessor((context, request) -> null)
+                .setMaxFrameLength(MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * 只接收socket事件的网络线程
+     */
+    private static NetEventLoop newNetEventLoop(BlockingQueue<SocketEvent> events) {
+        return (NetEventLoop) Proxy.newProxyInstance(WebSocketFramingTest.class.getClassLoader(), new Class<?>[]{NetEventLoop.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("fireSocketEvent")) {
+                        events.add((SocketEvent) args[0]);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static NetContext newNetContext(NetEventLoop netEventLoop) {
+        final NetEventLoopGroup netEventLoopGroup = (NetEventLoopGroup) Proxy.newProxyInstance(WebSocketFramingTest.class.getClassLoader(),
+                new Class<?>[]{NetEventLoopGroup.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("select")) {
+                        return netEventLoop;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return (NetContext) Proxy.newProxyInstance(WebSocketFramingTest.class.getClassLoader(), new Class<?>[]{NetContext.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("netEventLoopGroup")) {
+                        return netEventLoopGroup;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static String newText(int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for (int index = 0; sb.length() < length; index++) {
+            sb.append("message-").append(index % 16).append(';');
+        }
+        return sb.substring(0, length);
+    }
+
+    private static class ConnectRequestTO implements SocketConnectRequestTO {
+
+        @Override
+        public long getInitSequence() {
+            return 0;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClose() {
+            return false;
+        }
+
+        @Override
+        public SocketConnectRequest getConnectRequest() {
+            return new SocketConnectRequest(1, 0);
+        }
+    }
+
+    private static class ConnectResponseTO implements SocketConnectResponseTO {
+
+        @Override
+        public long getInitSequence() {
+            return 0;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClose() {
+            return false;
+        }
+
+        @Override
+        public SocketConnectResponse getConnectResponse() {
+            return new SocketConnectResponse(true, 1, 0);
+        }
+    }
+
+    private static class OneWayMessageTO implements SocketMessageTO, SocketMessage {
+
+        private final long sequence;
+        private final NetMessage wrappedMessage;
+
+        OneWayMessageTO(long sequence, NetMessage wrappedMessage) {
+            this.sequence = sequence;
+            this.wrappedMessage = wrappedMessage;
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public NetMessage getWrappedMessage() {
+            return wrappedMessage;
+        }
+
+        @Override
+        public long getAck() {
+            return 0;
+        }
+
+        @Override
+        public SocketMessage getSocketMessage() {
+            return this;
+        }
+    }
+}
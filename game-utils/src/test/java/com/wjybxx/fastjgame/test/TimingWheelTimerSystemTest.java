@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 wjybxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wjybxx.fastjgame.test;
+
+import com.wjybxx.fastjgame.util.time.CachedTimeProvider;
+import com.wjybxx.fastjgame.util.time.TimeProviders;
+import com.wjybxx.fastjgame.util.timer.DefaultTimerSystem;
+import com.wjybxx.fastjgame.util.timer.TimerHandle;
+import com.wjybxx.fastjgame.util.timer.TimerSystem;
+import com.wjybxx.fastjgame.util.timer.TimingWheelTimerSystem;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 时间轮定时器系统测试：
+ * 1. 与{@link DefaultTimerSystem}的执行顺序对比。
+ * 2. 大量timer添加/取消后，仅未取消的timer在超时后被执行。
+ * 性能对比见{@link com.wjybxx.fastjgame.util.example.TimerSystemPerformanceTest}。
+ *
+ * @author wjybxx
+ * @version 1.0
+ * date - 2020/8/13
+ * github - https://github.com/hl845740757
+ */
+public class TimingWheelTimerSystemTest {
+
+    private static final int TIMER_COUNT = 50_000;
+    private static final int FRAME_INTERVAL = 50;
+
+    @Test
+    void testExecuteOrder() {
+        final long seed = System.nanoTime();
+        final IntArrayList expected = runOrderTest(DefaultTimerSystem::new, seed);
+        final IntArrayList actual = runOrderTest(TimingWheelTimerSystem::new, seed);
+        Assertions.assertEquals(expected, actual, "seed " + seed);
+    }
+
+    private static IntArrayList runOrderTest(Function<CachedTimeProvider, TimerSystem> factory, long seed) {
+        final Random random = new Random(seed);
+        final CachedTimeProvider timeProvider = TimeProviders.newCachedTimeProvider(System.currentTimeMillis());
+        final TimerSystem timerSystem = factory.apply(timeProvider);
+        final IntArrayList executed = new IntArrayList();
+
+        final TimerHandle[] handles = new TimerHandle[10_000];
+        for (int index = 0; index < handles.length; index++) {
+            final int timerIndex = index;
+            // 跨越多层时间轮，并制造大量同一时刻的timer
+            final long timeout = random.nextInt(4) == 0 ? random.nextInt(100) * 1000 : random.nextInt(300_000);
+            handles[index] = timerSystem.newTimeout(timeout, handle -> {
+                executed.add(timerIndex);
+                if (timerIndex % 100 == 0) {
+                    // 添加立即执行的timer，测试帧数限制
+                    handle.timerSystem().nextTick(handle2 -> executed.add(-timerIndex));
+                }
+            });
+        }
+
+        for (int index = 0; index < handles.length; index += 3) {
+            handles[index].close();
+        }
+
+        for (int frame = 0; frame < 400_000 / FRAME_INTERVAL; frame++) {
+            timeProvider.update(timeProvider.curTimeMillis() + FRAME_INTERVAL + random.nextInt(FRAME_INTERVAL));
+            timerSystem.tick();
+        }
+        timerSystem.close();
+        return executed;
+    }
+
+    @Test
+    void testCancelledTimers() {
+        final CachedTimeProvider timeProvider = TimeProviders.newCachedTimeProvider(System.currentTimeMillis());
+        runCancelledTimersTest(new DefaultTimerSystem(timeProvider, TIMER_COUNT), timeProvider);
+
+        timeProvider.update(System.currentTimeMillis());
+        runCancelledTimersTest(new TimingWheelTimerSystem(timeProvider), timeProvider);
+    }
+
+    private static void runCancelledTimersTest(TimerSystem timerSystem, CachedTimeProvider timeProvider) {
+        final Random random = new Random(0);
+        final TimerHandle[] handles = new TimerHandle[TIMER_COUNT];
+        final int[] executedCount = new int[1];
+
+        for (int index = 0; index < TIMER_COUNT; index++) {
+            handles[index] = timerSystem.newTimeout(1000 + random.nextInt(60_000), handle -> executedCount[0]++);
+        }
+
+        // 大多数timer在执行前被取消
+        for (int index = 0; index < TIMER_COUNT; index++) {
+            if (index % 10 != 0) {
+                handles[index].close();
+            }
+        }
+
+        // 时间未推进，不应有timer执行
+        timerSystem.tick();
+        Assertions.assertEquals(0, executedCount[0], timerSystem.getClass().getSimpleName());
+
+        // 推进到所有timer都已超时
+        timeProvider.update(timeProvider.curTimeMillis() + 61_000 + FRAME_INTERVAL);
+        timerSystem.tick();
+        timerSystem.close();
+
+        Assertions.assertEquals(TIMER_COUNT / 10, executedCount[0], timerSystem.getClass().getSimpleName());
+        for (int index = 0; index < TIMER_COUNT; index++) {
+            Assertions.assertTrue(handles[index].isClosed());
+        }
+    }
+}